@@ -0,0 +1,26 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+/**
+ * A source of time for Actor behavior.
+ * <p>
+ * Behavior is driven by elapsed time rather than by scheduler ticks. Abstracting the
+ * clock allows behavior to run on devices, using the system clock, and in JVM tests,
+ * using a clock which is advanced explicitly.
+ * </p>
+ */
+public interface IMleClock
+{
+    /**
+     * Get the current time.
+     * <p>
+     * Only differences between values are meaningful; the origin is arbitrary.
+     * </p>
+     *
+     * @return The time in nanoseconds.
+     */
+    public long getNanos();
+}
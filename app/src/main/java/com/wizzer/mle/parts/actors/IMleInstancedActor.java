@@ -0,0 +1,45 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+/**
+ * An Actor which places many instances of the same media.
+ * <p>
+ * The per-instance transforms are held in contiguous arrays so that a Role can
+ * consume them as a single batch. The arrays are owned by the Actor and may be
+ * longer than <code>getInstanceCount()</code> requires; only the leading entries
+ * are valid.
+ * </p>
+ */
+public interface IMleInstancedActor
+{
+    /**
+     * Get the number of instances.
+     *
+     * @return The instance count.
+     */
+    public int getInstanceCount();
+
+    /**
+     * Get the instance positions.
+     *
+     * @return Three floating-point values (x, y, z) per instance.
+     */
+    public float[] getPositions();
+
+    /**
+     * Get the instance orientations.
+     *
+     * @return Four floating-point values (a quaternion x, y, z, w) per instance.
+     */
+    public float[] getOrientations();
+
+    /**
+     * Get the instance scales.
+     *
+     * @return Three floating-point values (x, y, z) per instance.
+     */
+    public float[] getScales();
+}
@@ -0,0 +1,28 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+
+/**
+ * A listener for the property changes of an Actor, delivered once per frame by
+ * <code>MlePropertyNotifier</code>.
+ */
+public interface IMlePropertyListener
+{
+    /**
+     * Called once per frame if any properties of the Actor have changed.
+     * <p>
+     * The current values may be read with the identifier-based
+     * <code>getProperty()</code> of the Actor.
+     * </p>
+     *
+     * @param actor The Actor.
+     * @param changed The changed properties, one bit for each identifier:
+     * <code>1 &lt;&lt; PROPERTY_</code> constant of the Actor class.
+     */
+    public void propertiesChanged(MleActor actor, int changed);
+}
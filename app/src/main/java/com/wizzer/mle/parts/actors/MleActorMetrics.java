@@ -0,0 +1,449 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms for the hot paths of an Actor class.
+ * <p>
+ * Each Actor class registers one instance, which counts its behavior,
+ * <code>update()</code>, <code>init()</code>, <code>setProperty()</code> and media
+ * loads, the number of pushes to a Role which failed and were ignored, and the
+ * number of media loads which failed.
+ * Operations and failures are always counted. Timing them is switched on and off
+ * for every class with <code>setEnabled()</code>; while it is off, instrumented code
+ * pays one volatile read and one atomic increment per operation, and the latency
+ * histograms are left empty.
+ * </p><p>
+ * Latencies are kept in histograms with power-of-two buckets: bucket <i>b</i> counts
+ * latencies of at least 2<sup><i>b</i>-1</sup> and less than 2<sup><i>b</i></sup>
+ * nanoseconds, and the last bucket counts everything longer. Recording is lock-free,
+ * so it is safe from the scheduler thread and the media loading threads alike.
+ * <code>snapshot()</code> and <code>snapshotAll()</code> copy the numbers without
+ * locking, so a title may dump them or send them out periodically from any thread.
+ * </p>
+ */
+public final class MleActorMetrics
+{
+    /** The behavior executed during the Actor phase, once per frame for the class. */
+    public static final int OP_BEHAVE       = 0;
+    /** Pushing the transform properties to the Role in <code>update()</code>. */
+    public static final int OP_UPDATE       = 1;
+    /** Initializing an Actor in <code>init()</code>. */
+    public static final int OP_INIT         = 2;
+    /** Decoding a property in <code>setProperty()</code>. */
+    public static final int OP_SET_PROPERTY = 3;
+    /** Loading a media reference from the DPP. */
+    public static final int OP_LOAD_MEDIA   = 4;
+    /** The number of operations. */
+    public static final int OP_COUNT        = 5;
+
+    /** The number of buckets in each latency histogram. */
+    public static final int BUCKETS = 40;
+
+    // The operation names, indexed by operation.
+    private static final String[] g_opNames =
+        { "behave", "update", "init", "setProperty", "loadMedia" };
+
+    // Whether timing is enabled.
+    private static volatile boolean g_enabled = false;
+    // The metrics of every registered class.
+    private static final CopyOnWriteArrayList<MleActorMetrics> g_registry =
+        new CopyOnWriteArrayList<MleActorMetrics>();
+
+    // The name of the Actor class.
+    private final String m_name;
+    // The number of each operation, timed or not.
+    private final AtomicLongArray m_counts = new AtomicLongArray(OP_COUNT);
+    // The histogram buckets, OP_COUNT rows of BUCKETS.
+    private final AtomicLongArray m_buckets = new AtomicLongArray(OP_COUNT * BUCKETS);
+    // The total latency of each operation, in nanoseconds.
+    private final AtomicLongArray m_totals = new AtomicLongArray(OP_COUNT);
+    // The number of failed pushes which were ignored.
+    private final AtomicLong m_pushFailures = new AtomicLong();
+    // The number of media loads which failed.
+    private final AtomicLong m_loadFailures = new AtomicLong();
+
+    /**
+     * A copy of the metrics of an Actor class at one point in time.
+     * <p>
+     * Each number is read atomically, but a snapshot taken while operations are
+     * being recorded may include an operation in one number and not yet in another.
+     * </p>
+     */
+    public static final class Snapshot
+    {
+        // The name of the Actor class.
+        private final String m_name;
+        // The time the snapshot was taken, from System.nanoTime().
+        private final long m_nanos;
+        // The histogram buckets, by operation.
+        private final long[][] m_buckets = new long[OP_COUNT][BUCKETS];
+        // The number of each operation.
+        private final long[] m_counts = new long[OP_COUNT];
+        // The number of each operation which was timed.
+        private final long[] m_timed = new long[OP_COUNT];
+        // The total latency of each operation, in nanoseconds.
+        private final long[] m_totals = new long[OP_COUNT];
+        // The number of failed pushes which were ignored.
+        private final long m_pushFailures;
+        // The number of media loads which failed.
+        private final long m_loadFailures;
+
+        // Copy the metrics.
+        private Snapshot(MleActorMetrics metrics)
+        {
+            m_name = metrics.m_name;
+            m_nanos = System.nanoTime();
+            for (int op = 0; op < OP_COUNT; op++)
+            {
+                long timed = 0;
+                for (int b = 0; b < BUCKETS; b++)
+                {
+                    long n = metrics.m_buckets.get(op * BUCKETS + b);
+                    m_buckets[op][b] = n;
+                    timed += n;
+                }
+                m_counts[op] = metrics.m_counts.get(op);
+                m_timed[op] = timed;
+                m_totals[op] = metrics.m_totals.get(op);
+            }
+            m_pushFailures = metrics.m_pushFailures.get();
+            m_loadFailures = metrics.m_loadFailures.get();
+        }
+
+        /**
+         * Get the name of the Actor class.
+         *
+         * @return The name is returned.
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * Get the time the snapshot was taken.
+         *
+         * @return The time, from <code>System.nanoTime()</code>.
+         */
+        public long getNanos()
+        {
+            return m_nanos;
+        }
+
+        /**
+         * Get the number of times an operation was recorded, whether or not timing
+         * was enabled.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         *
+         * @return The count is returned.
+         */
+        public long getCount(int op)
+        {
+            return m_counts[op];
+        }
+
+        /**
+         * Get the number of times an operation was timed.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         *
+         * @return The number of latencies in the histogram of the operation.
+         */
+        public long getTimedCount(int op)
+        {
+            return m_timed[op];
+        }
+
+        /**
+         * Get the total latency of an operation.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         *
+         * @return The total, in nanoseconds.
+         */
+        public long getTotalNanos(int op)
+        {
+            return m_totals[op];
+        }
+
+        /**
+         * Get the mean latency of an operation.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         *
+         * @return The mean of the timed operations, in nanoseconds, or <b>0</b> if
+         * none was timed.
+         */
+        public double getMeanNanos(int op)
+        {
+            return (m_timed[op] > 0) ? (double) m_totals[op] / m_timed[op] : 0.0;
+        }
+
+        /**
+         * Get an upper bound on a latency percentile of an operation.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         * @param percentile The percentile, between 0 and 100.
+         *
+         * @return The upper bound of the histogram bucket holding the percentile, in
+         * nanoseconds; <b>0</b> if nothing was timed, or <code>Long.MAX_VALUE</code>
+         * if it falls in the last bucket.
+         */
+        public long getPercentileNanos(int op, double percentile)
+        {
+            long count = m_timed[op];
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            long seen = 0;
+            long[] buckets = m_buckets[op];
+            for (int b = 0; b < BUCKETS - 1; b++)
+            {
+                seen += buckets[b];
+                if (seen >= Math.max(1, rank))
+                    return 1L << b;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Get the latency histogram of an operation.
+         *
+         * @param op One of the <code>OP_</code> constants.
+         *
+         * @return A copy of the <code>BUCKETS</code> bucket counts.
+         */
+        public long[] getHistogram(int op)
+        {
+            return m_buckets[op].clone();
+        }
+
+        /**
+         * Get the number of pushes to a Role which failed and were ignored.
+         *
+         * @return The count is returned.
+         */
+        public long getPushFailures()
+        {
+            return m_pushFailures;
+        }
+
+        /**
+         * Get the number of media loads which failed.
+         *
+         * @return The count is returned.
+         */
+        public long getLoadFailures()
+        {
+            return m_loadFailures;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        public String toString()
+        {
+            StringBuilder buffer = new StringBuilder(m_name);
+            for (int op = 0; op < OP_COUNT; op++)
+            {
+                if (m_counts[op] == 0) continue;
+                buffer.append(' ').append(g_opNames[op])
+                      .append("[n=").append(m_counts[op]);
+                if (m_timed[op] == 0)
+                {
+                    buffer.append(']');
+                    continue;
+                }
+                buffer.append(" mean=").append((long) getMeanNanos(op))
+                      .append("ns p50<").append(getPercentileNanos(op, 50.0))
+                      .append("ns p99<").append(getPercentileNanos(op, 99.0))
+                      .append("ns]");
+            }
+            buffer.append(" pushFailures=").append(m_pushFailures)
+                  .append(" loadFailures=").append(m_loadFailures);
+            return buffer.toString();
+        }
+    }
+
+    // Hide default constructor.
+    private MleActorMetrics(String name)
+    {
+        m_name = name;
+    }
+
+    /**
+     * Register the metrics of an Actor class.
+     *
+     * @param name The name of the Actor class.
+     *
+     * @return The metrics of the class are returned.
+     */
+    public static MleActorMetrics register(String name)
+    {
+        MleActorMetrics metrics = new MleActorMetrics(name);
+        g_registry.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * Enable or disable timing for every Actor class.
+     *
+     * @param enabled <b>true</b> to record latencies.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        g_enabled = enabled;
+    }
+
+    /**
+     * Determine whether timing is enabled.
+     *
+     * @return <b>true</b> if latencies are recorded.
+     */
+    public static boolean isEnabled()
+    {
+        return g_enabled;
+    }
+
+    /**
+     * Get the name of an operation.
+     *
+     * @param op One of the <code>OP_</code> constants.
+     *
+     * @return The name is returned.
+     */
+    public static String getOperationName(int op)
+    {
+        return g_opNames[op];
+    }
+
+    /**
+     * Start timing an operation.
+     *
+     * @return The start time to pass to <code>stop()</code>, or <b>0</b> if timing
+     * is disabled.
+     */
+    public static long start()
+    {
+        return g_enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Count an operation, and record its latency if it was timed.
+     *
+     * @param op One of the <code>OP_</code> constants.
+     * @param start The value returned by <code>start()</code>; the operation is
+     * counted but its latency is not recorded if it is <b>0</b>.
+     */
+    public void stop(int op, long start)
+    {
+        if (start != 0L)
+            record(op, System.nanoTime() - start);
+        else
+            m_counts.incrementAndGet(op);
+    }
+
+    /**
+     * Count an operation and record its latency.
+     *
+     * @param op One of the <code>OP_</code> constants.
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(int op, long nanos)
+    {
+        m_counts.incrementAndGet(op);
+        if (nanos < 0)
+            nanos = 0;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+        m_buckets.incrementAndGet(op * BUCKETS + bucket);
+        m_totals.addAndGet(op, nanos);
+    }
+
+    /**
+     * Count a push to a Role which failed and was ignored.
+     */
+    public void pushFailed()
+    {
+        m_pushFailures.incrementAndGet();
+    }
+
+    /**
+     * Count a media load which failed.
+     */
+    public void loadFailed()
+    {
+        m_loadFailures.incrementAndGet();
+    }
+
+    /**
+     * Get the name of the Actor class.
+     *
+     * @return The name is returned.
+     */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /**
+     * Copy the current metrics.
+     *
+     * @return The snapshot is returned.
+     */
+    public Snapshot snapshot()
+    {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Clear the metrics.
+     * <p>
+     * Operations recorded while clearing may be partly kept.
+     * </p>
+     */
+    public void reset()
+    {
+        for (int i = 0; i < OP_COUNT * BUCKETS; i++)
+            m_buckets.set(i, 0);
+        for (int op = 0; op < OP_COUNT; op++)
+        {
+            m_counts.set(op, 0);
+            m_totals.set(op, 0);
+        }
+        m_pushFailures.set(0);
+        m_loadFailures.set(0);
+    }
+
+    /**
+     * Copy the current metrics of every registered Actor class.
+     *
+     * @return The snapshots, in registration order.
+     */
+    public static List<Snapshot> snapshotAll()
+    {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>(g_registry.size());
+        for (MleActorMetrics metrics : g_registry)
+            snapshots.add(metrics.snapshot());
+        return snapshots;
+    }
+
+    /**
+     * Clear the metrics of every registered Actor class.
+     */
+    public static void resetAll()
+    {
+        for (MleActorMetrics metrics : g_registry)
+            metrics.reset();
+    }
+}
@@ -0,0 +1,305 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.IdentityHashMap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * A pool of disposed Actors of one class, for titles which spawn and despawn many
+ * Actors.
+ * <p>
+ * Pooling is opt-in: the pool of each Actor class has a limit of zero until the
+ * title sets one, so that <code>obtain()</code> creates every Actor and
+ * <code>recycle()</code> drops it. Recycled Actors are reset to their constructed
+ * state but keep their property objects, which they reuse when their properties
+ * are set again, so that spawning from a warm pool creates no garbage.
+ * </p><p>
+ * Each Actor is pooled at most once; recycling an Actor which is already in the
+ * pool is rejected, since <code>obtain()</code> would otherwise hand it out twice.
+ * </p><p>
+ * The pool counts hits, misses and drops, so the limit can be tuned to the
+ * occupancy the title actually reaches.
+ * </p>
+ *
+ * @param <T> The Actor class.
+ */
+public abstract class MleActorPool<T extends MleActor>
+{
+    // The name of the pool, used for diagnostics.
+    private final String m_name;
+    // The pooled Actors; the first m_size are valid.
+    private Object[] m_actors = new Object[0];
+    // The number of pooled Actors.
+    private int m_size = 0;
+    // The pooled Actors by identity, so that one is not pooled twice.
+    private final IdentityHashMap<Object, Boolean> m_members = new IdentityHashMap<Object, Boolean>();
+    // The maximum number of pooled Actors.
+    private int m_limit = 0;
+
+    // Statistics.
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_drops = 0;
+    private int m_peak = 0;
+
+    /**
+     * Create an empty pool with a limit of zero.
+     *
+     * @param name The name of the pool.
+     */
+    protected MleActorPool(String name)
+    {
+        m_name = name;
+    }
+
+    /**
+     * Create a new Actor, on a miss.
+     *
+     * @return The Actor is returned.
+     */
+    protected abstract T create();
+
+    /**
+     * Reset an Actor to its constructed state, keeping its property objects.
+     *
+     * @param actor The Actor to reset; it is disposed first if it is still
+     * initialized.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor can not be
+     * disposed.
+     */
+    protected abstract void reset(T actor) throws MleRuntimeException;
+
+    /**
+     * Obtain an Actor, from the pool if it is not empty.
+     * <p>
+     * The Actor is in its constructed state; set its properties and
+     * <code>init()</code> it as usual.
+     * </p>
+     *
+     * @return The Actor is returned.
+     */
+    public T obtain()
+    {
+        synchronized (this)
+        {
+            if (m_size > 0)
+            {
+                m_hits++;
+                @SuppressWarnings("unchecked")
+                T actor = (T) m_actors[--m_size];
+                m_actors[m_size] = null;
+                m_members.remove(actor);
+                return actor;
+            }
+            m_misses++;
+        }
+        return create();
+    }
+
+    /**
+     * Return an Actor to the pool.
+     * <p>
+     * The Actor is reset, disposing it if necessary, and kept if the pool is below
+     * its limit; otherwise it is dropped. The caller must not use the Actor
+     * afterwards.
+     * </p>
+     *
+     * @param actor The Actor, normally already disposed.
+     *
+     * @return <b>true</b> if the Actor was kept; <b>false</b> if it was dropped.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor is
+     * <b>null</b>, is already pooled or can not be disposed.
+     */
+    public boolean recycle(T actor) throws MleRuntimeException
+    {
+        if (actor == null)
+            throw new MleRuntimeException(m_name + ": Unable to recycle null Actor.");
+        synchronized (this)
+        {
+            if (m_members.containsKey(actor))
+                throw new MleRuntimeException(m_name + ": Unable to recycle pooled Actor.");
+        }
+
+        reset(actor);
+        synchronized (this)
+        {
+            if (m_members.containsKey(actor))
+                throw new MleRuntimeException(m_name + ": Unable to recycle pooled Actor.");
+            if (m_size >= m_limit)
+            {
+                m_drops++;
+                return false;
+            }
+            if (m_size == m_actors.length)
+            {
+                Object[] actors = new Object[Math.min(m_limit, Math.max(16, m_size * 2))];
+                System.arraycopy(m_actors, 0, actors, 0, m_size);
+                m_actors = actors;
+            }
+            m_actors[m_size++] = actor;
+            m_members.put(actor, Boolean.TRUE);
+            m_peak = Math.max(m_peak, m_size);
+            return true;
+        }
+    }
+
+    /**
+     * Fill the pool with new Actors, up to a count or the limit.
+     *
+     * @param count The number of Actors to hold.
+     *
+     * @throws MleRuntimeException This exception is thrown if an Actor can not be
+     * reset.
+     */
+    public void prefill(int count) throws MleRuntimeException
+    {
+        while (getSize() < Math.min(count, getLimit()))
+            if (! recycle(create()))
+                break;
+    }
+
+    /**
+     * Set the maximum number of pooled Actors.
+     * <p>
+     * Pooled Actors beyond a reduced limit are dropped.
+     * </p>
+     *
+     * @param limit The limit, or <b>0</b> to disable pooling.
+     */
+    public synchronized void setLimit(int limit)
+    {
+        m_limit = Math.max(0, limit);
+        while (m_size > m_limit)
+        {
+            m_members.remove(m_actors[--m_size]);
+            m_actors[m_size] = null;
+        }
+        if (m_actors.length > m_limit)
+        {
+            Object[] actors = new Object[m_size];
+            System.arraycopy(m_actors, 0, actors, 0, m_size);
+            m_actors = actors;
+        }
+    }
+
+    /**
+     * Get the maximum number of pooled Actors.
+     *
+     * @return The limit, or <b>0</b> if pooling is disabled.
+     */
+    public synchronized int getLimit()
+    {
+        return m_limit;
+    }
+
+    /**
+     * Get the number of pooled Actors.
+     *
+     * @return The number of Actors available to <code>obtain()</code>.
+     */
+    public synchronized int getSize()
+    {
+        return m_size;
+    }
+
+    /**
+     * Get the occupancy of the pool.
+     *
+     * @return The number of pooled Actors as a fraction of the limit, or <b>0</b>
+     * if pooling is disabled.
+     */
+    public synchronized float getOccupancy()
+    {
+        return (m_limit > 0) ? (float) m_size / m_limit : 0.0f;
+    }
+
+    /**
+     * Get the largest number of Actors pooled at once.
+     *
+     * @return The peak size.
+     */
+    public synchronized int getPeakSize()
+    {
+        return m_peak;
+    }
+
+    /**
+     * Get the number of Actors obtained from the pool.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Get the number of Actors created because the pool was empty.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Get the fraction of <code>obtain()</code> calls which created an Actor.
+     *
+     * @return The miss rate, from 0 to 1.
+     */
+    public synchronized float getMissRate()
+    {
+        long total = m_hits + m_misses;
+        return (total > 0) ? (float) m_misses / total : 0.0f;
+    }
+
+    /**
+     * Get the number of recycled Actors dropped because the pool was full.
+     *
+     * @return The drop count.
+     */
+    public synchronized long getDrops()
+    {
+        return m_drops;
+    }
+
+    /**
+     * Reset the hit, miss, drop and peak counters.
+     */
+    public synchronized void resetStatistics()
+    {
+        m_hits = 0;
+        m_misses = 0;
+        m_drops = 0;
+        m_peak = m_size;
+    }
+
+    /**
+     * Drop every pooled Actor.
+     */
+    public synchronized void clear()
+    {
+        while (m_size > 0)
+            m_actors[--m_size] = null;
+        m_members.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    public synchronized String toString()
+    {
+        return m_name + ": size=" + m_size + " limit=" + m_limit + " hits=" + m_hits +
+               " misses=" + m_misses + " drops=" + m_drops + " peak=" + m_peak;
+    }
+}
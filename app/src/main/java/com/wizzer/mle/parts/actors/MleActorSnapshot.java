@@ -0,0 +1,380 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Writes and reads compact binary snapshots of the properties of Actors.
+ * <p>
+ * A snapshot covers an array of Actors, identified by their position in the
+ * array, so the same array must be passed to restore it. It records the
+ * "position", "orientation", "scale" and "color" of <code>MleCubeActor</code>s and
+ * <code>MleModelActor</code>s, and the "model" and "texture" of model Actors by DPP
+ * Table-of-Contents index rather than by value. Media which did not come from the
+ * DPP, and Actors of other classes, are not recorded. Restoring sets the recorded
+ * values in place, with no decoding, and loads media only if its index has
+ * changed.
+ * </p><p>
+ * A full snapshot records every Actor; a delta snapshot records only the
+ * properties which have changed since the previous snapshot written by the same
+ * instance, and is restored on top of the state it was taken from. Snapshots are
+ * streamed through a fixed-size buffer, so their size is not limited by memory.
+ * Consecutive snapshots, such as a full snapshot followed by deltas, may be read
+ * from one channel: the bytes read ahead of a snapshot are kept for the next
+ * <code>read()</code> from the same channel.
+ * </p><p>
+ * The format is big-endian: a header of the magic number, the version as a
+ * 16-bit integer, the type and a reserved byte, and the number of Actors as a
+ * 32-bit integer; then a record for each Actor, of its position in the array, its
+ * kind and a byte of field bits, followed by the fields present; and a position of
+ * <b>-1</b> to end. Vectors, rotations and colors are 32-bit floats; media are
+ * 32-bit indices, <b>-1</b> for none.
+ * </p>
+ */
+public final class MleActorSnapshot
+{
+    /** The magic number at the start of a snapshot, "MLES". */
+    public static final int MAGIC = 0x4d4c4553;
+    /** The version of the format. */
+    public static final int VERSION = 1;
+    /** The type of a snapshot of every Actor. */
+    public static final int TYPE_FULL  = 0;
+    /** The type of a snapshot of the changes since the previous snapshot. */
+    public static final int TYPE_DELTA = 1;
+    /** The default size of the stream buffer, 64 KiB. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // The kinds of Actors recorded.
+    static final int KIND_CUBE  = 1;
+    static final int KIND_MODEL = 2;
+
+    // The field bits of a record.
+    static final int FIELD_POSITION    = 0x01;
+    static final int FIELD_ORIENTATION = 0x02;
+    static final int FIELD_SCALE       = 0x04;
+    static final int FIELD_COLOR       = 0x08;
+    static final int FIELD_MODEL       = 0x10;
+    static final int FIELD_TEXTURE     = 0x20;
+    // All field bits.
+    private static final int ALL_FIELDS = 0x3f;
+
+    // The offsets of the fields in the values of an Actor.
+    static final int VALUE_POSITION    = 0;
+    static final int VALUE_ORIENTATION = 3;
+    static final int VALUE_SCALE       = 7;
+    static final int VALUE_COLOR       = 10;
+    static final int VALUE_COUNT       = 14;
+    // The offsets of the media in the references of an Actor.
+    static final int REF_MODEL   = 0;
+    static final int REF_TEXTURE = 1;
+    static final int REF_COUNT   = 2;
+
+    // The size of the header.
+    private static final int HEADER_SIZE = 12;
+    // The largest size of a record.
+    private static final int MAX_RECORD_SIZE = 6 + VALUE_COUNT * 4 + REF_COUNT * 4;
+    // The value offsets and lengths of the float fields, in field bit order.
+    private static final int[] FIELD_OFFSETS = { VALUE_POSITION, VALUE_ORIENTATION, VALUE_SCALE, VALUE_COLOR };
+    private static final int[] FIELD_LENGTHS = { 3, 4, 3, 4 };
+
+    // The stream buffer for writing.
+    private final ByteBuffer m_buffer;
+    // The stream buffer for reading, holding the bytes read ahead, or null.
+    private ByteBuffer m_input = null;
+    // The channel the bytes read ahead came from, or null.
+    private ReadableByteChannel m_source = null;
+    // The values and media of the Actor being written or read.
+    private final float[] m_values = new float[VALUE_COUNT];
+    private final int[] m_refs = new int[REF_COUNT];
+
+    // The state recorded by the previous snapshot, for deltas.
+    private int m_baseCount = -1;
+    private int[] m_baseKinds = null;
+    private int[] m_baseFields = null;
+    private float[] m_baseValues = null;
+    private int[] m_baseRefs = null;
+
+    /**
+     * Create a snapshot writer and reader with the default buffer size.
+     */
+    public MleActorSnapshot()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a snapshot writer and reader.
+     *
+     * @param bufferSize The size of the stream buffer, in bytes.
+     */
+    public MleActorSnapshot(int bufferSize)
+    {
+        m_buffer = ByteBuffer.allocate(Math.max(bufferSize, HEADER_SIZE + MAX_RECORD_SIZE));
+    }
+
+    /**
+     * Write a full snapshot of Actors.
+     * <p>
+     * The snapshot becomes the base of the next delta snapshot.
+     * </p>
+     *
+     * @param out The channel to write to.
+     * @param actors The Actors; <b>null</b> elements are skipped.
+     * @param count The number of Actors.
+     *
+     * @throws IOException This exception is thrown if the snapshot can not be
+     * written.
+     */
+    public void write(WritableByteChannel out, MleActor[] actors, int count) throws IOException
+    {
+        if ((m_baseCount != count) || (m_baseKinds == null) || (m_baseKinds.length < count))
+        {
+            m_baseKinds = new int[count];
+            m_baseFields = new int[count];
+            m_baseValues = new float[count * VALUE_COUNT];
+            m_baseRefs = new int[count * REF_COUNT];
+        }
+        m_baseCount = -1;
+        write(out, actors, count, TYPE_FULL);
+        m_baseCount = count;
+    }
+
+    /**
+     * Write a delta snapshot of Actors, recording the properties which have changed
+     * since the previous snapshot.
+     * <p>
+     * The snapshot becomes the base of the next delta snapshot.
+     * </p>
+     *
+     * @param out The channel to write to.
+     * @param actors The Actors of the previous snapshot; <b>null</b> elements are
+     * skipped.
+     * @param count The number of Actors, as in the previous snapshot.
+     *
+     * @throws IOException This exception is thrown if the snapshot can not be
+     * written.
+     */
+    public void writeDelta(WritableByteChannel out, MleActor[] actors, int count) throws IOException
+    {
+        if (m_baseCount != count)
+            throw new IllegalStateException("MleActorSnapshot: No previous snapshot of " + count + " Actors.");
+        write(out, actors, count, TYPE_DELTA);
+    }
+
+    /**
+     * Read a full or delta snapshot and restore the Actors.
+     *
+     * @param in The channel to read from.
+     * @param actors The Actors the snapshot was written from.
+     * @param count The number of Actors.
+     *
+     * @return The number of Actors restored.
+     *
+     * @throws IOException This exception is thrown if the snapshot can not be read,
+     * is malformed or does not match the Actors.
+     * @throws MleRuntimeException This exception is thrown if a property can not be
+     * restored.
+     */
+    public int read(ReadableByteChannel in, MleActor[] actors, int count)
+        throws IOException, MleRuntimeException
+    {
+        // Bytes read ahead are only kept after a snapshot from the same channel
+        // has been read whole.
+        ReadableByteChannel source = m_source;
+        m_source = null;
+        if (m_input == null)
+            m_input = ByteBuffer.allocate(m_buffer.capacity());
+        ByteBuffer buffer = m_input;
+        if (in != source)
+        {
+            buffer.clear();
+            buffer.flip();
+        }
+
+        fill(in, HEADER_SIZE);
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("MleActorSnapshot: Not a snapshot.");
+        int version = buffer.getShort();
+        if (version != VERSION)
+            throw new IOException("MleActorSnapshot: Unsupported version " + version + ".");
+        int type = buffer.get();
+        buffer.get();
+        if ((type != TYPE_FULL) && (type != TYPE_DELTA))
+            throw new IOException("MleActorSnapshot: Unknown type " + type + ".");
+        if (buffer.getInt() != count)
+            throw new IOException("MleActorSnapshot: Snapshot does not match " + count + " Actors.");
+
+        float[] values = m_values;
+        int[] refs = m_refs;
+        int restored = 0;
+        while (true)
+        {
+            fill(in, 4);
+            int slot = buffer.getInt();
+            if (slot == -1)
+                break;
+            fill(in, 2);
+            int kind = buffer.get();
+            int fields = buffer.get();
+            if (((fields & ~ALL_FIELDS) != 0) || (slot < 0) || (slot >= count) || (kindOf(actors[slot]) != kind))
+                throw new IOException("MleActorSnapshot: Record " + slot + " does not match its Actor.");
+
+            fill(in, getRecordSize(fields) - 6);
+            for (int f = 0; f < FIELD_LENGTHS.length; f++)
+                if ((fields & (1 << f)) != 0)
+                    for (int i = FIELD_OFFSETS[f], end = i + FIELD_LENGTHS[f]; i < end; i++)
+                        values[i] = buffer.getFloat();
+            if ((fields & FIELD_MODEL) != 0)
+                refs[REF_MODEL] = buffer.getInt();
+            if ((fields & FIELD_TEXTURE) != 0)
+                refs[REF_TEXTURE] = buffer.getInt();
+
+            if (kind == KIND_MODEL)
+                ((MleModelActor) actors[slot]).restoreState(fields, values, refs);
+            else
+                ((MleCubeActor) actors[slot]).restoreState(fields, values, refs);
+            restored++;
+        }
+        m_source = in;
+        return restored;
+    }
+
+    // Write a snapshot, updating the base.
+    private void write(WritableByteChannel out, MleActor[] actors, int count, int type)
+        throws IOException
+    {
+        ByteBuffer buffer = m_buffer;
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.put((byte) type);
+        buffer.put((byte) 0);
+        buffer.putInt(count);
+
+        float[] values = m_values;
+        int[] refs = m_refs;
+        for (int slot = 0; slot < count; slot++)
+        {
+            MleActor actor = actors[slot];
+            int kind = kindOf(actor);
+            int baseKind = m_baseKinds[slot];
+            m_baseKinds[slot] = kind;
+            if (kind == 0)
+                continue;
+            int fields = (kind == KIND_MODEL) ?
+                ((MleModelActor) actor).saveState(values, refs) :
+                ((MleCubeActor) actor).saveState(values, refs);
+
+            // Record the fields which differ from the base, and update it.
+            int changed = fields;
+            if ((type == TYPE_DELTA) && (baseKind == kind))
+                changed &= ~unchanged(slot, fields);
+            m_baseFields[slot] = fields;
+            System.arraycopy(values, 0, m_baseValues, slot * VALUE_COUNT, VALUE_COUNT);
+            System.arraycopy(refs, 0, m_baseRefs, slot * REF_COUNT, REF_COUNT);
+            if (changed == 0)
+                continue;
+
+            if (buffer.remaining() < MAX_RECORD_SIZE)
+                flush(out);
+            buffer.putInt(slot);
+            buffer.put((byte) kind);
+            buffer.put((byte) changed);
+            for (int f = 0; f < FIELD_LENGTHS.length; f++)
+                if ((changed & (1 << f)) != 0)
+                    for (int i = FIELD_OFFSETS[f], end = i + FIELD_LENGTHS[f]; i < end; i++)
+                        buffer.putFloat(values[i]);
+            if ((changed & FIELD_MODEL) != 0)
+                buffer.putInt(refs[REF_MODEL]);
+            if ((changed & FIELD_TEXTURE) != 0)
+                buffer.putInt(refs[REF_TEXTURE]);
+        }
+
+        if (buffer.remaining() < 4)
+            flush(out);
+        buffer.putInt(-1);
+        flush(out);
+    }
+
+    // Get the fields of an Actor which are the same as in the base.
+    private int unchanged(int slot, int fields)
+    {
+        float[] values = m_values;
+        float[] base = m_baseValues;
+        int offset = slot * VALUE_COUNT;
+        int same = fields & m_baseFields[slot];
+        for (int f = 0; f < FIELD_LENGTHS.length; f++)
+        {
+            if ((same & (1 << f)) == 0)
+                continue;
+            for (int i = FIELD_OFFSETS[f], end = i + FIELD_LENGTHS[f]; i < end; i++)
+                if (Float.floatToIntBits(values[i]) != Float.floatToIntBits(base[offset + i]))
+                {
+                    same &= ~(1 << f);
+                    break;
+                }
+        }
+        if (m_refs[REF_MODEL] != m_baseRefs[slot * REF_COUNT + REF_MODEL])
+            same &= ~FIELD_MODEL;
+        if (m_refs[REF_TEXTURE] != m_baseRefs[slot * REF_COUNT + REF_TEXTURE])
+            same &= ~FIELD_TEXTURE;
+        return same;
+    }
+
+    // Write the buffered bytes to the channel.
+    private void flush(WritableByteChannel out) throws IOException
+    {
+        m_buffer.flip();
+        while (m_buffer.hasRemaining())
+            out.write(m_buffer);
+        m_buffer.clear();
+    }
+
+    // Read from the channel until at least the specified number of bytes is buffered.
+    private void fill(ReadableByteChannel in, int bytes) throws IOException
+    {
+        ByteBuffer buffer = m_input;
+        if (buffer.remaining() >= bytes)
+            return;
+        buffer.compact();
+        while (buffer.position() < bytes)
+            if (in.read(buffer) < 0)
+                throw new IOException("MleActorSnapshot: Snapshot is truncated.");
+        buffer.flip();
+    }
+
+    // Get the size of a record with the specified fields.
+    private static int getRecordSize(int fields)
+    {
+        int size = 6;
+        for (int f = 0; f < FIELD_LENGTHS.length; f++)
+            if ((fields & (1 << f)) != 0)
+                size += FIELD_LENGTHS[f] * 4;
+        if ((fields & FIELD_MODEL) != 0)
+            size += 4;
+        if ((fields & FIELD_TEXTURE) != 0)
+            size += 4;
+        return size;
+    }
+
+    // Get the kind of an Actor, or 0 if it is not recorded.
+    private static int kindOf(MleActor actor)
+    {
+        if (actor instanceof MleModelActor)
+            return KIND_MODEL;
+        if (actor instanceof MleCubeActor)
+            return KIND_CUBE;
+        return 0;
+    }
+}
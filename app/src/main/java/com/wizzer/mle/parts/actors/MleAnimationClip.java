@@ -0,0 +1,147 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+/**
+ * An immutable set of keyframe tracks animating the transform of an Actor.
+ * <p>
+ * A clip has up to one track for each of the "position", "orientation" and "scale"
+ * channels. Channels without a track are left to the Actor; an orientation track
+ * replaces the Actor's spin. A looping clip wraps around at its duration, the time
+ * of its last key; otherwise the last keys are held.
+ * </p><p>
+ * Clips are immutable, so one clip may be shared by any number of Actors, each
+ * playing it at its own time. <code>withTrack()</code> and <code>withLooping()</code>
+ * return modified copies which share the unchanged tracks.
+ * </p>
+ */
+public final class MleAnimationClip
+{
+    /** The "position" channel. */
+    public static final int CHANNEL_POSITION    = 0;
+    /** The "orientation" channel. */
+    public static final int CHANNEL_ORIENTATION = 1;
+    /** The "scale" channel. */
+    public static final int CHANNEL_SCALE       = 2;
+    /** The number of channels. */
+    public static final int CHANNEL_COUNT       = 3;
+
+    /** A looping clip with no tracks. */
+    public static final MleAnimationClip EMPTY = new MleAnimationClip(null, null, null, true);
+
+    // The tracks, by channel.
+    private final MleAnimationTrack[] m_tracks = new MleAnimationTrack[CHANNEL_COUNT];
+    // Whether the clip loops.
+    private final boolean m_loop;
+    // The duration, in seconds.
+    private final float m_duration;
+
+    /**
+     * Create a clip.
+     *
+     * @param position The vector track for the "position" channel, or <b>null</b>.
+     * @param orientation The rotation track for the "orientation" channel, or <b>null</b>.
+     * @param scale The vector track for the "scale" channel, or <b>null</b>.
+     * @param loop <b>true</b> if the clip wraps around at its duration.
+     *
+     * @throws IllegalArgumentException This exception is thrown if a track has the
+     * wrong type for its channel.
+     */
+    public MleAnimationClip(MleAnimationTrack position, MleAnimationTrack orientation,
+                            MleAnimationTrack scale, boolean loop)
+    {
+        if (((position != null) && (position.getType() != MleAnimationTrack.TYPE_VECTOR3)) ||
+            ((orientation != null) && (orientation.getType() != MleAnimationTrack.TYPE_ROTATION)) ||
+            ((scale != null) && (scale.getType() != MleAnimationTrack.TYPE_VECTOR3)))
+            throw new IllegalArgumentException("MleAnimationClip: Track type does not match channel.");
+        m_tracks[CHANNEL_POSITION] = position;
+        m_tracks[CHANNEL_ORIENTATION] = orientation;
+        m_tracks[CHANNEL_SCALE] = scale;
+        m_loop = loop;
+
+        float duration = 0.0f;
+        for (MleAnimationTrack track : m_tracks)
+            if (track != null) duration = Math.max(duration, track.getDuration());
+        m_duration = duration;
+    }
+
+    /**
+     * Get the track for a channel.
+     *
+     * @param channel One of the <code>CHANNEL_</code> constants.
+     *
+     * @return The track, or <b>null</b> if the channel is not animated.
+     */
+    public MleAnimationTrack getTrack(int channel)
+    {
+        return m_tracks[channel];
+    }
+
+    /**
+     * Determine whether the clip loops.
+     *
+     * @return <b>true</b> if the clip wraps around at its duration.
+     */
+    public boolean isLooping()
+    {
+        return m_loop;
+    }
+
+    /**
+     * Get the duration of the clip.
+     *
+     * @return The time of the last key of any track, in seconds.
+     */
+    public float getDuration()
+    {
+        return m_duration;
+    }
+
+    /**
+     * Map a play time to a time within the clip.
+     *
+     * @param time The time since the clip started, in seconds.
+     *
+     * @return The time within the clip, wrapped if the clip loops.
+     */
+    public float clipTime(double time)
+    {
+        if (m_loop && (m_duration > 0.0f))
+        {
+            double t = time % m_duration;
+            return (float) ((t < 0.0) ? t + m_duration : t);
+        }
+        return (float) Math.min(time, m_duration);
+    }
+
+    /**
+     * Get a copy of the clip with a different track for one channel.
+     *
+     * @param channel One of the <code>CHANNEL_</code> constants.
+     * @param track The track, or <b>null</b> to stop animating the channel.
+     *
+     * @return The modified clip is returned.
+     */
+    public MleAnimationClip withTrack(int channel, MleAnimationTrack track)
+    {
+        MleAnimationTrack[] tracks = m_tracks.clone();
+        tracks[channel] = track;
+        return new MleAnimationClip(tracks[CHANNEL_POSITION], tracks[CHANNEL_ORIENTATION],
+                                    tracks[CHANNEL_SCALE], m_loop);
+    }
+
+    /**
+     * Get a copy of the clip which loops or not.
+     *
+     * @param loop <b>true</b> if the clip wraps around at its duration.
+     *
+     * @return The modified clip is returned.
+     */
+    public MleAnimationClip withLooping(boolean loop)
+    {
+        return new MleAnimationClip(m_tracks[CHANNEL_POSITION], m_tracks[CHANNEL_ORIENTATION],
+                                    m_tracks[CHANNEL_SCALE], loop);
+    }
+}
@@ -0,0 +1,271 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable keyframe track for one transform channel.
+ * <p>
+ * The key times and values are held in two primitive arrays: the times in seconds,
+ * in ascending order, and the values packed three per key for a vector track or
+ * four per key (a quaternion x, y, z, w) for a rotation track. Vector tracks are
+ * interpolated linearly, rotation tracks spherically along the shorter arc. Before
+ * the first key and after the last, the nearest key is held.
+ * </p><p>
+ * Tracks with identical keys are interchangeable; <code>intern()</code> returns a
+ * canonical instance, so that Actors loading the same keys share one copy of the data.
+ * </p>
+ */
+public final class MleAnimationTrack
+{
+    /** The track holds vectors of three floating-point values. */
+    public static final int TYPE_VECTOR3  = 0;
+    /** The track holds rotations of four floating-point values. */
+    public static final int TYPE_ROTATION = 1;
+
+    // The canonical tracks, by content.
+    private static final WeakHashMap<MleAnimationTrack, WeakReference<MleAnimationTrack>> g_interned =
+        new WeakHashMap<MleAnimationTrack, WeakReference<MleAnimationTrack>>();
+
+    // The type of the track values.
+    private final int m_type;
+    // The number of values per key.
+    private final int m_stride;
+    // The key times, in seconds.
+    private final float[] m_times;
+    // The packed key values.
+    private final float[] m_values;
+    // The content hash.
+    private final int m_hash;
+
+    /**
+     * Create a track.
+     *
+     * @param type <code>TYPE_VECTOR3</code> or <code>TYPE_ROTATION</code>.
+     * @param times The key times in seconds, in ascending order; at least one.
+     * @param values The key values, packed three or four per key.
+     *
+     * @throws IllegalArgumentException This exception is thrown if the keys are not
+     * consistent.
+     */
+    public MleAnimationTrack(int type, float[] times, float[] values)
+    {
+        if ((type != TYPE_VECTOR3) && (type != TYPE_ROTATION))
+            throw new IllegalArgumentException("MleAnimationTrack: Invalid type " + type + ".");
+        m_type = type;
+        m_stride = (type == TYPE_ROTATION) ? 4 : 3;
+        if ((times.length == 0) || (values.length != times.length * m_stride))
+            throw new IllegalArgumentException("MleAnimationTrack: Times and values differ in length.");
+        for (int k = 1; k < times.length; k++)
+            if (! (times[k] >= times[k - 1]))
+                throw new IllegalArgumentException("MleAnimationTrack: Key times must be ascending.");
+        m_times = times.clone();
+        m_values = values.clone();
+        m_hash = (31 * Arrays.hashCode(m_times) + Arrays.hashCode(m_values)) * 31 + type;
+    }
+
+    /**
+     * Read a track from a property array.
+     * <p>
+     * Each element is one key: its time followed by its value, all big-endian
+     * floating-point values, so an element is 16 bytes for a vector track and
+     * 20 bytes for a rotation track.
+     * </p>
+     *
+     * @param type <code>TYPE_VECTOR3</code> or <code>TYPE_ROTATION</code>.
+     * @param length The length of the array, in bytes.
+     * @param nElements The number of keys.
+     * @param value The stream holding the keys.
+     *
+     * @return The track is returned.
+     *
+     * @throws IOException This exception is thrown if the keys can not be read or
+     * are not consistent.
+     */
+    static MleAnimationTrack read(int type, int length, int nElements, ByteArrayInputStream value)
+        throws IOException
+    {
+        int stride = (type == TYPE_ROTATION) ? 4 : 3;
+        if ((nElements <= 0) || (length != nElements * (stride + 1) * 4))
+            throw new IOException("Invalid keyframe array.");
+
+        float[] keys = new float[nElements * (stride + 1)];
+        MlePropertyDecoder.getInstance().readFloats(value, keys.length, keys);
+        float[] times = new float[nElements];
+        float[] values = new float[nElements * stride];
+        for (int k = 0; k < nElements; k++)
+        {
+            times[k] = keys[k * (stride + 1)];
+            System.arraycopy(keys, k * (stride + 1) + 1, values, k * stride, stride);
+        }
+        try
+        {
+            return new MleAnimationTrack(type, times, values);
+        } catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Get the canonical track with the same keys as this one.
+     *
+     * @return The canonical track, which may be this one.
+     */
+    public MleAnimationTrack intern()
+    {
+        synchronized (g_interned)
+        {
+            WeakReference<MleAnimationTrack> ref = g_interned.get(this);
+            MleAnimationTrack track = (ref != null) ? ref.get() : null;
+            if (track != null)
+                return track;
+            g_interned.put(this, new WeakReference<MleAnimationTrack>(this));
+            return this;
+        }
+    }
+
+    /**
+     * Get the type of the track values.
+     *
+     * @return <code>TYPE_VECTOR3</code> or <code>TYPE_ROTATION</code>.
+     */
+    public int getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * Get the number of keys.
+     *
+     * @return The key count.
+     */
+    public int getKeyCount()
+    {
+        return m_times.length;
+    }
+
+    /**
+     * Get the time of the last key.
+     *
+     * @return The duration, in seconds.
+     */
+    public float getDuration()
+    {
+        return m_times[m_times.length - 1];
+    }
+
+    /**
+     * Sample the track.
+     *
+     * @param time The time, in seconds.
+     * @param out The array to write the three or four values into.
+     * @param offset The index of the first value in <code>out</code>.
+     */
+    public void sample(float time, float[] out, int offset)
+    {
+        float[] times = m_times;
+        float[] values = m_values;
+        int stride = m_stride;
+        int last = times.length - 1;
+
+        // Hold the end keys.
+        if (! (time > times[0]))
+        {
+            System.arraycopy(values, 0, out, offset, stride);
+            return;
+        }
+        if (time >= times[last])
+        {
+            System.arraycopy(values, last * stride, out, offset, stride);
+            return;
+        }
+
+        // Find the key at or before the time.
+        int lo = 0, hi = last;
+        while (hi - lo > 1)
+        {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) lo = mid;
+            else hi = mid;
+        }
+        float span = times[hi] - times[lo];
+        float t = (span > 0.0f) ? (time - times[lo]) / span : 0.0f;
+        int a = lo * stride, b = hi * stride;
+
+        if (m_type == TYPE_VECTOR3)
+        {
+            out[offset]     = values[a]     + (values[b]     - values[a])     * t;
+            out[offset + 1] = values[a + 1] + (values[b + 1] - values[a + 1]) * t;
+            out[offset + 2] = values[a + 2] + (values[b + 2] - values[a + 2]) * t;
+            return;
+        }
+
+        // Spherical interpolation along the shorter arc.
+        float ax = values[a], ay = values[a + 1], az = values[a + 2], aw = values[a + 3];
+        float bx = values[b], by = values[b + 1], bz = values[b + 2], bw = values[b + 3];
+        float cos = ax * bx + ay * by + az * bz + aw * bw;
+        if (cos < 0.0f)
+        {
+            cos = -cos;
+            bx = -bx; by = -by; bz = -bz; bw = -bw;
+        }
+        float wa, wb;
+        if (cos < 0.9995f)
+        {
+            double angle = Math.acos(cos);
+            double sin = Math.sin(angle);
+            wa = (float) (Math.sin((1.0 - t) * angle) / sin);
+            wb = (float) (Math.sin(t * angle) / sin);
+        } else
+        {
+            // Nearly parallel; interpolate linearly and normalize.
+            wa = 1.0f - t;
+            wb = t;
+        }
+        float x = wa * ax + wb * bx;
+        float y = wa * ay + wb * by;
+        float z = wa * az + wb * bz;
+        float w = wa * aw + wb * bw;
+        float len = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (len > 0.0f)
+        {
+            float inv = 1.0f / len;
+            x *= inv; y *= inv; z *= inv; w *= inv;
+        }
+        out[offset]     = x;
+        out[offset + 1] = y;
+        out[offset + 2] = z;
+        out[offset + 3] = w;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode()
+    {
+        return m_hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+            return true;
+        if (! (obj instanceof MleAnimationTrack))
+            return false;
+        MleAnimationTrack other = (MleAnimationTrack) obj;
+        return (m_hash == other.m_hash) && (m_type == other.m_type) &&
+               Arrays.equals(m_times, other.m_times) && Arrays.equals(m_values, other.m_values);
+    }
+}
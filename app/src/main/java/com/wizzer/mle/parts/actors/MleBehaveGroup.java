@@ -0,0 +1,1018 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.math.MlRotation;
+import com.wizzer.mle.math.MlVector3;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+import com.wizzer.mle.runtime.scheduler.MleScheduler;
+import com.wizzer.mle.runtime.scheduler.MlePhase;
+import com.wizzer.mle.runtime.scheduler.MleTask;
+import com.wizzer.mle.runtime.MleTitle;
+
+import com.wizzer.mle.parts.props.Mle3dNonuniformScaleProperty;
+import com.wizzer.mle.parts.props.Mle3dQuaternionRotationProperty;
+import com.wizzer.mle.parts.props.Mle3dTranslationProperty;
+
+// Import standard Java classes.
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A behavior group shared by all the Actors of one class.
+ * <p>
+ * Instead of every Actor registering its own task with the scheduler, the group
+ * registers a single task in the Actor phase and updates all of its members in one
+ * loop. The orientation of each member is kept in a packed array of quaternions
+ * (x, y, z, w per member) which is committed to the member's orientation property
+ * before it is pushed to the Role.
+ * </p><p>
+ * Each member spins around the y axis at its own speed, in radians per second. The
+ * spin is simulated in fixed steps driven by the clock in <code>MleBehaviorConfig</code>,
+ * and the committed orientation is interpolated between the last two steps, so the
+ * result does not depend on the frame rate.
+ * </p><p>
+ * Actors join the group in <code>init()</code> and leave it in <code>dispose()</code>.
+ * Each concrete group knows how to reach the transform properties and group slot
+ * of its Actor class.
+ * </p><p>
+ * The group also tracks which transform properties of each member are dirty. Changes
+ * made during a frame, by the behavior or by <code>markDirty()</code>, are coalesced
+ * and flushed once per member at the end of the group's task: only the dirty
+ * properties are pushed, each at most once, and members with no changes do not
+ * reach their Role at all.
+ * </p><p>
+ * Each frame is evaluated in two passes. The compute pass runs the simulation steps
+ * and interpolates the orientation of every changed member into a packed output
+ * array; it touches only the group's arrays, so in parallel mode it is split into
+ * chunks on the pool from <code>MleBehaviorConfig</code>. The flush pass then pushes
+ * to the Roles serially, on the scheduler thread.
+ * </p><p>
+ * A member may also play an <code>MleAnimationClip</code>. Its clip time advances
+ * with the simulation, and each animated channel is sampled once per frame in the
+ * compute pass, at the interpolated time, into the packed output arrays; an animated
+ * orientation replaces the spin. Channels are only marked dirty when the sampled time
+ * changes, so a clip which has finished costs nothing to flush.
+ * </p><p>
+ * Groups whose Actors are kept in a spatial index skip the interpolation and the
+ * pushes of members outside the frustum set in <code>MleBehaviorConfig</code>; their
+ * dirty properties are kept until they are visible or next throttled in. Their
+ * animation is still sampled, and an animated position or scale is committed
+ * and their bounds updated, so that members animated into view are found.
+ * </p><p>
+ * A concrete group may hand the committed transform of a member to a batch, such
+ * as an <code>MleInstanceGroup</code>, by overriding <code>batch()</code>; the
+ * member's properties are then not pushed to its Role.
+ * </p><p>
+ * Members with a tick divider of N are likewise skipped except on every Nth frame,
+ * staggered by the order in which they joined. When a frame budget is set, the
+ * flush pass pushes members in decreasing order of priority and defers the rest
+ * once the budget is spent; the budget is shared by all groups, and a frame starts
+ * when a group runs for the second time.
+ * </p>
+ */
+abstract class MleBehaveGroup implements Runnable
+{
+    /** The position property is dirty. */
+    static final int DIRTY_POSITION    = 0x1;
+    /** The orientation property is dirty. */
+    static final int DIRTY_ORIENTATION = 0x2;
+    /** The scale property is dirty. */
+    static final int DIRTY_SCALE       = 0x4;
+    /** All transform properties are dirty. */
+    static final int DIRTY_TRANSFORM   = DIRTY_POSITION | DIRTY_ORIENTATION | DIRTY_SCALE;
+
+    // The initial capacity of the member arrays.
+    private static final int INITIAL_CAPACITY = 64;
+    // The smallest chunk of members computed by one parallel task.
+    private static final int MIN_CHUNK = 512;
+
+    // The name of the group, used for diagnostics.
+    private String m_name;
+    // The metrics of the Actor class.
+    private final MleActorMetrics m_metrics;
+    // The members of the group.
+    private MleActor[] m_actors = new MleActor[INITIAL_CAPACITY];
+    // The packed orientation state after the last step, four floats per member.
+    private float[] m_quat = new float[INITIAL_CAPACITY * 4];
+    // The packed orientation state after the step before, four floats per member.
+    private float[] m_prev = new float[INITIAL_CAPACITY * 4];
+    // The interpolated orientation to commit this frame, four floats per member.
+    private float[] m_out = new float[INITIAL_CAPACITY * 4];
+    // The animated position and scale to commit this frame, three floats per member.
+    private float[] m_pos = new float[INITIAL_CAPACITY * 3];
+    private float[] m_scl = new float[INITIAL_CAPACITY * 3];
+    // The animation clip of each member, or null.
+    private MleAnimationClip[] m_clips = new MleAnimationClip[INITIAL_CAPACITY];
+    // The simulated play time of each member's clip, in seconds.
+    private double[] m_clipTime = new double[INITIAL_CAPACITY];
+    // The clip time each member was last sampled at, or NaN.
+    private float[] m_sampled = new float[INITIAL_CAPACITY];
+    // The spatial index identifier of each member, or -1.
+    private int[] m_spatial = new int[INITIAL_CAPACITY];
+    // Whether each member is skipped this frame: culled, or not due by its tick divider.
+    private boolean[] m_skipped = new boolean[INITIAL_CAPACITY];
+    // Whether each skipped member's animated position or scale was sampled this frame.
+    private boolean[] m_moved = new boolean[INITIAL_CAPACITY];
+    // The tick divider of each member; pushed every Nth frame.
+    private int[] m_divider = new int[INITIAL_CAPACITY];
+    // The frame offset of each member, staggering members with the same divider.
+    private int[] m_phase = new int[INITIAL_CAPACITY];
+    // The priority of each member.
+    private int[] m_priority = new int[INITIAL_CAPACITY];
+    // The number of consecutive frames each member's push has been deferred.
+    private int[] m_waits = new int[INITIAL_CAPACITY];
+    // The spin speed of each member, in radians per second.
+    private float[] m_speed = new float[INITIAL_CAPACITY];
+    // The spin applied by one step to each member; sine and cosine of the half angle.
+    private float[] m_spin = new float[INITIAL_CAPACITY * 2];
+    // The dirty transform properties of each member.
+    private int[] m_dirty = new int[INITIAL_CAPACITY];
+    // The number of members in the group.
+    private int m_count = 0;
+    // The number of members which have joined, to stagger them.
+    private int m_joins = 0;
+
+    // The step the spin was computed for, in seconds.
+    private float m_spinStep = MleBehaviorConfig.getStep();
+    // The clock reading at the previous run, or -1 if the group has not run.
+    private long m_lastNanos = -1;
+    // The elapsed time not yet simulated, in seconds.
+    private double m_accumulator = 0.0;
+    // The interpolation factor between the last two steps.
+    private float m_alpha = 0.0f;
+    // The frustum and spatial index used to cull members this frame, or null.
+    private MleFrustum m_frustum = null;
+    private MleSpatialGrid m_grid = null;
+    // The frames run, to stagger throttled members.
+    private int m_frame = 0;
+    // The number of frames between pushes of culled members, or 0.
+    private int m_cullInterval = 0;
+
+    // The task registered in the Actor phase while the group has members.
+    private MleTask m_task = null;
+
+    // The bit of the group in the frame's set of groups which have run.
+    private final long m_bit;
+    // The number of groups created, to assign their bits.
+    private static int g_groups = 0;
+    // The frame budget state shared by the groups. It is confined to the scheduler
+    // thread: only run() reads and writes it, before and after the parallel chunks,
+    // which do not use it.
+    // The groups which have run in the current frame, one bit per group.
+    private static long g_ran = 0;
+    // The time at which the budget of the current frame runs out, in nanoseconds.
+    private static long g_deadline = 0;
+
+    /**
+     * Create a behavior group.
+     *
+     * @param name The name of the group.
+     * @param metrics The metrics of the Actor class, which records the behavior
+     * and the pushes which fail.
+     */
+    protected MleBehaveGroup(String name, MleActorMetrics metrics)
+    {
+        m_name = name;
+        m_metrics = metrics;
+        m_bit = nextBit();
+    }
+
+    // Assign the bit of a new group; groups beyond 64 share bits.
+    private static synchronized long nextBit()
+    {
+        return 1L << (g_groups++ & 63);
+    }
+
+    /**
+     * Set the tick divider of a member.
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     * @param divider The member is pushed every <code>divider</code> frames; at
+     * least one.
+     */
+    public void setTickDivider(int slot, int divider)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        m_divider[slot] = Math.max(1, divider);
+    }
+
+    /**
+     * Set the priority of a member.
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     * @param priority One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>.
+     */
+    public void setPriority(int slot, int priority)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        m_priority[slot] = clampPriority(priority);
+    }
+
+    // Clamp a priority to the defined levels.
+    static int clampPriority(int priority)
+    {
+        return Math.max(MleBehaviorConfig.PRIORITY_LOW, Math.min(MleBehaviorConfig.PRIORITY_HIGH, priority));
+    }
+
+    /**
+     * Set the spin speed of a member.
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     * @param speed The speed around the y axis, in radians per second.
+     */
+    public void setSpeed(int slot, float speed)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        m_speed[slot] = speed;
+        computeSpin(slot, m_spinStep);
+    }
+
+    /**
+     * Get the orientation property of the specified member.
+     *
+     * @param actor The member Actor.
+     *
+     * @return The orientation property, or <b>null</b> if it has not been set.
+     */
+    protected abstract Mle3dQuaternionRotationProperty getOrientation(MleActor actor);
+
+    /**
+     * Get the position property of the specified member.
+     *
+     * @param actor The member Actor.
+     *
+     * @return The position property, or <b>null</b> if it has not been set.
+     */
+    protected abstract Mle3dTranslationProperty getPosition(MleActor actor);
+
+    /**
+     * Get the scale property of the specified member.
+     *
+     * @param actor The member Actor.
+     *
+     * @return The scale property, or <b>null</b> if it has not been set.
+     */
+    protected abstract Mle3dNonuniformScaleProperty getScale(MleActor actor);
+
+    /**
+     * Record the slot the specified member occupies in the group.
+     *
+     * @param actor The member Actor.
+     * @param slot The slot, or <b>-1</b> if the Actor is no longer a member.
+     */
+    protected abstract void setSlot(MleActor actor, int slot);
+
+    /**
+     * Get the spin speed of the specified Actor.
+     *
+     * @param actor The Actor.
+     *
+     * @return The speed around the y axis, in radians per second.
+     */
+    protected abstract float getSpinSpeed(MleActor actor);
+
+    /**
+     * Get the animation clip of an Actor.
+     *
+     * @param actor The Actor.
+     *
+     * @return The clip, or <b>null</b> if the Actor is not animated.
+     */
+    protected abstract MleAnimationClip getAnimationClip(MleActor actor);
+
+    /**
+     * Get the tick divider of an Actor, when it joins the group.
+     *
+     * @param actor The Actor.
+     *
+     * @return The number of frames between pushes; 1 unless overridden.
+     */
+    protected int getTickDivider(MleActor actor)
+    {
+        return 1;
+    }
+
+    /**
+     * Get the priority of an Actor, when it joins the group.
+     *
+     * @param actor The Actor.
+     *
+     * @return One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>; <code>PRIORITY_NORMAL</code> unless overridden.
+     */
+    protected int getPriority(MleActor actor)
+    {
+        return MleBehaviorConfig.PRIORITY_NORMAL;
+    }
+
+    /**
+     * Get the spatial index holding the bounds of the group's Actors.
+     *
+     * @return The index, or <b>null</b> if the members are never culled.
+     */
+    protected MleSpatialGrid getSpatialIndex()
+    {
+        return null;
+    }
+
+    /**
+     * Get the identifier of an Actor in the spatial index.
+     *
+     * @param actor The Actor.
+     *
+     * @return The identifier, or <b>-1</b> if the Actor is not in the index.
+     */
+    protected int getSpatialId(MleActor actor)
+    {
+        return -1;
+    }
+
+    /**
+     * Called on the scheduler thread after the group has committed an animated
+     * position or scale to an Actor, so that its bounds may be updated.
+     *
+     * @param actor The Actor.
+     */
+    protected void moved(MleActor actor)
+    {
+        // Nothing to update by default.
+    }
+
+    /**
+     * Called on the scheduler thread once the dirty transform properties of an Actor
+     * have been committed, to hand them to a batch instead of the Actor's Role.
+     *
+     * @param actor The Actor.
+     * @param bits The dirty transform properties, <code>DIRTY_</code> constants.
+     *
+     * @return <b>true</b> if the properties were batched and must not be pushed;
+     * <b>false</b> by default.
+     */
+    protected boolean batch(MleActor actor, int bits)
+    {
+        return false;
+    }
+
+    /**
+     * Set the animation clip of a member and play it from the start.
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     * @param clip The clip, or <b>null</b> to stop animating the member.
+     */
+    public void setClip(int slot, MleAnimationClip clip)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        m_clips[slot] = clip;
+        m_clipTime[slot] = 0.0;
+        m_sampled[slot] = Float.NaN;
+        // Resume any spin from the orientation last pushed.
+        if (clip == null)
+            sync(slot);
+    }
+
+    /**
+     * Get the number of members in the group.
+     *
+     * @return The member count.
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * Add an Actor to the group.
+     * <p>
+     * The group's task is registered with the Actor phase when the first member joins.
+     * </p>
+     *
+     * @param actor The Actor to add.
+     *
+     * @return The slot assigned to the Actor.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public int join(MleActor actor) throws MleRuntimeException
+    {
+        if (m_count == 0)
+        {
+            // Register with the scheduler.
+            MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase == null)
+                throw new MleRuntimeException(m_name + ": Actor phase does not exist.");
+            m_task = new MleTask(this, "Do behave");
+            scheduler.addTask(actorPhase, m_task);
+        }
+
+        if (m_count == m_actors.length)
+            grow();
+
+        int slot = m_count++;
+        m_actors[slot] = actor;
+        m_dirty[slot] = 0;
+        setSlot(actor, slot);
+        sync(slot);
+        setSpeed(slot, getSpinSpeed(actor));
+        setClip(slot, getAnimationClip(actor));
+        m_spatial[slot] = getSpatialId(actor);
+        m_skipped[slot] = false;
+        m_moved[slot] = false;
+        m_divider[slot] = Math.max(1, getTickDivider(actor));
+        m_phase[slot] = m_joins++ & 0x7fffffff;
+        m_priority[slot] = clampPriority(getPriority(actor));
+        m_waits[slot] = 0;
+        return slot;
+    }
+
+    /**
+     * Remove an Actor from the group.
+     * <p>
+     * The last member is moved into the vacated slot so that the packed state stays
+     * contiguous. The group's task is removed from the Actor phase when the last
+     * member leaves.
+     * </p>
+     *
+     * @param slot The slot of the Actor to remove.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void leave(int slot) throws MleRuntimeException
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+
+        setSlot(m_actors[slot], -1);
+        int last = --m_count;
+        if (slot != last)
+        {
+            m_actors[slot] = m_actors[last];
+            System.arraycopy(m_quat, last * 4, m_quat, slot * 4, 4);
+            System.arraycopy(m_prev, last * 4, m_prev, slot * 4, 4);
+            System.arraycopy(m_out, last * 4, m_out, slot * 4, 4);
+            System.arraycopy(m_spin, last * 2, m_spin, slot * 2, 2);
+            System.arraycopy(m_pos, last * 3, m_pos, slot * 3, 3);
+            System.arraycopy(m_scl, last * 3, m_scl, slot * 3, 3);
+            m_clips[slot] = m_clips[last];
+            m_clipTime[slot] = m_clipTime[last];
+            m_sampled[slot] = m_sampled[last];
+            m_spatial[slot] = m_spatial[last];
+            m_skipped[slot] = m_skipped[last];
+            m_moved[slot] = m_moved[last];
+            m_divider[slot] = m_divider[last];
+            m_phase[slot] = m_phase[last];
+            m_priority[slot] = m_priority[last];
+            m_waits[slot] = m_waits[last];
+            m_speed[slot] = m_speed[last];
+            m_dirty[slot] = m_dirty[last];
+            setSlot(m_actors[slot], slot);
+        }
+        m_actors[last] = null;
+        m_clips[last] = null;
+
+        if (m_count == 0)
+        {
+            // Remove the behave function from the scheduler.
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase == null)
+                throw new MleRuntimeException(m_name + ": Actor phase does not exist.");
+            actorPhase.deleteTask(m_task);
+            m_task = null;
+
+            // Start timing and staggering afresh when the group is next used.
+            m_lastNanos = -1;
+            m_accumulator = 0.0;
+            m_frame = 0;
+            m_joins = 0;
+        }
+    }
+
+    /**
+     * Reload the packed state of a member from its orientation property.
+     * <p>
+     * This must be called whenever the member's orientation is set from outside
+     * the group.
+     * </p>
+     *
+     * @param slot The slot of the member.
+     */
+    public void sync(int slot)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+
+        int i = slot * 4;
+        Mle3dQuaternionRotationProperty orientation = getOrientation(m_actors[slot]);
+        if (orientation != null)
+        {
+            float[] q = orientation.getProperty().getValue();
+            m_quat[i] = q[0];
+            m_quat[i + 1] = q[1];
+            m_quat[i + 2] = q[2];
+            m_quat[i + 3] = q[3];
+        } else
+        {
+            m_quat[i] = 0.0f;
+            m_quat[i + 1] = 0.0f;
+            m_quat[i + 2] = 0.0f;
+            m_quat[i + 3] = 1.0f;
+        }
+        System.arraycopy(m_quat, i, m_prev, i, 4);
+    }
+
+    /**
+     * Mark transform properties of a member as dirty.
+     * <p>
+     * The properties are pushed to the member's Role when the group next runs.
+     * </p>
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     * @param bits The <code>DIRTY_</code> bits to set.
+     */
+    public void markDirty(int slot, int bits)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        m_dirty[slot] |= bits;
+    }
+
+    /**
+     * Get the dirty transform properties of a member.
+     *
+     * @param slot The slot of the member.
+     *
+     * @return The <code>DIRTY_</code> bits, or <b>0</b> if the slot is not valid.
+     */
+    public int getDirty(int slot)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return 0;
+        return m_dirty[slot];
+    }
+
+    /**
+     * Execute the behavior for every member of the group, then flush the
+     * dirty transform properties.
+     */
+    public void run()
+    {
+        long start = MleActorMetrics.start();
+        int count = m_count;
+        int[] dirty = m_dirty;
+
+        // Start the budget of a new frame if this group has already run in this one.
+        long budget = MleBehaviorConfig.getFrameBudget();
+        if (budget > 0)
+            startFrame(m_bit, budget);
+
+        // Advance the simulation by the elapsed time, in fixed steps.
+        float step = MleBehaviorConfig.getStep();
+        if (step != m_spinStep)
+        {
+            for (int slot = 0; slot < count; slot++)
+                computeSpin(slot, step);
+            m_spinStep = step;
+        }
+        long now = MleBehaviorConfig.getClock().getNanos();
+        if (m_lastNanos >= 0)
+            m_accumulator += (now - m_lastNanos) * 1.0e-9;
+        m_lastNanos = now;
+
+        int maxSteps = MleBehaviorConfig.getMaxSteps();
+        int steps = 0;
+        while ((m_accumulator >= step) && (steps < maxSteps))
+        {
+            m_accumulator -= step;
+            steps++;
+        }
+        // Drop any backlog beyond the maximum number of steps.
+        if (m_accumulator >= step)
+            m_accumulator %= step;
+        m_alpha = (float) (m_accumulator / step);
+
+        // Cull against the camera frustum if the members are indexed.
+        m_frustum = MleBehaviorConfig.getFrustum();
+        m_grid = (m_frustum != null) ? getSpatialIndex() : null;
+        m_cullInterval = MleBehaviorConfig.getCullInterval();
+        m_frame++;
+
+        // Compute the new state, in parallel chunks for large groups.
+        if (MleBehaviorConfig.isParallel() && (count >= MleBehaviorConfig.getParallelThreshold()))
+        {
+            ForkJoinPool pool = MleBehaviorConfig.getParallelPool();
+            int chunk = Math.max(MIN_CHUNK, count / (pool.getParallelism() * 4));
+            pool.invoke(new Chunk(0, count, steps, chunk));
+        } else
+            compute(0, count, steps);
+
+        // Skipped members are not pushed, but their bounds follow their animation,
+        // so that they are culled and queried where they are.
+        MleActor[] members = m_actors;
+        boolean[] moved = m_moved;
+        for (int slot = 0; slot < count; slot++)
+        {
+            if (! moved[slot]) continue;
+            moved[slot] = false;
+            place(members[slot], slot, dirty[slot]);
+        }
+
+        // Flush the coalesced changes to the associated Roles.
+        if (budget > 0)
+            flushWithin(count);
+        else
+        {
+            MleActor[] actors = m_actors;
+            for (int slot = 0; slot < count; slot++)
+            {
+                int bits = dirty[slot];
+                if ((bits == 0) || m_skipped[slot]) continue;
+                dirty[slot] = 0;
+                flush(actors[slot], slot, bits);
+            }
+        }
+        m_metrics.stop(MleActorMetrics.OP_BEHAVE, start);
+    }
+
+    // Note that a group is running, starting a new frame and its budget if the
+    // group has already run in the current one.
+    private static void startFrame(long bit, long budget)
+    {
+        if ((g_ran == 0) || ((g_ran & bit) != 0))
+        {
+            g_ran = 0;
+            g_deadline = System.nanoTime() + budget;
+        }
+        g_ran |= bit;
+    }
+
+    // Flush the changed members in decreasing order of priority until the frame's
+    // budget is spent, deferring the remaining members below the high priority.
+    private void flushWithin(int count)
+    {
+        MleActor[] actors = m_actors;
+        int[] dirty = m_dirty;
+        int[] priority = m_priority;
+        int[] waits = m_waits;
+        boolean expired = false;
+        for (int level = MleBehaviorConfig.PRIORITY_HIGH; level >= MleBehaviorConfig.PRIORITY_LOW; level--)
+        {
+            for (int slot = 0; slot < count; slot++)
+            {
+                int bits = dirty[slot];
+                if ((bits == 0) || m_skipped[slot]) continue;
+                // Members deferred for too long are pushed as high priority.
+                int p = (waits[slot] >= MleBehaviorConfig.MAX_DEFERRED_FRAMES) ?
+                    MleBehaviorConfig.PRIORITY_HIGH : priority[slot];
+                if (p != level) continue;
+                if ((level < MleBehaviorConfig.PRIORITY_HIGH) &&
+                    (expired || (expired = (System.nanoTime() - g_deadline >= 0))))
+                {
+                    waits[slot]++;
+                    continue;
+                }
+                waits[slot] = 0;
+                dirty[slot] = 0;
+                flush(actors[slot], slot, bits);
+            }
+        }
+    }
+
+    // Compute the state of the members in [from, to): run the simulation steps,
+    // sample the animated channels, mark spinning members dirty and interpolate
+    // the orientations to commit.
+    private void compute(int from, int to, int steps)
+    {
+        for (int n = 0; n < steps; n++)
+            simulate(from, to);
+
+        float[] speed = m_speed;
+        int[] dirty = m_dirty;
+        MleAnimationClip[] clips = m_clips;
+        double advance = steps * (double) m_spinStep;
+        double lead = m_alpha * (double) m_spinStep;
+        for (int slot = from; slot < to; slot++)
+        {
+            MleAnimationClip clip = clips[slot];
+            if (clip != null)
+                m_clipTime[slot] += advance;
+
+            // Members outside the frustum, or not due by their tick divider, are
+            // neither interpolated nor pushed; their animation is still sampled.
+            boolean skipped = ! due(slot) || culled(slot);
+            m_skipped[slot] = skipped;
+            if (clip != null)
+            {
+                int bits = animate(slot, clip, clip.clipTime(m_clipTime[slot] + lead));
+                if (skipped && ((bits & (DIRTY_POSITION | DIRTY_SCALE)) != 0))
+                    m_moved[slot] = true;
+                // An animated orientation replaces the spin.
+                if (clip.getTrack(MleAnimationClip.CHANNEL_ORIENTATION) != null) continue;
+            }
+            if (skipped) continue;
+
+            // Spinning members change every frame, through interpolation.
+            if (speed[slot] != 0.0f) dirty[slot] |= DIRTY_ORIENTATION;
+            if ((dirty[slot] & DIRTY_ORIENTATION) != 0) interpolate(slot);
+        }
+    }
+
+    // Determine whether a member is due to be pushed this frame by its tick divider.
+    private boolean due(int slot)
+    {
+        int divider = m_divider[slot];
+        return (divider <= 1) || ((((m_frame + m_phase[slot]) & 0x7fffffff) % divider) == 0);
+    }
+
+    // Determine whether a member is culled this frame.
+    private boolean culled(int slot)
+    {
+        MleSpatialGrid grid = m_grid;
+        int id = m_spatial[slot];
+        if ((grid == null) || (id < 0) || grid.intersects(id, m_frustum))
+            return false;
+        // Throttle culled members in, staggered by slot.
+        int interval = m_cullInterval;
+        return (interval == 0) || (((m_frame + slot) % interval) != 0);
+    }
+
+    // Sample the animated channels of a member into the packed output arrays,
+    // returning the dirty bits of the channels sampled.
+    private int animate(int slot, MleAnimationClip clip, float time)
+    {
+        if (time == m_sampled[slot])
+            return 0;
+        m_sampled[slot] = time;
+
+        int bits = 0;
+        MleAnimationTrack track = clip.getTrack(MleAnimationClip.CHANNEL_POSITION);
+        if (track != null)
+        {
+            track.sample(time, m_pos, slot * 3);
+            bits |= DIRTY_POSITION;
+        }
+        track = clip.getTrack(MleAnimationClip.CHANNEL_ORIENTATION);
+        if (track != null)
+        {
+            track.sample(time, m_out, slot * 4);
+            bits |= DIRTY_ORIENTATION;
+        }
+        track = clip.getTrack(MleAnimationClip.CHANNEL_SCALE);
+        if (track != null)
+        {
+            track.sample(time, m_scl, slot * 3);
+            bits |= DIRTY_SCALE;
+        }
+        m_dirty[slot] |= bits;
+        return bits;
+    }
+
+    // Run one simulation step for the members in [from, to).
+    private void simulate(int from, int to)
+    {
+        float[] quat = m_quat;
+        float[] prev = m_prev;
+        float[] speed = m_speed;
+        float[] spin = m_spin;
+        for (int slot = from; slot < to; slot++)
+        {
+            if (speed[slot] == 0.0f) continue;
+
+            // Spin around the y axis; equivalent to rotation.mul(delta).
+            int i = slot * 4;
+            float dy = spin[slot * 2], dw = spin[slot * 2 + 1];
+            float qx = quat[i], qy = quat[i + 1], qz = quat[i + 2], qw = quat[i + 3];
+            prev[i] = qx;
+            prev[i + 1] = qy;
+            prev[i + 2] = qz;
+            prev[i + 3] = qw;
+            quat[i]     = dw * qx + dy * qz;
+            quat[i + 1] = dw * qy + dy * qw;
+            quat[i + 2] = dw * qz - dy * qx;
+            quat[i + 3] = dw * qw - dy * qy;
+        }
+    }
+
+    // Compute the spin applied by one step to a member.
+    private void computeSpin(int slot, float step)
+    {
+        double half = m_speed[slot] * step * 0.5;
+        m_spin[slot * 2] = (float) Math.sin(half);
+        m_spin[slot * 2 + 1] = (float) Math.cos(half);
+    }
+
+    // Interpolate the orientation of a member between the last two steps.
+    private void interpolate(int slot)
+    {
+        int i = slot * 4;
+        float[] quat = m_quat;
+        float[] prev = m_prev;
+        float alpha = m_alpha;
+        float px = prev[i], py = prev[i + 1], pz = prev[i + 2], pw = prev[i + 3];
+        float cx = quat[i], cy = quat[i + 1], cz = quat[i + 2], cw = quat[i + 3];
+        // Take the shorter path.
+        if ((px * cx + py * cy + pz * cz + pw * cw) < 0.0f)
+        {
+            cx = -cx; cy = -cy; cz = -cz; cw = -cw;
+        }
+        float x = px + (cx - px) * alpha;
+        float y = py + (cy - py) * alpha;
+        float z = pz + (cz - pz) * alpha;
+        float w = pw + (cw - pw) * alpha;
+        float len = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (len > 0.0f)
+        {
+            float inv = 1.0f / len;
+            x *= inv; y *= inv; z *= inv; w *= inv;
+        }
+        float[] out = m_out;
+        out[i] = x;
+        out[i + 1] = y;
+        out[i + 2] = z;
+        out[i + 3] = w;
+    }
+
+    // Commit the interpolated orientation of a member.
+    private void commit(MlRotation rotation, int slot)
+    {
+        int i = slot * 4;
+        float[] out = m_out;
+        rotation.setValue(out[i], out[i + 1], out[i + 2], out[i + 3]);
+    }
+
+    // Computes a range of members, splitting it among the pool's threads.
+    private class Chunk extends RecursiveAction
+    {
+        // Chunks are never serialized, but RecursiveAction is Serializable.
+        private static final long serialVersionUID = 1L;
+
+        // The range of members, [m_from, m_to).
+        private final int m_from;
+        private final int m_to;
+        // The number of simulation steps to run.
+        private final int m_steps;
+        // The largest range computed without splitting.
+        private final int m_chunk;
+
+        Chunk(int from, int to, int steps, int chunk)
+        {
+            m_from = from;
+            m_to = to;
+            m_steps = steps;
+            m_chunk = chunk;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        protected void compute()
+        {
+            if ((m_to - m_from) <= m_chunk)
+            {
+                MleBehaveGroup.this.compute(m_from, m_to, m_steps);
+                return;
+            }
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new Chunk(m_from, middle, m_steps, m_chunk),
+                      new Chunk(middle, m_to, m_steps, m_chunk));
+        }
+    }
+
+    // Commit the animated position and scale of a member selected by the dirty
+    // bits, and update its bounds if either changed.
+    private void place(MleActor actor, int slot, int bits)
+    {
+        MleAnimationClip clip = m_clips[slot];
+        if (clip == null)
+            return;
+        boolean placed = false;
+        Mle3dNonuniformScaleProperty scale = ((bits & DIRTY_SCALE) != 0) ? getScale(actor) : null;
+        if ((scale != null) && (clip.getTrack(MleAnimationClip.CHANNEL_SCALE) != null))
+        {
+            // Commit the animated scale.
+            MlVector3 value = scale.getProperty();
+            int i = slot * 3;
+            value.setValue(m_scl[i], m_scl[i + 1], m_scl[i + 2]);
+            scale.setProperty(value);
+            placed = true;
+        }
+        Mle3dTranslationProperty position = ((bits & DIRTY_POSITION) != 0) ? getPosition(actor) : null;
+        if ((position != null) && (clip.getTrack(MleAnimationClip.CHANNEL_POSITION) != null))
+        {
+            // Commit the animated position.
+            MlVector3 value = position.getProperty();
+            int i = slot * 3;
+            value.setValue(m_pos[i], m_pos[i + 1], m_pos[i + 2]);
+            position.setProperty(value);
+            placed = true;
+        }
+        if (placed)
+            moved(actor);
+    }
+
+    // Commit the dirty transform properties of a member, then push them in the same
+    // order as update() unless the member is drawn as part of a batch.
+    private void flush(MleActor actor, int slot, int bits)
+    {
+        try {
+            Mle3dNonuniformScaleProperty scale = ((bits & DIRTY_SCALE) != 0) ? getScale(actor) : null;
+            Mle3dQuaternionRotationProperty orientation =
+                ((bits & DIRTY_ORIENTATION) != 0) ? getOrientation(actor) : null;
+            Mle3dTranslationProperty position = ((bits & DIRTY_POSITION) != 0) ? getPosition(actor) : null;
+            place(actor, slot, bits);
+            if (orientation != null)
+            {
+                // Commit the packed state; orientation must be defined in order to spin.
+                MlRotation rotation = orientation.getProperty();
+                commit(rotation, slot);
+                orientation.setProperty(rotation);
+            }
+
+            if (batch(actor, bits))
+                return;
+            if (scale != null) scale.push(actor);
+            if (orientation != null) orientation.push(actor);
+            if (position != null) position.push(actor);
+        } catch (MleRuntimeException ex)
+        {
+            // A Role which rejects a push must not stop the frame; the failure is
+            // counted in the metrics of the Actor class, and the member is pushed
+            // again when it next changes.
+            m_metrics.pushFailed();
+        }
+    }
+
+    // Double the capacity of the member arrays.
+    private void grow()
+    {
+        int capacity = m_actors.length * 2;
+        MleActor[] actors = new MleActor[capacity];
+        System.arraycopy(m_actors, 0, actors, 0, m_count);
+        m_actors = actors;
+        float[] quat = new float[capacity * 4];
+        System.arraycopy(m_quat, 0, quat, 0, m_count * 4);
+        m_quat = quat;
+        float[] prev = new float[capacity * 4];
+        System.arraycopy(m_prev, 0, prev, 0, m_count * 4);
+        m_prev = prev;
+        float[] out = new float[capacity * 4];
+        System.arraycopy(m_out, 0, out, 0, m_count * 4);
+        m_out = out;
+        float[] pos = new float[capacity * 3];
+        System.arraycopy(m_pos, 0, pos, 0, m_count * 3);
+        m_pos = pos;
+        float[] scl = new float[capacity * 3];
+        System.arraycopy(m_scl, 0, scl, 0, m_count * 3);
+        m_scl = scl;
+        MleAnimationClip[] clips = new MleAnimationClip[capacity];
+        System.arraycopy(m_clips, 0, clips, 0, m_count);
+        m_clips = clips;
+        double[] clipTime = new double[capacity];
+        System.arraycopy(m_clipTime, 0, clipTime, 0, m_count);
+        m_clipTime = clipTime;
+        int[] spatial = new int[capacity];
+        System.arraycopy(m_spatial, 0, spatial, 0, m_count);
+        m_spatial = spatial;
+        boolean[] skipped = new boolean[capacity];
+        System.arraycopy(m_skipped, 0, skipped, 0, m_count);
+        m_skipped = skipped;
+        boolean[] moved = new boolean[capacity];
+        System.arraycopy(m_moved, 0, moved, 0, m_count);
+        m_moved = moved;
+        int[] divider = new int[capacity];
+        System.arraycopy(m_divider, 0, divider, 0, m_count);
+        m_divider = divider;
+        int[] phase = new int[capacity];
+        System.arraycopy(m_phase, 0, phase, 0, m_count);
+        m_phase = phase;
+        int[] priority = new int[capacity];
+        System.arraycopy(m_priority, 0, priority, 0, m_count);
+        m_priority = priority;
+        int[] waits = new int[capacity];
+        System.arraycopy(m_waits, 0, waits, 0, m_count);
+        m_waits = waits;
+        float[] sampled = new float[capacity];
+        System.arraycopy(m_sampled, 0, sampled, 0, m_count);
+        m_sampled = sampled;
+        float[] speed = new float[capacity];
+        System.arraycopy(m_speed, 0, speed, 0, m_count);
+        m_speed = speed;
+        float[] spin = new float[capacity * 2];
+        System.arraycopy(m_spin, 0, spin, 0, m_count * 2);
+        m_spin = spin;
+        int[] dirty = new int[capacity];
+        System.arraycopy(m_dirty, 0, dirty, 0, m_count);
+        m_dirty = dirty;
+    }
+}
@@ -0,0 +1,310 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings shared by the behavior of all Actors in the Actor phase.
+ * <p>
+ * Behavior is simulated in fixed steps of <code>getStep()</code> seconds, driven by
+ * the elapsed time reported by the clock. Each frame runs as many steps as the
+ * elapsed time allows, up to <code>getMaxSteps()</code>, and the pushed state is
+ * interpolated between the last two steps. A step longer than the frame interval
+ * runs the simulation at a lower rate than rendering without visible stutter.
+ * </p><p>
+ * In parallel mode, behavior groups with at least <code>getParallelThreshold()</code>
+ * members compute the new transform state in chunks on a fork-join pool. The results
+ * are still pushed to the Roles serially on the scheduler thread, since Roles and
+ * the Stage are not thread-safe. Each member is computed by the same operations in
+ * either mode, so the pushed state is identical.
+ * </p><p>
+ * When a frustum is set, Actors kept in a spatial index whose bounds lie outside it
+ * are culled: their simulation keeps running, but their transforms are not
+ * interpolated or pushed to the Roles, except every <code>getCullInterval()</code>
+ * frames if that is not zero. They are pushed again as soon as they become visible.
+ * </p><p>
+ * An Actor may be given a tick divider, so that it is pushed only every Nth frame,
+ * staggered across the members of its group, and a priority. When a frame budget
+ * is set, the behavior groups push the members of the highest priority first and,
+ * once the time spent in the Actor phase exceeds the budget, defer the pushes of
+ * lower-priority members to later frames. High-priority members, and members
+ * deferred for <code>MAX_DEFERRED_FRAMES</code> frames in a row, are always pushed.
+ * </p>
+ */
+public final class MleBehaviorConfig
+{
+    /** The default fixed step, 1/60 of a second. */
+    public static final float DEFAULT_STEP = 1.0f / 60.0f;
+    /** The default maximum number of steps per frame. */
+    public static final int DEFAULT_MAX_STEPS = 5;
+    /** The default minimum group size for parallel evaluation. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 2048;
+
+    /** The priority of Actors which may be deferred first. */
+    public static final int PRIORITY_LOW    = 0;
+    /** The default priority of Actors. */
+    public static final int PRIORITY_NORMAL = 1;
+    /** The priority of Actors which are never deferred. */
+    public static final int PRIORITY_HIGH   = 2;
+    /** The number of consecutive frames an Actor may be deferred before it is pushed anyway. */
+    public static final int MAX_DEFERRED_FRAMES = 8;
+
+    // The clock driving behavior.
+    private static volatile IMleClock g_clock = null;
+    // The fixed step, in seconds.
+    private static volatile float g_step = DEFAULT_STEP;
+    // The maximum number of steps per frame.
+    private static volatile int g_maxSteps = DEFAULT_MAX_STEPS;
+    // Whether large groups are evaluated in parallel.
+    private static volatile boolean g_parallel = false;
+    // The minimum group size for parallel evaluation.
+    private static volatile int g_parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    // The camera frustum used for culling, or null.
+    private static volatile MleFrustum g_frustum = null;
+    // The number of frames between pushes of culled Actors, or 0.
+    private static volatile int g_cullInterval = 0;
+    // The viewpoint used to select levels of detail, or null.
+    private static volatile float[] g_viewpoint = null;
+    // The time budget of the Actor phase, in nanoseconds, or 0.
+    private static volatile long g_frameBudget = 0;
+    // The pool for parallel evaluation, created on first use.
+    private static ForkJoinPool g_pool = null;
+
+    // Hide default constructor.
+    private MleBehaviorConfig() {}
+
+    /**
+     * Set the clock driving behavior.
+     *
+     * @param clock The clock, or <b>null</b> to use the system clock.
+     */
+    public static void setClock(IMleClock clock)
+    {
+        g_clock = clock;
+    }
+
+    /**
+     * Get the clock driving behavior.
+     *
+     * @return The clock; the system clock unless another has been set.
+     */
+    public static IMleClock getClock()
+    {
+        IMleClock clock = g_clock;
+        return (clock != null) ? clock : MleSystemClock.getInstance();
+    }
+
+    /**
+     * Set the fixed simulation step.
+     *
+     * @param seconds The step in seconds; must be positive.
+     */
+    public static void setStep(float seconds)
+    {
+        if (! (seconds > 0.0f))
+            throw new IllegalArgumentException("MleBehaviorConfig: Step must be positive.");
+        g_step = seconds;
+    }
+
+    /**
+     * Get the fixed simulation step.
+     *
+     * @return The step in seconds.
+     */
+    public static float getStep()
+    {
+        return g_step;
+    }
+
+    /**
+     * Set the maximum number of simulation steps run in one frame.
+     * <p>
+     * Elapsed time beyond this is dropped, so that a long stall does not cause a
+     * burst of catch-up work.
+     * </p>
+     *
+     * @param steps The maximum number of steps; at least one.
+     */
+    public static void setMaxSteps(int steps)
+    {
+        g_maxSteps = Math.max(1, steps);
+    }
+
+    /**
+     * Get the maximum number of simulation steps run in one frame.
+     *
+     * @return The maximum number of steps.
+     */
+    public static int getMaxSteps()
+    {
+        return g_maxSteps;
+    }
+
+    /**
+     * Enable or disable parallel evaluation of behavior.
+     *
+     * @param parallel <b>true</b> to compute large behavior groups on a fork-join pool.
+     */
+    public static void setParallel(boolean parallel)
+    {
+        g_parallel = parallel;
+    }
+
+    /**
+     * Determine whether parallel evaluation of behavior is enabled.
+     *
+     * @return <b>true</b> if large behavior groups are computed on a fork-join pool.
+     */
+    public static boolean isParallel()
+    {
+        return g_parallel;
+    }
+
+    /**
+     * Set the minimum number of members for a behavior group to be evaluated in
+     * parallel; smaller groups are not worth the hand-off.
+     *
+     * @param members The minimum group size; at least one.
+     */
+    public static void setParallelThreshold(int members)
+    {
+        g_parallelThreshold = Math.max(1, members);
+    }
+
+    /**
+     * Get the minimum number of members for a behavior group to be evaluated in
+     * parallel.
+     *
+     * @return The minimum group size.
+     */
+    public static int getParallelThreshold()
+    {
+        return g_parallelThreshold;
+    }
+
+    /**
+     * Set the pool used for parallel evaluation.
+     *
+     * @param pool The pool, or <b>null</b> to create one with a thread for each
+     * processor on first use.
+     */
+    public static synchronized void setParallelPool(ForkJoinPool pool)
+    {
+        g_pool = pool;
+    }
+
+    /**
+     * Get the pool used for parallel evaluation.
+     *
+     * @return The pool is returned.
+     */
+    public static synchronized ForkJoinPool getParallelPool()
+    {
+        if (g_pool == null)
+            g_pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return g_pool;
+    }
+
+    /**
+     * Set the camera frustum used to cull Actors.
+     * <p>
+     * The frustum is read at the start of each behavior group's task, so it may be
+     * updated in place by the camera each frame.
+     * </p>
+     *
+     * @param frustum The frustum, or <b>null</b> to push every Actor.
+     */
+    public static void setFrustum(MleFrustum frustum)
+    {
+        g_frustum = frustum;
+    }
+
+    /**
+     * Get the camera frustum used to cull Actors.
+     *
+     * @return The frustum, or <b>null</b> if Actors are not culled.
+     */
+    public static MleFrustum getFrustum()
+    {
+        return g_frustum;
+    }
+
+    /**
+     * Set how often culled Actors are pushed to their Roles anyway.
+     * <p>
+     * Culled Actors are staggered so that a fraction of them is pushed each frame.
+     * </p>
+     *
+     * @param frames The number of frames between pushes, or <b>0</b> to push culled
+     * Actors only once they become visible.
+     */
+    public static void setCullInterval(int frames)
+    {
+        g_cullInterval = Math.max(0, frames);
+    }
+
+    /**
+     * Get how often culled Actors are pushed to their Roles anyway.
+     *
+     * @return The number of frames between pushes, or <b>0</b> if culled Actors are
+     * not pushed.
+     */
+    public static int getCullInterval()
+    {
+        return g_cullInterval;
+    }
+
+    /**
+     * Set the viewpoint used to select the level of detail of Actors.
+     * <p>
+     * The viewpoint is read at the start of each level of detail group's task, so
+     * the array may be updated in place by the camera each frame.
+     * </p>
+     *
+     * @param viewpoint The position of the camera (x, y, z), or <b>null</b> to keep
+     * the current levels.
+     */
+    public static void setViewpoint(float[] viewpoint)
+    {
+        g_viewpoint = viewpoint;
+    }
+
+    /**
+     * Get the viewpoint used to select the level of detail of Actors.
+     *
+     * @return The position of the camera (x, y, z), or <b>null</b> if levels are not
+     * selected.
+     */
+    public static float[] getViewpoint()
+    {
+        return g_viewpoint;
+    }
+
+    /**
+     * Set the time budget for pushing Actors in the Actor phase each frame.
+     * <p>
+     * Once the behavior groups have spent the budget in a frame, the remaining
+     * pushes of Actors below <code>PRIORITY_HIGH</code> are deferred to later frames.
+     * </p>
+     *
+     * @param nanos The budget in nanoseconds, or <b>0</b> to push every Actor.
+     */
+    public static void setFrameBudget(long nanos)
+    {
+        g_frameBudget = Math.max(0L, nanos);
+    }
+
+    /**
+     * Get the time budget for pushing Actors in the Actor phase each frame.
+     *
+     * @return The budget in nanoseconds, or <b>0</b> if there is none.
+     */
+    public static long getFrameBudget()
+    {
+        return g_frameBudget;
+    }
+}
@@ -4,35 +4,27 @@
 // Declare package.
 package com.wizzer.mle.parts.actors;
 
-// Import Android classes.
-import android.os.SystemClock;
-
 // Import Magic Lantern classes.
 import com.wizzer.mle.math.MlRotation;
-import com.wizzer.mle.math.MlScalar;
 import com.wizzer.mle.math.MlVector3;
 import com.wizzer.mle.runtime.core.IMleProp;
 import com.wizzer.mle.runtime.core.MleActor;
-import com.wizzer.mle.runtime.scheduler.MleScheduler;
-import com.wizzer.mle.runtime.scheduler.MlePhase;
-import com.wizzer.mle.runtime.scheduler.MleTask;
-import com.wizzer.mle.runtime.MleTitle;
 import com.wizzer.mle.runtime.core.MleRuntimeException;
 
-import com.wizzer.mle.math.MlMath;
-
 import com.wizzer.mle.parts.props.Mle3dTranslationProperty;
 import com.wizzer.mle.parts.props.Mle3dQuaternionRotationProperty;
 import com.wizzer.mle.parts.props.Mle3dNonuniformScaleProperty;
 
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 
 /**
  * A cube represented as an Actor.
  * <p>
  * The cube has four properties: "position", "orientation", "scale" and "color".
+ * The transform may be animated by keyframes, loaded with <code>setPropertyArray()</code>
+ * into "positionKeys", "orientationKeys" and "scaleKeys", or shared with other Actors
+ * through <code>setAnimationClip()</code>.
  * </p>
  */
 public class MleCubeActor extends MleActor
@@ -44,28 +36,108 @@ public class MleCubeActor extends MleActor
     public Mle3dNonuniformScaleProperty    scale;
     //public MleColorProperty    color;
 
-    // This class is used to perform the behavior (via the Scheduler's Task).
-    private class DoBehave implements Runnable
+    /** The identifier of the "position" property. */
+    public static final int PROPERTY_POSITION    = 0;
+    /** The identifier of the "orientation" property. */
+    public static final int PROPERTY_ORIENTATION = 1;
+    /** The identifier of the "scale" property. */
+    public static final int PROPERTY_SCALE       = 2;
+    /** The identifier of the "color" property. */
+    public static final int PROPERTY_COLOR       = 3;
+    /** The identifier of the "positionKeys" keyframe array. */
+    public static final int PROPERTY_POSITION_KEYS    = 4;
+    /** The identifier of the "orientationKeys" keyframe array. */
+    public static final int PROPERTY_ORIENTATION_KEYS = 5;
+    /** The identifier of the "scaleKeys" keyframe array. */
+    public static final int PROPERTY_SCALE_KEYS       = 6;
+
+    // The property table, indexed by the PROPERTY_ identifiers.
+    static final MlePropertyTable g_properties = new MlePropertyTable(
+        new String[] { "position", "orientation", "scale", "color",
+                       "positionKeys", "orientationKeys", "scaleKeys" },
+        new int[] { MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_ROTATION,
+                    MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_COLOR,
+                    MlePropertyTable.TYPE_KEYFRAMES, MlePropertyTable.TYPE_KEYFRAMES,
+                    MlePropertyTable.TYPE_KEYFRAMES });
+
+    // The decoded color (red, green, blue, alpha), until a color property exists.
+    private float[] m_color = null;
+
+    /**
+     * The default spin speed around the y axis, in radians per second.
+     * Cubes do not spin by default.
+     */
+    public static final float DEFAULT_SPIN_SPEED = 0.0f;
+
+    // The metrics shared by all instances.
+    static final MleActorMetrics g_metrics = MleActorMetrics.register("MleCubeActor");
+
+    // The behavior group shared by all instances.
+    private static class BehaveGroup extends MleBehaveGroup
     {
-        // The actor which will perform the behavior.
-        private MleCubeActor m_actor = null;
+        BehaveGroup() { super("MleCubeActor", g_metrics); }
 
-        // Use constructor to set actor.
-        public DoBehave(MleCubeActor actor) { m_actor = actor; }
+        protected Mle3dQuaternionRotationProperty getOrientation(MleActor actor)
+        { return ((MleCubeActor) actor).orientation; }
 
-        // Execute the behavior.
-        public void run()
-        {
-            if (m_actor != null)
-                MleCubeActor.behave(m_actor);
-        }
+        protected Mle3dTranslationProperty getPosition(MleActor actor)
+        { return ((MleCubeActor) actor).position; }
+
+        protected Mle3dNonuniformScaleProperty getScale(MleActor actor)
+        { return ((MleCubeActor) actor).scale; }
+
+        protected void setSlot(MleActor actor, int slot)
+        { ((MleCubeActor) actor).m_groupSlot = slot; }
+
+        protected float getSpinSpeed(MleActor actor)
+        { return ((MleCubeActor) actor).m_spinSpeed; }
 
-        // Hide default constructor.
-        private DoBehave() {}
+        protected MleAnimationClip getAnimationClip(MleActor actor)
+        { return ((MleCubeActor) actor).m_clip; }
+
+        protected int getTickDivider(MleActor actor)
+        { return ((MleCubeActor) actor).m_tickDivider; }
+
+        protected int getPriority(MleActor actor)
+        { return ((MleCubeActor) actor).m_priority; }
     }
 
-    // The behavior task executed during the Actor phase.
-    private MleTask m_behaveTask = null;
+    // The group which performs the behavior during the Actor phase.
+    static final MleBehaveGroup g_behaveGroup = new BehaveGroup();
+
+    // The slot this actor occupies in the behavior group, or -1 if not a member.
+    private int m_groupSlot = -1;
+
+    // The spin speed around the y axis, in radians per second.
+    private float m_spinSpeed = DEFAULT_SPIN_SPEED;
+
+    // The animation clip, or null.
+    private MleAnimationClip m_clip = null;
+
+    // The number of frames between pushes to the Role.
+    private int m_tickDivider = 1;
+    // The priority of the pushes under a frame budget.
+    private int m_priority = MleBehaviorConfig.PRIORITY_NORMAL;
+
+    // The property objects kept from before the actor was recycled, or null.
+    private Mle3dTranslationProperty        m_sparePosition = null;
+    private Mle3dQuaternionRotationProperty m_spareOrientation = null;
+    private Mle3dNonuniformScaleProperty    m_spareScale = null;
+
+    // The pool of disposed instances, disabled until given a limit.
+    private static final MleActorPool<MleCubeActor> g_pool =
+        new MleActorPool<MleCubeActor>("MleCubeActor")
+        {
+            protected MleCubeActor create()
+            {
+                return new MleCubeActor();
+            }
+
+            protected void reset(MleCubeActor actor) throws MleRuntimeException
+            {
+                actor.reset();
+            }
+        };
 
     /**
      * The default constructor.
@@ -77,17 +149,15 @@ public class MleCubeActor extends MleActor
      */
     public void init() throws MleRuntimeException
     {
+        long start = MleActorMetrics.start();
+
         // Update the Role by pushing the property values.
         //if (color != null) color.push(this);
         update();
 
-        // Register with the scheduler.
-        MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
-        MlePhase actorPhase = MleTitle.g_theActorPhase;
-        if (actorPhase == null)
-            throw new MleRuntimeException("MleCubeActor: Actor phase does not exist.");
-        m_behaveTask = new MleTask(new DoBehave(this), "Do behave");
-        scheduler.addTask(actorPhase, m_behaveTask);
+        // Join the behavior group; it registers with the scheduler.
+        g_behaveGroup.join(this);
+        g_metrics.stop(MleActorMetrics.OP_INIT, start);
     }
 
     /* (non-Javadoc)
@@ -95,59 +165,313 @@ public class MleCubeActor extends MleActor
      */
     public void dispose() throws MleRuntimeException
     {
-        // Remove the behave function from the scheduler.
-        MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
-        MlePhase actorPhase = MleTitle.g_theActorPhase;
-        if (actorPhase == null)
-            throw new MleRuntimeException("MleCubeActor: Actor phase does not exist.");
-        actorPhase.deleteTask(m_behaveTask);
-        m_behaveTask = null;
+        // Leave the behavior group; it removes itself from the scheduler when empty.
+        g_behaveGroup.leave(m_groupSlot);
     }
 
     /**
-     * Update the Actor's transformation properties by pushing to the associated Role.
+     * Get the pool of disposed instances.
+     * <p>
+     * Pooling is disabled until the title sets a limit.
+     * </p>
+     *
+     * @return The pool is returned.
      */
-    public void update()
+    public static MleActorPool<MleCubeActor> getPool()
     {
-        try {
-            // Update transform-related properties only.
-            if (scale != null) scale.push(this);
-            if (orientation != null) orientation.push(this);
-            if (position != null) position.push(this);
-        } catch (MleRuntimeException ex)
+        return g_pool;
+    }
+
+    // Reset the actor to its constructed state, keeping its property objects to
+    // reuse once its properties are set again.
+    private void reset() throws MleRuntimeException
+    {
+        if (m_groupSlot >= 0)
+            dispose();
+
+        if (position != null) m_sparePosition = position;
+        if (orientation != null) m_spareOrientation = orientation;
+        if (scale != null) m_spareScale = scale;
+        position = null;
+        orientation = null;
+        scale = null;
+
+        // The color array is decoded into in place, so it is kept.
+        m_spinSpeed = DEFAULT_SPIN_SPEED;
+        m_clip = null;
+        m_tickDivider = 1;
+        m_priority = MleBehaviorConfig.PRIORITY_NORMAL;
+        MlePropertyNotifier.getInstance().removeListeners(this);
+    }
+
+    // Get a "position" property, reusing the spare one if there is one.
+    private Mle3dTranslationProperty newPosition()
+    {
+        Mle3dTranslationProperty property = m_sparePosition;
+        m_sparePosition = null;
+        return (property != null) ? property : new Mle3dTranslationProperty();
+    }
+
+    // Get an "orientation" property, reusing the spare one if there is one.
+    private Mle3dQuaternionRotationProperty newOrientation()
+    {
+        Mle3dQuaternionRotationProperty property = m_spareOrientation;
+        m_spareOrientation = null;
+        return (property != null) ? property : new Mle3dQuaternionRotationProperty();
+    }
+
+    // Get a "scale" property, reusing the spare one if there is one.
+    private Mle3dNonuniformScaleProperty newScale()
+    {
+        Mle3dNonuniformScaleProperty property = m_spareScale;
+        m_spareScale = null;
+        return (property != null) ? property : new Mle3dNonuniformScaleProperty();
+    }
+
+    // Save the properties of the Actor for a snapshot, returning the fields present.
+    int saveState(float[] values, int[] refs)
+    {
+        int fields = 0;
+        if ((position != null) && (position.getProperty() != null))
+        {
+            System.arraycopy(position.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_POSITION, 3);
+            fields |= MleActorSnapshot.FIELD_POSITION;
+        }
+        if ((orientation != null) && (orientation.getProperty() != null))
+        {
+            System.arraycopy(orientation.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_ORIENTATION, 4);
+            fields |= MleActorSnapshot.FIELD_ORIENTATION;
+        }
+        if ((scale != null) && (scale.getProperty() != null))
+        {
+            System.arraycopy(scale.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_SCALE, 3);
+            fields |= MleActorSnapshot.FIELD_SCALE;
+        }
+        if (m_color != null)
+        {
+            System.arraycopy(m_color, 0, values, MleActorSnapshot.VALUE_COLOR, 4);
+            fields |= MleActorSnapshot.FIELD_COLOR;
+        }
+        return fields;
+    }
+
+    // Restore the properties of the Actor from a snapshot, in place.
+    void restoreState(int fields, float[] values, int[] refs)
+    {
+        int dirty = 0;
+        if ((fields & MleActorSnapshot.FIELD_POSITION) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_POSITION;
+            if (position == null)
+                position = newPosition();
+            if (position.getProperty() != null)
+                position.getProperty().setValue(values[i], values[i + 1], values[i + 2]);
+            else
+                position.setProperty(new MlVector3(values[i], values[i + 1], values[i + 2]));
+            dirty |= MleBehaveGroup.DIRTY_POSITION;
+        }
+        if ((fields & MleActorSnapshot.FIELD_ORIENTATION) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_ORIENTATION;
+            if (orientation == null)
+                orientation = newOrientation();
+            if (orientation.getProperty() == null)
+                orientation.setProperty(new MlRotation());
+            orientation.getProperty().setValue(values[i], values[i + 1], values[i + 2], values[i + 3]);
+            g_behaveGroup.sync(m_groupSlot);
+            dirty |= MleBehaveGroup.DIRTY_ORIENTATION;
+        }
+        if ((fields & MleActorSnapshot.FIELD_SCALE) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_SCALE;
+            if (scale == null)
+                scale = newScale();
+            if (scale.getProperty() != null)
+                scale.getProperty().setValue(values[i], values[i + 1], values[i + 2]);
+            else
+                scale.setProperty(new MlVector3(values[i], values[i + 1], values[i + 2]));
+            dirty |= MleBehaveGroup.DIRTY_SCALE;
+        }
+        g_behaveGroup.markDirty(m_groupSlot, dirty);
+        if ((fields & MleActorSnapshot.FIELD_COLOR) != 0)
+        {
+            if (m_color == null)
+                m_color = new float[4];
+            System.arraycopy(values, MleActorSnapshot.VALUE_COLOR, m_color, 0, 4);
+        }
+    }
+
+    /**
+     * Set the animation clip of the Actor and play it from the start.
+     * <p>
+     * The clip may be shared with other Actors. The properties it animates are
+     * created if necessary, and an animated orientation replaces the spin.
+     * </p>
+     *
+     * @param clip The clip, or <b>null</b> to stop animating.
+     */
+    public void setAnimationClip(MleAnimationClip clip)
+    {
+        if (clip != null)
         {
-            // ToDo: do we just ignore the fault?
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_POSITION) != null) && (position == null))
+            {
+                position = newPosition();
+                if (position.getProperty() != null)
+                    position.getProperty().setValue(0.0f, 0.0f, 0.0f);
+                else
+                    position.setProperty(new MlVector3(0.0f, 0.0f, 0.0f));
+            }
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_ORIENTATION) != null) && (orientation == null))
+            {
+                orientation = newOrientation();
+                if (orientation.getProperty() != null)
+                    orientation.getProperty().setValue(0.0f, 0.0f, 0.0f, 1.0f);
+                else
+                    orientation.setProperty(new MlRotation());
+            }
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_SCALE) != null) && (scale == null))
+            {
+                scale = newScale();
+                if (scale.getProperty() != null)
+                    scale.getProperty().setValue(1.0f, 1.0f, 1.0f);
+                else
+                    scale.setProperty(new MlVector3(1.0f, 1.0f, 1.0f));
+            }
         }
+        m_clip = clip;
+        g_behaveGroup.setClip(m_groupSlot, clip);
+    }
+
+    /**
+     * Get the animation clip of the Actor.
+     *
+     * @return The clip, or <b>null</b> if the Actor is not animated.
+     */
+    public MleAnimationClip getAnimationClip()
+    {
+        return m_clip;
+    }
+
+    /**
+     * Set the speed at which the Actor spins around the y axis.
+     *
+     * @param speed The speed in radians per second.
+     */
+    public void setSpinSpeed(float speed)
+    {
+        m_spinSpeed = speed;
+        g_behaveGroup.setSpeed(m_groupSlot, speed);
+    }
+
+    /**
+     * Get the speed at which the Actor spins around the y axis.
+     *
+     * @return The speed in radians per second.
+     */
+    public float getSpinSpeed()
+    {
+        return m_spinSpeed;
     }
 
-    // Change in rotation; currently a constant spin around y axis.
-    static private MlRotation m_delta = null;
+    /**
+     * Set how often the Actor is pushed to its Role.
+     * <p>
+     * An Actor far from the camera, or changing slowly, may be pushed every few
+     * frames; its simulation keeps running every frame.
+     * </p>
+     *
+     * @param divider The number of frames between pushes; at least one.
+     */
+    public void setTickDivider(int divider)
+    {
+        m_tickDivider = Math.max(1, divider);
+        g_behaveGroup.setTickDivider(m_groupSlot, m_tickDivider);
+    }
 
-    static void behave(MleCubeActor actor)
+    /**
+     * Get how often the Actor is pushed to its Role.
+     *
+     * @return The number of frames between pushes.
+     */
+    public int getTickDivider()
     {
-        // Orientation must be defined in order to spin.
-        if ((actor == null) || (actor.orientation == null)) return;
+        return m_tickDivider;
+    }
 
-        // Define spin parameters.
-        if (m_delta == null)
-            m_delta = new MlRotation(new MlVector3(
-                    MlScalar.ML_SCALAR_ZERO, MlScalar.ML_SCALAR_ONE, MlScalar.ML_SCALAR_ZERO),
-                    (float)0.035);
+    /**
+     * Set the priority of the Actor's pushes when a frame budget is set.
+     *
+     * @param priority One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>.
+     */
+    public void setPriority(int priority)
+    {
+        m_priority = MleBehaveGroup.clampPriority(priority);
+        g_behaveGroup.setPriority(m_groupSlot, m_priority);
+    }
 
-        // Update rotational behavior.
+    /**
+     * Get the priority of the Actor's pushes when a frame budget is set.
+     *
+     * @return One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>.
+     */
+    public int getPriority()
+    {
+        return m_priority;
+    }
 
-        //actor.orientation.m_rotation *= m_delta;
-        MlRotation rotation = actor.orientation.getProperty();
-        //rotation.mul(m_delta);
-        actor.orientation.setProperty(rotation);
+    /**
+     * Update the Actor's transformation properties by pushing to the associated Role.
+     * <p>
+     * Once the Actor has been initialized, the push is deferred to the behavior group,
+     * which coalesces it with any other changes made during the frame.
+     * </p>
+     */
+    public void update()
+    {
+        // Once a member of the behavior group, changes are coalesced and pushed
+        // by the group at most once per frame.
+        if (m_groupSlot >= 0)
+        {
+            g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_TRANSFORM);
+            return;
+        }
 
-        // Update associated Role.
+        long start = MleActorMetrics.start();
         try {
-            actor.orientation.push(actor);
+            // Update transform-related properties only.
+            if (scale != null) scale.push(this);
+            if (orientation != null) orientation.push(this);
+            if (position != null) position.push(this);
         } catch (MleRuntimeException ex)
         {
-            // ToDo: do we just ignore the fault?
+            // The failure is counted; the Role keeps the previous transform until
+            // the next update() pushes it again.
+            g_metrics.pushFailed();
         }
+        g_metrics.stop(MleActorMetrics.OP_UPDATE, start);
+    }
+
+    /**
+     * Get the identifier of a property, for use with the identifier-based
+     * <code>getProperty()</code> and <code>setProperty()</code>.
+     *
+     * @param name The property name.
+     *
+     * @return One of the <code>PROPERTY_</code> constants, or <b>-1</b> if there is
+     * no such property.
+     */
+    public static int getPropertyId(String name)
+    {
+        return g_properties.getId(name);
+    }
+
+    // Record a change to a property, for the property change listeners.
+    private void notifyChanged(int id)
+    {
+        MlePropertyNotifier.getInstance().changed(this, id, g_properties.getName(id));
     }
 
     /* (non-Javadoc)
@@ -155,20 +479,46 @@ public class MleCubeActor extends MleActor
      */
     public Object getProperty(String name) throws MleRuntimeException
     {
-        if (name != null)
+        int id = g_properties.getId(name);
+        if ((id >= 0) && (id != PROPERTY_COLOR))
+            return getProperty(id);
+
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleCubeActor: Unable to get property " + name + ".");
+    }
+
+    /**
+     * Get a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     *
+     * @return The property is returned.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist.
+     */
+    public Object getProperty(int id) throws MleRuntimeException
+    {
+        switch (id)
         {
-            if (name.equals("position"))
+            case PROPERTY_POSITION:
                 return position;
-            else if (name.equals("orientation"))
+            case PROPERTY_ORIENTATION:
                 return orientation;
-            else if (name.equals("scale"))
-                 return scale;
-            //else if (name.equals("color"))
+            case PROPERTY_SCALE:
+                return scale;
+            //case PROPERTY_COLOR:
             //    return color;
+            case PROPERTY_POSITION_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_POSITION);
+            case PROPERTY_ORIENTATION_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_ORIENTATION);
+            case PROPERTY_SCALE_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_SCALE);
+            default:
+                // Specified property does not exist.
+                throw new MleRuntimeException("MleCubeActor: Unable to get property " + id + ".");
         }
-
-        // Specified name does not exist.
-        throw new MleRuntimeException("MleCubeActor: Unable to get property " + name + ".");
     }
 
     /* (non-Javadoc)
@@ -177,100 +527,124 @@ public class MleCubeActor extends MleActor
     public void setProperty(String name, IMleProp property)
             throws MleRuntimeException
     {
-        if (name != null)
+        int id = g_properties.getId(name);
+        if (id >= 0)
         {
-            try
-            {
-                if (name.equals("position"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    // Create a translation property and initialize it.
-                    position = new Mle3dTranslationProperty();
-                    MlVector3 translation = new MlVector3();
-                    // Expecting 3 floating-point values in stream.
-                    MlMath.convertByteArrayToVector3(0, data, translation);
-                    position.setProperty(translation);
-
-                    // Notify property change listeners.
-                    notifyPropertyChange("position", null, null);
+            setProperty(id, property);
+            return;
+        }
 
-                    return;
-                } else if (name.equals("orientation"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    // Create a rotation property and initialize it.
-                    orientation = new Mle3dQuaternionRotationProperty();
-                    MlRotation rotation = new MlRotation();
-                    // Expecting 4 floating-point values in stream.
-                    MlMath.convertByteArrayToRotation(0, data, rotation);
-                    orientation.setProperty(rotation);
-
-                    // Notify property change listeners.
-                    notifyPropertyChange("orientation", null, null);
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleCubeActor: Unable to set property " + name + ".");
+    }
 
+    /**
+     * Set a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     * @param property The property value to decode.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist or its value can not be decoded.
+     */
+    public void setProperty(int id, IMleProp property)
+            throws MleRuntimeException
+    {
+        long start = MleActorMetrics.start();
+        try
+        {
+            switch (id)
+            {
+                case PROPERTY_POSITION:
+                    setPosition(property);
                     return;
-                } else if (name.equals("scale"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    // Create a scale property and initialize it.
-                    scale = new Mle3dNonuniformScaleProperty();
-                    MlVector3 value = new MlVector3();
-                    // Expecting 3 floating-point values in stream.
-                    MlMath.convertByteArrayToVector3(0, data, value);
-                    scale.setProperty(value);
-
-                    // Notify property change listeners.
-                    notifyPropertyChange("scale", null, null);
-
+                case PROPERTY_ORIENTATION:
+                    setOrientation(property);
                     return;
-                } else if (name.equals("color"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    /*
-                    // Create a color property and initialize it.
-                    color = new MleColorProperty();
-                    float[] rgba = new float[4];
-                    // Expecting 4 floating-point values in stream.
-                    int offset = 0;
-                    rgba[0] = MlMath.convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN);
-                    offset += 4;
-                    rgba[1] = MlMath.convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN);
-                    offset += 4;
-                    rgba[2] = MlMath.convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN);
-                    offset += 4;
-                    rgba[3] = MlMath.convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN);
-                    color.setProperty(rgba);
-                    */
-
-                    // Notify property change listeners.
-                    notifyPropertyChange("color", null, null);
-
+                case PROPERTY_SCALE:
+                    setScale(property);
                     return;
-                }
-            } catch (IOException ex)
-            {
-                throw new MleRuntimeException("MleCubeActor: Unable to set property " + name + ".");
+                case PROPERTY_COLOR:
+                    setColor(property);
+                    return;
+                default:
+                    break;
             }
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleCubeActor: Unable to set property " + g_properties.getName(id) + ".");
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, start);
         }
 
-        // Specified name does not exist.
-        throw new MleRuntimeException("MleCubeActor: Unable to set property " + name + ".");
+        // Specified property does not exist.
+        throw new MleRuntimeException("MleCubeActor: Unable to set property " + id + ".");
+    }
+
+    // Decode the "position" property, straight into the existing value if there is one.
+    private void setPosition(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+
+        // Create a translation property if necessary and initialize it.
+        if (position == null)
+            position = newPosition();
+        // Expecting 3 floating-point values in stream.
+        MlVector3 translation = decoder.readVector3(property, position.getProperty());
+        position.setProperty(translation);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_POSITION);
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_POSITION);
+    }
+
+    // Decode the "orientation" property, straight into the existing value if there is one.
+    private void setOrientation(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+
+        // Create a rotation property if necessary and initialize it.
+        if (orientation == null)
+            orientation = newOrientation();
+        // Expecting 4 floating-point values in stream.
+        MlRotation rotation = decoder.readRotation(property, orientation.getProperty());
+        orientation.setProperty(rotation);
+        g_behaveGroup.sync(m_groupSlot);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_ORIENTATION);
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_ORIENTATION);
+    }
+
+    // Decode the "scale" property, straight into the existing value if there is one.
+    private void setScale(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+
+        // Create a scale property if necessary and initialize it.
+        if (scale == null)
+            scale = newScale();
+        // Expecting 3 floating-point values in stream.
+        MlVector3 value = decoder.readVector3(property, scale.getProperty());
+        scale.setProperty(value);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_SCALE);
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_SCALE);
+    }
+
+    // Decode the "color" property, straight into the existing value if there is one.
+    private void setColor(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+
+        // Expecting 4 floating-point values in stream.
+        m_color = decoder.readColor(property, m_color);
+        //color.setProperty(m_color);
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_COLOR);
     }
 
     /* (non-Javadoc)
@@ -278,6 +652,46 @@ public class MleCubeActor extends MleActor
      */
     public void setPropertyArray(String name, int length, int nElements, ByteArrayInputStream value) throws MleRuntimeException
     {
-        throw new MleRuntimeException("MleCubeActor: Unable to set property array " + name + ".");
+        int id = g_properties.getId(name);
+        int channel, type;
+        switch (id)
+        {
+            case PROPERTY_POSITION_KEYS:
+                channel = MleAnimationClip.CHANNEL_POSITION;
+                type = MleAnimationTrack.TYPE_VECTOR3;
+                break;
+            case PROPERTY_ORIENTATION_KEYS:
+                channel = MleAnimationClip.CHANNEL_ORIENTATION;
+                type = MleAnimationTrack.TYPE_ROTATION;
+                break;
+            case PROPERTY_SCALE_KEYS:
+                channel = MleAnimationClip.CHANNEL_SCALE;
+                type = MleAnimationTrack.TYPE_VECTOR3;
+                break;
+            default:
+                // Specified name does not exist.
+                throw new MleRuntimeException("MleCubeActor: Unable to set property array " + name + ".");
+        }
+
+        // Actors loading the same keys share one track.
+        MleAnimationTrack track;
+        try
+        {
+            track = MleAnimationTrack.read(type, length, nElements, value).intern();
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleCubeActor: Unable to set property array " + name + ".");
+        }
+        MleAnimationClip clip = (m_clip != null) ? m_clip : MleAnimationClip.EMPTY;
+        setAnimationClip(clip.withTrack(channel, track));
+
+        // Notify property change listeners.
+        notifyChanged(id);
+    }
+
+    // Get the animation track of a channel, or null.
+    private MleAnimationTrack getTrack(int channel)
+    {
+        return (m_clip != null) ? m_clip.getTrack(channel) : null;
     }
 }
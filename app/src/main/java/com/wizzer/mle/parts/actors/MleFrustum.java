@@ -0,0 +1,100 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+/**
+ * A camera view volume, bounded by six planes, for culling Actors.
+ * <p>
+ * Each plane is held as (a, b, c, d) with a normalized inward-facing normal, so a
+ * point (x, y, z) is inside the plane when a*x + b*y + c*z + d &gt;= 0.
+ * </p>
+ */
+public final class MleFrustum
+{
+    // The planes: left, right, bottom, top, near and far; four floats each.
+    private final float[] m_planes = new float[24];
+
+    /**
+     * Create a frustum which contains everything.
+     */
+    public MleFrustum()
+    {
+        for (int p = 0; p < 6; p++)
+            m_planes[p * 4 + 3] = Float.MAX_VALUE;
+    }
+
+    /**
+     * Set the planes from a view-projection matrix.
+     *
+     * @param m The matrix, in column-major order as used by OpenGL and
+     * <code>android.opengl.Matrix</code>.
+     * @param offset The index of the first element of the matrix in <code>m</code>.
+     */
+    public void setMatrix(float[] m, int offset)
+    {
+        // Each plane is the sum or difference of the fourth row and another row.
+        for (int p = 0; p < 6; p++)
+        {
+            int row = p >> 1;
+            float sign = ((p & 1) == 0) ? 1.0f : -1.0f;
+            for (int col = 0; col < 4; col++)
+                m_planes[p * 4 + col] = m[offset + col * 4 + 3] + sign * m[offset + col * 4 + row];
+        }
+        normalize();
+    }
+
+    /**
+     * Set the planes directly.
+     *
+     * @param planes Six planes of four values (a, b, c, d), with inward-facing
+     * normals, in the order left, right, bottom, top, near and far.
+     */
+    public void setPlanes(float[] planes)
+    {
+        System.arraycopy(planes, 0, m_planes, 0, 24);
+        normalize();
+    }
+
+    /**
+     * Determine whether a sphere intersects the frustum.
+     * <p>
+     * The test is conservative: a sphere near a corner may be reported as
+     * intersecting when it is just outside.
+     * </p>
+     *
+     * @param x The x coordinate of the center.
+     * @param y The y coordinate of the center.
+     * @param z The z coordinate of the center.
+     * @param radius The radius.
+     *
+     * @return <b>true</b> unless the sphere is entirely outside a plane.
+     */
+    public boolean intersectsSphere(float x, float y, float z, float radius)
+    {
+        float[] planes = m_planes;
+        for (int i = 0; i < 24; i += 4)
+            if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius)
+                return false;
+        return true;
+    }
+
+    // Normalize the plane equations.
+    private void normalize()
+    {
+        for (int i = 0; i < 24; i += 4)
+        {
+            float len = (float) Math.sqrt(m_planes[i] * m_planes[i] +
+                m_planes[i + 1] * m_planes[i + 1] + m_planes[i + 2] * m_planes[i + 2]);
+            if (len > 0.0f)
+            {
+                float inv = 1.0f / len;
+                m_planes[i] *= inv;
+                m_planes[i + 1] *= inv;
+                m_planes[i + 2] *= inv;
+                m_planes[i + 3] *= inv;
+            }
+        }
+    }
+}
@@ -30,31 +30,52 @@ package com.wizzer.mle.parts.actors;
 
 // Import standards Java classes.
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 
+// Import Android classes.
+import android.graphics.Bitmap;
+
 // Import Magic Lantern Runtime Engine classes.
 import com.wizzer.mle.runtime.core.MleActor;
 import com.wizzer.mle.runtime.core.IMleProp;
 import com.wizzer.mle.runtime.core.MleMediaRef;
 import com.wizzer.mle.runtime.core.MleRuntimeException;
 import com.wizzer.mle.runtime.dpp.MleDppException;
-import com.wizzer.mle.runtime.dpp.MleDppLoader;
 
 // Import Magic Lantern Parts classes.
 import com.wizzer.mle.parts.props.MleImageProperty;
 import com.wizzer.mle.parts.j2d.actors.IImageActor;
-import com.wizzer.mle.parts.mrefs.MleImageMediaRef;
 
 
 /**
  * This class implements an Actor that can process a file
  * and have it displayed as an image.
+ * <p>
+ * The dimensions of the image are read from its header, without decoding it.
+ * Given a target size, <code>getBitmap()</code> decodes the image subsampled to
+ * that size, so that large source images are never held at full resolution.
+ * </p><p>
+ * An image packed into a texture atlas by <code>MleTextureAtlasBuilder</code> is
+ * resolved to its region of the atlas, and the Actor no longer holds the image
+ * itself; <code>getWidth()</code> and <code>getHeight()</code> still report the
+ * size of the original image.
+ * </p>
  * 
  * @author Mark S. Millard
  */
 public class MleImageActor extends MleActor implements IImageActor
 {
+    /** The identifier of the "filename" property. */
+    public static final int PROPERTY_FILENAME = 0;
+
+    // The property table, indexed by the PROPERTY_ identifiers.
+    static final MlePropertyTable g_properties = new MlePropertyTable(
+        new String[] { "filename" },
+        new int[] { MlePropertyTable.TYPE_MEDIAREF });
+
+    // The metrics shared by all instances.
+    static final MleActorMetrics g_metrics = MleActorMetrics.register("MleImageActor");
+
     // The properties exposed in the DWP are "filename".
 
     /**
@@ -62,6 +83,32 @@ public class MleImageActor extends MleActor implements IImageActor
      */
     public MleImageProperty filename = null;
 
+    // The media reference acquired from the media cache.
+    private MleMediaRef m_filenameRef = null;
+
+    // The DPP index of the image to load in the background, or -1.
+    private int m_filenameIndex = -1;
+    // The outstanding background load.
+    private MleMediaLoader.Request m_filenameLoad = null;
+
+    // Whether the actor has been initialized.
+    private boolean m_initialized = false;
+
+    // The dimensions read from the image header; valid once probed.
+    private final int[] m_size = new int[2];
+    // Whether the image header has been probed.
+    private boolean m_probed = false;
+    // Whether the probe read the dimensions.
+    private boolean m_probeValid = false;
+
+    // The size to decode the image at, or 0 for the full size.
+    private int m_targetWidth = 0;
+    private int m_targetHeight = 0;
+    // The image decoded at the target size, or cut from the atlas, or null.
+    private Bitmap m_bitmap = null;
+    // The region of the atlas the image is packed into, or null.
+    private MleTextureAtlas.Region m_atlasRegion = null;
+
     /**
      * The default constructor.
      */
@@ -75,8 +122,15 @@ public class MleImageActor extends MleActor implements IImageActor
      */
     public void init() throws MleRuntimeException
     {
-        // Update the Role by pushing the property values.
-        filename.push(this);
+        long start = MleActorMetrics.start();
+
+        // Update the Role by pushing the property values; an image deferred by
+        // asynchronous loading is pushed once it has loaded.
+        if (m_filenameIndex >= 0) loadFilename(m_filenameIndex);
+        else filename.push(this);
+        m_filenameIndex = -1;
+        m_initialized = true;
+        g_metrics.stop(MleActorMetrics.OP_INIT, start);
     }
 
     /* (non-Javadoc)
@@ -84,7 +138,77 @@ public class MleImageActor extends MleActor implements IImageActor
      */
     public void dispose() throws MleRuntimeException
     {
-        // Do nothing for now.
+        // Cancel an outstanding load and release the shared media.
+        cancelFilenameLoad();
+        MleMediaRefCache.getInstance().release(m_filenameRef);
+        m_filenameRef = null;
+        m_atlasRegion = null;
+        invalidate();
+        m_initialized = false;
+    }
+
+    // Supersede a deferred or outstanding load of the image.
+    private void cancelFilenameLoad()
+    {
+        m_filenameIndex = -1;
+        if (m_filenameLoad != null)
+        {
+            m_filenameLoad.cancel();
+            m_filenameLoad = null;
+        }
+    }
+
+    // Load the image in the background, pushing the placeholder meanwhile.
+    private void loadFilename(int index) throws MleRuntimeException
+    {
+        MleMediaRef placeholder =
+            MleMediaLoader.getInstance().getPlaceholder(MleMediaRefCache.MEDIA_IMAGE);
+        if (placeholder != null)
+        {
+            filename.setProperty(placeholder);
+            filename.push(this);
+        }
+
+        m_filenameLoad = new MleMediaLoader.Request(index, g_metrics)
+        {
+            protected void complete(MleMediaRef mref)
+            {
+                m_filenameLoad = null;
+                filename.setProperty(mref);
+                MleMediaRefCache.getInstance().release(m_filenameRef);
+                m_filenameRef = mref;
+                invalidate();
+                try {
+                    filename.push(MleImageActor.this);
+                } catch (MleRuntimeException ex)
+                {
+                    // The failure is counted; the Role keeps the placeholder, or
+                    // the previous image, until the image is set again.
+                    g_metrics.pushFailed();
+                }
+            }
+        };
+        MleMediaLoader.getInstance().submit(m_filenameLoad);
+    }
+
+    /**
+     * Get the identifier of a property, for use with the identifier-based
+     * <code>getProperty()</code> and <code>setProperty()</code>.
+     *
+     * @param name The property name.
+     *
+     * @return One of the <code>PROPERTY_</code> constants, or <b>-1</b> if there is
+     * no such property.
+     */
+    public static int getPropertyId(String name)
+    {
+        return g_properties.getId(name);
+    }
+
+    // Record a change to a property, for the property change listeners.
+    private void notifyChanged(int id)
+    {
+        MlePropertyNotifier.getInstance().changed(this, id, g_properties.getName(id));
     }
 
     /* (non-Javadoc)
@@ -92,75 +216,221 @@ public class MleImageActor extends MleActor implements IImageActor
      */
     public Object getProperty(String name) throws MleRuntimeException
     {
-        if (name != null)
-        {
-            if (name.equals("filename"))
-                return filename;
-        }
+        int id = g_properties.getId(name);
+        if (id >= 0)
+            return getProperty(id);
 
         // Specified name does not exist.
         throw new MleRuntimeException("MleImageActor: Unable to get property " + name + ".");
     }
 
+    /**
+     * Get a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     *
+     * @return The property is returned.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist.
+     */
+    public Object getProperty(int id) throws MleRuntimeException
+    {
+        switch (id)
+        {
+            case PROPERTY_FILENAME:
+                return filename;
+            default:
+                // Specified property does not exist.
+                throw new MleRuntimeException("MleImageActor: Unable to get property " + id + ".");
+        }
+    }
+
     /* (non-Javadoc)
      * @see com.wizzer.mle.runtime.core.IMleObject#setProperty(java.lang.String, IMleProp)
      */
     public void setProperty(String name, IMleProp property)
             throws MleRuntimeException
     {
-        if (name != null)
+        int id = g_properties.getId(name);
+        if (id >= 0)
+        {
+            setProperty(id, property);
+            return;
+        }
+
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleImageActor: Unable to set property " + name + ".");
+    }
+
+    /**
+     * Set a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     * @param property The property value to decode.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist or its value can not be decoded.
+     */
+    public void setProperty(int id, IMleProp property)
+            throws MleRuntimeException
+    {
+        long start = MleActorMetrics.start();
+        try
         {
-            try
+            switch (id)
             {
-	            if (name.equals("filename"))
-	            {
-	                // Read the data in from the input stream.
-	                DataInputStream in = new DataInputStream(property.getStream());
-	                byte[] data = new byte[property.getLength()];
-	                in.readFully(data);
-	                
-	                // Create an image property and intialize it.
-	                if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
-	                {
-	                    // Assume it's coming from the DPP and data is an index into
-	                    // the DPP Table-of-Contents.
-	                    Integer index = new Integer(new String(data));
-	                    
-	                    // Retrieve the name from the DPP.
-	                    try
-	                    {
-	                        filename = new MleImageProperty();
-	                        MleMediaRef mref
-                                = MleDppLoader.getInstance().mleLoadMediaRef(index.intValue());
-	                        filename.setProperty(mref);
-	                    } catch (MleDppException ex)
-	                    {
-	                        throw new MleRuntimeException(ex.getMessage());
-	                    }
-	                    
-	                    // Notify property change listeners.
-	                    notifyPropertyChange("filename", null, null);
-	                } else
-	                {
-	                    filename = new MleImageProperty();
-	                    MleImageMediaRef mref = new MleImageMediaRef();
-	                    mref.registerMedia(0,data.length,data);
-	                    filename.setProperty(mref);
-	                    
-	                    // Notify property change listeners.
-	                    notifyPropertyChange("filename", null, null);
-	                }
-	                
-	                return;
-	            }
-            } catch (IOException ex)
+                case PROPERTY_FILENAME:
+                    setFilename(property);
+                    return;
+                default:
+                    break;
+            }
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleImageActor: Unable to set property " + g_properties.getName(id) + ".");
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, start);
+        }
+
+        // Specified property does not exist.
+        throw new MleRuntimeException("MleImageActor: Unable to set property " + id + ".");
+    }
+
+    // Decode the "filename" property.
+    private void setFilename(IMleProp property) throws IOException, MleRuntimeException
+    {
+        // Decode using reusable scratch buffers.
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+
+        // Any deferred or outstanding load, any decoded image, and any atlas region,
+        // is superseded.
+        invalidate();
+        m_atlasRegion = null;
+        cancelFilenameLoad();
+
+        // Create an image property if necessary and intialize it.
+        if (filename == null)
+            filename = new MleImageProperty();
+        if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
+        {
+            // Assume it's coming from the DPP and data is an index into
+            // the DPP Table-of-Contents.
+            int index = decoder.readIndex(property);
+
+            if (MleMediaLoader.getInstance().isAsync() && ! m_initialized)
+            {
+                // Load it in the background once initialized.
+                m_filenameIndex = index;
+            } else
             {
-                throw new MleRuntimeException("MleImageActor: Unable to set property " + name + ".");
+                // Retrieve the name from the DPP.
+                try
+                {
+                    long start = MleActorMetrics.start();
+                    MleMediaRef mref = MleMediaRefCache.getInstance().acquire(index);
+                    g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+                    filename.setProperty(mref);
+                    MleMediaRefCache.getInstance().release(m_filenameRef);
+                    m_filenameRef = mref;
+                } catch (MleDppException ex)
+                {
+                    throw new MleRuntimeException(ex.getMessage());
+                }
             }
+
+            // Notify property change listeners.
+            notifyChanged(PROPERTY_FILENAME);
+        } else
+        {
+            // Identical payloads share one media reference; large ones are held
+            // off the Java heap.
+            MleMediaRef mref = MleMediaRefCache.getInstance().acquire(
+                MleMediaRefCache.MEDIA_IMAGE, property);
+            filename.setProperty(mref);
+            MleMediaRefCache.getInstance().release(m_filenameRef);
+            m_filenameRef = mref;
+
+            // Notify property change listeners.
+            notifyChanged(PROPERTY_FILENAME);
         }
+    }
 
-        // Specified name does not exist.
-        throw new MleRuntimeException("MleImageActor: Unable to set property " + name + ".");
+    /**
+     * Set the image to media acquired by the title, such as a memory-mapped region
+     * of a file.
+     * <p>
+     * The Actor takes over the reference and releases it when the image changes or
+     * in <code>dispose()</code>.
+     * </p>
+     *
+     * @param mref The media reference acquired from <code>MleMediaRefCache</code>.
+     */
+    public void setImageMedia(MleMediaRef mref)
+    {
+        // Any deferred or outstanding load, any decoded image, and any atlas region,
+        // is superseded.
+        invalidate();
+        m_atlasRegion = null;
+        cancelFilenameLoad();
+
+        if (filename == null)
+            filename = new MleImageProperty();
+        filename.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_filenameRef);
+        m_filenameRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_FILENAME);
+    }
+
+    /**
+     * Resolve the image to its region of a texture atlas.
+     * <p>
+     * The Actor releases its own media reference to the image; it keeps the size
+     * of the original image, and <code>getBitmap()</code> cuts the image from the
+     * atlas. The region is dropped when the image is set again or the Actor is
+     * disposed. This is normally called by <code>MleTextureAtlasBuilder</code>.
+     * </p>
+     *
+     * @param region The region of the atlas holding the image.
+     */
+    public void setAtlasRegion(MleTextureAtlas.Region region)
+    {
+        if (region == null)
+            throw new IllegalArgumentException("MleImageActor: Unable to set null atlas region.");
+
+        // Any deferred or outstanding load, and any decoded image, is superseded.
+        invalidate();
+        cancelFilenameLoad();
+
+        m_atlasRegion = region;
+        if (filename != null)
+            filename.setProperty(null);
+        MleMediaRefCache.getInstance().release(m_filenameRef);
+        m_filenameRef = null;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_FILENAME);
+    }
+
+    /**
+     * Get the region of the texture atlas the image is packed into.
+     *
+     * @return The region, or <b>null</b> if the image is not in an atlas.
+     */
+    public MleTextureAtlas.Region getAtlasRegion()
+    {
+        return m_atlasRegion;
+    }
+
+    // Get the loaded image media, or null if it is not loaded.
+    MleMediaRef getImageMedia()
+    {
+        if ((filename == null) || (m_filenameLoad != null) || (m_filenameIndex >= 0))
+            return null;
+        return filename.getProperty();
     }
 
     /* (non-Javadoc)
@@ -174,21 +444,135 @@ public class MleImageActor extends MleActor implements IImageActor
     
     /**
      * Get the width of the image.
+     * <p>
+     * The width is read from the image header, without decoding the image, or
+     * from the atlas region the image is packed into.
+     * </p>
      * 
      * @return An integer value is returned.
      */
     public int getWidth()
     {
-        return filename.getWidth(this);
+        if (m_atlasRegion != null)
+            return m_atlasRegion.getWidth();
+        return probe() ? m_size[0] : filename.getWidth(this);
     }
 
     /**
      * Get the height of the image.
+     * <p>
+     * The height is read from the image header, without decoding the image, or
+     * from the atlas region the image is packed into.
+     * </p>
      * 
      * @return An integer value is returned.
      */
     public int getHeight()
     {
-        return filename.getHeight(this);
+        if (m_atlasRegion != null)
+            return m_atlasRegion.getHeight();
+        return probe() ? m_size[1] : filename.getHeight(this);
+    }
+
+    /**
+     * Set the size to decode the image at.
+     * <p>
+     * The image is subsampled by a power of two and then scaled down to fit the
+     * target, preserving its aspect ratio. The dimensions reported by
+     * <code>getWidth()</code> and <code>getHeight()</code> are not affected.
+     * </p>
+     *
+     * @param width The target width, or <b>0</b> to decode at full size.
+     * @param height The target height, or <b>0</b> to decode at full size.
+     */
+    public void setTargetSize(int width, int height)
+    {
+        width = Math.max(0, width);
+        height = Math.max(0, height);
+        if ((width == m_targetWidth) && (height == m_targetHeight))
+            return;
+        m_targetWidth = width;
+        m_targetHeight = height;
+        releaseBitmap();
+    }
+
+    /**
+     * Get the width to decode the image at.
+     *
+     * @return The target width, or <b>0</b> for the full size.
+     */
+    public int getTargetWidth()
+    {
+        return m_targetWidth;
+    }
+
+    /**
+     * Get the height to decode the image at.
+     *
+     * @return The target height, or <b>0</b> for the full size.
+     */
+    public int getTargetHeight()
+    {
+        return m_targetHeight;
+    }
+
+    /**
+     * Get the image decoded at the target size.
+     * <p>
+     * The image is decoded on first use and kept until the image or the target
+     * size changes, or the Actor is disposed, at which point it is recycled.
+     * </p><p>
+     * An image packed into an atlas is instead cut from the atlas bitmap at its
+     * packed size. Renderers which draw from the atlas directly, using
+     * <code>getAtlasRegion()</code>, avoid this copy.
+     * </p>
+     *
+     * @return The bitmap, or <b>null</b> if the image is not loaded or can not be
+     * decoded.
+     */
+    public Bitmap getBitmap()
+    {
+        if (m_atlasRegion != null)
+        {
+            Bitmap atlas = m_atlasRegion.getAtlas().getBitmap();
+            if ((m_bitmap == null) && (atlas != null))
+                m_bitmap = Bitmap.createBitmap(atlas, m_atlasRegion.getX(), m_atlasRegion.getY(),
+                    m_atlasRegion.getPackedWidth(), m_atlasRegion.getPackedHeight());
+            return m_bitmap;
+        }
+        if ((m_bitmap == null) && (filename != null) && (filename.getProperty() != null))
+        {
+            long start = MleActorMetrics.start();
+            m_bitmap = MleImageDecoder.decode(filename.getProperty(), m_targetWidth, m_targetHeight);
+            g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+        }
+        return m_bitmap;
+    }
+
+    // Probe the image header once, returning whether the dimensions are known.
+    private boolean probe()
+    {
+        if (! m_probed && (filename != null) && (filename.getProperty() != null))
+        {
+            m_probeValid = MleImageDecoder.probe(filename.getProperty(), m_size);
+            m_probed = true;
+        }
+        return m_probeValid;
+    }
+
+    // Forget the probed dimensions and the decoded image.
+    private void invalidate()
+    {
+        m_probed = false;
+        m_probeValid = false;
+        releaseBitmap();
+    }
+
+    // Recycle the decoded image.
+    private void releaseBitmap()
+    {
+        if (m_bitmap != null)
+            m_bitmap.recycle();
+        m_bitmap = null;
     }
 }
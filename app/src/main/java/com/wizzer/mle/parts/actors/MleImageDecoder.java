@@ -0,0 +1,173 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Decodes image media without holding the full-resolution image.
+ * <p>
+ * The dimensions of an image may be probed from its header alone. Images are
+ * decoded at a target size in two stages: the decoder subsamples by the largest
+ * power of two which keeps the image at least as large as the target, and the
+ * result is then scaled down to fit the target exactly, preserving the aspect
+ * ratio. The full-resolution pixels are never allocated.
+ * </p><p>
+ * The media of the reference must be the encoded image, as a <code>byte[]</code>
+ * or <code>ByteBuffer</code> registered by <code>MleMediaRefCache</code>, or the path
+ * of an image file as a <code>String</code>. Direct and memory-mapped buffers are
+ * decoded in place, without copying them to the Java heap.
+ * </p>
+ */
+public final class MleImageDecoder
+{
+    // Hide default constructor.
+    private MleImageDecoder() {}
+
+    /**
+     * Read the dimensions of an image from its header, without decoding it.
+     *
+     * @param mref The image media reference.
+     * @param size Receives the width and height.
+     *
+     * @return <b>true</b> if the dimensions were read; <b>false</b> if the media is
+     * not a readable image.
+     */
+    public static boolean probe(MleMediaRef mref, int[] size)
+    {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decode(mref, options);
+        if ((options.outWidth <= 0) || (options.outHeight <= 0))
+            return false;
+        size[0] = options.outWidth;
+        size[1] = options.outHeight;
+        return true;
+    }
+
+    /**
+     * Decode an image to fit a target size.
+     * <p>
+     * Images smaller than the target are not scaled up.
+     * </p>
+     *
+     * @param mref The image media reference.
+     * @param targetWidth The target width, or <b>0</b> to decode at full size.
+     * @param targetHeight The target height, or <b>0</b> to decode at full size.
+     *
+     * @return The bitmap, or <b>null</b> if the media is not a readable image.
+     */
+    public static Bitmap decode(MleMediaRef mref, int targetWidth, int targetHeight)
+    {
+        int[] size = new int[2];
+        if (! probe(mref, size))
+            return null;
+
+        // The size which fits the target, preserving the aspect ratio.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int width = size[0], height = size[1];
+        if ((targetWidth > 0) && (targetHeight > 0))
+        {
+            float factor = Math.min((float) targetWidth / width, (float) targetHeight / height);
+            if (factor < 1.0f)
+            {
+                width = Math.max(1, Math.round(width * factor));
+                height = Math.max(1, Math.round(height * factor));
+            }
+            options.inSampleSize = getSampleSize(size[0], size[1], width, height);
+        }
+        Bitmap bitmap = decode(mref, options);
+        if ((bitmap == null) || ((bitmap.getWidth() <= width) && (bitmap.getHeight() <= height)))
+            return bitmap;
+
+        // Scale the subsampled image down to the fitted size.
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap)
+            bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * Get the subsampling factor for decoding an image at a target size.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param targetWidth The target width.
+     * @param targetHeight The target height.
+     *
+     * @return The largest power of two which, dividing the image dimensions, keeps
+     * the image at least as large as the target in both dimensions; at least 1.
+     */
+    public static int getSampleSize(int width, int height, int targetWidth, int targetHeight)
+    {
+        int sample = 1;
+        while ((width / (sample * 2) >= targetWidth) && (height / (sample * 2) >= targetHeight))
+            sample *= 2;
+        return sample;
+    }
+
+    // Decode the media with the options.
+    private static Bitmap decode(MleMediaRef mref, BitmapFactory.Options options)
+    {
+        Object media = (mref != null) ? mref.getMedia() : null;
+        if (media instanceof byte[])
+        {
+            byte[] data = (byte[]) media;
+            int length = (mref.getSize() > 0) ? Math.min(mref.getSize(), data.length) : data.length;
+            return BitmapFactory.decodeByteArray(data, 0, length, options);
+        } else if (media instanceof ByteBuffer)
+        {
+            ByteBuffer data = (ByteBuffer) media;
+            if (data.hasArray())
+                return BitmapFactory.decodeByteArray(data.array(),
+                    data.arrayOffset() + data.position(), data.remaining(), options);
+            return BitmapFactory.decodeStream(new BufferInputStream(data.duplicate()), null, options);
+        } else if (media instanceof String)
+            return BitmapFactory.decodeFile((String) media, options);
+        return null;
+    }
+
+    // A stream over the remaining bytes of a buffer.
+    private static final class BufferInputStream extends InputStream
+    {
+        // The buffer, positioned at the next byte.
+        private final ByteBuffer m_data;
+
+        BufferInputStream(ByteBuffer data)
+        {
+            m_data = data;
+        }
+
+        public int read()
+        {
+            return m_data.hasRemaining() ? (m_data.get() & 0xff) : -1;
+        }
+
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+                return 0;
+            if (! m_data.hasRemaining())
+                return -1;
+            int n = Math.min(len, m_data.remaining());
+            m_data.get(b, off, n);
+            return n;
+        }
+
+        public int available()
+        {
+            return m_data.remaining();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.math.MlRotation;
+import com.wizzer.mle.math.MlVector3;
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+import com.wizzer.mle.parts.props.Mle3dModelProperty;
+import com.wizzer.mle.parts.props.Mle3dTextureMapProperty;
+
+/**
+ * The <code>MleModelActor</code>s sharing one model and texture, drawn as a single
+ * instanced batch.
+ * <p>
+ * When instancing is enabled, each model whose model and texture are loaded when
+ * it is initialized joins the group for its media, created on demand, instead of
+ * pushing its media and transform to its own Role. The group holds the transform
+ * of each member in one slot of its packed instance arrays. Each frame the
+ * behavior group writes the members whose transform changed into their slots, and
+ * the group records the range of slots written, so a Role need only upload that
+ * range. A member leaves the group when it is disposed, when its model or texture
+ * changes, or when it is given levels of detail; it then pushes to its own Role
+ * again.
+ * </p><p>
+ * Groups are Actors without a DWP entry. A title attaches a Role to each group
+ * found through <code>getGroups()</code> and calls <code>init()</code> to push the
+ * shared media once. Groups must only be used on the scheduler thread.
+ * </p>
+ */
+public final class MleInstanceGroup extends MleActor implements IMleInstancedActor
+{
+    /** The identifier of the "model" property. */
+    public static final int PROPERTY_MODEL   = 0;
+    /** The identifier of the "texture" property. */
+    public static final int PROPERTY_TEXTURE = 1;
+
+    // The property table, indexed by the PROPERTY_ identifiers.
+    static final MlePropertyTable g_properties = new MlePropertyTable(
+        new String[] { "model", "texture" },
+        new int[] { MlePropertyTable.TYPE_MEDIAREF, MlePropertyTable.TYPE_MEDIAREF });
+
+    // The initial capacity of the member arrays.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The key of a group: the identity of its model and texture.
+    private static final class Key
+    {
+        final MleMediaRef m_model;
+        final MleMediaRef m_texture;
+
+        Key(MleMediaRef model, MleMediaRef texture)
+        {
+            m_model = model;
+            m_texture = texture;
+        }
+
+        public int hashCode()
+        {
+            return System.identityHashCode(m_model) * 31 + System.identityHashCode(m_texture);
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (! (obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return (m_model == other.m_model) && (m_texture == other.m_texture);
+        }
+    }
+
+    // Whether models join instance groups.
+    private static boolean g_enabled = false;
+    // The groups, by model and texture.
+    private static final HashMap<Key, MleInstanceGroup> g_groups = new HashMap<Key, MleInstanceGroup>();
+
+    // The properties exposed are "model" and "texture", shared by all members.
+    public Mle3dModelProperty      model;
+    public Mle3dTextureMapProperty texture;
+
+    // The key of the group.
+    private final Key m_key;
+    // The members, by slot.
+    private MleModelActor[] m_members = new MleModelActor[INITIAL_CAPACITY];
+    // The number of members.
+    private int m_count = 0;
+    // The packed instance transforms.
+    private float[] m_positions = new float[INITIAL_CAPACITY * 3];
+    private float[] m_orientations = new float[INITIAL_CAPACITY * 4];
+    private float[] m_scales = new float[INITIAL_CAPACITY * 3];
+    // The range of slots written since the last clearDirty(), [m_dirtyStart, m_dirtyEnd).
+    private int m_dirtyStart = 0;
+    private int m_dirtyEnd = 0;
+    // The number of slots written since the last clearDirty().
+    private int m_updates = 0;
+
+    // Create the group for a model and texture.
+    private MleInstanceGroup(Key key)
+    {
+        super();
+        m_key = key;
+        model = new Mle3dModelProperty();
+        model.setProperty(key.m_model);
+        texture = new Mle3dTextureMapProperty();
+        texture.setProperty(key.m_texture);
+    }
+
+    /**
+     * Enable or disable instance groups for models initialized from now on.
+     * <p>
+     * Models already in groups stay in them until they leave.
+     * </p>
+     *
+     * @param enabled <b>true</b> for models to join instance groups.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        g_enabled = enabled;
+    }
+
+    /**
+     * Determine whether models join instance groups.
+     *
+     * @return <b>true</b> if instancing is enabled.
+     */
+    public static boolean isEnabled()
+    {
+        return g_enabled;
+    }
+
+    /**
+     * Get the groups with members.
+     *
+     * @return The groups, in no particular order.
+     */
+    public static MleInstanceGroup[] getGroups()
+    {
+        return g_groups.values().toArray(new MleInstanceGroup[g_groups.size()]);
+    }
+
+    /**
+     * Get the number of groups with members.
+     *
+     * @return The group count.
+     */
+    public static int getGroupCount()
+    {
+        return g_groups.size();
+    }
+
+    // Add a model to the group for its media, returning the group.
+    static MleInstanceGroup join(MleModelActor actor, MleMediaRef model, MleMediaRef texture)
+    {
+        Key key = new Key(model, texture);
+        MleInstanceGroup group = g_groups.get(key);
+        if (group == null)
+        {
+            group = new MleInstanceGroup(key);
+            g_groups.put(key, group);
+        }
+        group.add(actor);
+        return group;
+    }
+
+    // Add a member in the last slot.
+    private void add(MleModelActor actor)
+    {
+        if (m_count == m_members.length)
+            grow();
+        int slot = m_count++;
+        m_members[slot] = actor;
+        actor.setInstanceSlot(slot);
+        update(slot, actor);
+    }
+
+    /**
+     * Remove a member, moving the last member into its slot.
+     *
+     * @param slot The slot of the member; ignored if <b>-1</b>.
+     */
+    void leave(int slot)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+        int last = --m_count;
+        m_members[slot].setInstanceSlot(-1);
+        if (slot != last)
+        {
+            MleModelActor moved = m_members[last];
+            m_members[slot] = moved;
+            moved.setInstanceSlot(slot);
+            System.arraycopy(m_positions, last * 3, m_positions, slot * 3, 3);
+            System.arraycopy(m_orientations, last * 4, m_orientations, slot * 4, 4);
+            System.arraycopy(m_scales, last * 3, m_scales, slot * 3, 3);
+            markDirty(slot);
+        }
+        m_members[last] = null;
+        m_dirtyEnd = Math.min(m_dirtyEnd, m_count);
+        if (m_dirtyStart >= m_dirtyEnd)
+            m_dirtyStart = m_dirtyEnd = 0;
+        if (m_count == 0)
+            g_groups.remove(m_key);
+    }
+
+    /**
+     * Write the transform of a member into its slot.
+     *
+     * @param slot The slot of the member.
+     * @param actor The member.
+     */
+    void update(int slot, MleModelActor actor)
+    {
+        int p = slot * 3, o = slot * 4;
+        MlVector3 position = (actor.position != null) ? actor.position.getProperty() : null;
+        MlRotation orientation = (actor.orientation != null) ? actor.orientation.getProperty() : null;
+        MlVector3 scale = (actor.scale != null) ? actor.scale.getProperty() : null;
+        if (position != null)
+            System.arraycopy(position.getValue(), 0, m_positions, p, 3);
+        else
+            m_positions[p] = m_positions[p + 1] = m_positions[p + 2] = 0.0f;
+        if (orientation != null)
+            System.arraycopy(orientation.getValue(), 0, m_orientations, o, 4);
+        else
+        {
+            m_orientations[o] = m_orientations[o + 1] = m_orientations[o + 2] = 0.0f;
+            m_orientations[o + 3] = 1.0f;
+        }
+        if (scale != null)
+            System.arraycopy(scale.getValue(), 0, m_scales, p, 3);
+        else
+            m_scales[p] = m_scales[p + 1] = m_scales[p + 2] = 1.0f;
+        markDirty(slot);
+    }
+
+    // Extend the dirty range to a slot.
+    private void markDirty(int slot)
+    {
+        if (m_dirtyStart == m_dirtyEnd)
+        {
+            m_dirtyStart = slot;
+            m_dirtyEnd = slot + 1;
+        } else
+        {
+            m_dirtyStart = Math.min(m_dirtyStart, slot);
+            m_dirtyEnd = Math.max(m_dirtyEnd, slot + 1);
+        }
+        m_updates++;
+    }
+
+    /**
+     * Get the first slot written since the last <code>clearDirty()</code>.
+     *
+     * @return The slot; equal to <code>getDirtyEnd()</code> if no slot was written.
+     */
+    public int getDirtyStart()
+    {
+        return m_dirtyStart;
+    }
+
+    /**
+     * Get the end of the range of slots written since the last
+     * <code>clearDirty()</code>.
+     *
+     * @return The slot after the last one written.
+     */
+    public int getDirtyEnd()
+    {
+        return m_dirtyEnd;
+    }
+
+    /**
+     * Get the number of slot writes since the last <code>clearDirty()</code>.
+     *
+     * @return The update count; a slot written twice counts twice.
+     */
+    public int getUpdateCount()
+    {
+        return m_updates;
+    }
+
+    /**
+     * Forget the slots written, once the Role has uploaded them.
+     */
+    public void clearDirty()
+    {
+        m_dirtyStart = 0;
+        m_dirtyEnd = 0;
+        m_updates = 0;
+    }
+
+    /**
+     * Get the member in a slot.
+     *
+     * @param slot The slot.
+     *
+     * @return The model Actor is returned.
+     */
+    public MleModelActor getMember(int slot)
+    {
+        if ((slot < 0) || (slot >= m_count))
+            throw new IndexOutOfBoundsException("MleInstanceGroup: Invalid slot " + slot + ".");
+        return m_members[slot];
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getInstanceCount()
+     */
+    public int getInstanceCount()
+    {
+        return m_count;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getPositions()
+     */
+    public float[] getPositions()
+    {
+        return m_positions;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getOrientations()
+     */
+    public float[] getOrientations()
+    {
+        return m_orientations;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getScales()
+     */
+    public float[] getScales()
+    {
+        return m_scales;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.MleActor#init()
+     */
+    public void init() throws MleRuntimeException
+    {
+        // Update the Role by pushing the shared media once for all members.
+        if (texture.getProperty() != null) texture.push(this);
+        model.push(this);
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.MleActor#dispose()
+     */
+    public void dispose() throws MleRuntimeException
+    {
+        // The media belongs to the members, and the group to its last member.
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#getProperty(java.lang.String)
+     */
+    public Object getProperty(String name) throws MleRuntimeException
+    {
+        switch (g_properties.getId(name))
+        {
+            case PROPERTY_MODEL:
+                return model;
+            case PROPERTY_TEXTURE:
+                return texture;
+            default:
+                // Specified name does not exist.
+                throw new MleRuntimeException("MleInstanceGroup: Unable to get property " + name + ".");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#setProperty(java.lang.String, IMleProp)
+     */
+    public void setProperty(String name, IMleProp property) throws MleRuntimeException
+    {
+        // The shared media is that of the members.
+        throw new MleRuntimeException("MleInstanceGroup: Unable to set property " + name + ".");
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#setPropertyArray(java.lang.String, int, int, java.io.ByteArrayInputStream)
+     */
+    public void setPropertyArray(String name, int length, int nElements, ByteArrayInputStream value)
+        throws MleRuntimeException
+    {
+        throw new MleRuntimeException("MleInstanceGroup: Unable to set property array " + name + ".");
+    }
+
+    // Double the capacity of the member arrays.
+    private void grow()
+    {
+        int capacity = m_members.length * 2;
+        MleModelActor[] members = new MleModelActor[capacity];
+        System.arraycopy(m_members, 0, members, 0, m_count);
+        m_members = members;
+        m_positions = copyOf(m_positions, capacity * 3);
+        m_orientations = copyOf(m_orientations, capacity * 4);
+        m_scales = copyOf(m_scales, capacity * 3);
+    }
+
+    // Return a copy of the array with the specified length.
+    private static float[] copyOf(float[] values, int length)
+    {
+        float[] copy = new float[length];
+        System.arraycopy(values, 0, copy, 0, values.length);
+        return copy;
+    }
+}
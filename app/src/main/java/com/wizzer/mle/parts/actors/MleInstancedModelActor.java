@@ -0,0 +1,440 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+
+import com.wizzer.mle.parts.props.Mle3dModelProperty;
+import com.wizzer.mle.parts.props.Mle3dTextureMapProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * A model placed many times, represented as a single Actor.
+ * <p>
+ * All instances share one "model" and one "texture", which are loaded once. The
+ * per-instance transforms are set with <code>setPropertyArray()</code> on the
+ * "positions", "orientations" and "scales" properties. Each array is read from the
+ * stream in one pass into a contiguous buffer of big-endian floating-point values:
+ * three per instance for positions and scales, four (a quaternion) for orientations.
+ * </p><p>
+ * Setting any array sets the instance count to its number of elements. Instances
+ * without an explicit orientation or scale use the identity.
+ * </p>
+ */
+public class MleInstancedModelActor extends MleActor implements IMleInstancedActor
+{
+    /** The identifier of the "model" property. */
+    public static final int PROPERTY_MODEL        = 0;
+    /** The identifier of the "texture" property. */
+    public static final int PROPERTY_TEXTURE      = 1;
+    /** The identifier of the "positions" property array. */
+    public static final int PROPERTY_POSITIONS    = 2;
+    /** The identifier of the "orientations" property array. */
+    public static final int PROPERTY_ORIENTATIONS = 3;
+    /** The identifier of the "scales" property array. */
+    public static final int PROPERTY_SCALES       = 4;
+
+    // The property table, indexed by the PROPERTY_ identifiers.
+    static final MlePropertyTable g_properties = new MlePropertyTable(
+        new String[] { "model", "texture", "positions", "orientations", "scales" },
+        new int[] { MlePropertyTable.TYPE_MEDIAREF, MlePropertyTable.TYPE_MEDIAREF,
+                    MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_ROTATION,
+                    MlePropertyTable.TYPE_VECTOR3 });
+
+    // The metrics shared by all instances.
+    static final MleActorMetrics g_metrics = MleActorMetrics.register("MleInstancedModelActor");
+
+    // The properties exposed in the DWP are "model" and "texture", shared by all
+    // instances, and the "positions", "orientations" and "scales" arrays.
+    public Mle3dModelProperty      model;
+    public Mle3dTextureMapProperty texture;
+
+    // The number of instances.
+    private int m_count = 0;
+    // The packed instance transforms.
+    private float[] m_positions = new float[0];
+    private float[] m_orientations = new float[0];
+    private float[] m_scales = new float[0];
+
+    // The media references acquired from the media cache.
+    private MleMediaRef m_modelRef = null;
+    private MleMediaRef m_textureRef = null;
+
+    /**
+     * The default constructor.
+     */
+    public MleInstancedModelActor() { super(); }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.MleActor#init()
+     */
+    public void init() throws MleRuntimeException
+    {
+        long start = MleActorMetrics.start();
+
+        // Update the Role by pushing the shared media once for all instances.
+        if (texture != null) texture.push(this);
+        if (model != null) model.push(this);
+        g_metrics.stop(MleActorMetrics.OP_INIT, start);
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.MleActor#dispose()
+     */
+    public void dispose() throws MleRuntimeException
+    {
+        // Release the shared media.
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_textureRef = null;
+        m_modelRef = null;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getInstanceCount()
+     */
+    public int getInstanceCount()
+    {
+        return m_count;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getPositions()
+     */
+    public float[] getPositions()
+    {
+        return m_positions;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getOrientations()
+     */
+    public float[] getOrientations()
+    {
+        return m_orientations;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleInstancedActor#getScales()
+     */
+    public float[] getScales()
+    {
+        return m_scales;
+    }
+
+    /**
+     * Get the identifier of a property, for use with the identifier-based
+     * <code>getProperty()</code> and <code>setProperty()</code>.
+     *
+     * @param name The property name.
+     *
+     * @return One of the <code>PROPERTY_</code> constants, or <b>-1</b> if there is
+     * no such property.
+     */
+    public static int getPropertyId(String name)
+    {
+        return g_properties.getId(name);
+    }
+
+    // Record a change to a property, for the property change listeners.
+    private void notifyChanged(int id)
+    {
+        MlePropertyNotifier.getInstance().changed(this, id, g_properties.getName(id));
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#getProperty(java.lang.String)
+     */
+    public Object getProperty(String name) throws MleRuntimeException
+    {
+        int id = g_properties.getId(name);
+        if (id >= 0)
+            return getProperty(id);
+
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleInstancedModelActor: Unable to get property " + name + ".");
+    }
+
+    /**
+     * Get a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     *
+     * @return The property is returned; the arrays are returned as <code>float[]</code>.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist.
+     */
+    public Object getProperty(int id) throws MleRuntimeException
+    {
+        switch (id)
+        {
+            case PROPERTY_MODEL:
+                return model;
+            case PROPERTY_TEXTURE:
+                return texture;
+            case PROPERTY_POSITIONS:
+                return m_positions;
+            case PROPERTY_ORIENTATIONS:
+                return m_orientations;
+            case PROPERTY_SCALES:
+                return m_scales;
+            default:
+                // Specified property does not exist.
+                throw new MleRuntimeException("MleInstancedModelActor: Unable to get property " + id + ".");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#setProperty(java.lang.String, IMleProp)
+     */
+    public void setProperty(String name, IMleProp property)
+            throws MleRuntimeException
+    {
+        int id = g_properties.getId(name);
+        if (id >= 0)
+        {
+            setProperty(id, property);
+            return;
+        }
+
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleInstancedModelActor: Unable to set property " + name + ".");
+    }
+
+    /**
+     * Set a property by identifier.
+     *
+     * @param id <code>PROPERTY_MODEL</code> or <code>PROPERTY_TEXTURE</code>; the
+     * instance transforms are set with <code>setPropertyArray()</code>.
+     * @param property The property value to decode.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist or its value can not be decoded.
+     */
+    public void setProperty(int id, IMleProp property)
+            throws MleRuntimeException
+    {
+        long start = MleActorMetrics.start();
+        try
+        {
+            switch (id)
+            {
+                case PROPERTY_MODEL:
+                    setModel(property);
+                    return;
+                case PROPERTY_TEXTURE:
+                    setTexture(property);
+                    return;
+                default:
+                    break;
+            }
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleInstancedModelActor: Unable to set property " + g_properties.getName(id) + ".");
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, start);
+        }
+
+        // Specified property does not exist.
+        throw new MleRuntimeException("MleInstancedModelActor: Unable to set property " + id + ".");
+    }
+
+    // Decode the "model" property.
+    private void setModel(IMleProp property) throws IOException, MleRuntimeException
+    {
+        // Create a model property if necessary and initialize it.
+        if (model == null)
+            model = new Mle3dModelProperty();
+        MleMediaRef mref = acquireMedia(property, MleMediaRefCache.MEDIA_MODEL);
+        model.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_modelRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_MODEL);
+    }
+
+    // Decode the "texture" property.
+    private void setTexture(IMleProp property) throws IOException, MleRuntimeException
+    {
+        // Create a texture property if necessary and initialize it.
+        if (texture == null)
+            texture = new Mle3dTextureMapProperty();
+        MleMediaRef mref = acquireMedia(property, MleMediaRefCache.MEDIA_TEXTURE);
+        texture.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        m_textureRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_TEXTURE);
+    }
+
+    /**
+     * Set the shared model to media acquired by the title, such as a memory-mapped
+     * region of a file.
+     * <p>
+     * The Actor takes over the reference and releases it when the model changes or
+     * in <code>dispose()</code>.
+     * </p>
+     *
+     * @param mref The media reference acquired from <code>MleMediaRefCache</code>.
+     */
+    public void setModelMedia(MleMediaRef mref)
+    {
+        if (model == null)
+            model = new Mle3dModelProperty();
+        model.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_modelRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_MODEL);
+    }
+
+    /**
+     * Set the shared texture to media acquired by the title, such as a
+     * memory-mapped region of a file.
+     * <p>
+     * The Actor takes over the reference and releases it when the texture changes
+     * or in <code>dispose()</code>.
+     * </p>
+     *
+     * @param mref The media reference acquired from <code>MleMediaRefCache</code>.
+     */
+    public void setTextureMedia(MleMediaRef mref)
+    {
+        if (texture == null)
+            texture = new Mle3dTextureMapProperty();
+        texture.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        m_textureRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_TEXTURE);
+    }
+
+    // Acquire the media for a property from the media cache.
+    private static MleMediaRef acquireMedia(IMleProp property, int kind)
+        throws IOException, MleRuntimeException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+        if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
+        {
+            // Assume it's coming from the DPP and data is an index into
+            // the DPP Table-of-Contents.
+            int index = decoder.readIndex(property);
+            long start = MleActorMetrics.start();
+            try
+            {
+                return MleMediaRefCache.getInstance().acquire(index);
+            } catch (MleDppException ex)
+            {
+                throw new MleRuntimeException(ex.getMessage());
+            } finally
+            {
+                g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+            }
+        } else
+        {
+            // Identical payloads share one media reference; large ones are held
+            // off the Java heap.
+            return MleMediaRefCache.getInstance().acquire(kind, property);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleObject#setPropertyArray(java.lang.String, int, int, java.io.ByteArrayInputStream)
+     */
+    public void setPropertyArray(String name, int length, int nElements, ByteArrayInputStream value) throws MleRuntimeException
+    {
+        int id = g_properties.getId(name);
+        int stride;
+        switch (id)
+        {
+            case PROPERTY_POSITIONS:
+            case PROPERTY_SCALES:
+                stride = 3;
+                break;
+            case PROPERTY_ORIENTATIONS:
+                stride = 4;
+                break;
+            default:
+                // Specified name does not exist.
+                throw new MleRuntimeException("MleInstancedModelActor: Unable to set property array " + name + ".");
+        }
+
+        // The stream is expected to hold exactly the packed values.
+        if ((nElements < 0) || (length != nElements * stride * 4))
+            throw new MleRuntimeException("MleInstancedModelActor: Unable to set property array " + name + ".");
+
+        long start = MleActorMetrics.start();
+        setInstanceCount(nElements);
+        try
+        {
+            float[] values = (id == PROPERTY_POSITIONS) ? m_positions :
+                             (id == PROPERTY_ORIENTATIONS) ? m_orientations : m_scales;
+            MlePropertyDecoder.getInstance().readFloats(value, nElements * stride, values);
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleInstancedModelActor: Unable to set property array " + name + ".");
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, start);
+        }
+
+        // Notify property change listeners.
+        notifyChanged(id);
+    }
+
+    /**
+     * Set the number of instances.
+     * <p>
+     * Existing instances keep their transforms. New instances are placed at the
+     * origin with the identity orientation and scale.
+     * </p>
+     *
+     * @param count The instance count.
+     */
+    public void setInstanceCount(int count)
+    {
+        if (count > (m_positions.length / 3))
+        {
+            m_positions = grow(m_positions, count * 3);
+            m_orientations = grow(m_orientations, count * 4);
+            m_scales = grow(m_scales, count * 3);
+        }
+        for (int i = m_count; i < count; i++)
+        {
+            m_positions[i * 3] = 0.0f;
+            m_positions[i * 3 + 1] = 0.0f;
+            m_positions[i * 3 + 2] = 0.0f;
+            m_orientations[i * 4] = 0.0f;
+            m_orientations[i * 4 + 1] = 0.0f;
+            m_orientations[i * 4 + 2] = 0.0f;
+            m_orientations[i * 4 + 3] = 1.0f;
+            m_scales[i * 3] = 1.0f;
+            m_scales[i * 3 + 1] = 1.0f;
+            m_scales[i * 3 + 2] = 1.0f;
+        }
+        m_count = count;
+    }
+
+    // Return a copy of the array with the specified length.
+    private static float[] grow(float[] values, int length)
+    {
+        float[] copy = new float[length];
+        System.arraycopy(values, 0, copy, 0, values.length);
+        return copy;
+    }
+}
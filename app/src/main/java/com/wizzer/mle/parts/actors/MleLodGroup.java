@@ -0,0 +1,150 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+import com.wizzer.mle.runtime.scheduler.MleScheduler;
+import com.wizzer.mle.runtime.scheduler.MlePhase;
+import com.wizzer.mle.runtime.scheduler.MleTask;
+import com.wizzer.mle.runtime.MleTitle;
+
+/**
+ * The Actors of one class which select a level of detail each frame.
+ * <p>
+ * Like <code>MleBehaveGroup</code>, the group registers a single task in the Actor
+ * phase while it has members. Each frame it reads the viewpoint from
+ * <code>MleBehaviorConfig</code> and lets every member select its level; without a
+ * viewpoint, members keep their levels.
+ * </p>
+ */
+abstract class MleLodGroup implements Runnable
+{
+    // The initial capacity of the member array.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The name of the group, used for diagnostics.
+    private final String m_name;
+    // The members of the group.
+    private MleActor[] m_actors = new MleActor[INITIAL_CAPACITY];
+    // The number of members in the group.
+    private int m_count = 0;
+    // The task registered in the Actor phase while the group has members.
+    private MleTask m_task = null;
+
+    /**
+     * Create a level of detail group.
+     *
+     * @param name The name of the group.
+     */
+    protected MleLodGroup(String name)
+    {
+        m_name = name;
+    }
+
+    /**
+     * Select the level of detail of a member.
+     *
+     * @param actor The member.
+     * @param viewpoint The viewpoint (x, y, z).
+     */
+    protected abstract void select(MleActor actor, float[] viewpoint);
+
+    /**
+     * Record the slot of a member in the Actor.
+     *
+     * @param actor The Actor.
+     * @param slot The slot, or <b>-1</b> when the Actor leaves the group.
+     */
+    protected abstract void setSlot(MleActor actor, int slot);
+
+    /**
+     * Get the number of members.
+     *
+     * @return The member count.
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * Add an Actor to the group.
+     *
+     * @param actor The Actor to add.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void join(MleActor actor) throws MleRuntimeException
+    {
+        if (m_count == 0)
+        {
+            // Register with the scheduler.
+            MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase == null)
+                throw new MleRuntimeException(m_name + ": Actor phase does not exist.");
+            m_task = new MleTask(this, "Select level of detail");
+            scheduler.addTask(actorPhase, m_task);
+        }
+
+        if (m_count == m_actors.length)
+        {
+            MleActor[] actors = new MleActor[m_count * 2];
+            System.arraycopy(m_actors, 0, actors, 0, m_count);
+            m_actors = actors;
+        }
+        m_actors[m_count] = actor;
+        setSlot(actor, m_count++);
+    }
+
+    /**
+     * Remove an Actor from the group.
+     *
+     * @param slot The slot of the Actor; ignored if <b>-1</b>.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void leave(int slot) throws MleRuntimeException
+    {
+        if ((slot < 0) || (slot >= m_count))
+            return;
+
+        setSlot(m_actors[slot], -1);
+        int last = --m_count;
+        if (slot != last)
+        {
+            m_actors[slot] = m_actors[last];
+            setSlot(m_actors[slot], slot);
+        }
+        m_actors[last] = null;
+
+        if (m_count == 0)
+        {
+            // Remove the task from the scheduler.
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase == null)
+                throw new MleRuntimeException(m_name + ": Actor phase does not exist.");
+            actorPhase.deleteTask(m_task);
+            m_task = null;
+        }
+    }
+
+    /**
+     * Select the level of detail of every member.
+     */
+    public void run()
+    {
+        float[] viewpoint = MleBehaviorConfig.getViewpoint();
+        if (viewpoint == null)
+            return;
+        MleActor[] actors = m_actors;
+        for (int slot = 0; slot < m_count; slot++)
+            select(actors[slot], viewpoint);
+    }
+}
@@ -0,0 +1,194 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * An immutable list of model levels of detail with their switch distances.
+ * <p>
+ * Level 0 is the most detailed. Each level names its model by DPP Table-of-Contents
+ * index, so that only the levels in use need to be loaded, and has a switch
+ * distance from which it is used; the distances ascend, and the first is normally
+ * zero. Level selection has hysteresis: an Actor moves to a coarser level only once
+ * it is beyond that level's switch distance by the hysteresis fraction, and back
+ * to a finer level only once it is that fraction inside the switch distance, so an
+ * Actor near a switch distance does not flicker between levels.
+ * </p>
+ */
+public final class MleLodTable
+{
+    /** The default hysteresis, as a fraction of the switch distance. */
+    public static final float DEFAULT_HYSTERESIS = 0.1f;
+
+    // The DPP indices of the models, by level.
+    private final int[] m_indices;
+    // The switch distances, by level.
+    private final float[] m_distances;
+    // The hysteresis fraction.
+    private final float m_hysteresis;
+    // The squared distances beyond which each level is entered from a finer one.
+    private final float[] m_enter;
+    // The squared distances within which each level is left for a finer one.
+    private final float[] m_leave;
+
+    /**
+     * Create a level of detail table with the default hysteresis.
+     *
+     * @param indices The DPP Table-of-Contents indices of the models, from the most
+     * detailed; at least one.
+     * @param distances The switch distance of each level, ascending.
+     */
+    public MleLodTable(int[] indices, float[] distances)
+    {
+        this(indices, distances, DEFAULT_HYSTERESIS);
+    }
+
+    /**
+     * Create a level of detail table.
+     *
+     * @param indices The DPP Table-of-Contents indices of the models, from the most
+     * detailed; at least one.
+     * @param distances The switch distance of each level, ascending.
+     * @param hysteresis The hysteresis, as a fraction of the switch distance, from
+     * 0 to less than 1.
+     */
+    public MleLodTable(int[] indices, float[] distances, float hysteresis)
+    {
+        if ((indices.length == 0) || (indices.length != distances.length))
+            throw new IllegalArgumentException("MleLodTable: Indices and distances differ in length.");
+        for (int level = 1; level < distances.length; level++)
+            if (! (distances[level] >= distances[level - 1]))
+                throw new IllegalArgumentException("MleLodTable: Switch distances must be ascending.");
+        if (! ((hysteresis >= 0.0f) && (hysteresis < 1.0f)))
+            throw new IllegalArgumentException("MleLodTable: Invalid hysteresis " + hysteresis + ".");
+        m_indices = indices.clone();
+        m_distances = distances.clone();
+        m_hysteresis = hysteresis;
+
+        int n = distances.length;
+        m_enter = new float[n];
+        m_leave = new float[n];
+        for (int level = 0; level < n; level++)
+        {
+            float enter = distances[level] * (1.0f + hysteresis);
+            float leave = distances[level] * (1.0f - hysteresis);
+            m_enter[level] = enter * enter;
+            m_leave[level] = leave * leave;
+        }
+    }
+
+    /**
+     * Read a level of detail table from a property array.
+     * <p>
+     * Each element is the DPP Table-of-Contents index of the model, as a 32-bit
+     * integer, followed by its switch distance as a float, both big-endian.
+     * </p>
+     *
+     * @param length The length of the array, in bytes.
+     * @param nElements The number of levels.
+     * @param value The array.
+     *
+     * @return The table, with the default hysteresis.
+     *
+     * @throws IOException This exception is thrown if the array is malformed.
+     */
+    static MleLodTable read(int length, int nElements, ByteArrayInputStream value)
+        throws IOException
+    {
+        if ((nElements <= 0) || (length != nElements * 8))
+            throw new IOException("Invalid level of detail array.");
+
+        int[] levels = new int[nElements * 2];
+        MlePropertyDecoder.getInstance().readInts(value, levels.length, levels);
+        int[] indices = new int[nElements];
+        float[] distances = new float[nElements];
+        for (int level = 0; level < nElements; level++)
+        {
+            indices[level] = levels[level * 2];
+            distances[level] = Float.intBitsToFloat(levels[level * 2 + 1]);
+        }
+        try
+        {
+            return new MleLodTable(indices, distances);
+        } catch (IllegalArgumentException ex)
+        {
+            throw new IOException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Get the number of levels.
+     *
+     * @return The level count.
+     */
+    public int getLevelCount()
+    {
+        return m_indices.length;
+    }
+
+    /**
+     * Get the model of a level.
+     *
+     * @param level The level.
+     *
+     * @return The DPP Table-of-Contents index of the model.
+     */
+    public int getIndex(int level)
+    {
+        return m_indices[level];
+    }
+
+    /**
+     * Get the switch distance of a level.
+     *
+     * @param level The level.
+     *
+     * @return The distance from which the level is used.
+     */
+    public float getDistance(int level)
+    {
+        return m_distances[level];
+    }
+
+    /**
+     * Get the hysteresis.
+     *
+     * @return The hysteresis, as a fraction of the switch distance.
+     */
+    public float getHysteresis()
+    {
+        return m_hysteresis;
+    }
+
+    /**
+     * Select the level for a distance.
+     *
+     * @param current The current level, or <b>-1</b> if there is none, in which case
+     * the level is selected without hysteresis.
+     * @param distanceSquared The squared distance from the viewpoint.
+     *
+     * @return The level to use.
+     */
+    public int select(int current, float distanceSquared)
+    {
+        int last = m_indices.length - 1;
+        if (current < 0)
+        {
+            int level = 0;
+            while ((level < last) && (distanceSquared >= m_distances[level + 1] * m_distances[level + 1]))
+                level++;
+            return level;
+        }
+
+        int level = Math.min(current, last);
+        while ((level < last) && (distanceSquared >= m_enter[level + 1]))
+            level++;
+        while ((level > 0) && (distanceSquared < m_leave[level]))
+            level--;
+        return level;
+    }
+}
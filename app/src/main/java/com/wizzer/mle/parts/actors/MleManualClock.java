@@ -0,0 +1,51 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+/**
+ * A clock which only advances when told to.
+ * <p>
+ * This is useful for running behavior deterministically off a device, for example
+ * in JVM tests and simulation harnesses.
+ * </p>
+ */
+public class MleManualClock implements IMleClock
+{
+    // The current time, in nanoseconds.
+    private volatile long m_nanos = 0;
+
+    /**
+     * The default constructor; the clock starts at zero.
+     */
+    public MleManualClock() { super(); }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleClock#getNanos()
+     */
+    public long getNanos()
+    {
+        return m_nanos;
+    }
+
+    /**
+     * Advance the clock.
+     *
+     * @param nanos The number of nanoseconds to advance by.
+     */
+    public void advance(long nanos)
+    {
+        m_nanos += nanos;
+    }
+
+    /**
+     * Set the current time.
+     *
+     * @param nanos The time in nanoseconds.
+     */
+    public void setNanos(long nanos)
+    {
+        m_nanos = nanos;
+    }
+}
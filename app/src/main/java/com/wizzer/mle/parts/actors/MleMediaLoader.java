@@ -0,0 +1,484 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+import com.wizzer.mle.runtime.scheduler.MleScheduler;
+import com.wizzer.mle.runtime.scheduler.MlePhase;
+import com.wizzer.mle.runtime.scheduler.MleTask;
+import com.wizzer.mle.runtime.MleTitle;
+
+/**
+ * Loads DPP media references in the background.
+ * <p>
+ * When asynchronous loading is enabled, Actors record the DPP index of their media
+ * in <code>setProperty()</code> instead of loading it. In <code>init()</code> they push
+ * a placeholder, if one is configured, and submit a request. The media reference is
+ * loaded through the <code>MleMediaRefCache</code> on a bounded pool of background
+ * threads, and the request is completed on the scheduler thread during the next
+ * Actor phase, where the Actor pushes the real property to its Role. The cache
+ * reads the DPP one entry at a time; the threads run the preparation of the
+ * loaded media, such as generating texture mip levels, in parallel.
+ * </p><p>
+ * <code>awaitAll()</code> blocks until every pending request has loaded and completes
+ * them on the calling thread, for titles which need all media before continuing.
+ * The same threads load the media of a group ahead of its Actors through
+ * <code>MleMediaPrefetch</code>.
+ * </p>
+ */
+public final class MleMediaLoader implements Runnable
+{
+    /**
+     * A request to load a media reference.
+     * <p>
+     * <code>complete()</code> is always called on the scheduler thread. If the
+     * request was cancelled, the loaded media reference is released instead.
+     * </p>
+     */
+    public static abstract class Request
+    {
+        // The DPP Table-of-Contents index to load.
+        private final int m_index;
+        // The metrics recording the load, or null.
+        private final MleActorMetrics m_metrics;
+        // The loaded media reference.
+        private MleMediaRef m_mref = null;
+        // The error raised while loading, if any.
+        private MleDppException m_error = null;
+        // Set when the requester no longer wants the result.
+        private volatile boolean m_cancelled = false;
+
+        /**
+         * Create a request.
+         *
+         * @param index The DPP Table-of-Contents index to load.
+         */
+        protected Request(int index)
+        {
+            this(index, null);
+        }
+
+        /**
+         * Create a request whose load is recorded in the metrics of an Actor class.
+         *
+         * @param index The DPP Table-of-Contents index to load.
+         * @param metrics The metrics of the requesting Actor class, or <b>null</b>.
+         */
+        protected Request(int index, MleActorMetrics metrics)
+        {
+            m_index = index;
+            m_metrics = metrics;
+        }
+
+        /**
+         * Get the DPP Table-of-Contents index to load.
+         *
+         * @return The index is returned.
+         */
+        public int getIndex()
+        {
+            return m_index;
+        }
+
+        /**
+         * Cancel the request.
+         */
+        public void cancel()
+        {
+            m_cancelled = true;
+        }
+
+        /**
+         * Called on a background thread once the media reference has loaded, to
+         * prepare it before the request completes.
+         * <p>
+         * The default implementation returns the media reference unchanged.
+         * </p>
+         *
+         * @param mref The loaded media reference.
+         *
+         * @return The media reference to complete the request with, acquired from
+         * the <code>MleMediaRefCache</code>; if it differs, <code>mref</code> must
+         * have been released. If this method throws a runtime exception instead,
+         * the loader releases <code>mref</code> and the request fails.
+         */
+        protected MleMediaRef prepare(MleMediaRef mref)
+        {
+            return mref;
+        }
+
+        /**
+         * Called on the scheduler thread once the media reference has loaded.
+         *
+         * @param mref The loaded media reference, acquired from the
+         * <code>MleMediaRefCache</code> on behalf of the requester.
+         */
+        protected abstract void complete(MleMediaRef mref);
+
+        /**
+         * Called on the scheduler thread if the media reference could not be loaded
+         * or prepared.
+         *
+         * @param error The cause of the failure.
+         */
+        protected void fail(MleDppException error)
+        {
+            // Nothing to push; the placeholder, if any, remains.
+        }
+    }
+
+    // The default number of background threads.
+    private static final int DEFAULT_THREADS =
+        Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    // The singleton instance.
+    private static final MleMediaLoader g_theLoader = new MleMediaLoader();
+
+    // Whether asynchronous loading is enabled.
+    private volatile boolean m_async = false;
+    // The number of background threads.
+    private int m_threads = DEFAULT_THREADS;
+    // The placeholders pushed while media is loading, by media kind.
+    private final MleMediaRef[] m_placeholders = new MleMediaRef[3];
+
+    // The background executor, created on first use.
+    private ThreadPoolExecutor m_executor = null;
+    // The requests which have loaded and are waiting to complete.
+    private final ConcurrentLinkedQueue<Request> m_loaded = new ConcurrentLinkedQueue<Request>();
+    // The number of requests which have not yet loaded.
+    private int m_pending = 0;
+    // The generation of requests, advanced by shutdown() to discard those loading.
+    private int m_generation = 0;
+    // The task registered in the Actor phase to complete requests.
+    private MleTask m_task = null;
+
+    // Hide default constructor.
+    private MleMediaLoader() {}
+
+    /**
+     * Get the process-wide loader.
+     *
+     * @return The loader is returned.
+     */
+    public static MleMediaLoader getInstance()
+    {
+        return g_theLoader;
+    }
+
+    /**
+     * Enable or disable asynchronous loading.
+     * <p>
+     * This affects properties set after the call.
+     * </p>
+     *
+     * @param async <b>true</b> to load DPP media in the background.
+     */
+    public void setAsync(boolean async)
+    {
+        m_async = async;
+    }
+
+    /**
+     * Determine whether asynchronous loading is enabled.
+     *
+     * @return <b>true</b> if DPP media is loaded in the background.
+     */
+    public boolean isAsync()
+    {
+        return m_async;
+    }
+
+    /**
+     * Set the number of background threads.
+     * <p>
+     * This must be called before the first request is submitted.
+     * </p>
+     *
+     * @param threads The number of threads; at least one.
+     */
+    public synchronized void setThreadCount(int threads)
+    {
+        if (m_executor != null)
+            throw new IllegalStateException("MleMediaLoader: Executor already started.");
+        m_threads = Math.max(1, threads);
+    }
+
+    /**
+     * Get the number of background threads.
+     *
+     * @return The thread count.
+     */
+    public synchronized int getThreadCount()
+    {
+        return m_threads;
+    }
+
+    /**
+     * Set the placeholder pushed while media of the specified kind is loading.
+     *
+     * @param kind The kind of media; one of the <code>MleMediaRefCache</code>
+     * <code>MEDIA_</code> constants.
+     * @param placeholder The placeholder, or <b>null</b> to push nothing.
+     */
+    public void setPlaceholder(int kind, MleMediaRef placeholder)
+    {
+        m_placeholders[kind] = placeholder;
+    }
+
+    /**
+     * Get the placeholder pushed while media of the specified kind is loading.
+     *
+     * @param kind The kind of media; one of the <code>MleMediaRefCache</code>
+     * <code>MEDIA_</code> constants.
+     *
+     * @return The placeholder, or <b>null</b> if nothing is pushed.
+     */
+    public MleMediaRef getPlaceholder(int kind)
+    {
+        return m_placeholders[kind];
+    }
+
+    /**
+     * Get the number of requests which have been submitted but not yet completed.
+     *
+     * @return The request count.
+     */
+    public synchronized int getPendingCount()
+    {
+        return m_pending + m_loaded.size();
+    }
+
+    /**
+     * Submit a request to load a media reference in the background.
+     * <p>
+     * This must be called on the scheduler thread.
+     * </p>
+     *
+     * @param request The request.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void submit(final Request request) throws MleRuntimeException
+    {
+        Load load;
+        synchronized (this)
+        {
+            if (m_task == null)
+            {
+                // Register with the scheduler to complete requests.
+                MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
+                MlePhase actorPhase = MleTitle.g_theActorPhase;
+                if (actorPhase == null)
+                    throw new MleRuntimeException("MleMediaLoader: Actor phase does not exist.");
+                m_task = new MleTask(this, "Complete media loads");
+                scheduler.addTask(actorPhase, m_task);
+            }
+            m_pending++;
+            load = new Load(request, m_generation);
+        }
+
+        try
+        {
+            execute(load);
+        } catch (RuntimeException ex)
+        {
+            // The load will never count itself down.
+            synchronized (this)
+            {
+                m_pending--;
+                notifyAll();
+            }
+            throw new MleRuntimeException("MleMediaLoader: Unable to submit load of media " +
+                request.m_index + ".");
+        }
+    }
+
+    // The background work loading a request.
+    private final class Load implements Runnable
+    {
+        // The request to load.
+        private final Request m_request;
+        // The generation the request was submitted in.
+        private final int m_generation;
+
+        Load(Request request, int generation)
+        {
+            m_request = request;
+            m_generation = generation;
+        }
+
+        public void run()
+        {
+            Request request = m_request;
+            try
+            {
+                if (! request.m_cancelled)
+                    load(request);
+            } finally
+            {
+                // Count the request down however the load ended, so that awaitAll()
+                // returns and the request completes.
+                boolean discarded;
+                synchronized (MleMediaLoader.this)
+                {
+                    // Requests submitted before a shutdown are not completed.
+                    discarded = (m_generation != MleMediaLoader.this.m_generation);
+                    if (! discarded)
+                        m_loaded.add(request);
+                    m_pending--;
+                    MleMediaLoader.this.notifyAll();
+                }
+                if (discarded)
+                    MleMediaRefCache.getInstance().release(request.m_mref);
+            }
+        }
+
+        // Load and prepare the media reference of a request, recording any failure.
+        private void load(Request request)
+        {
+            MleMediaRefCache cache = MleMediaRefCache.getInstance();
+            long start = MleActorMetrics.start();
+            MleMediaRef mref = null;
+            try
+            {
+                mref = cache.acquire(request.m_index);
+                request.m_mref = request.prepare(mref);
+            } catch (MleDppException ex)
+            {
+                request.m_error = ex;
+            } catch (RuntimeException ex)
+            {
+                // Fail the request rather than leave it pending.
+                cache.release(mref);
+                request.m_error = new MleDppException("MleMediaLoader: Unable to load media " +
+                    request.m_index + ": " + ex);
+            }
+            if (request.m_metrics != null)
+            {
+                request.m_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+                if (request.m_error != null)
+                    request.m_metrics.loadFailed();
+            }
+        }
+    }
+
+    /**
+     * Run work on the background threads, starting them if necessary.
+     *
+     * @param work The work to run.
+     */
+    void execute(Runnable work)
+    {
+        ThreadPoolExecutor executor;
+        synchronized (this)
+        {
+            if (m_executor == null)
+                m_executor = createExecutor(m_threads);
+            executor = m_executor;
+        }
+        executor.execute(work);
+    }
+
+    /**
+     * Complete the requests which have loaded.
+     * <p>
+     * This is executed during the Actor phase on the scheduler thread.
+     * </p>
+     */
+    public void run()
+    {
+        Request request;
+        while ((request = m_loaded.poll()) != null)
+        {
+            if (request.m_cancelled)
+                MleMediaRefCache.getInstance().release(request.m_mref);
+            else if (request.m_error != null)
+                request.fail(request.m_error);
+            else
+                request.complete(request.m_mref);
+        }
+    }
+
+    /**
+     * Wait for every pending request to load, then complete them.
+     * <p>
+     * This must be called on the scheduler thread.
+     * </p>
+     *
+     * @throws InterruptedException This exception is thrown if the calling thread is
+     * interrupted while waiting.
+     */
+    public void awaitAll() throws InterruptedException
+    {
+        synchronized (this)
+        {
+            while (m_pending > 0)
+                wait();
+        }
+        run();
+    }
+
+    /**
+     * Stop the background threads and remove the completion task from the scheduler.
+     * <p>
+     * Requests which have not loaded are discarded. The media of requests which
+     * have loaded, or which finish loading afterwards, is released.
+     * </p>
+     */
+    public synchronized void shutdown()
+    {
+        if (m_executor != null)
+        {
+            // Loads which never started will not count themselves down.
+            for (Runnable work : m_executor.shutdownNow())
+                if (work instanceof Load)
+                    m_pending--;
+            m_executor = null;
+        }
+        if (m_task != null)
+        {
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase != null)
+                actorPhase.deleteTask(m_task);
+            m_task = null;
+        }
+        m_generation++;
+        Request request;
+        while ((request = m_loaded.poll()) != null)
+            MleMediaRefCache.getInstance().release(request.m_mref);
+        notifyAll();
+    }
+
+    // Create the bounded pool of daemon background threads.
+    private static ThreadPoolExecutor createExecutor(int threads)
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+                private int m_count = 0;
+
+                public synchronized Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "MleMediaLoader-" + (m_count++));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,268 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.IOException;
+import java.util.Arrays;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+
+/**
+ * Loads the DPP media references needed by a group of Actors ahead of their
+ * properties.
+ * <p>
+ * Without a prefetch, each Actor loads its media in <code>setProperty()</code>, one
+ * reference at a time. A title loading a group first adds the group's media
+ * reference properties, or their Table-of-Contents indices, to a prefetch and starts
+ * it. The distinct indices are loaded in ascending order, which is the order of
+ * their entries in the DPP file, by the bounded pool of background threads of the
+ * <code>MleMediaLoader</code>, each thread taking the next index in turn. The
+ * loaded media references are held in the <code>MleMediaRefCache</code>, so that
+ * the Actors' <code>setProperty()</code> calls are served from the cache. The cache
+ * reads the DPP file one entry at a time, so the entries are read in ascending
+ * order, and the threads overlap only the work done around each read.
+ * </p><p>
+ * Once the Actors have acquired their media, <code>release()</code> drops the
+ * references held by the prefetch; the media remains cached while the Actors use
+ * it. Indices which fail to load are skipped, and are loaded again, raising the
+ * error, by the Actor which needs them.
+ * </p>
+ */
+public final class MleMediaPrefetch
+{
+    // The initial capacity of the index array.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The DPP indices to load; the first m_count are valid, and sorted once started.
+    private int[] m_indices = new int[INITIAL_CAPACITY];
+    // The number of indices.
+    private int m_count = 0;
+    // The loaded media references, by position in m_indices.
+    private MleMediaRef[] m_mrefs = null;
+    // The position of the next index to load.
+    private int m_next = 0;
+    // The number of indices which have been loaded or have failed.
+    private int m_done = 0;
+    // The number of indices which have failed to load.
+    private int m_failed = 0;
+    // Whether the prefetch has been started.
+    private boolean m_started = false;
+    // Whether the references have been released.
+    private boolean m_released = false;
+    // The metrics recording the loads, or null.
+    private final MleActorMetrics m_metrics;
+
+    /**
+     * Create an empty prefetch.
+     */
+    public MleMediaPrefetch()
+    {
+        this(null);
+    }
+
+    /**
+     * Create an empty prefetch whose loads are recorded in the metrics of an Actor
+     * class.
+     *
+     * @param metrics The metrics, or <b>null</b>.
+     */
+    public MleMediaPrefetch(MleActorMetrics metrics)
+    {
+        m_metrics = metrics;
+    }
+
+    /**
+     * Add a DPP Table-of-Contents index to load.
+     *
+     * @param index The index; duplicates are loaded once.
+     */
+    public synchronized void add(int index)
+    {
+        if (m_started)
+            throw new IllegalStateException("MleMediaPrefetch: Already started.");
+        if (m_count == m_indices.length)
+            m_indices = Arrays.copyOf(m_indices, m_count * 2);
+        m_indices[m_count++] = index;
+    }
+
+    /**
+     * Add the media of a property to load.
+     *
+     * @param property The property; ignored unless it is a media reference.
+     *
+     * @throws IOException This exception is thrown if the index can not be read.
+     */
+    public void add(IMleProp property) throws IOException
+    {
+        if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
+            add(MlePropertyDecoder.getInstance().readIndex(property));
+    }
+
+    /**
+     * Add the models of every level of detail to load.
+     *
+     * @param lods The levels of detail.
+     */
+    public void add(MleLodTable lods)
+    {
+        for (int level = 0; level < lods.getLevelCount(); level++)
+            add(lods.getIndex(level));
+    }
+
+    /**
+     * Get the number of distinct indices to load, once started.
+     *
+     * @return The index count; before the prefetch is started, duplicates are
+     * counted.
+     */
+    public synchronized int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * Start loading the indices in the background.
+     * <p>
+     * At most one thread of the <code>MleMediaLoader</code> pool is used for each
+     * index. Indices may not be added afterwards; starting again has no effect.
+     * </p>
+     */
+    public void start()
+    {
+        int workers;
+        synchronized (this)
+        {
+            if (m_started)
+                return;
+            m_started = true;
+
+            // Load each index once, in file order.
+            Arrays.sort(m_indices, 0, m_count);
+            int count = 0;
+            for (int i = 0; i < m_count; i++)
+                if ((i == 0) || (m_indices[i] != m_indices[i - 1]))
+                    m_indices[count++] = m_indices[i];
+            m_count = count;
+            m_mrefs = new MleMediaRef[count];
+            workers = Math.min(count, MleMediaLoader.getInstance().getThreadCount());
+        }
+
+        Runnable worker = new Runnable()
+        {
+            public void run()
+            {
+                int next;
+                while ((next = nextIndex()) >= 0)
+                    load(next);
+            }
+        };
+        for (int i = 0; i < workers; i++)
+            MleMediaLoader.getInstance().execute(worker);
+    }
+
+    /**
+     * Start loading the indices, if not already started, and wait for them.
+     *
+     * @return <b>true</b> if every index was loaded; <b>false</b> if any failed.
+     *
+     * @throws InterruptedException This exception is thrown if the calling thread is
+     * interrupted while waiting.
+     */
+    public boolean await() throws InterruptedException
+    {
+        start();
+        synchronized (this)
+        {
+            while (m_done < m_count)
+                wait();
+            return (m_failed == 0);
+        }
+    }
+
+    /**
+     * Determine whether every index has been loaded or has failed.
+     *
+     * @return <b>true</b> if the prefetch has started and finished.
+     */
+    public synchronized boolean isDone()
+    {
+        return m_started && (m_done == m_count);
+    }
+
+    /**
+     * Get the number of indices which failed to load.
+     *
+     * @return The failure count.
+     */
+    public synchronized int getFailedCount()
+    {
+        return m_failed;
+    }
+
+    /**
+     * Release the media references held by the prefetch.
+     * <p>
+     * Call this once the Actors have set their properties. Indices still loading are
+     * released as they finish.
+     * </p>
+     */
+    public synchronized void release()
+    {
+        if (m_released)
+            return;
+        m_released = true;
+        if (m_mrefs == null)
+            return;
+
+        // Indices not yet claimed are not loaded.
+        m_done += m_count - m_next;
+        m_next = m_count;
+        notifyAll();
+        MleMediaRefCache cache = MleMediaRefCache.getInstance();
+        for (int i = 0; i < m_mrefs.length; i++)
+        {
+            cache.release(m_mrefs[i]);
+            m_mrefs[i] = null;
+        }
+    }
+
+    // Claim the position of the next index to load, or -1 if there is none.
+    private synchronized int nextIndex()
+    {
+        return (m_next < m_count) ? m_next++ : -1;
+    }
+
+    // Load the index at a position, on a background thread.
+    private void load(int next)
+    {
+        MleMediaRef mref = null;
+        long start = MleActorMetrics.start();
+        try
+        {
+            mref = MleMediaRefCache.getInstance().acquire(m_indices[next]);
+        } catch (MleDppException ex)
+        {
+            // The Actor needing the media raises the error when it loads it.
+        }
+        if (m_metrics != null)
+            m_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+
+        synchronized (this)
+        {
+            if (mref == null)
+                m_failed++;
+            else if (m_released)
+                MleMediaRefCache.getInstance().release(mref);
+            else
+                m_mrefs[next] = mref;
+            m_done++;
+            notifyAll();
+        }
+    }
+}
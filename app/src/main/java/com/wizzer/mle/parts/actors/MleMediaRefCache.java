@@ -0,0 +1,781 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+import com.wizzer.mle.runtime.dpp.MleDppLoader;
+
+import com.wizzer.mle.parts.mrefs.MleImageMediaRef;
+import com.wizzer.mle.parts.mrefs.MleModelMediaRef;
+import com.wizzer.mle.parts.mrefs.MleTextureMapMediaRef;
+
+/**
+ * A process-wide, reference-counted cache of media references.
+ * <p>
+ * Media references loaded from the DPP are keyed by their Table-of-Contents index.
+ * Media registered from inline payloads are keyed by the kind of media and a hash of
+ * the content, so identical payloads share one media reference. Actors acquire a
+ * media reference in <code>setProperty()</code> and release it in <code>dispose()</code>.
+ * </p><p>
+ * Entries which are no longer referenced stay in the cache until the total size of
+ * the cached media exceeds the byte budget, at which point the least recently used
+ * unreferenced entries are evicted. Entries loaded from the DPP are charged a
+ * configurable estimated size, since their payload size is not known to the cache.
+ * </p><p>
+ * The DPP loader reads from one shared file and is not safe to call from several
+ * threads, so loads from the DPP are made one at a time, whichever thread acquires
+ * them; hits and other media are not held up by a load in progress.
+ * </p><p>
+ * Media may also be backed by a <code>ByteBuffer</code>, registered without copying:
+ * an existing buffer, a memory-mapped region of a file, or a direct buffer holding
+ * an inline payload at least as large as the direct threshold. Buffer-backed entries
+ * are dropped, and their media unregistered, as soon as the last reference is
+ * released, so the mapped or direct memory is freed once the Actors using it are
+ * disposed.
+ * </p>
+ */
+public final class MleMediaRefCache
+{
+    /** Media for a texture map. */
+    public static final int MEDIA_TEXTURE = 0;
+    /** Media for a 3D model. */
+    public static final int MEDIA_MODEL   = 1;
+    /** Media for an image. */
+    public static final int MEDIA_IMAGE   = 2;
+
+    /** The default byte budget, 32 MiB. */
+    public static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+    /** The default size charged for an entry loaded from the DPP, 64 KiB. */
+    public static final int DEFAULT_DPP_ENTRY_SIZE = 64 * 1024;
+    /** The default size from which inline payloads are held in direct buffers, 256 KiB. */
+    public static final int DEFAULT_DIRECT_THRESHOLD = 256 * 1024;
+
+    // The singleton instance.
+    private static final MleMediaRefCache g_theCache = new MleMediaRefCache();
+
+    // A cached media reference.
+    private static final class Entry
+    {
+        // The cached media reference.
+        final MleMediaRef m_mref;
+        // The size charged against the budget.
+        final long m_size;
+        // The key of the entry.
+        final Object m_key;
+        // Whether the media is backed by a buffer, dropped once unreferenced.
+        final boolean m_buffer;
+        // The number of outstanding references.
+        int m_refCount = 1;
+        // The media reference prepared from this entry's media, or null.
+        MleMediaRef m_prepared = null;
+
+        Entry(Object key, MleMediaRef mref, long size, boolean buffer)
+        {
+            m_key = key;
+            m_mref = mref;
+            m_size = size;
+            m_buffer = buffer;
+        }
+    }
+
+    // The entries loaded from the DPP by Table-of-Contents index, in an open
+    // addressing table so that a hit needs no boxed key.
+    private static final class IndexTable
+    {
+        int[] m_keys = new int[16];
+        Entry[] m_entries = new Entry[16];
+        int m_size = 0;
+
+        Entry get(int key)
+        {
+            int mask = m_keys.length - 1;
+            for (int i = hash(key) & mask; m_entries[i] != null; i = (i + 1) & mask)
+                if (m_keys[i] == key) return m_entries[i];
+            return null;
+        }
+
+        void put(int key, Entry entry)
+        {
+            if ((m_size + 1) * 2 > m_keys.length)
+                resize(m_keys.length * 2);
+            int mask = m_keys.length - 1;
+            int i = hash(key) & mask;
+            while ((m_entries[i] != null) && (m_keys[i] != key))
+                i = (i + 1) & mask;
+            if (m_entries[i] == null) m_size++;
+            m_keys[i] = key;
+            m_entries[i] = entry;
+        }
+
+        void remove(int key)
+        {
+            int mask = m_keys.length - 1;
+            int i = hash(key) & mask;
+            while (m_entries[i] != null)
+            {
+                if (m_keys[i] == key) break;
+                i = (i + 1) & mask;
+            }
+            if (m_entries[i] == null) return;
+            m_entries[i] = null;
+            m_size--;
+            // Shift back the entries of the run following the hole.
+            for (int j = (i + 1) & mask; m_entries[j] != null; j = (j + 1) & mask)
+            {
+                int home = hash(m_keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask))
+                {
+                    m_keys[i] = m_keys[j];
+                    m_entries[i] = m_entries[j];
+                    m_entries[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void resize(int capacity)
+        {
+            int[] keys = m_keys;
+            Entry[] entries = m_entries;
+            m_keys = new int[capacity];
+            m_entries = new Entry[capacity];
+            m_size = 0;
+            for (int i = 0; i < keys.length; i++)
+                if (entries[i] != null) put(keys[i], entries[i]);
+        }
+
+        private static int hash(int key)
+        {
+            return key * 0x9e3779b9 ^ (key >>> 16);
+        }
+    }
+
+    // The key for media backed by a buffer.
+    private static final class BufferKey
+    {
+        final int m_kind;
+        final ByteBuffer m_data;
+        final int m_hash;
+
+        BufferKey(int kind, ByteBuffer data)
+        {
+            m_kind = kind;
+            m_data = data;
+            // FNV-1a over the kind and the payload, as for inline payloads.
+            int hash = 0x811c9dc5 ^ kind;
+            for (int i = data.position(), limit = data.limit(); i < limit; i++)
+                hash = (hash ^ (data.get(i) & 0xff)) * 0x01000193;
+            m_hash = hash;
+        }
+
+        public int hashCode()
+        {
+            return m_hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (! (obj instanceof BufferKey)) return false;
+            BufferKey other = (BufferKey) obj;
+            return (m_hash == other.m_hash) && (m_kind == other.m_kind) && m_data.equals(other.m_data);
+        }
+    }
+
+    // The key for media mapped from a region of a file.
+    private static final class FileKey
+    {
+        final int m_kind;
+        final String m_path;
+        final long m_offset;
+        final long m_length;
+
+        FileKey(int kind, String path, long offset, long length)
+        {
+            m_kind = kind;
+            m_path = path;
+            m_offset = offset;
+            m_length = length;
+        }
+
+        public int hashCode()
+        {
+            return ((m_path.hashCode() * 31 + m_kind) * 31 + (int) (m_offset ^ (m_offset >>> 32))) * 31 +
+                   (int) (m_length ^ (m_length >>> 32));
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (! (obj instanceof FileKey)) return false;
+            FileKey other = (FileKey) obj;
+            return (m_kind == other.m_kind) && (m_offset == other.m_offset) &&
+                   (m_length == other.m_length) && m_path.equals(other.m_path);
+        }
+    }
+
+    // The key for media registered from an inline payload.
+    private static final class ContentKey
+    {
+        int m_kind;
+        int m_hash;
+        byte[] m_data;
+        int m_length;
+
+        ContentKey(int kind, byte[] data, int length)
+        {
+            set(kind, data, length);
+        }
+
+        void set(int kind, byte[] data, int length)
+        {
+            m_kind = kind;
+            m_data = data;
+            m_length = length;
+            // FNV-1a over the kind and the payload.
+            int hash = 0x811c9dc5 ^ kind;
+            for (int i = 0; i < length; i++)
+                hash = (hash ^ (data[i] & 0xff)) * 0x01000193;
+            m_hash = hash;
+        }
+
+        public int hashCode()
+        {
+            return m_hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (! (obj instanceof ContentKey)) return false;
+            ContentKey other = (ContentKey) obj;
+            if ((m_hash != other.m_hash) || (m_kind != other.m_kind) || (m_length != other.m_length))
+                return false;
+            for (int i = 0; i < m_length; i++)
+                if (m_data[i] != other.m_data[i]) return false;
+            return true;
+        }
+    }
+
+    // All entries in least recently used order.
+    private final LinkedHashMap<Object, Entry> m_entries = new LinkedHashMap<Object, Entry>(64, 0.75f, true);
+    // The entries loaded from the DPP, by Table-of-Contents index.
+    private final IndexTable m_byIndex = new IndexTable();
+    // The entries by media reference, used to release them.
+    private final IdentityHashMap<MleMediaRef, Entry> m_byMediaRef = new IdentityHashMap<MleMediaRef, Entry>();
+    // Held while loading from the DPP, which may only be read by one thread at a time.
+    private final Object m_dppLock = new Object();
+    // Key used to probe for inline payloads without allocating.
+    private final ContentKey m_probe = new ContentKey(0, new byte[0], 0);
+
+    // The byte budget.
+    private long m_budget = DEFAULT_BUDGET;
+    // The size charged for an entry loaded from the DPP.
+    private int m_dppEntrySize = DEFAULT_DPP_ENTRY_SIZE;
+    // The size from which inline payloads are held in direct buffers.
+    private volatile int m_directThreshold = DEFAULT_DIRECT_THRESHOLD;
+    // The total size of the cached entries.
+    private long m_size = 0;
+
+    // Statistics.
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_evictions = 0;
+
+    // Hide default constructor.
+    private MleMediaRefCache() {}
+
+    /**
+     * Get the process-wide cache.
+     *
+     * @return The cache is returned.
+     */
+    public static MleMediaRefCache getInstance()
+    {
+        return g_theCache;
+    }
+
+    /**
+     * Acquire the media reference for an entry in the DPP Table-of-Contents.
+     * <p>
+     * The media reference is loaded from the DPP on a miss. The caller must
+     * <code>release()</code> it when done.
+     * </p>
+     *
+     * @param index The DPP Table-of-Contents index.
+     *
+     * @return The shared media reference.
+     *
+     * @throws MleDppException This exception is thrown if the media reference
+     * can not be loaded.
+     */
+    public MleMediaRef acquire(int index) throws MleDppException
+    {
+        synchronized (this)
+        {
+            Entry entry = m_byIndex.get(index);
+            if (entry != null)
+            {
+                // Touch the entry so that it is the most recently used.
+                m_entries.get(entry.m_key);
+                m_hits++;
+                entry.m_refCount++;
+                return entry.m_mref;
+            }
+            m_misses++;
+        }
+
+        // Load outside the cache lock so that hits may proceed, but one load at a
+        // time, since reads of the DPP file must not interleave.
+        synchronized (m_dppLock)
+        {
+            synchronized (this)
+            {
+                // Another thread may have loaded it in the meantime.
+                Entry entry = m_byIndex.get(index);
+                if (entry != null)
+                {
+                    m_entries.get(entry.m_key);
+                    entry.m_refCount++;
+                    return entry.m_mref;
+                }
+            }
+            MleMediaRef mref = MleDppLoader.getInstance().mleLoadMediaRef(index);
+            synchronized (this)
+            {
+                return insert(Integer.valueOf(index), mref, m_dppEntrySize, false).m_mref;
+            }
+        }
+    }
+
+    /**
+     * Acquire the media reference for an inline payload.
+     * <p>
+     * The payload is only copied, and the media registered, on a miss, so the caller
+     * may pass a scratch buffer. The caller must <code>release()</code> the media
+     * reference when done.
+     * </p>
+     *
+     * @param kind The kind of media; one of <code>MEDIA_TEXTURE</code>,
+     * <code>MEDIA_MODEL</code> or <code>MEDIA_IMAGE</code>.
+     * @param data The payload.
+     * @param length The number of bytes of the payload in <code>data</code>.
+     *
+     * @return The shared media reference.
+     */
+    public synchronized MleMediaRef acquire(int kind, byte[] data, int length)
+    {
+        m_probe.set(kind, data, length);
+        Entry entry = m_entries.get(m_probe);
+        m_probe.m_data = null;
+        if (entry != null)
+        {
+            m_hits++;
+            entry.m_refCount++;
+            return entry.m_mref;
+        }
+        m_misses++;
+
+        byte[] copy = Arrays.copyOf(data, length);
+        MleMediaRef mref = createMediaRef(kind);
+        mref.registerMedia(0, length, copy);
+        insert(new ContentKey(kind, copy, length), mref, length, false);
+        return mref;
+    }
+
+    /**
+     * Acquire the media reference for the inline payload of a property.
+     * <p>
+     * Payloads smaller than the direct threshold are read into a scratch buffer and
+     * shared as by <code>acquire(int, byte[], int)</code>; larger payloads are read
+     * into a direct buffer, off the Java heap, and shared as by
+     * <code>acquire(int, ByteBuffer)</code>. The caller must <code>release()</code>
+     * the media reference when done.
+     * </p>
+     *
+     * @param kind The kind of media; one of <code>MEDIA_TEXTURE</code>,
+     * <code>MEDIA_MODEL</code> or <code>MEDIA_IMAGE</code>.
+     * @param property The property holding the payload.
+     *
+     * @return The shared media reference.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    public MleMediaRef acquire(int kind, IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
+        if (property.getLength() < m_directThreshold)
+            return acquire(kind, decoder.read(property), property.getLength());
+        return acquire(kind, decoder.readDirect(property));
+    }
+
+    /**
+     * Acquire the media reference for a payload held in a buffer.
+     * <p>
+     * The media is registered as a read-only view of the remaining bytes of the
+     * buffer, without copying them, so the buffer must not be modified afterwards.
+     * Identical payloads share one media reference. The caller must
+     * <code>release()</code> the media reference when done.
+     * </p>
+     *
+     * @param kind The kind of media; one of <code>MEDIA_TEXTURE</code>,
+     * <code>MEDIA_MODEL</code> or <code>MEDIA_IMAGE</code>.
+     * @param data The payload; heap, direct or memory-mapped.
+     *
+     * @return The shared media reference.
+     */
+    public synchronized MleMediaRef acquire(int kind, ByteBuffer data)
+    {
+        BufferKey key = new BufferKey(kind, data.slice().asReadOnlyBuffer());
+        Entry entry = m_entries.get(key);
+        if (entry != null)
+        {
+            m_hits++;
+            entry.m_refCount++;
+            return entry.m_mref;
+        }
+        m_misses++;
+
+        MleMediaRef mref = createMediaRef(kind);
+        mref.registerMedia(0, key.m_data.remaining(), key.m_data);
+        insert(key, mref, key.m_data.remaining(), true);
+        return mref;
+    }
+
+    /**
+     * Acquire the media reference for a region of a file, mapped into memory.
+     * <p>
+     * The region is mapped read-only on a miss and registered without copying; the
+     * same region of the same file shares one media reference. The caller must
+     * <code>release()</code> the media reference when done.
+     * </p>
+     *
+     * @param kind The kind of media; one of <code>MEDIA_TEXTURE</code>,
+     * <code>MEDIA_MODEL</code> or <code>MEDIA_IMAGE</code>.
+     * @param file The file.
+     * @param offset The offset of the region in the file.
+     * @param length The length of the region, at most 2 GiB.
+     *
+     * @return The shared media reference.
+     *
+     * @throws IOException This exception is thrown if the region can not be mapped.
+     */
+    public MleMediaRef acquire(int kind, File file, long offset, long length) throws IOException
+    {
+        if ((offset < 0) || (length < 0) || (length > Integer.MAX_VALUE))
+            throw new IOException("MleMediaRefCache: Invalid region of " + file + ".");
+        FileKey key = new FileKey(kind, file.getCanonicalPath(), offset, length);
+        synchronized (this)
+        {
+            Entry entry = m_entries.get(key);
+            if (entry != null)
+            {
+                m_hits++;
+                entry.m_refCount++;
+                return entry.m_mref;
+            }
+            m_misses++;
+        }
+
+        // Map outside the lock so that other loads may proceed; the mapping remains
+        // valid once the file is closed.
+        ByteBuffer data;
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } finally
+        {
+            in.close();
+        }
+
+        synchronized (this)
+        {
+            // Another thread may have mapped it in the meantime.
+            Entry entry = m_entries.get(key);
+            if (entry != null)
+            {
+                entry.m_refCount++;
+                return entry.m_mref;
+            }
+            MleMediaRef mref = createMediaRef(kind);
+            mref.registerMedia(0, (int) length, data);
+            return insert(key, mref, length, true).m_mref;
+        }
+    }
+
+    /**
+     * Release a media reference acquired from the cache.
+     * <p>
+     * Media references which did not come from the cache, and <b>null</b>, are ignored.
+     * </p>
+     *
+     * @param mref The media reference to release.
+     */
+    public synchronized void release(MleMediaRef mref)
+    {
+        if (mref == null) return;
+        Entry entry = m_byMediaRef.get(mref);
+        if ((entry == null) || (entry.m_refCount == 0)) return;
+        if (--entry.m_refCount > 0) return;
+        if (entry.m_buffer)
+        {
+            // Drop the buffer now rather than holding mapped or direct memory.
+            remove(entry);
+            entry.m_mref.registerMedia(0, 0, null);
+        } else
+            evict();
+    }
+
+    /**
+     * Acquire the media reference recorded as prepared from a cached media
+     * reference.
+     *
+     * @param source The cached media reference.
+     *
+     * @return The prepared media reference, which the caller must
+     * <code>release()</code>, or <b>null</b> if none is recorded or it is no longer
+     * cached.
+     */
+    synchronized MleMediaRef acquirePrepared(MleMediaRef source)
+    {
+        Entry entry = m_byMediaRef.get(source);
+        if ((entry == null) || (entry.m_prepared == null))
+            return null;
+        Entry prepared = m_byMediaRef.get(entry.m_prepared);
+        if (prepared == null)
+        {
+            // The prepared media has been dropped since.
+            entry.m_prepared = null;
+            return null;
+        }
+        m_hits++;
+        prepared.m_refCount++;
+        return prepared.m_mref;
+    }
+
+    /**
+     * Record the media reference prepared from a cached media reference, for as
+     * long as both are cached.
+     *
+     * @param source The cached media reference.
+     * @param prepared The media reference prepared from it, acquired from the cache.
+     */
+    synchronized void setPrepared(MleMediaRef source, MleMediaRef prepared)
+    {
+        Entry entry = m_byMediaRef.get(source);
+        if (entry != null)
+            entry.m_prepared = prepared;
+    }
+
+    /**
+     * Get the DPP Table-of-Contents index a media reference was loaded from.
+     *
+     * @param mref The media reference.
+     *
+     * @return The index, or <b>-1</b> if the media reference was not loaded from
+     * the DPP by the cache.
+     */
+    public synchronized int getIndex(MleMediaRef mref)
+    {
+        Entry entry = (mref != null) ? m_byMediaRef.get(mref) : null;
+        return ((entry != null) && (entry.m_key instanceof Integer)) ?
+            ((Integer) entry.m_key).intValue() : -1;
+    }
+
+    /**
+     * Set the byte budget for the cache.
+     * <p>
+     * Unreferenced entries are evicted immediately if the cache is over the new budget.
+     * </p>
+     *
+     * @param bytes The budget in bytes.
+     */
+    public synchronized void setBudget(long bytes)
+    {
+        m_budget = bytes;
+        evict();
+    }
+
+    /**
+     * Get the byte budget for the cache.
+     *
+     * @return The budget in bytes.
+     */
+    public synchronized long getBudget()
+    {
+        return m_budget;
+    }
+
+    /**
+     * Set the size charged against the budget for each entry loaded from the DPP.
+     *
+     * @param bytes The estimated size in bytes.
+     */
+    public synchronized void setDppEntrySize(int bytes)
+    {
+        m_dppEntrySize = bytes;
+    }
+
+    /**
+     * Set the size from which inline payloads are held in direct buffers.
+     *
+     * @param bytes The threshold in bytes, or <code>Integer.MAX_VALUE</code> to
+     * keep every inline payload on the Java heap.
+     */
+    public void setDirectThreshold(int bytes)
+    {
+        m_directThreshold = bytes;
+    }
+
+    /**
+     * Get the size from which inline payloads are held in direct buffers.
+     *
+     * @return The threshold in bytes.
+     */
+    public int getDirectThreshold()
+    {
+        return m_directThreshold;
+    }
+
+    /**
+     * Get the total size of the cached entries.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSize()
+    {
+        return m_size;
+    }
+
+    /**
+     * Get the number of cached entries, referenced or not.
+     *
+     * @return The entry count.
+     */
+    public synchronized int getEntryCount()
+    {
+        return m_entries.size();
+    }
+
+    /**
+     * Get the number of acquisitions served from the cache.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Get the number of acquisitions which had to load or register media.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Get the number of entries evicted to stay within the budget.
+     *
+     * @return The eviction count.
+     */
+    public synchronized long getEvictions()
+    {
+        return m_evictions;
+    }
+
+    /**
+     * Reset the hit, miss and eviction counters.
+     */
+    public synchronized void resetStatistics()
+    {
+        m_hits = 0;
+        m_misses = 0;
+        m_evictions = 0;
+    }
+
+    /**
+     * Remove every unreferenced entry from the cache.
+     */
+    public synchronized void trim()
+    {
+        long budget = m_budget;
+        m_budget = 0;
+        evict();
+        m_budget = budget;
+    }
+
+    // Add an entry to the cache, holding one reference.
+    private Entry insert(Object key, MleMediaRef mref, long size, boolean buffer)
+    {
+        Entry entry = new Entry(key, mref, size, buffer);
+        m_entries.put(key, entry);
+        m_byMediaRef.put(mref, entry);
+        if (key instanceof Integer)
+            m_byIndex.put(((Integer) key).intValue(), entry);
+        m_size += size;
+        evict();
+        return entry;
+    }
+
+    // Evict the least recently used unreferenced entries until within budget.
+    private void evict()
+    {
+        if (m_size <= m_budget) return;
+        Iterator<Entry> iter = m_entries.values().iterator();
+        while ((m_size > m_budget) && iter.hasNext())
+        {
+            Entry entry = iter.next();
+            if (entry.m_refCount > 0) continue;
+            iter.remove();
+            m_byMediaRef.remove(entry.m_mref);
+            if (entry.m_key instanceof Integer)
+                m_byIndex.remove(((Integer) entry.m_key).intValue());
+            m_size -= entry.m_size;
+            m_evictions++;
+        }
+    }
+
+    // Remove an entry from the cache.
+    private void remove(Entry entry)
+    {
+        m_entries.remove(entry.m_key);
+        m_byMediaRef.remove(entry.m_mref);
+        if (entry.m_key instanceof Integer)
+            m_byIndex.remove(((Integer) entry.m_key).intValue());
+        m_size -= entry.m_size;
+    }
+
+    // Create an empty media reference of the specified kind.
+    private static MleMediaRef createMediaRef(int kind)
+    {
+        switch (kind)
+        {
+            case MEDIA_TEXTURE:
+                return new MleTextureMapMediaRef();
+            case MEDIA_MODEL:
+                return new MleModelMediaRef();
+            case MEDIA_IMAGE:
+                return new MleImageMediaRef();
+            default:
+                throw new IllegalArgumentException("MleMediaRefCache: Unknown media kind " + kind + ".");
+        }
+    }
+}
@@ -0,0 +1,343 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * The mip levels of a texture, as stored in a <code>MleTextureCache</code> file.
+ * <p>
+ * A mip chain is a view of the file's buffer, usually memory-mapped; the levels are
+ * read in place, so only the pages of the levels a renderer touches are paged in.
+ * The file is big-endian:
+ * </p>
+ * <ul>
+ * <li>A 40 byte header: the magic number, the version, the 64-bit hash and the
+ * length of the source image, the pixel format, the width and height of the
+ * first level, the number of levels, and a reserved word.</li>
+ * <li>For each level, its width, height, offset in the file and length.</li>
+ * <li>The pixels of each level, largest first, each aligned to 16 bytes.</li>
+ * </ul>
+ */
+public final class MleMipChain
+{
+    /** The magic number of a mip chain, "MLTX". */
+    public static final int MAGIC = 0x4d4c5458;
+    /** The version of the format written. */
+    public static final int VERSION = 1;
+    /** Pixels of 8-bit red, green, blue and alpha, as copied from an ARGB_8888 bitmap. */
+    public static final int FORMAT_RGBA8888 = 1;
+    /** The maximum number of levels, enough for a 32768 pixel texture. */
+    public static final int MAX_LEVELS = 16;
+
+    // The size of the header and of each level entry.
+    private static final int HEADER_SIZE = 40;
+    private static final int LEVEL_SIZE = 16;
+    // The alignment of the level data.
+    private static final int ALIGNMENT = 16;
+
+    // The buffer holding the chain.
+    private final ByteBuffer m_data;
+    // The hash and length of the source image.
+    private final long m_sourceHash;
+    private final int m_sourceLength;
+    // The pixel format.
+    private final int m_format;
+    // The number of levels.
+    private final int m_levelCount;
+
+    // Wrap a validated buffer.
+    private MleMipChain(ByteBuffer data)
+    {
+        m_data = data;
+        m_sourceHash = data.getLong(8);
+        m_sourceLength = data.getInt(16);
+        m_format = data.getInt(20);
+        m_levelCount = data.getInt(32);
+    }
+
+    /**
+     * Read a mip chain from a buffer.
+     *
+     * @param data The buffer, from position 0; it is not copied.
+     *
+     * @return The mip chain, or <b>null</b> if the buffer does not hold a valid mip
+     * chain of the current version.
+     */
+    public static MleMipChain read(ByteBuffer data)
+    {
+        data = data.duplicate();
+        data.position(0);
+        int size = data.limit();
+        if ((size < HEADER_SIZE) || (data.getInt(0) != MAGIC) || (data.getInt(4) != VERSION) ||
+            (data.getInt(20) != FORMAT_RGBA8888))
+            return null;
+        int count = data.getInt(32);
+        if ((count <= 0) || (count > MAX_LEVELS) || (size < HEADER_SIZE + count * LEVEL_SIZE))
+            return null;
+        for (int level = 0; level < count; level++)
+        {
+            int entry = HEADER_SIZE + level * LEVEL_SIZE;
+            int width = data.getInt(entry), height = data.getInt(entry + 4);
+            int offset = data.getInt(entry + 8), length = data.getInt(entry + 12);
+            if ((width <= 0) || (height <= 0) || (offset < 0) || ((long) width * height * 4 != length) ||
+                ((long) offset + length > size))
+                return null;
+        }
+        return new MleMipChain(data);
+    }
+
+    /**
+     * Read the mip chain held by a media reference.
+     *
+     * @param mref The media reference, as returned by <code>MleTextureCache</code>.
+     *
+     * @return The mip chain, or <b>null</b> if the media is not a mip chain.
+     */
+    public static MleMipChain read(MleMediaRef mref)
+    {
+        Object media = (mref != null) ? mref.getMedia() : null;
+        return (media instanceof ByteBuffer) ? read((ByteBuffer) media) : null;
+    }
+
+    /**
+     * Get the hash of the source image.
+     *
+     * @return The 64-bit FNV-1a hash of the encoded source.
+     */
+    public long getSourceHash()
+    {
+        return m_sourceHash;
+    }
+
+    /**
+     * Get the length of the source image.
+     *
+     * @return The length of the encoded source in bytes.
+     */
+    public int getSourceLength()
+    {
+        return m_sourceLength;
+    }
+
+    /**
+     * Get the pixel format.
+     *
+     * @return One of the <code>FORMAT_</code> constants.
+     */
+    public int getFormat()
+    {
+        return m_format;
+    }
+
+    /**
+     * Get the number of levels.
+     *
+     * @return The level count, from 1 to <code>MAX_LEVELS</code>.
+     */
+    public int getLevelCount()
+    {
+        return m_levelCount;
+    }
+
+    /**
+     * Get the width of a level.
+     *
+     * @param level The level, 0 being the full size.
+     *
+     * @return The width in pixels.
+     */
+    public int getWidth(int level)
+    {
+        return m_data.getInt(entry(level));
+    }
+
+    /**
+     * Get the height of a level.
+     *
+     * @param level The level, 0 being the full size.
+     *
+     * @return The height in pixels.
+     */
+    public int getHeight(int level)
+    {
+        return m_data.getInt(entry(level) + 4);
+    }
+
+    /**
+     * Get the pixels of a level.
+     *
+     * @param level The level, 0 being the full size.
+     *
+     * @return A read-only view of the pixels, row by row from the top; reading it
+     * pages in only this level.
+     */
+    public ByteBuffer getLevel(int level)
+    {
+        int entry = entry(level);
+        ByteBuffer data = m_data.duplicate();
+        int offset = data.getInt(entry + 8);
+        data.limit(offset + data.getInt(entry + 12));
+        data.position(offset);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Select the level to sample for a texture drawn at a size.
+     *
+     * @param width The width drawn, in pixels.
+     * @param height The height drawn, in pixels.
+     *
+     * @return The smallest level at least as large as the drawn size in both
+     * dimensions, or the smallest level.
+     */
+    public int selectLevel(int width, int height)
+    {
+        int level = 0;
+        while ((level + 1 < m_levelCount) &&
+               (getWidth(level + 1) >= width) && (getHeight(level + 1) >= height))
+            level++;
+        return level;
+    }
+
+    // Get the offset of the entry of a level.
+    private int entry(int level)
+    {
+        if ((level < 0) || (level >= m_levelCount))
+            throw new IndexOutOfBoundsException("MleMipChain: Invalid level " + level + ".");
+        return HEADER_SIZE + level * LEVEL_SIZE;
+    }
+
+    /**
+     * Get the number of levels generated for an image, down to one pixel.
+     *
+     * @param width The width of the image.
+     * @param height The height of the image.
+     *
+     * @return The level count.
+     */
+    public static int getLevelCount(int width, int height)
+    {
+        int count = 1;
+        while (((width > 1) || (height > 1)) && (count < MAX_LEVELS))
+        {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Generate the mip levels of an image and write them as a mip chain.
+     * <p>
+     * Each level is half the size of the previous one, rounded down, each pixel
+     * averaging a 2 by 2 box of the previous level; odd edges repeat the last row
+     * or column. Only two levels are held at a time.
+     * </p>
+     *
+     * @param out The channel to write to.
+     * @param sourceHash The hash of the source image.
+     * @param sourceLength The length of the source image.
+     * @param pixels The pixels of the first level, in RGBA order, from position 0.
+     * @param width The width of the first level.
+     * @param height The height of the first level.
+     *
+     * @return The number of bytes written.
+     *
+     * @throws IOException This exception is thrown if the chain can not be written.
+     */
+    public static long write(WritableByteChannel out, long sourceHash, int sourceLength,
+                             ByteBuffer pixels, int width, int height) throws IOException
+    {
+        // The chain is addressed with int offsets, so it must be smaller than 2 GiB.
+        if ((width <= 0) || (height <= 0) || ((long) width * height * 4 > Integer.MAX_VALUE / 2) ||
+            (pixels.limit() < width * height * 4))
+            throw new IOException("MleMipChain: Invalid image " + width + "x" + height + ".");
+
+        // The header and the level table.
+        int count = getLevelCount(width, height);
+        ByteBuffer header = ByteBuffer.allocate(align(HEADER_SIZE + count * LEVEL_SIZE));
+        header.putInt(MAGIC).putInt(VERSION).putLong(sourceHash).putInt(sourceLength);
+        header.putInt(FORMAT_RGBA8888).putInt(width).putInt(height).putInt(count).putInt(0);
+        int offset = header.capacity();
+        for (int level = 0, w = width, h = height; level < count; level++)
+        {
+            header.putInt(w).putInt(h).putInt(offset).putInt(w * h * 4);
+            offset += align(w * h * 4);
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        header.clear();
+        long written = writeFully(out, header);
+
+        // The levels, each generated from the previous one.
+        ByteBuffer padding = ByteBuffer.allocate(ALIGNMENT);
+        ByteBuffer level = pixels.duplicate();
+        level.position(0);
+        level.limit(width * height * 4);
+        for (int l = 0; l < count; l++)
+        {
+            int length = level.limit();
+            written += writeFully(out, level.duplicate());
+            padding.clear();
+            padding.limit(align(length) - length);
+            written += writeFully(out, padding);
+            if (l + 1 < count)
+            {
+                int w = Math.max(1, width / 2), h = Math.max(1, height / 2);
+                ByteBuffer next = ByteBuffer.allocate(w * h * 4);
+                downsample(level, width, height, next, w, h);
+                level = next;
+                width = w;
+                height = h;
+            }
+        }
+        return written;
+    }
+
+    // Average 2 by 2 boxes of a level into the next.
+    static void downsample(ByteBuffer src, int width, int height, ByteBuffer dst, int w, int h)
+    {
+        int stride = width * 4;
+        for (int y = 0; y < h; y++)
+        {
+            int row0 = Math.min(2 * y, height - 1) * stride;
+            int row1 = Math.min(2 * y + 1, height - 1) * stride;
+            for (int x = 0; x < w; x++)
+            {
+                int col0 = Math.min(2 * x, width - 1) * 4;
+                int col1 = Math.min(2 * x + 1, width - 1) * 4;
+                for (int c = 0; c < 4; c++)
+                {
+                    int sum = (src.get(row0 + col0 + c) & 0xff) + (src.get(row0 + col1 + c) & 0xff) +
+                              (src.get(row1 + col0 + c) & 0xff) + (src.get(row1 + col1 + c) & 0xff);
+                    dst.put((y * w + x) * 4 + c, (byte) ((sum + 2) >> 2));
+                }
+            }
+        }
+    }
+
+    // Round a length up to the alignment.
+    private static int align(int length)
+    {
+        return (length + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+
+    // Write the remaining bytes of a buffer.
+    private static int writeFully(WritableByteChannel out, ByteBuffer data) throws IOException
+    {
+        int n = data.remaining();
+        while (data.hasRemaining())
+            out.write(data);
+        return n;
+    }
+}
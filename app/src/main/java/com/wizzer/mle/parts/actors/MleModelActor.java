@@ -4,33 +4,49 @@ import com.wizzer.mle.runtime.core.IMleProp;
 import com.wizzer.mle.runtime.core.MleActor;
 import com.wizzer.mle.runtime.core.MleMediaRef;
 import com.wizzer.mle.runtime.dpp.MleDppException;
-import com.wizzer.mle.runtime.dpp.MleDppLoader;
-import com.wizzer.mle.runtime.scheduler.MleScheduler;
-import com.wizzer.mle.runtime.scheduler.MlePhase;
-import com.wizzer.mle.runtime.scheduler.MleTask;
-import com.wizzer.mle.runtime.MleTitle;
 import com.wizzer.mle.runtime.core.MleRuntimeException;
 
-import com.wizzer.mle.parts.mrefs.MleTextureMapMediaRef;
-import com.wizzer.mle.parts.mrefs.MleModelMediaRef;
-
 import com.wizzer.mle.parts.props.Mle3dModelProperty;
 import com.wizzer.mle.parts.props.Mle3dTranslationProperty;
 import com.wizzer.mle.parts.props.Mle3dQuaternionRotationProperty;
 import com.wizzer.mle.parts.props.Mle3dNonuniformScaleProperty;
 import com.wizzer.mle.parts.props.Mle3dTextureMapProperty;
 
-import com.wizzer.mle.math.MlMath;
 import com.wizzer.mle.math.MlVector3;
 import com.wizzer.mle.math.MlRotation;
-import com.wizzer.mle.math.MlScalar;
 
 import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
 import java.io.IOException;
 
 /**
  * Created by msm on 8/24/16.
+ * <p>
+ * Each initialized model is kept in a spatial index, shared by all models, as a
+ * bounding sphere: the bounding radius of the model, scaled by the largest
+ * component of "scale" and centered at "position". The index follows every
+ * change of position and scale, and may be queried for picking and regions
+ * through <code>getSpatialIndex()</code>. When a frustum is set in
+ * <code>MleBehaviorConfig</code>, models outside it are culled.
+ * </p><p>
+ * A model may have levels of detail, set as an <code>MleLodTable</code> or the
+ * "modelLods" array. Each frame the level is selected by the distance from the
+ * viewpoint in <code>MleBehaviorConfig</code> to "position", and only the model
+ * of the selected level is held; the previous model stays pushed until the new
+ * one has loaded.
+ * </p><p>
+ * When <code>MleTextureCache</code> has a directory, the texture is replaced by
+ * its memory-mapped mip levels, generated on the first run only. The media of the
+ * "texture" property pushed to the Role is then an <code>MleMipChain</code> in the
+ * <code>.mlt</code> format rather than the encoded image, so the cache must only
+ * be enabled for Roles which read it with <code>MleMipChain.read()</code>; a
+ * texture which could not be prepared is still pushed as the encoded image.
+ * </p><p>
+ * When <code>MleInstanceGroup</code> is enabled, a model whose model and texture
+ * are loaded when it is initialized, and which has no levels of detail, joins the
+ * instance group of the models sharing its media. Its Role then receives neither
+ * its media nor its transform; the group's Role draws it as part of one instanced
+ * batch. It pushes to its own Role again once its model or texture changes.
+ * </p>
  */
 public class MleModelActor extends MleActor
 {
@@ -42,28 +58,184 @@ public class MleModelActor extends MleActor
     public Mle3dModelProperty              model;
     public Mle3dTextureMapProperty         texture;
 
-    // This class is used to perform the behavior (via the Scheduler's Task).
-    private class DoBehave implements Runnable
+    /** The identifier of the "position" property. */
+    public static final int PROPERTY_POSITION    = 0;
+    /** The identifier of the "orientation" property. */
+    public static final int PROPERTY_ORIENTATION = 1;
+    /** The identifier of the "scale" property. */
+    public static final int PROPERTY_SCALE       = 2;
+    /** The identifier of the "model" property. */
+    public static final int PROPERTY_MODEL       = 3;
+    /** The identifier of the "texture" property. */
+    public static final int PROPERTY_TEXTURE     = 4;
+    /** The identifier of the "positionKeys" keyframe array. */
+    public static final int PROPERTY_POSITION_KEYS    = 5;
+    /** The identifier of the "orientationKeys" keyframe array. */
+    public static final int PROPERTY_ORIENTATION_KEYS = 6;
+    /** The identifier of the "scaleKeys" keyframe array. */
+    public static final int PROPERTY_SCALE_KEYS       = 7;
+    /** The identifier of the "modelLods" level of detail array. */
+    public static final int PROPERTY_MODEL_LODS       = 8;
+
+    // The property table, indexed by the PROPERTY_ identifiers.
+    static final MlePropertyTable g_properties = new MlePropertyTable(
+        new String[] { "position", "orientation", "scale", "model", "texture",
+                       "positionKeys", "orientationKeys", "scaleKeys", "modelLods" },
+        new int[] { MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_ROTATION,
+                    MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_MEDIAREF,
+                    MlePropertyTable.TYPE_MEDIAREF, MlePropertyTable.TYPE_KEYFRAMES,
+                    MlePropertyTable.TYPE_KEYFRAMES, MlePropertyTable.TYPE_KEYFRAMES,
+                    MlePropertyTable.TYPE_LODS });
+
+    /**
+     * The default spin speed around the y axis, in radians per second.
+     * The default matches the previous 0.035 radians per tick at 60 ticks per second.
+     */
+    public static final float DEFAULT_SPIN_SPEED = 0.035f * 60.0f;
+
+    // The metrics shared by all instances.
+    static final MleActorMetrics g_metrics = MleActorMetrics.register("MleModelActor");
+
+    /** The default bounding radius of a model, before scaling. */
+    public static final float DEFAULT_BOUNDING_RADIUS = 1.0f;
+
+    // The spatial index holding the bounds of the initialized models.
+    static final MleSpatialGrid g_spatialIndex = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+
+    // The behavior group shared by all instances.
+    private static class BehaveGroup extends MleBehaveGroup
     {
-        // The actor which will perform the behavior.
-        private MleModelActor m_actor = null;
+        BehaveGroup() { super("MleModelActor", g_metrics); }
+
+        protected Mle3dQuaternionRotationProperty getOrientation(MleActor actor)
+        { return ((MleModelActor) actor).orientation; }
+
+        protected Mle3dTranslationProperty getPosition(MleActor actor)
+        { return ((MleModelActor) actor).position; }
+
+        protected Mle3dNonuniformScaleProperty getScale(MleActor actor)
+        { return ((MleModelActor) actor).scale; }
+
+        protected void setSlot(MleActor actor, int slot)
+        { ((MleModelActor) actor).m_groupSlot = slot; }
 
-        // Use constructor to set actor.
-        public DoBehave(MleModelActor actor) { m_actor = actor; }
+        protected float getSpinSpeed(MleActor actor)
+        { return ((MleModelActor) actor).m_spinSpeed; }
 
-        // Execute the behavior.
-        public void run()
+        protected MleAnimationClip getAnimationClip(MleActor actor)
+        { return ((MleModelActor) actor).m_clip; }
+
+        protected int getTickDivider(MleActor actor)
+        { return ((MleModelActor) actor).m_tickDivider; }
+
+        protected int getPriority(MleActor actor)
+        { return ((MleModelActor) actor).m_priority; }
+
+        protected MleSpatialGrid getSpatialIndex()
+        { return g_spatialIndex; }
+
+        protected int getSpatialId(MleActor actor)
+        { return ((MleModelActor) actor).m_spatialId; }
+
+        protected void moved(MleActor actor)
+        { ((MleModelActor) actor).updateBounds(); }
+
+        protected boolean batch(MleActor actor, int bits)
         {
-            if (m_actor != null)
-                MleModelActor.behave(m_actor);
+            MleModelActor model = (MleModelActor) actor;
+            if (model.m_instanceGroup == null)
+                return false;
+            model.m_instanceGroup.update(model.m_instanceSlot, model);
+            return true;
         }
+    }
 
-        // Hide default constructor.
-        private DoBehave() {}
+    // The group which performs the behavior during the Actor phase.
+    static final MleBehaveGroup g_behaveGroup = new BehaveGroup();
+
+    // The level of detail group shared by all instances with levels of detail.
+    private static class LodGroup extends MleLodGroup
+    {
+        LodGroup() { super("MleModelActor"); }
+
+        protected void select(MleActor actor, float[] viewpoint)
+        { ((MleModelActor) actor).selectLod(viewpoint); }
+
+        protected void setSlot(MleActor actor, int slot)
+        { ((MleModelActor) actor).m_lodSlot = slot; }
     }
 
-    // The behavior task executed during the Actor phase.
-    private MleTask m_behaveTask = null;
+    // The group which selects the levels of detail during the Actor phase.
+    static final MleLodGroup g_lodGroup = new LodGroup();
+
+    // The slot this actor occupies in the behavior group, or -1 if not a member.
+    private int m_groupSlot = -1;
+
+    // The spin speed around the y axis, in radians per second.
+    private float m_spinSpeed = DEFAULT_SPIN_SPEED;
+
+    // The animation clip, or null.
+    private MleAnimationClip m_clip = null;
+
+    // The number of frames between pushes to the Role.
+    private int m_tickDivider = 1;
+    // The priority of the pushes under a frame budget.
+    private int m_priority = MleBehaviorConfig.PRIORITY_NORMAL;
+
+    // The levels of detail, or null.
+    private MleLodTable m_lods = null;
+    // The selected level of detail, or -1 if none has been selected.
+    private int m_lodLevel = -1;
+    // The slot this actor occupies in the level of detail group, or -1.
+    private int m_lodSlot = -1;
+
+    // The bounding radius of the model, before scaling.
+    private float m_boundingRadius = DEFAULT_BOUNDING_RADIUS;
+    // The identifier in the spatial index, or -1 if not indexed.
+    private int m_spatialId = -1;
+
+    // The media references acquired from the media cache.
+    private MleMediaRef m_textureRef = null;
+    private MleMediaRef m_modelRef = null;
+
+    // The DPP indices of media to load in the background, or -1.
+    private int m_textureIndex = -1;
+    private int m_modelIndex = -1;
+    // The outstanding background loads.
+    private MleMediaLoader.Request m_textureLoad = null;
+    private MleMediaLoader.Request m_modelLoad = null;
+    // The DPP index the texture was loaded from, or -1; the texture prepared by
+    // the texture cache is no longer keyed by it.
+    private int m_textureSource = -1;
+
+    // The instance group drawing this actor, or null, and the slot it occupies.
+    private MleInstanceGroup m_instanceGroup = null;
+    private int m_instanceSlot = -1;
+
+    // Whether the actor has been initialized.
+    private boolean m_initialized = false;
+
+    // The property objects kept from before the actor was recycled, or null.
+    private Mle3dTranslationProperty        m_sparePosition = null;
+    private Mle3dQuaternionRotationProperty m_spareOrientation = null;
+    private Mle3dNonuniformScaleProperty    m_spareScale = null;
+    private Mle3dModelProperty              m_spareModel = null;
+    private Mle3dTextureMapProperty         m_spareTexture = null;
+
+    // The pool of disposed instances, disabled until given a limit.
+    private static final MleActorPool<MleModelActor> g_pool =
+        new MleActorPool<MleModelActor>("MleModelActor")
+        {
+            protected MleModelActor create()
+            {
+                return new MleModelActor();
+            }
+
+            protected void reset(MleModelActor actor) throws MleRuntimeException
+            {
+                actor.reset();
+            }
+        };
 
     /**
      * The default constructor.
@@ -75,18 +247,36 @@ public class MleModelActor extends MleActor
      */
     public void init() throws MleRuntimeException
     {
-        // Update the Role by pushing the property values.
-        if (texture != null) texture.push(this);
-        if (model != null) model.push(this);
+        long start = MleActorMetrics.start();
+
+        // Update the Role by pushing the property values; media deferred by
+        // asynchronous loading is pushed once it has loaded. Instanced models are
+        // drawn by their group instead.
+        if (isInstanceable())
+        {
+            m_instanceGroup = MleInstanceGroup.join(this, model.getProperty(),
+                (texture != null) ? texture.getProperty() : null);
+        } else
+        {
+            if (m_textureIndex >= 0) loadTexture(m_textureIndex);
+            else if (texture != null) texture.push(this);
+            if (m_lods != null) selectLod(MleBehaviorConfig.getViewpoint());
+            else if (m_modelIndex >= 0) loadModel(m_modelIndex, true);
+            else if (model != null) model.push(this);
+        }
+        m_textureIndex = -1;
+        m_modelIndex = -1;
         update();
+        m_initialized = true;
 
-        // Register with the scheduler.
-        MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
-        MlePhase actorPhase = MleTitle.g_theActorPhase;
-        if (actorPhase == null)
-            throw new MleRuntimeException("MleModelActor: Actor phase does not exist.");
-        m_behaveTask = new MleTask(new DoBehave(this), "Do behave");
-        scheduler.addTask(actorPhase, m_behaveTask);
+        // Enter the spatial index before joining, so the group can cull.
+        m_spatialId = g_spatialIndex.add(this, 0.0f, 0.0f, 0.0f, 0.0f);
+        updateBounds();
+
+        // Join the behavior group; it registers with the scheduler.
+        g_behaveGroup.join(this);
+        if (m_lods != null) g_lodGroup.join(this);
+        g_metrics.stop(MleActorMetrics.OP_INIT, start);
     }
 
     /* (non-Javadoc)
@@ -94,54 +284,775 @@ public class MleModelActor extends MleActor
      */
     public void dispose() throws MleRuntimeException
     {
-        // Remove the behave function from the scheduler.
-        MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
-        MlePhase actorPhase = MleTitle.g_theActorPhase;
-        if (actorPhase == null)
-            throw new MleRuntimeException("MleModelActor: Actor phase does not exist.");
-        actorPhase.deleteTask(m_behaveTask);
-        m_behaveTask = null;
+        // Leave the behavior group; it removes itself from the scheduler when empty.
+        g_behaveGroup.leave(m_groupSlot);
+        if (m_instanceGroup != null) m_instanceGroup.leave(m_instanceSlot);
+        m_instanceGroup = null;
+        g_lodGroup.leave(m_lodSlot);
+        m_lodLevel = -1;
+        g_spatialIndex.remove(m_spatialId);
+        m_spatialId = -1;
+
+        // Cancel outstanding loads and release the shared media.
+        cancelTextureLoad();
+        cancelModelLoad();
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_textureRef = null;
+        m_textureSource = -1;
+        m_modelRef = null;
+        m_initialized = false;
     }
 
-    public void update()
+    // Determine whether the actor may be drawn by an instance group: its model and
+    // texture are loaded, and its model is not selected by levels of detail.
+    private boolean isInstanceable()
+    {
+        return MleInstanceGroup.isEnabled() && (m_lods == null) &&
+               (m_modelIndex < 0) && (m_modelLoad == null) &&
+               (m_textureIndex < 0) && (m_textureLoad == null) &&
+               (model != null) && (model.getProperty() != null);
+    }
+
+    // Leave the instance group before the model or texture changes, pushing the
+    // media and transform the group was drawing to the actor's own Role.
+    private void leaveInstanceGroup()
     {
+        if (m_instanceGroup == null)
+            return;
+        m_instanceGroup.leave(m_instanceSlot);
+        m_instanceGroup = null;
         try {
-            // Update transform-related properties only.
-            if (scale != null) scale.push(this);
-            if (orientation != null) orientation.push(this);
-            if (position != null) position.push(this);
+            if (texture != null) texture.push(this);
+            if (model != null) model.push(this);
         } catch (MleRuntimeException ex)
         {
-            // ToDo: do we just ignore the fault?
+            // The failure is counted; the Role draws the media it last received
+            // until the model or texture is pushed again.
+            g_metrics.pushFailed();
+        }
+        update();
+    }
+
+    // Set the slot this actor occupies in its instance group, or -1.
+    void setInstanceSlot(int slot)
+    {
+        m_instanceSlot = slot;
+    }
+
+    /**
+     * Get the instance group drawing this model.
+     *
+     * @return The group, or <b>null</b> if the model pushes to its own Role.
+     */
+    public MleInstanceGroup getInstanceGroup()
+    {
+        return m_instanceGroup;
+    }
+
+    // Supersede a deferred or outstanding load of the model.
+    private void cancelModelLoad()
+    {
+        m_modelIndex = -1;
+        if (m_modelLoad != null)
+        {
+            m_modelLoad.cancel();
+            m_modelLoad = null;
+        }
+    }
+
+    // Supersede a deferred or outstanding load of the texture.
+    private void cancelTextureLoad()
+    {
+        m_textureIndex = -1;
+        if (m_textureLoad != null)
+        {
+            m_textureLoad.cancel();
+            m_textureLoad = null;
+        }
+    }
+
+    // Load the texture in the background, pushing the placeholder meanwhile.
+    private void loadTexture(int index) throws MleRuntimeException
+    {
+        MleMediaRef placeholder =
+            MleMediaLoader.getInstance().getPlaceholder(MleMediaRefCache.MEDIA_TEXTURE);
+        if (placeholder != null)
+        {
+            texture.setProperty(placeholder);
+            texture.push(this);
+        }
+
+        m_textureLoad = new MleMediaLoader.Request(index, g_metrics)
+        {
+            protected MleMediaRef prepare(MleMediaRef mref)
+            {
+                // Generate or map the mip levels off the scheduler thread.
+                return MleTextureCache.getInstance().prepare(mref);
+            }
+
+            protected void complete(MleMediaRef mref)
+            {
+                m_textureLoad = null;
+                texture.setProperty(mref);
+                MleMediaRefCache.getInstance().release(m_textureRef);
+                m_textureRef = mref;
+                m_textureSource = getIndex();
+                try {
+                    texture.push(MleModelActor.this);
+                } catch (MleRuntimeException ex)
+                {
+                    // The failure is counted; the Role keeps the placeholder, or
+                    // the previous texture, until the texture is set again.
+                    g_metrics.pushFailed();
+                }
+            }
+        };
+        MleMediaLoader.getInstance().submit(m_textureLoad);
+    }
+
+    // Load the model in the background, pushing the placeholder meanwhile if requested.
+    private void loadModel(int index, boolean usePlaceholder) throws MleRuntimeException
+    {
+        MleMediaRef placeholder = usePlaceholder ?
+            MleMediaLoader.getInstance().getPlaceholder(MleMediaRefCache.MEDIA_MODEL) : null;
+        if (placeholder != null)
+        {
+            model.setProperty(placeholder);
+            model.push(this);
+        }
+
+        m_modelLoad = new MleMediaLoader.Request(index, g_metrics)
+        {
+            protected void complete(MleMediaRef mref)
+            {
+                m_modelLoad = null;
+                model.setProperty(mref);
+                MleMediaRefCache.getInstance().release(m_modelRef);
+                m_modelRef = mref;
+                try {
+                    model.push(MleModelActor.this);
+                } catch (MleRuntimeException ex)
+                {
+                    // The failure is counted; the Role keeps the placeholder, or
+                    // the previous model, until the model is set again.
+                    g_metrics.pushFailed();
+                }
+            }
+        };
+        MleMediaLoader.getInstance().submit(m_modelLoad);
+    }
+
+    /**
+     * Set the model to media acquired by the title.
+     * <p>
+     * This is the path for media which should not be copied: a memory-mapped
+     * region of a file or an existing buffer, acquired with the
+     * <code>ByteBuffer</code> and <code>File</code> variants of
+     * <code>MleMediaRefCache.acquire()</code>. The Actor takes over the reference
+     * and releases it when the model changes or in <code>dispose()</code>.
+     * </p>
+     *
+     * @param mref The media reference acquired from <code>MleMediaRefCache</code>.
+     */
+    public void setModelMedia(MleMediaRef mref)
+    {
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelModelLoad();
+
+        if (model == null)
+            model = newModel();
+        model.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_modelRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_MODEL);
+    }
+
+    /**
+     * Set the texture to media acquired by the title.
+     * <p>
+     * As for <code>setModelMedia()</code>, the Actor takes over the reference and
+     * releases it when the texture changes or in <code>dispose()</code>.
+     * </p>
+     *
+     * @param mref The media reference acquired from <code>MleMediaRefCache</code>.
+     */
+    public void setTextureMedia(MleMediaRef mref)
+    {
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelTextureLoad();
+
+        if (texture == null)
+            texture = newTexture();
+        texture.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        m_textureRef = mref;
+        m_textureSource = -1;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_TEXTURE);
+    }
+
+    /**
+     * Set the levels of detail of the model.
+     * <p>
+     * The levels replace the "model" property: once initialized, the model of the
+     * level selected for the current viewpoint is loaded and pushed, or of level 0
+     * if there is no viewpoint.
+     * </p>
+     *
+     * @param lods The levels of detail, or <b>null</b> to keep the current model.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void setModelLods(MleLodTable lods) throws MleRuntimeException
+    {
+        if (lods != null) leaveInstanceGroup();
+        m_lods = lods;
+        m_lodLevel = -1;
+        if (! m_initialized)
+            return;
+
+        if (lods == null)
+        {
+            g_lodGroup.leave(m_lodSlot);
+            return;
+        }
+        selectLod(MleBehaviorConfig.getViewpoint());
+        if (m_lodSlot < 0)
+            g_lodGroup.join(this);
+    }
+
+    /**
+     * Get the levels of detail of the model.
+     *
+     * @return The levels of detail, or <b>null</b> if the model has none.
+     */
+    public MleLodTable getModelLods()
+    {
+        return m_lods;
+    }
+
+    /**
+     * Get the selected level of detail.
+     *
+     * @return The level, or <b>-1</b> if none has been selected.
+     */
+    public int getLodLevel()
+    {
+        return m_lodLevel;
+    }
+
+    // Select the level of detail for a viewpoint, or level 0 if there is none,
+    // and switch models if it changed.
+    private void selectLod(float[] viewpoint)
+    {
+        if (m_lods == null)
+            return;
+
+        int level = 0;
+        if (viewpoint != null)
+        {
+            float x = 0.0f, y = 0.0f, z = 0.0f;
+            if ((position != null) && (position.getProperty() != null))
+            {
+                float[] p = position.getProperty().getValue();
+                x = p[0];
+                y = p[1];
+                z = p[2];
+            }
+            float dx = x - viewpoint[0];
+            float dy = y - viewpoint[1];
+            float dz = z - viewpoint[2];
+            level = m_lods.select(m_lodLevel, dx * dx + dy * dy + dz * dz);
+        }
+        if (level == m_lodLevel)
+            return;
+        m_lodLevel = level;
+
+        // The new level supersedes any outstanding load.
+        cancelModelLoad();
+        if (model == null)
+            model = newModel();
+
+        // If the model of the new level can not be loaded, the failure is counted
+        // and the model of the previous level stays pushed until another level is
+        // selected.
+        int index = m_lods.getIndex(level);
+        if (MleMediaLoader.getInstance().isAsync())
+        {
+            try
+            {
+                // The current model stays pushed until the new one has loaded.
+                loadModel(index, m_modelRef == null);
+            } catch (MleRuntimeException ex)
+            {
+                g_metrics.loadFailed();
+            }
+            return;
+        }
+
+        MleMediaRef mref;
+        long start = MleActorMetrics.start();
+        try
+        {
+            mref = MleMediaRefCache.getInstance().acquire(index);
+        } catch (MleDppException ex)
+        {
+            g_metrics.loadFailed();
+            return;
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+        }
+        model.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_modelRef = mref;
+        try
+        {
+            model.push(this);
+        } catch (MleRuntimeException ex)
+        {
+            // The Role keeps the model of the previous level.
+            g_metrics.pushFailed();
+        }
+    }
+
+    /**
+     * Get the pool of disposed instances.
+     * <p>
+     * Pooling is disabled until the title sets a limit.
+     * </p>
+     *
+     * @return The pool is returned.
+     */
+    public static MleActorPool<MleModelActor> getPool()
+    {
+        return g_pool;
+    }
+
+    // Reset the actor to its constructed state, keeping its property objects to
+    // reuse once its properties are set again.
+    private void reset() throws MleRuntimeException
+    {
+        if (m_initialized)
+            dispose();
+        if (position != null) m_sparePosition = position;
+        if (orientation != null) m_spareOrientation = orientation;
+        if (scale != null) m_spareScale = scale;
+        if (model != null) m_spareModel = model;
+        if (texture != null) m_spareTexture = texture;
+        if (m_spareModel != null) m_spareModel.setProperty(null);
+        if (m_spareTexture != null) m_spareTexture.setProperty(null);
+        position = null;
+        orientation = null;
+        scale = null;
+        model = null;
+        texture = null;
+
+        m_spinSpeed = DEFAULT_SPIN_SPEED;
+        m_clip = null;
+        m_tickDivider = 1;
+        m_priority = MleBehaviorConfig.PRIORITY_NORMAL;
+        MlePropertyNotifier.getInstance().removeListeners(this);
+        m_lods = null;
+        m_lodLevel = -1;
+        m_boundingRadius = DEFAULT_BOUNDING_RADIUS;
+        m_textureIndex = -1;
+        m_textureSource = -1;
+        m_modelIndex = -1;
+    }
+
+    // Get a "position" property, reusing the spare one if there is one.
+    private Mle3dTranslationProperty newPosition()
+    {
+        Mle3dTranslationProperty property = m_sparePosition;
+        m_sparePosition = null;
+        return (property != null) ? property : new Mle3dTranslationProperty();
+    }
+
+    // Get an "orientation" property, reusing the spare one if there is one.
+    private Mle3dQuaternionRotationProperty newOrientation()
+    {
+        Mle3dQuaternionRotationProperty property = m_spareOrientation;
+        m_spareOrientation = null;
+        return (property != null) ? property : new Mle3dQuaternionRotationProperty();
+    }
+
+    // Get a "scale" property, reusing the spare one if there is one.
+    private Mle3dNonuniformScaleProperty newScale()
+    {
+        Mle3dNonuniformScaleProperty property = m_spareScale;
+        m_spareScale = null;
+        return (property != null) ? property : new Mle3dNonuniformScaleProperty();
+    }
+
+    // Get a "model" property, reusing the spare one if there is one.
+    private Mle3dModelProperty newModel()
+    {
+        Mle3dModelProperty property = m_spareModel;
+        m_spareModel = null;
+        return (property != null) ? property : new Mle3dModelProperty();
+    }
+
+    // Get a "texture" property, reusing the spare one if there is one.
+    private Mle3dTextureMapProperty newTexture()
+    {
+        Mle3dTextureMapProperty property = m_spareTexture;
+        m_spareTexture = null;
+        return (property != null) ? property : new Mle3dTextureMapProperty();
+    }
+
+    // Save the properties of the Actor for a snapshot, returning the fields present.
+    // The model is not recorded while it is selected by the levels of detail.
+    int saveState(float[] values, int[] refs)
+    {
+        int fields = 0;
+        if ((position != null) && (position.getProperty() != null))
+        {
+            System.arraycopy(position.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_POSITION, 3);
+            fields |= MleActorSnapshot.FIELD_POSITION;
+        }
+        if ((orientation != null) && (orientation.getProperty() != null))
+        {
+            System.arraycopy(orientation.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_ORIENTATION, 4);
+            fields |= MleActorSnapshot.FIELD_ORIENTATION;
+        }
+        if ((scale != null) && (scale.getProperty() != null))
+        {
+            System.arraycopy(scale.getProperty().getValue(), 0, values, MleActorSnapshot.VALUE_SCALE, 3);
+            fields |= MleActorSnapshot.FIELD_SCALE;
+        }
+        if ((model != null) && (m_lods == null))
+        {
+            refs[MleActorSnapshot.REF_MODEL] = getModelSource();
+            fields |= MleActorSnapshot.FIELD_MODEL;
+        }
+        if (texture != null)
+        {
+            refs[MleActorSnapshot.REF_TEXTURE] = getTextureSource();
+            fields |= MleActorSnapshot.FIELD_TEXTURE;
+        }
+        return fields;
+    }
+
+    // Restore the properties of the Actor from a snapshot, in place, loading media
+    // whose index has changed.
+    void restoreState(int fields, float[] values, int[] refs) throws MleRuntimeException
+    {
+        int dirty = 0;
+        if ((fields & MleActorSnapshot.FIELD_POSITION) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_POSITION;
+            if (position == null)
+                position = newPosition();
+            if (position.getProperty() != null)
+                position.getProperty().setValue(values[i], values[i + 1], values[i + 2]);
+            else
+                position.setProperty(new MlVector3(values[i], values[i + 1], values[i + 2]));
+            dirty |= MleBehaveGroup.DIRTY_POSITION;
+        }
+        if ((fields & MleActorSnapshot.FIELD_ORIENTATION) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_ORIENTATION;
+            if (orientation == null)
+                orientation = newOrientation();
+            if (orientation.getProperty() == null)
+                orientation.setProperty(new MlRotation());
+            orientation.getProperty().setValue(values[i], values[i + 1], values[i + 2], values[i + 3]);
+            g_behaveGroup.sync(m_groupSlot);
+            dirty |= MleBehaveGroup.DIRTY_ORIENTATION;
+        }
+        if ((fields & MleActorSnapshot.FIELD_SCALE) != 0)
+        {
+            int i = MleActorSnapshot.VALUE_SCALE;
+            if (scale == null)
+                scale = newScale();
+            if (scale.getProperty() != null)
+                scale.getProperty().setValue(values[i], values[i + 1], values[i + 2]);
+            else
+                scale.setProperty(new MlVector3(values[i], values[i + 1], values[i + 2]));
+            dirty |= MleBehaveGroup.DIRTY_SCALE;
         }
+        g_behaveGroup.markDirty(m_groupSlot, dirty);
+        if ((dirty & (MleBehaveGroup.DIRTY_POSITION | MleBehaveGroup.DIRTY_SCALE)) != 0)
+            updateBounds();
+
+        // Media are recorded by DPP index; other media are kept.
+        int index = refs[MleActorSnapshot.REF_MODEL];
+        if (((fields & MleActorSnapshot.FIELD_MODEL) != 0) && (m_lods == null) &&
+            (index >= 0) && (index != getModelSource()))
+        {
+            setModel(index);
+            if (m_initialized) model.push(this);
+        }
+        index = refs[MleActorSnapshot.REF_TEXTURE];
+        if (((fields & MleActorSnapshot.FIELD_TEXTURE) != 0) &&
+            (index >= 0) && (index != getTextureSource()))
+        {
+            setTexture(index);
+            if (m_initialized) texture.push(this);
+        }
+    }
+
+    // Get the DPP index of the model, loaded or pending, or -1 if it did not come
+    // from the DPP.
+    private int getModelSource()
+    {
+        if (m_modelLoad != null) return m_modelLoad.getIndex();
+        if (m_modelIndex >= 0) return m_modelIndex;
+        return MleMediaRefCache.getInstance().getIndex(m_modelRef);
+    }
+
+    // Get the DPP index of the texture, loaded or pending, or -1 if it did not come
+    // from the DPP.
+    private int getTextureSource()
+    {
+        if (m_textureLoad != null) return m_textureLoad.getIndex();
+        if (m_textureIndex >= 0) return m_textureIndex;
+        if (m_textureSource >= 0) return m_textureSource;
+        return MleMediaRefCache.getInstance().getIndex(m_textureRef);
+    }
+
+    /**
+     * Get the spatial index holding the bounds of the initialized models.
+     * <p>
+     * The objects associated with the entries are the <code>MleModelActor</code>s.
+     * </p>
+     *
+     * @return The index is returned.
+     */
+    public static MleSpatialGrid getSpatialIndex()
+    {
+        return g_spatialIndex;
+    }
+
+    /**
+     * Set the bounding radius of the model, before scaling.
+     * <p>
+     * The radius is not stored with the model media, so titles set it to the
+     * radius of the model's geometry about its origin.
+     * </p>
+     *
+     * @param radius The radius; not negative.
+     */
+    public void setBoundingRadius(float radius)
+    {
+        m_boundingRadius = Math.max(0.0f, radius);
+        updateBounds();
+    }
+
+    /**
+     * Get the bounding radius of the model, before scaling.
+     *
+     * @return The radius is returned.
+     */
+    public float getBoundingRadius()
+    {
+        return m_boundingRadius;
     }
 
-    // Change in rotation; currently a constant spin around y axis.
-    static private MlRotation m_delta = null;
+    // Update the bounding sphere in the spatial index.
+    private void updateBounds()
+    {
+        if (m_spatialId < 0)
+            return;
+        float x = 0.0f, y = 0.0f, z = 0.0f, s = 1.0f;
+        if ((position != null) && (position.getProperty() != null))
+        {
+            float[] p = position.getProperty().getValue();
+            x = p[0];
+            y = p[1];
+            z = p[2];
+        }
+        if ((scale != null) && (scale.getProperty() != null))
+        {
+            float[] v = scale.getProperty().getValue();
+            s = Math.max(Math.abs(v[0]), Math.max(Math.abs(v[1]), Math.abs(v[2])));
+        }
+        // A position or scale which is not finite keeps the previous bounds.
+        float r = m_boundingRadius * s;
+        if (((x - x) == 0.0f) && ((y - y) == 0.0f) && ((z - z) == 0.0f) && ((r - r) == 0.0f))
+            g_spatialIndex.update(m_spatialId, x, y, z, r);
+    }
 
-    static void behave(MleModelActor actor)
+    /**
+     * Set the animation clip of the Actor and play it from the start.
+     * <p>
+     * The clip may be shared with other Actors. The properties it animates are
+     * created if necessary, and an animated orientation replaces the spin.
+     * </p>
+     *
+     * @param clip The clip, or <b>null</b> to stop animating.
+     */
+    public void setAnimationClip(MleAnimationClip clip)
     {
-        // Orientation must be defined in order to spin.
-        if ((actor == null) || (actor.orientation == null)) return;
+        if (clip != null)
+        {
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_POSITION) != null) && (position == null))
+            {
+                position = newPosition();
+                if (position.getProperty() != null)
+                    position.getProperty().setValue(0.0f, 0.0f, 0.0f);
+                else
+                    position.setProperty(new MlVector3(0.0f, 0.0f, 0.0f));
+            }
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_ORIENTATION) != null) && (orientation == null))
+            {
+                orientation = newOrientation();
+                if (orientation.getProperty() != null)
+                    orientation.getProperty().setValue(0.0f, 0.0f, 0.0f, 1.0f);
+                else
+                    orientation.setProperty(new MlRotation());
+            }
+            if ((clip.getTrack(MleAnimationClip.CHANNEL_SCALE) != null) && (scale == null))
+            {
+                scale = newScale();
+                if (scale.getProperty() != null)
+                    scale.getProperty().setValue(1.0f, 1.0f, 1.0f);
+                else
+                    scale.setProperty(new MlVector3(1.0f, 1.0f, 1.0f));
+            }
+        }
+        m_clip = clip;
+        g_behaveGroup.setClip(m_groupSlot, clip);
+    }
 
-        // Define spin parameters.
-        if (m_delta == null)
-            m_delta = new MlRotation(new MlVector3(
-                MlScalar.ML_SCALAR_ZERO, MlScalar.ML_SCALAR_ONE, MlScalar.ML_SCALAR_ZERO),
-                (float)0.035);
+    /**
+     * Get the animation clip of the Actor.
+     *
+     * @return The clip, or <b>null</b> if the Actor is not animated.
+     */
+    public MleAnimationClip getAnimationClip()
+    {
+        return m_clip;
+    }
 
-        // Update rotational behavior.
-        //actor.orientation.m_rotation *= m_delta;
-        MlRotation rotation = actor.orientation.getProperty();
-        rotation.mul(m_delta);
+    /**
+     * Set the speed at which the Actor spins around the y axis.
+     *
+     * @param speed The speed in radians per second.
+     */
+    public void setSpinSpeed(float speed)
+    {
+        m_spinSpeed = speed;
+        g_behaveGroup.setSpeed(m_groupSlot, speed);
+    }
 
-        // Update associated Role.
+    /**
+     * Get the speed at which the Actor spins around the y axis.
+     *
+     * @return The speed in radians per second.
+     */
+    public float getSpinSpeed()
+    {
+        return m_spinSpeed;
+    }
+
+    /**
+     * Set how often the Actor is pushed to its Role.
+     * <p>
+     * An Actor far from the camera, or changing slowly, may be pushed every few
+     * frames; its simulation keeps running every frame.
+     * </p>
+     *
+     * @param divider The number of frames between pushes; at least one.
+     */
+    public void setTickDivider(int divider)
+    {
+        m_tickDivider = Math.max(1, divider);
+        g_behaveGroup.setTickDivider(m_groupSlot, m_tickDivider);
+    }
+
+    /**
+     * Get how often the Actor is pushed to its Role.
+     *
+     * @return The number of frames between pushes.
+     */
+    public int getTickDivider()
+    {
+        return m_tickDivider;
+    }
+
+    /**
+     * Set the priority of the Actor's pushes when a frame budget is set.
+     *
+     * @param priority One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>.
+     */
+    public void setPriority(int priority)
+    {
+        m_priority = MleBehaveGroup.clampPriority(priority);
+        g_behaveGroup.setPriority(m_groupSlot, m_priority);
+    }
+
+    /**
+     * Get the priority of the Actor's pushes when a frame budget is set.
+     *
+     * @return One of the <code>PRIORITY_</code> constants of
+     * <code>MleBehaviorConfig</code>.
+     */
+    public int getPriority()
+    {
+        return m_priority;
+    }
+
+    public void update()
+    {
+        // Once a member of the behavior group, changes are coalesced and pushed
+        // by the group at most once per frame.
+        if (m_groupSlot >= 0)
+        {
+            g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_TRANSFORM);
+            return;
+        }
+        // An instanced model is drawn from its slot in the instance group.
+        if (m_instanceGroup != null)
+        {
+            m_instanceGroup.update(m_instanceSlot, this);
+            return;
+        }
+
+        long start = MleActorMetrics.start();
         try {
-            actor.orientation.push(actor);
+            // Update transform-related properties only.
+            if (scale != null) scale.push(this);
+            if (orientation != null) orientation.push(this);
+            if (position != null) position.push(this);
         } catch (MleRuntimeException ex)
         {
-            // ToDo: do we just ignore the fault?
+            // The failure is counted; the Role keeps the previous transform until
+            // the next update() pushes it again.
+            g_metrics.pushFailed();
         }
+        g_metrics.stop(MleActorMetrics.OP_UPDATE, start);
+    }
+
+    /**
+     * Get the identifier of a property, for use with the identifier-based
+     * <code>getProperty()</code> and <code>setProperty()</code>.
+     *
+     * @param name The property name.
+     *
+     * @return One of the <code>PROPERTY_</code> constants, or <b>-1</b> if there is
+     * no such property.
+     */
+    public static int getPropertyId(String name)
+    {
+        return g_properties.getId(name);
+    }
+
+    // Record a change to a property, for the property change listeners.
+    private void notifyChanged(int id)
+    {
+        MlePropertyNotifier.getInstance().changed(this, id, g_properties.getName(id));
     }
 
     /* (non-Javadoc)
@@ -149,22 +1060,50 @@ public class MleModelActor extends MleActor
      */
     public Object getProperty(String name) throws MleRuntimeException
     {
-        if (name != null)
+        int id = g_properties.getId(name);
+        if (id >= 0)
+            return getProperty(id);
+
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleModelActor: Unable to get property " + name + ".");
+    }
+
+    /**
+     * Get a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     *
+     * @return The property is returned.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist.
+     */
+    public Object getProperty(int id) throws MleRuntimeException
+    {
+        switch (id)
         {
-            if (name.equals("position"))
+            case PROPERTY_POSITION:
                 return position;
-            else if (name.equals("orientation"))
+            case PROPERTY_ORIENTATION:
                 return orientation;
-            else if (name.equals("scale"))
-                 return scale;
-            else if (name.equals("model"))
+            case PROPERTY_SCALE:
+                return scale;
+            case PROPERTY_MODEL:
                 return model;
-            else if (name.equals("texture"))
+            case PROPERTY_TEXTURE:
                 return texture;
+            case PROPERTY_POSITION_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_POSITION);
+            case PROPERTY_ORIENTATION_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_ORIENTATION);
+            case PROPERTY_SCALE_KEYS:
+                return getTrack(MleAnimationClip.CHANNEL_SCALE);
+            case PROPERTY_MODEL_LODS:
+                return m_lods;
+            default:
+                // Specified property does not exist.
+                throw new MleRuntimeException("MleModelActor: Unable to get property " + id + ".");
         }
-
-        // Specified name does not exist.
-        throw new MleRuntimeException("MleModelActor: Unable to get property " + name + ".");
     }
 
     /* (non-Javadoc)
@@ -173,153 +1112,253 @@ public class MleModelActor extends MleActor
     public void setProperty(String name, IMleProp property)
             throws MleRuntimeException
     {
-        if (name != null)
+        int id = g_properties.getId(name);
+        if (id >= 0)
         {
-            try
-            {
-                if (name.equals("texture"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    // Create a texture property and initialize it.
-                    if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
-                    {
-                        // Assume it's coming from the DPP and data is an index into
-                        // the DPP Table-of-Contents.
-                        Integer index = new Integer(new String(data));
-
-                        // Retrieve the name from the DPP.
-                        try
-                        {
-                            texture = new Mle3dTextureMapProperty();
-                            MleMediaRef mref
-                                    = MleDppLoader.getInstance().mleLoadMediaRef(index.intValue());
-                            texture.setProperty(mref);
-                        } catch (MleDppException ex)
-                        {
-                            throw new MleRuntimeException(ex.getMessage());
-                        }
-
-                        // Notify property change listeners.
-                        notifyPropertyChange("texture", null, null);
-                    } else
-                    {
-                        texture = new Mle3dTextureMapProperty();
-                        MleTextureMapMediaRef mref = new MleTextureMapMediaRef();
-                        mref.registerMedia(0,data.length,data);
-                        texture.setProperty(mref);
-
-                        // Notify property change listeners.
-                        notifyPropertyChange("texture", null, null);
-                    }
+            setProperty(id, property);
+            return;
+        }
 
-                    return;
-                } else if (name.equals("model"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
-
-                    // Create a model property and initialize it.
-                    if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
-                    {
-                        // Assume it's coming from the DPP and data is an index into
-                        // the DPP Table-of-Contents.
-                        Integer index = new Integer(new String(data));
-
-                        // Retrieve the name from the DPP.
-                        try
-                        {
-                            model = new Mle3dModelProperty();
-                            MleMediaRef mref
-                                    = MleDppLoader.getInstance().mleLoadMediaRef(index.intValue());
-                            model.setProperty(mref);
-                        } catch (MleDppException ex)
-                        {
-                            throw new MleRuntimeException(ex.getMessage());
-                        }
-
-                        // Notify property change listeners.
-                        notifyPropertyChange("model", null, null);
-                    } else
-                    {
-                        model = new Mle3dModelProperty();
-                        MleModelMediaRef mref = new MleModelMediaRef();
-                        mref.registerMedia(0,data.length,data);
-                        model.setProperty(mref);
-
-                        // Notify property change listeners.
-                        notifyPropertyChange("model", null, null);
-                    }
+        // Specified name does not exist.
+        throw new MleRuntimeException("MleModelActor: Unable to set property " + name + ".");
+    }
 
+    /**
+     * Set a property by identifier.
+     *
+     * @param id One of the <code>PROPERTY_</code> constants.
+     * @param property The property value to decode.
+     *
+     * @throws MleRuntimeException This exception is thrown if the property does not
+     * exist or its value can not be decoded.
+     */
+    public void setProperty(int id, IMleProp property)
+            throws MleRuntimeException
+    {
+        long start = MleActorMetrics.start();
+        try
+        {
+            switch (id)
+            {
+                case PROPERTY_POSITION:
+                    setPosition(property);
                     return;
-                } else if (name.equals("position"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
+                case PROPERTY_ORIENTATION:
+                    setOrientation(property);
+                    return;
+                case PROPERTY_SCALE:
+                    setScale(property);
+                    return;
+                case PROPERTY_MODEL:
+                    setModel(property);
+                    return;
+                case PROPERTY_TEXTURE:
+                    setTexture(property);
+                    return;
+                default:
+                    break;
+            }
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleModelActor: Unable to set property " + g_properties.getName(id) + ".");
+        } finally
+        {
+            g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, start);
+        }
 
-                    // Create a translation property and initialize it.
-                    position = new Mle3dTranslationProperty();
-                    MlVector3 translation = new MlVector3();
-                    // Expecting 3 floating-point values in stream.
-                    MlMath.convertByteArrayToVector3(0, data, translation);
-                    position.setProperty(translation);
+        // Specified property does not exist.
+        throw new MleRuntimeException("MleModelActor: Unable to set property " + id + ".");
+    }
 
-                    // Notify property change listeners.
-                    notifyPropertyChange("position", null, null);
+    // Decode the "position" property, straight into the existing value if there is one.
+    private void setPosition(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
 
-                    return;
-                } else if (name.equals("orientation"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
+        // Create a translation property if necessary and initialize it.
+        if (position == null)
+            position = newPosition();
+        // Expecting 3 floating-point values in stream.
+        MlVector3 translation = decoder.readVector3(property, position.getProperty());
+        position.setProperty(translation);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_POSITION);
+        updateBounds();
 
-                    // Create a rotation property and initialize it.
-                    orientation = new Mle3dQuaternionRotationProperty();
-                    MlRotation rotation = new MlRotation();
-                    // Expecting 4 floating-point values in stream.
-                    MlMath.convertByteArrayToRotation(0, data, rotation);
-                    orientation.setProperty(rotation);
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_POSITION);
+    }
 
-                    // Notify property change listeners.
-                    notifyPropertyChange("orientation", null, null);
+    // Decode the "orientation" property, straight into the existing value if there is one.
+    private void setOrientation(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
 
-                    return;
-                } else if (name.equals("scale"))
-                {
-                    // Read the data in from the input stream.
-                    DataInputStream in = new DataInputStream(property.getStream());
-                    byte[] data = new byte[property.getLength()];
-                    in.readFully(data);
+        // Create a rotation property if necessary and initialize it.
+        if (orientation == null)
+            orientation = newOrientation();
+        // Expecting 4 floating-point values in stream.
+        MlRotation rotation = decoder.readRotation(property, orientation.getProperty());
+        orientation.setProperty(rotation);
+        g_behaveGroup.sync(m_groupSlot);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_ORIENTATION);
 
-                    // Create a scale property and initialize it.
-                    scale = new Mle3dNonuniformScaleProperty();
-                    MlVector3 value = new MlVector3();
-                    // Expecting 3 floating-point values in stream.
-                    MlMath.convertByteArrayToVector3(0, data, value);
-                    scale.setProperty(value);
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_ORIENTATION);
+    }
 
-                    // Notify property change listeners.
-                    notifyPropertyChange("scale", null, null);
+    // Decode the "scale" property, straight into the existing value if there is one.
+    private void setScale(IMleProp property) throws IOException
+    {
+        MlePropertyDecoder decoder = MlePropertyDecoder.getInstance();
 
-                    return;
-                }
-            } catch (IOException ex)
+        // Create a scale property if necessary and initialize it.
+        if (scale == null)
+            scale = newScale();
+        // Expecting 3 floating-point values in stream.
+        MlVector3 value = decoder.readVector3(property, scale.getProperty());
+        scale.setProperty(value);
+        g_behaveGroup.markDirty(m_groupSlot, MleBehaveGroup.DIRTY_SCALE);
+        updateBounds();
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_SCALE);
+    }
+
+    // Decode the "model" property.
+    private void setModel(IMleProp property) throws IOException, MleRuntimeException
+    {
+        if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
+        {
+            // Assume it's coming from the DPP and data is an index into
+            // the DPP Table-of-Contents.
+            setModel(MlePropertyDecoder.getInstance().readIndex(property));
+            return;
+        }
+
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelModelLoad();
+
+        // Create a model property if necessary and initialize it.
+        if (model == null)
+            model = newModel();
+        // Identical payloads share one media reference; large ones are held
+        // off the Java heap.
+        MleMediaRef mref = MleMediaRefCache.getInstance().acquire(
+            MleMediaRefCache.MEDIA_MODEL, property);
+        model.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_modelRef);
+        m_modelRef = mref;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_MODEL);
+    }
+
+    // Set the "model" property to an entry in the DPP Table-of-Contents.
+    private void setModel(int index) throws MleRuntimeException
+    {
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelModelLoad();
+
+        // Create a model property if necessary and initialize it.
+        if (model == null)
+            model = newModel();
+        if (MleMediaLoader.getInstance().isAsync() && ! m_initialized)
+        {
+            // Load it in the background once initialized.
+            m_modelIndex = index;
+        } else
+        {
+            // Retrieve the name from the DPP.
+            try
             {
-                throw new MleRuntimeException("MleModelActor: Unable to set property " + name + ".");
+                long start = MleActorMetrics.start();
+                MleMediaRef mref = MleMediaRefCache.getInstance().acquire(index);
+                g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+                model.setProperty(mref);
+                MleMediaRefCache.getInstance().release(m_modelRef);
+                m_modelRef = mref;
+            } catch (MleDppException ex)
+            {
+                throw new MleRuntimeException(ex.getMessage());
             }
         }
 
-        // Specified name does not exist.
-        throw new MleRuntimeException("MleModelActor: Unable to set property " + name + ".");
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_MODEL);
+    }
+
+    // Decode the "texture" property.
+    private void setTexture(IMleProp property) throws IOException, MleRuntimeException
+    {
+        if (property.getType() == IMleProp.PROP_TYPE_MEDIAREF)
+        {
+            // Assume it's coming from the DPP and data is an index into
+            // the DPP Table-of-Contents.
+            setTexture(MlePropertyDecoder.getInstance().readIndex(property));
+            return;
+        }
+
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelTextureLoad();
+
+        // Create a texture property if necessary and initialize it.
+        if (texture == null)
+            texture = newTexture();
+        // Identical payloads share one media reference; large ones are held
+        // off the Java heap.
+        MleMediaRef mref = MleTextureCache.getInstance().prepare(
+            MleMediaRefCache.getInstance().acquire(MleMediaRefCache.MEDIA_TEXTURE, property));
+        texture.setProperty(mref);
+        MleMediaRefCache.getInstance().release(m_textureRef);
+        m_textureRef = mref;
+        m_textureSource = -1;
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_TEXTURE);
+    }
+
+    // Set the "texture" property to an entry in the DPP Table-of-Contents.
+    private void setTexture(int index) throws MleRuntimeException
+    {
+        leaveInstanceGroup();
+
+        // Any deferred or outstanding load is superseded.
+        cancelTextureLoad();
+
+        // Create a texture property if necessary and initialize it.
+        if (texture == null)
+            texture = newTexture();
+        if (MleMediaLoader.getInstance().isAsync() && ! m_initialized)
+        {
+            // Load it in the background once initialized.
+            m_textureIndex = index;
+        } else
+        {
+            // Retrieve the name from the DPP.
+            try
+            {
+                long start = MleActorMetrics.start();
+                MleMediaRef mref = MleTextureCache.getInstance().prepare(
+                    MleMediaRefCache.getInstance().acquire(index));
+                g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+                texture.setProperty(mref);
+                MleMediaRefCache.getInstance().release(m_textureRef);
+                m_textureRef = mref;
+                m_textureSource = index;
+            } catch (MleDppException ex)
+            {
+                throw new MleRuntimeException(ex.getMessage());
+            }
+        }
+
+        // Notify property change listeners.
+        notifyChanged(PROPERTY_TEXTURE);
     }
 
     /* (non-Javadoc)
@@ -327,6 +1366,61 @@ public class MleModelActor extends MleActor
      */
     public void setPropertyArray(String name, int length, int nElements, ByteArrayInputStream value) throws MleRuntimeException
     {
-        throw new MleRuntimeException("MleModelActor: Unable to set property array " + name + ".");
+        int id = g_properties.getId(name);
+        if (id == PROPERTY_MODEL_LODS)
+        {
+            try
+            {
+                setModelLods(MleLodTable.read(length, nElements, value));
+            } catch (IOException ex)
+            {
+                throw new MleRuntimeException("MleModelActor: Unable to set property array " + name + ".");
+            }
+
+            // Notify property change listeners.
+            notifyChanged(id);
+            return;
+        }
+
+        int channel, type;
+        switch (id)
+        {
+            case PROPERTY_POSITION_KEYS:
+                channel = MleAnimationClip.CHANNEL_POSITION;
+                type = MleAnimationTrack.TYPE_VECTOR3;
+                break;
+            case PROPERTY_ORIENTATION_KEYS:
+                channel = MleAnimationClip.CHANNEL_ORIENTATION;
+                type = MleAnimationTrack.TYPE_ROTATION;
+                break;
+            case PROPERTY_SCALE_KEYS:
+                channel = MleAnimationClip.CHANNEL_SCALE;
+                type = MleAnimationTrack.TYPE_VECTOR3;
+                break;
+            default:
+                // Specified name does not exist.
+                throw new MleRuntimeException("MleModelActor: Unable to set property array " + name + ".");
+        }
+
+        // Actors loading the same keys share one track.
+        MleAnimationTrack track;
+        try
+        {
+            track = MleAnimationTrack.read(type, length, nElements, value).intern();
+        } catch (IOException ex)
+        {
+            throw new MleRuntimeException("MleModelActor: Unable to set property array " + name + ".");
+        }
+        MleAnimationClip clip = (m_clip != null) ? m_clip : MleAnimationClip.EMPTY;
+        setAnimationClip(clip.withTrack(channel, track));
+
+        // Notify property change listeners.
+        notifyChanged(id);
+    }
+
+    // Get the animation track of a channel, or null.
+    private MleAnimationTrack getTrack(int channel)
+    {
+        return (m_clip != null) ? m_clip.getTrack(channel) : null;
     }
 }
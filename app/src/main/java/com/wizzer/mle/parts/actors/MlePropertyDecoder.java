@@ -0,0 +1,272 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.math.MlMath;
+import com.wizzer.mle.math.MlRotation;
+import com.wizzer.mle.math.MlVector3;
+import com.wizzer.mle.runtime.core.IMleProp;
+
+/**
+ * Decodes property payloads using reusable scratch buffers.
+ * <p>
+ * Each thread has its own decoder, obtained with <code>getInstance()</code>. Payloads
+ * are read into a scratch buffer which only grows, and vector, rotation and color
+ * values are decoded straight into the instance passed in by the caller. Once the
+ * scratch buffer is large enough, decoding a value creates no garbage.
+ * </p>
+ */
+final class MlePropertyDecoder
+{
+    // The initial size of the scratch buffer; large enough for any transform value.
+    private static final int INITIAL_SCRATCH = 64;
+    // The size of the chunks in which payloads are copied into direct buffers.
+    private static final int DIRECT_CHUNK = 16 * 1024;
+
+    // The decoder for each thread.
+    private static final ThreadLocal<MlePropertyDecoder> g_decoder =
+        new ThreadLocal<MlePropertyDecoder>()
+        {
+            protected MlePropertyDecoder initialValue()
+            {
+                return new MlePropertyDecoder();
+            }
+        };
+
+    // The scratch buffer.
+    private byte[] m_scratch = new byte[INITIAL_SCRATCH];
+
+    // Hide default constructor.
+    private MlePropertyDecoder() {}
+
+    /**
+     * Get the decoder for the calling thread.
+     *
+     * @return The decoder is returned.
+     */
+    static MlePropertyDecoder getInstance()
+    {
+        return g_decoder.get();
+    }
+
+    /**
+     * Read the payload of a property into the scratch buffer.
+     * <p>
+     * The returned buffer is owned by the decoder and is only valid until the next
+     * call; it may be longer than the payload.
+     * </p>
+     *
+     * @param property The property to read.
+     *
+     * @return The scratch buffer holding <code>property.getLength()</code> bytes.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    byte[] read(IMleProp property) throws IOException
+    {
+        int length = property.getLength();
+        if (length > m_scratch.length)
+            m_scratch = new byte[Math.max(length, m_scratch.length * 2)];
+        readFully(property.getStream(), m_scratch, length);
+        return m_scratch;
+    }
+
+    /**
+     * Read the payload of a property into a new direct buffer.
+     * <p>
+     * The payload is copied through a small chunk of the scratch buffer, so large
+     * payloads neither grow the scratch buffer nor occupy the Java heap.
+     * </p>
+     *
+     * @param property The property to read.
+     *
+     * @return A direct buffer holding exactly the payload, positioned at zero.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    ByteBuffer readDirect(IMleProp property) throws IOException
+    {
+        int length = property.getLength();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        if (m_scratch.length < DIRECT_CHUNK)
+            m_scratch = new byte[DIRECT_CHUNK];
+        InputStream in = property.getStream();
+        while (buffer.hasRemaining())
+        {
+            int n = in.read(m_scratch, 0, Math.min(m_scratch.length, buffer.remaining()));
+            if (n < 0)
+                throw new EOFException();
+            buffer.put(m_scratch, 0, n);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decode a vector of three floating-point values.
+     *
+     * @param property The property to read.
+     * @param value The vector to decode into, or <b>null</b> to create one.
+     *
+     * @return The decoded vector; <code>value</code> if it was not <b>null</b>.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    MlVector3 readVector3(IMleProp property, MlVector3 value) throws IOException
+    {
+        byte[] data = read(property);
+        if (value == null)
+            value = new MlVector3();
+        // Expecting 3 floating-point values in stream.
+        MlMath.convertByteArrayToVector3(0, data, value);
+        return value;
+    }
+
+    /**
+     * Decode a rotation of four floating-point values.
+     *
+     * @param property The property to read.
+     * @param value The rotation to decode into, or <b>null</b> to create one.
+     *
+     * @return The decoded rotation; <code>value</code> if it was not <b>null</b>.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    MlRotation readRotation(IMleProp property, MlRotation value) throws IOException
+    {
+        byte[] data = read(property);
+        if (value == null)
+            value = new MlRotation();
+        // Expecting 4 floating-point values in stream.
+        MlMath.convertByteArrayToRotation(0, data, value);
+        return value;
+    }
+
+    /**
+     * Decode a color of four big-endian floating-point values (red, green, blue, alpha).
+     *
+     * @param property The property to read.
+     * @param rgba The array to decode into, or <b>null</b> to create one.
+     *
+     * @return The decoded color; <code>rgba</code> if it was not <b>null</b>.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read.
+     */
+    float[] readColor(IMleProp property, float[] rgba) throws IOException
+    {
+        byte[] data = read(property);
+        if (rgba == null)
+            rgba = new float[4];
+        for (int i = 0, offset = 0; i < 4; i++, offset += 4)
+        {
+            int bits = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+                       ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+            rgba[i] = Float.intBitsToFloat(bits);
+        }
+        return rgba;
+    }
+
+    /**
+     * Decode a DPP Table-of-Contents index stored as decimal text.
+     *
+     * @param property The property to read.
+     *
+     * @return The index is returned.
+     *
+     * @throws IOException This exception is thrown if the payload can not be read
+     * or is not a decimal number.
+     */
+    int readIndex(IMleProp property) throws IOException
+    {
+        byte[] data = read(property);
+        int length = property.getLength();
+        int i = 0;
+        boolean negative = false;
+        if ((length > 0) && (data[0] == '-'))
+        {
+            negative = true;
+            i++;
+        }
+        if (i == length)
+            throw new IOException("Invalid media reference index.");
+
+        int index = 0;
+        for (; i < length; i++)
+        {
+            int digit = data[i] - '0';
+            if ((digit < 0) || (digit > 9))
+                throw new IOException("Invalid media reference index.");
+            index = index * 10 + digit;
+        }
+        return negative ? -index : index;
+    }
+
+    /**
+     * Decode an array of big-endian floating-point values in one pass.
+     *
+     * @param in The stream to read.
+     * @param count The number of values to read.
+     * @param values The array to decode into, starting at index zero; it must hold
+     * at least <code>count</code> values.
+     *
+     * @throws IOException This exception is thrown if the values can not be read.
+     */
+    void readFloats(InputStream in, int count, float[] values) throws IOException
+    {
+        int length = count * 4;
+        if (length > m_scratch.length)
+            m_scratch = new byte[Math.max(length, m_scratch.length * 2)];
+        byte[] data = m_scratch;
+        readFully(in, data, length);
+        for (int i = 0, offset = 0; i < count; i++, offset += 4)
+        {
+            int bits = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+                       ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+            values[i] = Float.intBitsToFloat(bits);
+        }
+    }
+
+    /**
+     * Decode an array of big-endian 32-bit integers in one pass.
+     *
+     * @param in The stream to read.
+     * @param count The number of values to read.
+     * @param values The array to decode into, starting at index zero; it must hold
+     * at least <code>count</code> values.
+     *
+     * @throws IOException This exception is thrown if the values can not be read.
+     */
+    void readInts(InputStream in, int count, int[] values) throws IOException
+    {
+        int length = count * 4;
+        if (length > m_scratch.length)
+            m_scratch = new byte[Math.max(length, m_scratch.length * 2)];
+        byte[] data = m_scratch;
+        readFully(in, data, length);
+        for (int i = 0, offset = 0; i < count; i++, offset += 4)
+            values[i] = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+                        ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    // Read exactly length bytes from the stream.
+    private static void readFully(InputStream in, byte[] data, int length) throws IOException
+    {
+        int offset = 0;
+        while (offset < length)
+        {
+            int n = in.read(data, offset, length - offset);
+            if (n < 0)
+                throw new EOFException();
+            offset += n;
+        }
+    }
+}
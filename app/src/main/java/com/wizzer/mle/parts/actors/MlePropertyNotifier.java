@@ -0,0 +1,343 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.IdentityHashMap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+import com.wizzer.mle.runtime.scheduler.MleScheduler;
+import com.wizzer.mle.runtime.scheduler.MlePhase;
+import com.wizzer.mle.runtime.scheduler.MleTask;
+import com.wizzer.mle.runtime.MleTitle;
+
+/**
+ * Delivers the property changes of Actors to listeners, coalesced per Actor per
+ * frame.
+ * <p>
+ * Every change an Actor makes to a property is recorded as a bit in a mask of
+ * changed properties. While any listener is subscribed, a task in the Actor phase
+ * delivers each changed Actor's mask once to its listeners and clears it; changes
+ * made after the task has run are delivered in the next frame. <code>run()</code>
+ * may also be called directly at another point in the frame. Changes to Actors
+ * without listeners are dropped at once, with no allocation.
+ * </p><p>
+ * Only the coalesced delivery is made by default. Titles which rely on the
+ * Actors calling <code>notifyPropertyChange()</code> for every change, as they did
+ * before, may enable it with <code>setImmediate(true)</code>.
+ * </p><p>
+ * The notifier must only be used on the scheduler thread. Listeners are kept until
+ * they are removed; pooled Actors drop their listeners when recycled.
+ * </p>
+ */
+public final class MlePropertyNotifier implements Runnable
+{
+    // The listeners of an Actor and its changes since the last delivery.
+    private static final class Subscription
+    {
+        // The Actor.
+        final MleActor m_actor;
+        // The listeners, replaced rather than modified so delivery may proceed
+        // while listeners are added or removed.
+        IMlePropertyListener[] m_listeners;
+        // The changed properties, one bit for each identifier.
+        int m_changed = 0;
+        // Whether the subscription is waiting for delivery.
+        boolean m_pending = false;
+
+        Subscription(MleActor actor, IMlePropertyListener listener)
+        {
+            m_actor = actor;
+            m_listeners = new IMlePropertyListener[] { listener };
+        }
+    }
+
+    // The initial capacity of the pending array.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The singleton instance.
+    private static final MlePropertyNotifier g_theNotifier = new MlePropertyNotifier();
+
+    // The subscriptions, by Actor.
+    private final IdentityHashMap<MleActor, Subscription> m_subscriptions =
+        new IdentityHashMap<MleActor, Subscription>();
+    // The subscriptions with changes to deliver; the first m_pendingCount are valid.
+    private Subscription[] m_pending = new Subscription[INITIAL_CAPACITY];
+    private int m_pendingCount = 0;
+    // Whether changes are being delivered.
+    private boolean m_delivering = false;
+    // Whether Actors also notify each change immediately.
+    private boolean m_immediate = false;
+    // The task registered in the Actor phase while there are subscriptions.
+    private MleTask m_task = null;
+
+    // Statistics.
+    private long m_changes = 0;
+    private long m_deliveries = 0;
+
+    // Hide default constructor.
+    private MlePropertyNotifier() {}
+
+    /**
+     * Get the process-wide notifier.
+     *
+     * @return The notifier is returned.
+     */
+    public static MlePropertyNotifier getInstance()
+    {
+        return g_theNotifier;
+    }
+
+    /**
+     * Enable or disable immediate notification.
+     *
+     * @param immediate <b>true</b> for Actors to call <code>notifyPropertyChange()</code>
+     * for every change, in addition to the coalesced delivery; <b>false</b>, the
+     * default, for the coalesced delivery only.
+     */
+    public void setImmediate(boolean immediate)
+    {
+        m_immediate = immediate;
+    }
+
+    /**
+     * Determine whether immediate notification is enabled.
+     *
+     * @return <b>true</b> if Actors call <code>notifyPropertyChange()</code> for
+     * every change.
+     */
+    public boolean isImmediate()
+    {
+        return m_immediate;
+    }
+
+    /**
+     * Subscribe a listener to the property changes of an Actor.
+     *
+     * @param actor The Actor.
+     * @param listener The listener; added once however often it is subscribed.
+     *
+     * @throws MleRuntimeException This exception is thrown if the Actor phase does
+     * not exist.
+     */
+    public void addListener(MleActor actor, IMlePropertyListener listener) throws MleRuntimeException
+    {
+        if ((actor == null) || (listener == null))
+            throw new MleRuntimeException("MlePropertyNotifier: Unable to add null listener.");
+
+        if (m_task == null)
+        {
+            // Register with the scheduler to deliver changes.
+            MleScheduler scheduler = MleTitle.getInstance().m_theScheduler;
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase == null)
+                throw new MleRuntimeException("MlePropertyNotifier: Actor phase does not exist.");
+            m_task = new MleTask(this, "Deliver property changes");
+            scheduler.addTask(actorPhase, m_task);
+        }
+
+        Subscription subscription = m_subscriptions.get(actor);
+        if (subscription == null)
+        {
+            m_subscriptions.put(actor, new Subscription(actor, listener));
+            return;
+        }
+        IMlePropertyListener[] listeners = subscription.m_listeners;
+        for (int i = 0; i < listeners.length; i++)
+            if (listeners[i] == listener)
+                return;
+        IMlePropertyListener[] added = new IMlePropertyListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, added, 0, listeners.length);
+        added[listeners.length] = listener;
+        subscription.m_listeners = added;
+    }
+
+    /**
+     * Unsubscribe a listener from the property changes of an Actor.
+     * <p>
+     * The listener receives no further changes, even those of the current frame.
+     * </p>
+     *
+     * @param actor The Actor.
+     * @param listener The listener.
+     *
+     * @return <b>true</b> if the listener was subscribed.
+     */
+    public boolean removeListener(MleActor actor, IMlePropertyListener listener)
+    {
+        Subscription subscription = m_subscriptions.get(actor);
+        if (subscription == null)
+            return false;
+        IMlePropertyListener[] listeners = subscription.m_listeners;
+        for (int i = 0; i < listeners.length; i++)
+        {
+            if (listeners[i] != listener)
+                continue;
+            if (listeners.length == 1)
+            {
+                removeListeners(actor);
+                return true;
+            }
+            IMlePropertyListener[] removed = new IMlePropertyListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, removed, 0, i);
+            System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+            subscription.m_listeners = removed;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Unsubscribe every listener from the property changes of an Actor.
+     *
+     * @param actor The Actor.
+     */
+    public void removeListeners(MleActor actor)
+    {
+        Subscription subscription = m_subscriptions.remove(actor);
+        if (subscription == null)
+            return;
+        // A pending subscription is skipped by the next delivery.
+        subscription.m_listeners = new IMlePropertyListener[0];
+
+        if (m_subscriptions.isEmpty() && (m_task != null))
+        {
+            // Remove the task from the scheduler.
+            MlePhase actorPhase = MleTitle.g_theActorPhase;
+            if (actorPhase != null)
+                actorPhase.deleteTask(m_task);
+            m_task = null;
+            if (! m_delivering)
+                while (m_pendingCount > 0)
+                    m_pending[--m_pendingCount] = null;
+        }
+    }
+
+    /**
+     * Determine whether an Actor has listeners.
+     *
+     * @param actor The Actor.
+     *
+     * @return <b>true</b> if any listener is subscribed to the Actor.
+     */
+    public boolean hasListeners(MleActor actor)
+    {
+        return m_subscriptions.containsKey(actor);
+    }
+
+    /**
+     * Record a change to a property of an Actor.
+     *
+     * @param actor The Actor.
+     * @param id The identifier of the property, less than 32.
+     * @param name The name of the property, for immediate notification.
+     */
+    void changed(MleActor actor, int id, String name)
+    {
+        if (m_immediate)
+            actor.notifyPropertyChange(name, null, null);
+        if (m_subscriptions.isEmpty())
+            return;
+        Subscription subscription = m_subscriptions.get(actor);
+        if (subscription == null)
+            return;
+
+        m_changes++;
+        subscription.m_changed |= 1 << id;
+        if (subscription.m_pending)
+            return;
+        subscription.m_pending = true;
+        if (m_pendingCount == m_pending.length)
+        {
+            Subscription[] pending = new Subscription[m_pendingCount * 2];
+            System.arraycopy(m_pending, 0, pending, 0, m_pendingCount);
+            m_pending = pending;
+        }
+        m_pending[m_pendingCount++] = subscription;
+    }
+
+    /**
+     * Deliver the changes recorded since the last delivery.
+     * <p>
+     * This is executed during the Actor phase on the scheduler thread. Changes made
+     * by the listeners are delivered by the next call. If a listener throws, the
+     * exception propagates; the changes of the Actors not yet delivered to are
+     * kept for the next call.
+     * </p>
+     */
+    public void run()
+    {
+        int count = m_pendingCount;
+        int delivered = 0;
+        m_delivering = true;
+        try
+        {
+            while (delivered < count)
+            {
+                // The array may grow while the listeners make changes.
+                Subscription subscription = m_pending[delivered++];
+                int changed = subscription.m_changed;
+                subscription.m_changed = 0;
+                subscription.m_pending = false;
+                if (changed == 0)
+                    continue;
+                IMlePropertyListener[] listeners = subscription.m_listeners;
+                if (listeners.length > 0)
+                    m_deliveries++;
+                for (int l = 0; l < listeners.length; l++)
+                    listeners[l].propertiesChanged(subscription.m_actor, changed);
+            }
+        } finally
+        {
+            m_delivering = false;
+            compact(delivered);
+        }
+    }
+
+    // Drop the delivered subscriptions from the pending array, keeping those not
+    // yet delivered and those made pending during delivery, unless every listener
+    // has been removed.
+    private void compact(int delivered)
+    {
+        Subscription[] pending = m_pending;
+        int remaining = (m_task != null) ? m_pendingCount - delivered : 0;
+        if (remaining > 0)
+            System.arraycopy(pending, delivered, pending, 0, remaining);
+        for (int i = remaining; i < m_pendingCount; i++)
+            pending[i] = null;
+        m_pendingCount = remaining;
+    }
+
+    /**
+     * Get the number of changes recorded for Actors with listeners.
+     *
+     * @return The change count.
+     */
+    public long getChangeCount()
+    {
+        return m_changes;
+    }
+
+    /**
+     * Get the number of coalesced changes delivered.
+     *
+     * @return The delivery count, one per Actor per delivery.
+     */
+    public long getDeliveryCount()
+    {
+        return m_deliveries;
+    }
+
+    /**
+     * Reset the change and delivery counters.
+     */
+    public void resetStatistics()
+    {
+        m_changes = 0;
+        m_deliveries = 0;
+    }
+}
@@ -0,0 +1,108 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.HashMap;
+
+/**
+ * A precomputed table describing the properties of an Actor class.
+ * <p>
+ * Each property has an integer identifier, its index in the table, and a value type.
+ * Actors map a property name to its identifier once, then dispatch on the identifier
+ * with a <code>switch</code> to a setter or getter specialized for the property's
+ * type. Callers which cache the identifier skip name handling entirely.
+ * </p>
+ */
+final class MlePropertyTable
+{
+    /** The property holds a vector of three floating-point values. */
+    static final int TYPE_VECTOR3  = 0;
+    /** The property holds a rotation of four floating-point values. */
+    static final int TYPE_ROTATION = 1;
+    /** The property holds a color of four floating-point values. */
+    static final int TYPE_COLOR    = 2;
+    /** The property holds a media reference. */
+    static final int TYPE_MEDIAREF = 3;
+    /** The property is an array of keyframes, set with <code>setPropertyArray()</code>. */
+    static final int TYPE_KEYFRAMES = 4;
+    /** The property is an array of levels of detail, set with <code>setPropertyArray()</code>. */
+    static final int TYPE_LODS      = 5;
+
+    // The property names, indexed by identifier.
+    private final String[] m_names;
+    // The property types, indexed by identifier.
+    private final int[] m_types;
+    // The identifiers, by name.
+    private final HashMap<String, Integer> m_ids;
+
+    /**
+     * Create a property table.
+     *
+     * @param names The property names; a property's identifier is its index.
+     * @param types The property types, one of the <code>TYPE_</code> constants for
+     * each name.
+     */
+    MlePropertyTable(String[] names, int[] types)
+    {
+        if (names.length != types.length)
+            throw new IllegalArgumentException("MlePropertyTable: Names and types differ in length.");
+        m_names = names.clone();
+        m_types = types.clone();
+        m_ids = new HashMap<String, Integer>(names.length * 2);
+        for (int id = 0; id < names.length; id++)
+            m_ids.put(names[id], Integer.valueOf(id));
+    }
+
+    /**
+     * Get the identifier of a property.
+     *
+     * @param name The property name.
+     *
+     * @return The identifier, or <b>-1</b> if there is no such property.
+     */
+    int getId(String name)
+    {
+        if (name == null)
+            return -1;
+        Integer id = m_ids.get(name);
+        return (id != null) ? id.intValue() : -1;
+    }
+
+    /**
+     * Get the name of a property.
+     *
+     * @param id The property identifier.
+     *
+     * @return The name, or <b>null</b> if the identifier is not valid.
+     */
+    String getName(int id)
+    {
+        return ((id >= 0) && (id < m_names.length)) ? m_names[id] : null;
+    }
+
+    /**
+     * Get the value type of a property.
+     *
+     * @param id The property identifier.
+     *
+     * @return One of the <code>TYPE_</code> constants, or <b>-1</b> if the identifier
+     * is not valid.
+     */
+    int getType(int id)
+    {
+        return ((id >= 0) && (id < m_types.length)) ? m_types[id] : -1;
+    }
+
+    /**
+     * Get the number of properties in the table.
+     *
+     * @return The property count.
+     */
+    int size()
+    {
+        return m_names.length;
+    }
+}
@@ -0,0 +1,571 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.Arrays;
+
+/**
+ * A spatial index of bounding spheres, kept in a hashed uniform grid.
+ * <p>
+ * Each entry is a sphere with a stable identifier and an associated object. An
+ * entry is listed in every grid cell its bounding box overlaps; cells are hashed
+ * into a fixed number of buckets, so space is unbounded and no memory is allocated
+ * once the buckets have grown. Moving an entry only touches the buckets when the
+ * range of cells it overlaps changes. Entries overlapping too many cells are kept
+ * in a separate list which every query tests.
+ * </p><p>
+ * Region and ray queries visit only the cells they cross, so their cost depends on
+ * the entries nearby rather than on the size of the index. The index is not
+ * thread-safe; it is meant to be used on the scheduler thread.
+ * </p>
+ */
+public final class MleSpatialGrid
+{
+    /** The default cell size. */
+    public static final float DEFAULT_CELL_SIZE = 8.0f;
+
+    // The number of buckets; a power of two.
+    private static final int BUCKETS = 4096;
+    // The most cells an entry may overlap before it is kept in the large list.
+    private static final int MAX_CELLS = 64;
+    // The largest extent of a range counted exactly, so a count fits in a long.
+    private static final long MAX_EXTENT = 1L << 20;
+    // The cell range of an entry in the large list.
+    private static final int LARGE = Integer.MIN_VALUE;
+
+    // The size of a cell, and its inverse.
+    private final float m_cellSize;
+    private final float m_invCellSize;
+
+    // The sphere of each entry.
+    private float[] m_x = new float[64];
+    private float[] m_y = new float[64];
+    private float[] m_z = new float[64];
+    private float[] m_r = new float[64];
+    // The object associated with each entry, or null if the identifier is free.
+    private Object[] m_objects = new Object[64];
+    // The range of cells each entry is listed in, six ints per entry.
+    private int[] m_cells = new int[64 * 6];
+    // The query stamp of each entry, to report it once per query.
+    private int[] m_stamps = new int[64];
+    // The number of identifiers in use or free.
+    private int m_capacity = 0;
+    // The free identifiers.
+    private int[] m_free = new int[16];
+    private int m_freeCount = 0;
+    // The number of entries.
+    private int m_count = 0;
+
+    // The entries in each bucket.
+    private final int[][] m_buckets = new int[BUCKETS][];
+    private final int[] m_bucketSizes = new int[BUCKETS];
+    // The entries overlapping too many cells.
+    private int[] m_large = new int[16];
+    private int m_largeCount = 0;
+
+    // The scratch cell range.
+    private final int[] m_range = new int[6];
+
+    // The current query stamp.
+    private int m_stamp = 0;
+    // The distance to the last ray hit.
+    private float m_hitDistance = 0.0f;
+
+    /**
+     * Create a spatial index.
+     *
+     * @param cellSize The size of a grid cell; ideally about twice the typical
+     * entry radius.
+     */
+    public MleSpatialGrid(float cellSize)
+    {
+        if (! (cellSize > 0.0f))
+            throw new IllegalArgumentException("MleSpatialGrid: Cell size must be positive.");
+        m_cellSize = cellSize;
+        m_invCellSize = 1.0f / cellSize;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return The entry count.
+     */
+    public int size()
+    {
+        return m_count;
+    }
+
+    /**
+     * Add an entry.
+     *
+     * @param object The object associated with the entry; not <b>null</b>.
+     * @param x The x coordinate of the center.
+     * @param y The y coordinate of the center.
+     * @param z The z coordinate of the center.
+     * @param radius The radius.
+     *
+     * @return The identifier of the entry, stable until it is removed.
+     *
+     * @throws IllegalArgumentException This exception is thrown if the object is
+     * <b>null</b>, or the sphere is not finite or has a negative radius.
+     */
+    public int add(Object object, float x, float y, float z, float radius)
+    {
+        if (object == null)
+            throw new IllegalArgumentException("MleSpatialGrid: Object must not be null.");
+        checkSphere(x, y, z, radius);
+
+        int id;
+        if (m_freeCount > 0)
+            id = m_free[--m_freeCount];
+        else
+        {
+            if (m_capacity == m_objects.length)
+                grow();
+            id = m_capacity++;
+        }
+        m_objects[id] = object;
+        m_stamps[id] = m_stamp;
+        m_count++;
+        set(id, x, y, z, radius);
+        insert(id);
+        return id;
+    }
+
+    /**
+     * Move or resize an entry.
+     *
+     * @param id The identifier of the entry; ignored if <b>-1</b>.
+     * @param x The x coordinate of the center.
+     * @param y The y coordinate of the center.
+     * @param z The z coordinate of the center.
+     * @param radius The radius.
+     *
+     * @throws IllegalArgumentException This exception is thrown if the sphere is not
+     * finite or has a negative radius.
+     */
+    public void update(int id, float x, float y, float z, float radius)
+    {
+        if ((id < 0) || (id >= m_capacity) || (m_objects[id] == null))
+            return;
+        checkSphere(x, y, z, radius);
+
+        // Relist the entry only if the range of cells it overlaps changed.
+        int[] range = m_range;
+        range(x, y, z, radius, range);
+        int c = id * 6;
+        boolean moved = false;
+        for (int k = 0; k < 6; k++)
+            if (m_cells[c + k] != range[k]) moved = true;
+        if (moved)
+            unlist(id);
+        set(id, x, y, z, radius);
+        if (moved)
+            insert(id);
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param id The identifier of the entry; ignored if <b>-1</b>.
+     */
+    public void remove(int id)
+    {
+        if ((id < 0) || (id >= m_capacity) || (m_objects[id] == null))
+            return;
+        unlist(id);
+        m_objects[id] = null;
+        m_count--;
+        if (m_freeCount == m_free.length)
+            m_free = copyOf(m_free, m_freeCount * 2);
+        m_free[m_freeCount++] = id;
+    }
+
+    /**
+     * Get the object associated with an entry.
+     *
+     * @param id The identifier of the entry.
+     *
+     * @return The object, or <b>null</b> if the identifier is not in use.
+     */
+    public Object getObject(int id)
+    {
+        return ((id >= 0) && (id < m_capacity)) ? m_objects[id] : null;
+    }
+
+    /**
+     * Determine whether an entry intersects a frustum.
+     *
+     * @param id The identifier of the entry.
+     * @param frustum The frustum.
+     *
+     * @return <b>true</b> if the entry's sphere intersects the frustum.
+     */
+    public boolean intersects(int id, MleFrustum frustum)
+    {
+        return frustum.intersectsSphere(m_x[id], m_y[id], m_z[id], m_r[id]);
+    }
+
+    /**
+     * Find the entries whose spheres intersect an axis-aligned box.
+     *
+     * @param minX The minimum x coordinate of the box.
+     * @param minY The minimum y coordinate of the box.
+     * @param minZ The minimum z coordinate of the box.
+     * @param maxX The maximum x coordinate of the box.
+     * @param maxY The maximum y coordinate of the box.
+     * @param maxZ The maximum z coordinate of the box.
+     * @param out The array to write the identifiers into; at most its length are
+     * written.
+     *
+     * @return The number of entries found, which may exceed the length of
+     * <code>out</code>.
+     *
+     * @throws IllegalArgumentException This exception is thrown if the box is not
+     * finite.
+     */
+    public int queryRegion(float minX, float minY, float minZ,
+                           float maxX, float maxY, float maxZ, int[] out)
+    {
+        if (! (isFinite(minX) && isFinite(minY) && isFinite(minZ) &&
+               isFinite(maxX) && isFinite(maxY) && isFinite(maxZ)))
+            throw new IllegalArgumentException("MleSpatialGrid: Region must be finite.");
+        int stamp = nextStamp();
+        int found = 0;
+        for (int i = 0; i < m_largeCount; i++)
+            found = testBox(m_large[i], stamp, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+
+        int x0 = cell(minX), y0 = cell(minY), z0 = cell(minZ);
+        int x1 = cell(maxX), y1 = cell(maxY), z1 = cell(maxZ);
+        if (countCells(x0, y0, z0, x1, y1, z1) > BUCKETS)
+        {
+            // The region covers more cells than there are buckets; scan every bucket.
+            for (int b = 0; b < BUCKETS; b++)
+                found = testBucket(b, stamp, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+            return found;
+        }
+        for (int cx = x0; cx <= x1; cx++)
+            for (int cy = y0; cy <= y1; cy++)
+                for (int cz = z0; cz <= z1; cz++)
+                    found = testBucket(hash(cx, cy, cz), stamp, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+        return found;
+    }
+
+    /**
+     * Find the nearest entry whose sphere is hit by a ray.
+     *
+     * @param ox The x coordinate of the ray origin.
+     * @param oy The y coordinate of the ray origin.
+     * @param oz The z coordinate of the ray origin.
+     * @param dx The x component of the ray direction.
+     * @param dy The y component of the ray direction.
+     * @param dz The z component of the ray direction.
+     * @param maxDistance The length of the ray, in units of the direction's length;
+     * the cells along it are walked, so it should be finite.
+     *
+     * @return The identifier of the nearest entry hit, or <b>-1</b> if there is none;
+     * the distance to it is returned by <code>getHitDistance()</code>.
+     */
+    public int queryRay(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance)
+    {
+        int stamp = nextStamp();
+        int best = -1;
+        float bestT = maxDistance;
+        for (int i = 0; i < m_largeCount; i++)
+        {
+            int id = m_large[i];
+            float t = hitSphere(id, ox, oy, oz, dx, dy, dz);
+            if ((t >= 0.0f) && (t <= bestT))
+            {
+                best = id;
+                bestT = t;
+            }
+        }
+
+        // Walk the cells along the ray (Amanatides and Woo).
+        int cx = cell(ox), cy = cell(oy), cz = cell(oz);
+        int stepX = (dx > 0.0f) ? 1 : -1, stepY = (dy > 0.0f) ? 1 : -1, stepZ = (dz > 0.0f) ? 1 : -1;
+        float tDeltaX = (dx != 0.0f) ? Math.abs(m_cellSize / dx) : Float.MAX_VALUE;
+        float tDeltaY = (dy != 0.0f) ? Math.abs(m_cellSize / dy) : Float.MAX_VALUE;
+        float tDeltaZ = (dz != 0.0f) ? Math.abs(m_cellSize / dz) : Float.MAX_VALUE;
+        float tMaxX = (dx != 0.0f) ? ((cx + (stepX > 0 ? 1 : 0)) * m_cellSize - ox) / dx : Float.MAX_VALUE;
+        float tMaxY = (dy != 0.0f) ? ((cy + (stepY > 0 ? 1 : 0)) * m_cellSize - oy) / dy : Float.MAX_VALUE;
+        float tMaxZ = (dz != 0.0f) ? ((cz + (stepZ > 0 ? 1 : 0)) * m_cellSize - oz) / dz : Float.MAX_VALUE;
+        float tEnter = 0.0f;
+        while (tEnter <= bestT)
+        {
+            int b = hash(cx, cy, cz);
+            int[] bucket = m_buckets[b];
+            for (int i = 0, n = m_bucketSizes[b]; i < n; i++)
+            {
+                int id = bucket[i];
+                if (m_stamps[id] == stamp) continue;
+                m_stamps[id] = stamp;
+                float t = hitSphere(id, ox, oy, oz, dx, dy, dz);
+                if ((t >= 0.0f) && (t <= bestT))
+                {
+                    best = id;
+                    bestT = t;
+                }
+            }
+
+            // Step to the next cell.
+            if ((tMaxX <= tMaxY) && (tMaxX <= tMaxZ))
+            {
+                tEnter = tMaxX;
+                tMaxX += tDeltaX;
+                cx += stepX;
+            } else if (tMaxY <= tMaxZ)
+            {
+                tEnter = tMaxY;
+                tMaxY += tDeltaY;
+                cy += stepY;
+            } else
+            {
+                tEnter = tMaxZ;
+                tMaxZ += tDeltaZ;
+                cz += stepZ;
+            }
+            if (tEnter == Float.MAX_VALUE)
+                break;
+        }
+        m_hitDistance = bestT;
+        return best;
+    }
+
+    /**
+     * Get the distance to the entry found by the last <code>queryRay()</code>.
+     *
+     * @return The distance, in units of the ray direction's length.
+     */
+    public float getHitDistance()
+    {
+        return m_hitDistance;
+    }
+
+    // Set the sphere of an entry and the range of cells it overlaps.
+    private void set(int id, float x, float y, float z, float radius)
+    {
+        m_x[id] = x;
+        m_y[id] = y;
+        m_z[id] = z;
+        m_r[id] = radius;
+        range(x, y, z, radius, m_range);
+        System.arraycopy(m_range, 0, m_cells, id * 6, 6);
+    }
+
+    // Compute the range of cells a sphere overlaps.
+    private void range(float x, float y, float z, float radius, int[] range)
+    {
+        int x0 = cell(x - radius), y0 = cell(y - radius), z0 = cell(z - radius);
+        int x1 = cell(x + radius), y1 = cell(y + radius), z1 = cell(z + radius);
+        if (countCells(x0, y0, z0, x1, y1, z1) > MAX_CELLS)
+        {
+            range[0] = LARGE;
+            range[1] = range[2] = range[3] = range[4] = range[5] = 0;
+            return;
+        }
+        range[0] = x0;
+        range[1] = y0;
+        range[2] = z0;
+        range[3] = x1;
+        range[4] = y1;
+        range[5] = z1;
+    }
+
+    // List an entry in the buckets of its range of cells.
+    private void insert(int id)
+    {
+        int c = id * 6;
+        if (m_cells[c] == LARGE)
+        {
+            if (m_largeCount == m_large.length)
+                m_large = copyOf(m_large, m_largeCount * 2);
+            m_large[m_largeCount++] = id;
+            return;
+        }
+        for (int cx = m_cells[c]; cx <= m_cells[c + 3]; cx++)
+            for (int cy = m_cells[c + 1]; cy <= m_cells[c + 4]; cy++)
+                for (int cz = m_cells[c + 2]; cz <= m_cells[c + 5]; cz++)
+                {
+                    int b = hash(cx, cy, cz);
+                    int[] bucket = m_buckets[b];
+                    int n = m_bucketSizes[b];
+                    // Distinct cells may share a bucket; list the entry once.
+                    if ((n > 0) && contains(bucket, n, id)) continue;
+                    if (bucket == null)
+                        bucket = m_buckets[b] = new int[4];
+                    else if (n == bucket.length)
+                        bucket = m_buckets[b] = copyOf(bucket, n * 2);
+                    bucket[n] = id;
+                    m_bucketSizes[b] = n + 1;
+                }
+    }
+
+    // Remove an entry from the buckets of its range of cells.
+    private void unlist(int id)
+    {
+        int c = id * 6;
+        if (m_cells[c] == LARGE)
+        {
+            for (int i = 0; i < m_largeCount; i++)
+                if (m_large[i] == id)
+                {
+                    m_large[i] = m_large[--m_largeCount];
+                    break;
+                }
+            return;
+        }
+        for (int cx = m_cells[c]; cx <= m_cells[c + 3]; cx++)
+            for (int cy = m_cells[c + 1]; cy <= m_cells[c + 4]; cy++)
+                for (int cz = m_cells[c + 2]; cz <= m_cells[c + 5]; cz++)
+                {
+                    int b = hash(cx, cy, cz);
+                    int[] bucket = m_buckets[b];
+                    int n = m_bucketSizes[b];
+                    for (int i = 0; i < n; i++)
+                        if (bucket[i] == id)
+                        {
+                            bucket[i] = bucket[n - 1];
+                            m_bucketSizes[b] = n - 1;
+                            break;
+                        }
+                }
+    }
+
+    // Test the entries of a bucket against a box, reporting each entry once.
+    private int testBucket(int b, int stamp, float minX, float minY, float minZ,
+                           float maxX, float maxY, float maxZ, int[] out, int found)
+    {
+        int[] bucket = m_buckets[b];
+        for (int i = 0, n = m_bucketSizes[b]; i < n; i++)
+            found = testBox(bucket[i], stamp, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+        return found;
+    }
+
+    // Test an entry against a box, reporting it once.
+    private int testBox(int id, int stamp, float minX, float minY, float minZ,
+                        float maxX, float maxY, float maxZ, int[] out, int found)
+    {
+        if (m_stamps[id] == stamp)
+            return found;
+        m_stamps[id] = stamp;
+
+        // Distance from the center to the box.
+        float x = m_x[id], y = m_y[id], z = m_z[id], r = m_r[id];
+        float ex = (x < minX) ? minX - x : (x > maxX) ? x - maxX : 0.0f;
+        float ey = (y < minY) ? minY - y : (y > maxY) ? y - maxY : 0.0f;
+        float ez = (z < minZ) ? minZ - z : (z > maxZ) ? z - maxZ : 0.0f;
+        if (ex * ex + ey * ey + ez * ez > r * r)
+            return found;
+        if (found < out.length)
+            out[found] = id;
+        return found + 1;
+    }
+
+    // Intersect a ray with the sphere of an entry; the distance, or -1 if missed.
+    private float hitSphere(int id, float ox, float oy, float oz, float dx, float dy, float dz)
+    {
+        float lx = ox - m_x[id], ly = oy - m_y[id], lz = oz - m_z[id];
+        float r = m_r[id];
+        float a = dx * dx + dy * dy + dz * dz;
+        float b = lx * dx + ly * dy + lz * dz;
+        float c = lx * lx + ly * ly + lz * lz - r * r;
+        if (c <= 0.0f)
+            return 0.0f;   // The origin is inside the sphere.
+        float disc = b * b - a * c;
+        if ((disc < 0.0f) || (b > 0.0f) || (a == 0.0f))
+            return -1.0f;
+        return (-b - (float) Math.sqrt(disc)) / a;
+    }
+
+    // Advance the query stamp.
+    private int nextStamp()
+    {
+        if (++m_stamp == 0)
+        {
+            // The stamp wrapped around; forget every stamp.
+            Arrays.fill(m_stamps, 0, m_capacity, 0);
+            m_stamp = 1;
+        }
+        return m_stamp;
+    }
+
+    // Count the cells in a range, or return Long.MAX_VALUE if the count is larger
+    // than a range may usefully be walked; the extents are taken in long, so that
+    // ranges spanning most of the int coordinates do not overflow.
+    private static long countCells(int x0, int y0, int z0, int x1, int y1, int z1)
+    {
+        long dx = (long) x1 - x0 + 1, dy = (long) y1 - y0 + 1, dz = (long) z1 - z0 + 1;
+        if ((dx > MAX_EXTENT) || (dy > MAX_EXTENT) || (dz > MAX_EXTENT))
+            return Long.MAX_VALUE;
+        return dx * dy * dz;
+    }
+
+    // Reject a sphere which is not finite or has a negative radius.
+    private static void checkSphere(float x, float y, float z, float radius)
+    {
+        if (! (isFinite(x) && isFinite(y) && isFinite(z) && isFinite(radius)) || (radius < 0.0f))
+            throw new IllegalArgumentException("MleSpatialGrid: Sphere must be finite, with a radius not negative.");
+    }
+
+    // Determine whether a value is neither infinite nor NaN.
+    private static boolean isFinite(float v)
+    {
+        return (v - v) == 0.0f;
+    }
+
+    // Get the cell coordinate of a position.
+    private int cell(float v)
+    {
+        return (int) Math.floor(v * m_invCellSize);
+    }
+
+    // Hash a cell to a bucket.
+    private static int hash(int cx, int cy, int cz)
+    {
+        return ((cx * 73856093) ^ (cy * 19349663) ^ (cz * 83492791)) & (BUCKETS - 1);
+    }
+
+    // Determine whether the first n elements of an array contain a value.
+    private static boolean contains(int[] values, int n, int value)
+    {
+        for (int i = 0; i < n; i++)
+            if (values[i] == value) return true;
+        return false;
+    }
+
+    // Return a copy of the array with the specified length.
+    private static int[] copyOf(int[] values, int length)
+    {
+        int[] copy = new int[length];
+        System.arraycopy(values, 0, copy, 0, Math.min(values.length, length));
+        return copy;
+    }
+
+    // Double the capacity of the entry arrays.
+    private void grow()
+    {
+        int capacity = m_objects.length * 2;
+        float[] x = new float[capacity];
+        System.arraycopy(m_x, 0, x, 0, m_capacity);
+        m_x = x;
+        float[] y = new float[capacity];
+        System.arraycopy(m_y, 0, y, 0, m_capacity);
+        m_y = y;
+        float[] z = new float[capacity];
+        System.arraycopy(m_z, 0, z, 0, m_capacity);
+        m_z = z;
+        float[] r = new float[capacity];
+        System.arraycopy(m_r, 0, r, 0, m_capacity);
+        m_r = r;
+        Object[] objects = new Object[capacity];
+        System.arraycopy(m_objects, 0, objects, 0, m_capacity);
+        m_objects = objects;
+        m_cells = copyOf(m_cells, capacity * 6);
+        m_stamps = copyOf(m_stamps, capacity);
+    }
+}
@@ -0,0 +1,41 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import Android classes.
+import android.os.SystemClock;
+
+/**
+ * A clock backed by the Android system clock.
+ * <p>
+ * Time is measured since boot and continues to advance while the device sleeps.
+ * </p>
+ */
+public final class MleSystemClock implements IMleClock
+{
+    // The singleton instance.
+    private static final MleSystemClock g_theClock = new MleSystemClock();
+
+    // Hide default constructor.
+    private MleSystemClock() {}
+
+    /**
+     * Get the system clock.
+     *
+     * @return The clock is returned.
+     */
+    public static MleSystemClock getInstance()
+    {
+        return g_theClock;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.parts.actors.IMleClock#getNanos()
+     */
+    public long getNanos()
+    {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+}
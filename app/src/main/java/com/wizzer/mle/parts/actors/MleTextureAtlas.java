@@ -0,0 +1,252 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.IdentityHashMap;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * A page of a texture atlas: one bitmap holding many small images, each in its
+ * own sub-rectangle.
+ * <p>
+ * Atlases are built by <code>MleTextureAtlasBuilder</code>. An image is looked up
+ * by the media reference it was packed from; its region gives the sub-rectangle in
+ * pixels and texture coordinates, and the size of the original image, which may
+ * be larger if it was scaled down to fit the page.
+ * </p><p>
+ * The atlas owns its bitmap until <code>dispose()</code>, which must not be called
+ * while Actors still resolve to its regions.
+ * </p>
+ */
+public final class MleTextureAtlas
+{
+    /**
+     * The sub-rectangle of an image in an atlas.
+     */
+    public static final class Region
+    {
+        // The atlas holding the image.
+        private final MleTextureAtlas m_atlas;
+        // The position and size of the image in the atlas.
+        private final int m_x;
+        private final int m_y;
+        private final int m_packedWidth;
+        private final int m_packedHeight;
+        // The size of the original image.
+        private final int m_width;
+        private final int m_height;
+
+        Region(MleTextureAtlas atlas, int x, int y, int packedWidth, int packedHeight, int width, int height)
+        {
+            m_atlas = atlas;
+            m_x = x;
+            m_y = y;
+            m_packedWidth = packedWidth;
+            m_packedHeight = packedHeight;
+            m_width = width;
+            m_height = height;
+        }
+
+        /**
+         * Get the atlas holding the image.
+         *
+         * @return The atlas is returned.
+         */
+        public MleTextureAtlas getAtlas()
+        {
+            return m_atlas;
+        }
+
+        /**
+         * Get the left edge of the image in the atlas.
+         *
+         * @return The x coordinate in pixels.
+         */
+        public int getX()
+        {
+            return m_x;
+        }
+
+        /**
+         * Get the top edge of the image in the atlas.
+         *
+         * @return The y coordinate in pixels.
+         */
+        public int getY()
+        {
+            return m_y;
+        }
+
+        /**
+         * Get the width of the image in the atlas.
+         *
+         * @return The width in pixels; less than <code>getWidth()</code> if the
+         * image was scaled down to fit the atlas.
+         */
+        public int getPackedWidth()
+        {
+            return m_packedWidth;
+        }
+
+        /**
+         * Get the height of the image in the atlas.
+         *
+         * @return The height in pixels; less than <code>getHeight()</code> if the
+         * image was scaled down to fit the atlas.
+         */
+        public int getPackedHeight()
+        {
+            return m_packedHeight;
+        }
+
+        /**
+         * Get the width of the original image.
+         *
+         * @return The width in pixels.
+         */
+        public int getWidth()
+        {
+            return m_width;
+        }
+
+        /**
+         * Get the height of the original image.
+         *
+         * @return The height in pixels.
+         */
+        public int getHeight()
+        {
+            return m_height;
+        }
+
+        /**
+         * Get the texture coordinates of the image in the atlas.
+         *
+         * @param uv Receives the left, top, right and bottom texture coordinates,
+         * from 0 to 1.
+         *
+         * @return The array is returned.
+         */
+        public float[] getTexCoords(float[] uv)
+        {
+            float width = m_atlas.m_width, height = m_atlas.m_height;
+            uv[0] = m_x / width;
+            uv[1] = m_y / height;
+            uv[2] = (m_x + m_packedWidth) / width;
+            uv[3] = (m_y + m_packedHeight) / height;
+            return uv;
+        }
+    }
+
+    // The size of the atlas.
+    private final int m_width;
+    private final int m_height;
+    // The regions, by the media reference of the image.
+    private final IdentityHashMap<MleMediaRef, Region> m_regions = new IdentityHashMap<MleMediaRef, Region>();
+    // The composed bitmap, or null before composition or once disposed.
+    private Bitmap m_bitmap = null;
+
+    MleTextureAtlas(int width, int height)
+    {
+        m_width = width;
+        m_height = height;
+    }
+
+    // Add the region of an image.
+    Region add(MleMediaRef mref, int x, int y, int packedWidth, int packedHeight, int width, int height)
+    {
+        Region region = new Region(this, x, y, packedWidth, packedHeight, width, height);
+        m_regions.put(mref, region);
+        return region;
+    }
+
+    // Set the composed bitmap.
+    void setBitmap(Bitmap bitmap)
+    {
+        m_bitmap = bitmap;
+    }
+
+    /**
+     * Get the width of the atlas.
+     *
+     * @return The width in pixels, a power of two.
+     */
+    public int getWidth()
+    {
+        return m_width;
+    }
+
+    /**
+     * Get the height of the atlas.
+     *
+     * @return The height in pixels, a power of two.
+     */
+    public int getHeight()
+    {
+        return m_height;
+    }
+
+    /**
+     * Get the bitmap of the atlas.
+     *
+     * @return The bitmap, or <b>null</b> if the atlas has not been composed or has
+     * been disposed.
+     */
+    public Bitmap getBitmap()
+    {
+        return m_bitmap;
+    }
+
+    /**
+     * Get the region of an image.
+     *
+     * @param mref The media reference the image was packed from.
+     *
+     * @return The region, or <b>null</b> if the image is not in this atlas.
+     */
+    public Region getRegion(MleMediaRef mref)
+    {
+        return m_regions.get(mref);
+    }
+
+    /**
+     * Get the number of images in the atlas.
+     *
+     * @return The region count.
+     */
+    public int getRegionCount()
+    {
+        return m_regions.size();
+    }
+
+    /**
+     * Get the fraction of the atlas covered by images.
+     *
+     * @return The occupancy, from 0 to 1.
+     */
+    public float getOccupancy()
+    {
+        long used = 0;
+        for (Region region : m_regions.values())
+            used += (long) region.m_packedWidth * region.m_packedHeight;
+        return (float) used / ((long) m_width * m_height);
+    }
+
+    /**
+     * Recycle the bitmap of the atlas.
+     */
+    public void dispose()
+    {
+        if (m_bitmap != null)
+            m_bitmap.recycle();
+        m_bitmap = null;
+    }
+}
@@ -0,0 +1,507 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+
+/**
+ * Packs many small images into a few texture atlases.
+ * <p>
+ * Images are added by media reference, by DPP Table-of-Contents index, or by the
+ * <code>MleImageActor</code> displaying them; an image added more than once is
+ * packed once. <code>pack()</code> computes the layout from the image headers
+ * alone, without decoding, using the MaxRects bin-packing algorithm with the best
+ * short side fit heuristic, largest images first. Each atlas is shrunk to the
+ * smallest power-of-two size holding its images. Images larger than the maximum
+ * atlas size are scaled down to fit.
+ * </p><p>
+ * <code>build()</code> packs the images if necessary, decodes each into its
+ * region of the atlas bitmaps, and resolves each added Actor to its region; the
+ * Actors then release their own copy of the image. The builder may then be reused.
+ * It must only be used on one thread.
+ * </p>
+ */
+public final class MleTextureAtlasBuilder
+{
+    /** The default maximum atlas size, 2048 pixels. */
+    public static final int DEFAULT_MAX_SIZE = 2048;
+    /** The default number of pixels between images, 1. */
+    public static final int DEFAULT_PADDING = 1;
+
+    // An image to pack.
+    private static final class Image
+    {
+        // The media reference of the image.
+        final MleMediaRef m_mref;
+        // The size of the original image.
+        final int m_width;
+        final int m_height;
+        // Whether the builder holds a reference from the media cache.
+        boolean m_acquired = false;
+        // The Actors displaying the image.
+        final ArrayList<MleImageActor> m_actors = new ArrayList<MleImageActor>(1);
+        // The size and position of the image in its page, once packed.
+        int m_packedWidth;
+        int m_packedHeight;
+        int m_x;
+        int m_y;
+        // The page holding the image, once packed.
+        Page m_page = null;
+
+        Image(MleMediaRef mref, int width, int height)
+        {
+            m_mref = mref;
+            m_width = width;
+            m_height = height;
+        }
+    }
+
+    // A page being packed, with its maximal free rectangles.
+    private static final class Page
+    {
+        // The free rectangles, as x, y, width and height.
+        final ArrayList<int[]> m_free = new ArrayList<int[]>();
+        // The rectangles split from the free rectangles by a placement.
+        private final ArrayList<int[]> m_split = new ArrayList<int[]>();
+        // The images placed.
+        final ArrayList<Image> m_images = new ArrayList<Image>();
+        // The extent of the placed images.
+        int m_right = 0;
+        int m_bottom = 0;
+        // The atlas, once packed.
+        MleTextureAtlas m_atlas = null;
+
+        Page(int size)
+        {
+            m_free.add(new int[] { 0, 0, size, size });
+        }
+
+        // Place a rectangle in the free rectangle which leaves the shortest side
+        // smallest, returning false if it does not fit.
+        boolean insert(Image image, int width, int height)
+        {
+            int[] best = null;
+            int bestShort = Integer.MAX_VALUE, bestLong = Integer.MAX_VALUE;
+            for (int i = 0; i < m_free.size(); i++)
+            {
+                int[] free = m_free.get(i);
+                if ((width > free[2]) || (height > free[3]))
+                    continue;
+                int dw = free[2] - width, dh = free[3] - height;
+                int shortSide = Math.min(dw, dh), longSide = Math.max(dw, dh);
+                if ((shortSide < bestShort) || ((shortSide == bestShort) && (longSide < bestLong)))
+                {
+                    best = free;
+                    bestShort = shortSide;
+                    bestLong = longSide;
+                }
+            }
+            if (best == null)
+                return false;
+
+            int x = best[0], y = best[1];
+            split(x, y, width, height);
+            prune();
+            image.m_x = x;
+            image.m_y = y;
+            image.m_page = this;
+            m_images.add(image);
+            m_right = Math.max(m_right, x + width);
+            m_bottom = Math.max(m_bottom, y + height);
+            return true;
+        }
+
+        // Replace the free rectangles overlapping a placement by their remainders.
+        private void split(int x, int y, int width, int height)
+        {
+            for (int i = m_free.size() - 1; i >= 0; i--)
+            {
+                int[] free = m_free.get(i);
+                int right = free[0] + free[2], bottom = free[1] + free[3];
+                if ((x >= right) || (x + width <= free[0]) || (y >= bottom) || (y + height <= free[1]))
+                    continue;
+                m_free.remove(i);
+                if (x > free[0])
+                    m_split.add(new int[] { free[0], free[1], x - free[0], free[3] });
+                if (x + width < right)
+                    m_split.add(new int[] { x + width, free[1], right - x - width, free[3] });
+                if (y > free[1])
+                    m_split.add(new int[] { free[0], free[1], free[2], y - free[1] });
+                if (y + height < bottom)
+                    m_split.add(new int[] { free[0], y + height, free[2], bottom - y - height });
+            }
+            m_free.addAll(m_split);
+            m_split.clear();
+        }
+
+        // Remove the free rectangles contained in another.
+        private void prune()
+        {
+            for (int i = m_free.size() - 1; i >= 0; i--)
+            {
+                int[] a = m_free.get(i);
+                for (int j = 0; j < m_free.size(); j++)
+                {
+                    int[] b = m_free.get(j);
+                    if ((i != j) && (a[0] >= b[0]) && (a[1] >= b[1]) &&
+                        (a[0] + a[2] <= b[0] + b[2]) && (a[1] + a[3] <= b[1] + b[3]))
+                    {
+                        m_free.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // Orders images by their longest side, then their area, largest first.
+    private static final Comparator<Image> LARGEST_FIRST = new Comparator<Image>()
+    {
+        public int compare(Image a, Image b)
+        {
+            int sideA = Math.max(a.m_packedWidth, a.m_packedHeight);
+            int sideB = Math.max(b.m_packedWidth, b.m_packedHeight);
+            if (sideA != sideB)
+                return (sideA > sideB) ? -1 : 1;
+            long areaA = (long) a.m_packedWidth * a.m_packedHeight;
+            long areaB = (long) b.m_packedWidth * b.m_packedHeight;
+            return (areaA > areaB) ? -1 : ((areaA < areaB) ? 1 : 0);
+        }
+    };
+
+    // The images, in the order added, and by media reference.
+    private final ArrayList<Image> m_images = new ArrayList<Image>();
+    private final IdentityHashMap<MleMediaRef, Image> m_byMediaRef = new IdentityHashMap<MleMediaRef, Image>();
+    // The pages, once packed.
+    private final ArrayList<Page> m_pages = new ArrayList<Page>();
+    // Whether the pages are up to date.
+    private boolean m_packed = false;
+    // The probed size of an image.
+    private final int[] m_size = new int[2];
+
+    // The maximum atlas size.
+    private int m_maxSize = DEFAULT_MAX_SIZE;
+    // The number of pixels between images.
+    private int m_padding = DEFAULT_PADDING;
+    // The number of images which could not be decoded by the last build.
+    private int m_failed = 0;
+
+    /**
+     * The default constructor.
+     */
+    public MleTextureAtlasBuilder()
+    {
+        super();
+    }
+
+    /**
+     * Set the maximum atlas size.
+     *
+     * @param size The maximum width and height in pixels, rounded down to a power of
+     * two; at least 64.
+     */
+    public void setMaxSize(int size)
+    {
+        m_maxSize = Integer.highestOneBit(Math.max(64, size));
+        m_packed = false;
+    }
+
+    /**
+     * Get the maximum atlas size.
+     *
+     * @return The maximum width and height in pixels.
+     */
+    public int getMaxSize()
+    {
+        return m_maxSize;
+    }
+
+    /**
+     * Set the number of pixels left between images, so that filtering does not
+     * bleed one image into the next.
+     *
+     * @param padding The padding in pixels; at least 0.
+     */
+    public void setPadding(int padding)
+    {
+        m_padding = Math.max(0, Math.min(padding, m_maxSize / 4));
+        m_packed = false;
+    }
+
+    /**
+     * Get the number of pixels left between images.
+     *
+     * @return The padding in pixels.
+     */
+    public int getPadding()
+    {
+        return m_padding;
+    }
+
+    /**
+     * Add an image.
+     * <p>
+     * The caller keeps its reference to the media, which must remain valid until
+     * <code>build()</code> returns.
+     * </p>
+     *
+     * @param mref The image media reference.
+     *
+     * @return <b>true</b> if the image is to be packed; <b>false</b> if its
+     * dimensions can not be read.
+     */
+    public boolean add(MleMediaRef mref)
+    {
+        return addImage(mref) != null;
+    }
+
+    /**
+     * Add an image from the DPP.
+     * <p>
+     * The builder holds a reference to the media from <code>MleMediaRefCache</code>
+     * until the atlases are built.
+     * </p>
+     *
+     * @param index The DPP Table-of-Contents index.
+     *
+     * @return <b>true</b> if the image is to be packed; <b>false</b> if its
+     * dimensions can not be read.
+     *
+     * @throws MleDppException This exception is thrown if the media can not be
+     * loaded.
+     */
+    public boolean add(int index) throws MleDppException
+    {
+        MleMediaRefCache cache = MleMediaRefCache.getInstance();
+        MleMediaRef mref = cache.acquire(index);
+        Image image = addImage(mref);
+        if ((image == null) || image.m_acquired)
+            cache.release(mref);
+        else
+            image.m_acquired = true;
+        return image != null;
+    }
+
+    /**
+     * Add the image displayed by an Actor, and resolve the Actor to its region once
+     * the atlases are built.
+     *
+     * @param actor The Actor.
+     *
+     * @return <b>true</b> if the image is to be packed; <b>false</b> if the Actor
+     * has no image loaded or its dimensions can not be read.
+     */
+    public boolean add(MleImageActor actor)
+    {
+        Image image = addImage(actor.getImageMedia());
+        if (image == null)
+            return false;
+        if (! image.m_actors.contains(actor))
+            image.m_actors.add(actor);
+        return true;
+    }
+
+    /**
+     * Get the number of distinct images added.
+     *
+     * @return The image count.
+     */
+    public int size()
+    {
+        return m_images.size();
+    }
+
+    /**
+     * Compute the layout of the atlases, without decoding the images.
+     * <p>
+     * The atlases returned have their regions but no bitmap, and may be used to
+     * plan the atlases offline.
+     * </p>
+     *
+     * @return The atlases.
+     */
+    public MleTextureAtlas[] pack()
+    {
+        if (! m_packed)
+        {
+            layout();
+            m_packed = true;
+        }
+        MleTextureAtlas[] atlases = new MleTextureAtlas[m_pages.size()];
+        for (int i = 0; i < atlases.length; i++)
+            atlases[i] = m_pages.get(i).m_atlas;
+        return atlases;
+    }
+
+    /**
+     * Build the atlases.
+     * <p>
+     * Each image is decoded into its region and each added Actor is resolved to
+     * the region of its image. The builder is then emptied.
+     * </p>
+     *
+     * @return The atlases, owned by the caller.
+     */
+    public MleTextureAtlas[] build()
+    {
+        MleTextureAtlas[] atlases = pack();
+        m_failed = 0;
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Rect dst = new Rect();
+        for (int p = 0; p < m_pages.size(); p++)
+        {
+            Page page = m_pages.get(p);
+            MleTextureAtlas atlas = page.m_atlas;
+            Bitmap bitmap = Bitmap.createBitmap(atlas.getWidth(), atlas.getHeight(), Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            for (int i = 0; i < page.m_images.size(); i++)
+            {
+                Image image = page.m_images.get(i);
+                long start = MleActorMetrics.start();
+                Bitmap decoded = MleImageDecoder.decode(image.m_mref, image.m_packedWidth, image.m_packedHeight);
+                MleImageActor.g_metrics.stop(MleActorMetrics.OP_LOAD_MEDIA, start);
+                if (decoded == null)
+                {
+                    m_failed++;
+                    continue;
+                }
+                dst.set(image.m_x, image.m_y, image.m_x + image.m_packedWidth, image.m_y + image.m_packedHeight);
+                canvas.drawBitmap(decoded, null, dst, paint);
+                decoded.recycle();
+            }
+            atlas.setBitmap(bitmap);
+        }
+
+        // Resolve the Actors; clear() then drops the references held by the builder.
+        for (int i = 0; i < m_images.size(); i++)
+        {
+            Image image = m_images.get(i);
+            MleTextureAtlas.Region region = image.m_page.m_atlas.getRegion(image.m_mref);
+            for (int a = 0; a < image.m_actors.size(); a++)
+                image.m_actors.get(a).setAtlasRegion(region);
+        }
+        clear();
+        return atlases;
+    }
+
+    /**
+     * Get the number of images which could not be decoded by the last build; their
+     * regions are left blank.
+     *
+     * @return The failure count.
+     */
+    public int getFailedCount()
+    {
+        return m_failed;
+    }
+
+    /**
+     * Remove every image, releasing the references held by the builder.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < m_images.size(); i++)
+        {
+            Image image = m_images.get(i);
+            if (image.m_acquired)
+                MleMediaRefCache.getInstance().release(image.m_mref);
+            image.m_acquired = false;
+        }
+        m_images.clear();
+        m_byMediaRef.clear();
+        m_pages.clear();
+        m_packed = false;
+    }
+
+    // Add an image once, returning null if its dimensions can not be read.
+    private Image addImage(MleMediaRef mref)
+    {
+        if (mref == null)
+            return null;
+        Image image = m_byMediaRef.get(mref);
+        if (image != null)
+            return image;
+        if (! MleImageDecoder.probe(mref, m_size))
+            return null;
+        image = new Image(mref, m_size[0], m_size[1]);
+        m_images.add(image);
+        m_byMediaRef.put(mref, image);
+        m_packed = false;
+        return image;
+    }
+
+    // Pack the images into pages and create their atlases.
+    private void layout()
+    {
+        // Scale down images which do not fit a page; the fitted size matches that
+        // decoded by MleImageDecoder.
+        int limit = m_maxSize - m_padding;
+        ArrayList<Image> sorted = new ArrayList<Image>(m_images);
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            Image image = sorted.get(i);
+            image.m_packedWidth = image.m_width;
+            image.m_packedHeight = image.m_height;
+            if ((image.m_width > limit) || (image.m_height > limit))
+            {
+                float factor = Math.min((float) limit / image.m_width, (float) limit / image.m_height);
+                image.m_packedWidth = Math.max(1, Math.round(image.m_width * factor));
+                image.m_packedHeight = Math.max(1, Math.round(image.m_height * factor));
+            }
+        }
+        Collections.sort(sorted, LARGEST_FIRST);
+
+        m_pages.clear();
+        for (int i = 0; i < sorted.size(); i++)
+        {
+            Image image = sorted.get(i);
+            int width = image.m_packedWidth + m_padding, height = image.m_packedHeight + m_padding;
+            boolean placed = false;
+            for (int p = 0; (p < m_pages.size()) && ! placed; p++)
+                placed = m_pages.get(p).insert(image, width, height);
+            if (! placed)
+            {
+                Page page = new Page(m_maxSize);
+                m_pages.add(page);
+                page.insert(image, width, height);
+            }
+        }
+
+        // Shrink each page to a power of two holding its images.
+        for (int p = 0; p < m_pages.size(); p++)
+        {
+            Page page = m_pages.get(p);
+            MleTextureAtlas atlas = new MleTextureAtlas(powerOfTwo(page.m_right), powerOfTwo(page.m_bottom));
+            for (int i = 0; i < page.m_images.size(); i++)
+            {
+                Image image = page.m_images.get(i);
+                atlas.add(image.m_mref, image.m_x, image.m_y, image.m_packedWidth,
+                          image.m_packedHeight, image.m_width, image.m_height);
+            }
+            page.m_atlas = atlas;
+        }
+    }
+
+    // Get the smallest power of two at least as large as a size.
+    private static int powerOfTwo(int size)
+    {
+        int power = Integer.highestOneBit(Math.max(1, size));
+        return (power < size) ? power * 2 : power;
+    }
+}
@@ -0,0 +1,336 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Prepares textures once and keeps their mip levels in an on-disk cache.
+ * <p>
+ * When a cache directory is set, <code>MleModelActor</code> passes each texture it
+ * loads through <code>prepare()</code>. The encoded source is hashed, and the
+ * file named by the hash is looked up in the directory. On a miss the texture is
+ * decoded, its mip levels are generated, and they are written as a
+ * <code>MleMipChain</code> file, replaced atomically so that a reader never sees a
+ * partial file. The file is then memory-mapped through <code>MleMediaRefCache</code>,
+ * so Actors sharing a texture share the mapping, and only the levels a renderer
+ * reads with <code>MleMipChain.read()</code> are paged in. On later runs the
+ * texture is neither decoded nor its levels generated. The mapping is recorded
+ * against the cached source, so while both remain cached, further Actors
+ * acquiring the same source are given the mapping without hashing it again.
+ * </p><p>
+ * Enabling the cache changes the media Roles receive for textures: a prepared
+ * texture is an <code>MleMipChain</code> file, not an encoded image, so the Roles
+ * of the title must read it with <code>MleMipChain.read()</code>, and fall back to
+ * decoding the media when that returns <b>null</b>.
+ * </p><p>
+ * Files of another format version, or whose recorded source does not match, are
+ * regenerated. The cache is disabled by default; the source media is then used
+ * as is. It may be used from any thread.
+ * </p>
+ */
+public final class MleTextureCache
+{
+    /** The extension of the cache files. */
+    public static final String EXTENSION = ".mlt";
+
+    // The outcomes counted by the statistics.
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+    private static final int FAILURE = 2;
+
+    // The singleton instance.
+    private static final MleTextureCache g_theCache = new MleTextureCache();
+
+    // The cache directory, or null if the cache is disabled.
+    private volatile File m_directory = null;
+
+    // Statistics.
+    private long m_hits = 0;
+    private long m_misses = 0;
+    private long m_failures = 0;
+
+    // Hide default constructor.
+    private MleTextureCache() {}
+
+    /**
+     * Get the process-wide texture cache.
+     *
+     * @return The cache is returned.
+     */
+    public static MleTextureCache getInstance()
+    {
+        return g_theCache;
+    }
+
+    /**
+     * Set the cache directory.
+     *
+     * @param directory The directory, created if necessary, or <b>null</b> to
+     * disable the cache.
+     */
+    public void setDirectory(File directory)
+    {
+        if (directory != null)
+            directory.mkdirs();
+        m_directory = directory;
+    }
+
+    /**
+     * Get the cache directory.
+     *
+     * @return The directory, or <b>null</b> if the cache is disabled.
+     */
+    public File getDirectory()
+    {
+        return m_directory;
+    }
+
+    /**
+     * Prepare a texture, replacing its source media by its cached mip levels.
+     * <p>
+     * The caller's reference to the source is released if the mip levels are
+     * returned instead. If the cache is disabled, or the source can not be read or
+     * decoded, or the cache file can not be written, the source is returned and,
+     * unless the cache is disabled, counted as a failure.
+     * </p>
+     *
+     * @param source The texture media reference, acquired from
+     * <code>MleMediaRefCache</code>.
+     *
+     * @return A media reference acquired from <code>MleMediaRefCache</code>: the
+     * memory-mapped mip chain, or the source.
+     */
+    public MleMediaRef prepare(MleMediaRef source)
+    {
+        File directory = m_directory;
+        if ((directory == null) || (source == null))
+            return source;
+
+        // A source already prepared for another Actor maps to the same mip chain.
+        MleMediaRefCache cache = MleMediaRefCache.getInstance();
+        MleMediaRef prepared = cache.acquirePrepared(source);
+        if (prepared != null)
+        {
+            count(HIT);
+            cache.release(source);
+            return prepared;
+        }
+        try
+        {
+            if (MleMipChain.read(source) != null)
+                return source;
+            ByteBuffer data = getSource(source);
+            if (data == null)
+                return source;
+            long hash = hash(data);
+            int length = data.remaining();
+            File file = new File(directory, getFileName(hash, length));
+
+            MleMediaRef mref = map(file, hash, length);
+            if (mref == null)
+            {
+                if (! generate(source, file, hash, length))
+                {
+                    count(FAILURE);
+                    return source;
+                }
+                mref = map(file, hash, length);
+                if (mref == null)
+                {
+                    count(FAILURE);
+                    return source;
+                }
+                count(MISS);
+            } else
+                count(HIT);
+            cache.setPrepared(source, mref);
+            cache.release(source);
+            return mref;
+        } catch (IOException ex)
+        {
+            // The texture is used as is, and counted in getFailures().
+            count(FAILURE);
+            return source;
+        } catch (RuntimeException ex)
+        {
+            // Decoding and generating may fail on malformed or oversized images;
+            // the texture is used as is, as for an I/O failure.
+            count(FAILURE);
+            return source;
+        }
+    }
+
+    /**
+     * Get the name of the cache file for a source.
+     *
+     * @param hash The 64-bit FNV-1a hash of the encoded source.
+     * @param length The length of the encoded source.
+     *
+     * @return The file name.
+     */
+    public static String getFileName(long hash, int length)
+    {
+        return String.format(Locale.ROOT, "%016x-%d", hash, length) + EXTENSION;
+    }
+
+    /**
+     * Get the number of textures served from the cache.
+     *
+     * @return The hit count.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Get the number of textures whose mip levels were generated.
+     *
+     * @return The miss count.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Get the number of textures which could not be prepared, and were used as is.
+     *
+     * @return The failure count.
+     */
+    public synchronized long getFailures()
+    {
+        return m_failures;
+    }
+
+    /**
+     * Reset the hit, miss and failure counters.
+     */
+    public synchronized void resetStatistics()
+    {
+        m_hits = 0;
+        m_misses = 0;
+        m_failures = 0;
+    }
+
+    // Count a hit, a miss or a failure.
+    private synchronized void count(int outcome)
+    {
+        if (outcome == HIT) m_hits++;
+        else if (outcome == MISS) m_misses++;
+        else m_failures++;
+    }
+
+    // Map a cache file, returning null if it is missing or does not match the source.
+    private static MleMediaRef map(File file, long hash, int length) throws IOException
+    {
+        if (! file.isFile())
+            return null;
+        MleMediaRef mref = MleMediaRefCache.getInstance().acquire(
+            MleMediaRefCache.MEDIA_TEXTURE, file, 0, file.length());
+        MleMipChain chain = MleMipChain.read(mref);
+        if ((chain != null) && (chain.getSourceHash() == hash) && (chain.getSourceLength() == length))
+            return mref;
+        MleMediaRefCache.getInstance().release(mref);
+        return null;
+    }
+
+    // Decode a texture and write its mip chain, returning false if it can not be
+    // decoded.
+    private static boolean generate(MleMediaRef source, File file, long hash, int length) throws IOException
+    {
+        Bitmap bitmap = MleImageDecoder.decode(source, 0, 0);
+        if (bitmap == null)
+            return false;
+        try
+        {
+            int width = bitmap.getWidth(), height = bitmap.getHeight();
+            if (((long) width * height * 4 > Integer.MAX_VALUE) || (bitmap.getByteCount() != width * height * 4))
+                return false;
+            ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+            bitmap.copyPixelsToBuffer(pixels);
+            pixels.clear();
+
+            // Write beside the file and rename it, so the file is replaced whole.
+            File temp = File.createTempFile("mlt", ".tmp", file.getParentFile());
+            try
+            {
+                RandomAccessFile out = new RandomAccessFile(temp, "rw");
+                try
+                {
+                    FileChannel channel = out.getChannel();
+                    MleMipChain.write(channel, hash, length, pixels, width, height);
+                    channel.force(false);
+                } finally
+                {
+                    out.close();
+                }
+                if (! temp.renameTo(file))
+                {
+                    // Another thread or process may have written it first.
+                    if (! file.isFile())
+                        throw new IOException("MleTextureCache: Unable to write " + file + ".");
+                }
+            } finally
+            {
+                temp.delete();
+            }
+            return true;
+        } finally
+        {
+            bitmap.recycle();
+        }
+    }
+
+    // Get the encoded source of a texture, or null if it is not readable.
+    private static ByteBuffer getSource(MleMediaRef source) throws IOException
+    {
+        Object media = source.getMedia();
+        if (media instanceof byte[])
+        {
+            byte[] data = (byte[]) media;
+            int length = (source.getSize() > 0) ? Math.min(source.getSize(), data.length) : data.length;
+            return ByteBuffer.wrap(data, 0, length);
+        } else if (media instanceof ByteBuffer)
+            return ((ByteBuffer) media).duplicate();
+        else if (media instanceof String)
+        {
+            RandomAccessFile in = new RandomAccessFile((String) media, "r");
+            try
+            {
+                long length = in.length();
+                if (length > Integer.MAX_VALUE)
+                    return null;
+                return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } finally
+            {
+                in.close();
+            }
+        }
+        return null;
+    }
+
+    // Hash the remaining bytes of a buffer with 64-bit FNV-1a.
+    static long hash(ByteBuffer data)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = data.position(), limit = data.limit(); i < limit; i++)
+            hash = (hash ^ (data.get(i) & 0xff)) * 0x100000001b3L;
+        return hash;
+    }
+}
@@ -0,0 +1,135 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+// Import JUnit classes.
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Decoding properties into existing values leaves no garbage in steady state.
+ */
+public class MlePropertyDecoderTest
+{
+    // The number of calls made to warm up, and then measured in each round.
+    private static final int WARMUP = 20000;
+    private static final int CALLS = 10000;
+    // The number of rounds measured.
+    private static final int ROUNDS = 5;
+
+    // A property value, as it would come from the DWP or DPP, whose stream is
+    // rewound and reused so that reading it allocates nothing.
+    static final class TestProperty implements IMleProp
+    {
+        private final byte[] m_data;
+        private final int m_type;
+        private final ByteArrayInputStream m_stream;
+
+        TestProperty(byte[] data, int type)
+        {
+            m_data = data;
+            m_type = type;
+            m_stream = new ByteArrayInputStream(data);
+        }
+
+        static TestProperty floats(float... values)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+            for (float value : values)
+                buffer.putFloat(value);
+            return new TestProperty(buffer.array(), PROP_TYPE_FLOAT);
+        }
+
+        static TestProperty mediaRef(int index)
+        {
+            return new TestProperty(Integer.toString(index).getBytes(), PROP_TYPE_MEDIAREF);
+        }
+
+        public int getLength()
+        {
+            return m_data.length;
+        }
+
+        public InputStream getStream()
+        {
+            m_stream.reset();
+            return m_stream;
+        }
+
+        public int getType()
+        {
+            return m_type;
+        }
+    }
+
+    // The encoded property values.
+    private final TestProperty m_position = TestProperty.floats(1.0f, 2.0f, 3.0f);
+    private final TestProperty m_orientation = TestProperty.floats(0.0f, 0.0f, 0.0f, 1.0f);
+    private final TestProperty m_scale = TestProperty.floats(1.0f, 1.0f, 1.0f);
+    private final TestProperty m_color = TestProperty.floats(1.0f, 0.5f, 0.25f, 1.0f);
+    private final TestProperty m_model = TestProperty.mediaRef(1);
+    // An index beyond the integers boxed by Integer.valueOf() without allocating.
+    private final TestProperty m_farModel = TestProperty.mediaRef(1000);
+
+    // The thread bean counting allocations.
+    private final com.sun.management.ThreadMXBean m_threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Get the bytes allocated by the current thread so far.
+    private long getAllocatedBytes()
+    {
+        return m_threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Set every decoded property of a cube and a model.
+    private void setProperties(MleCubeActor cube, MleModelActor model, MleModelActor farModel)
+        throws MleRuntimeException
+    {
+        cube.setProperty("position", m_position);
+        cube.setProperty("orientation", m_orientation);
+        cube.setProperty("scale", m_scale);
+        cube.setProperty("color", m_color);
+        model.setProperty("position", m_position);
+        model.setProperty("orientation", m_orientation);
+        model.setProperty("scale", m_scale);
+        model.setProperty("model", m_model);
+        farModel.setProperty("position", m_position);
+        farModel.setProperty("model", m_farModel);
+    }
+
+    @Test
+    public void setPropertyAllocatesNothing() throws Exception
+    {
+        Assume.assumeTrue(m_threads.isThreadAllocatedMemorySupported());
+        MleCubeActor cube = new MleCubeActor();
+        MleModelActor model = new MleModelActor();
+        MleModelActor farModel = new MleModelActor();
+        for (int i = 0; i < WARMUP; i++)
+            setProperties(cube, model, farModel);
+
+        // Garbage made per call shows in every round; the least allocated by a
+        // round excludes the occasional allocation of the runtime itself.
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            long allocated = getAllocatedBytes();
+            for (int i = 0; i < CALLS; i++)
+                setProperties(cube, model, farModel);
+            least = Math.min(least, getAllocatedBytes() - allocated);
+        }
+        assertEquals("Bytes allocated by " + CALLS + " calls of setProperties()", 0L, least);
+    }
+}
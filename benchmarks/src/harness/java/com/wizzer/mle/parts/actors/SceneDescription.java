@@ -0,0 +1,108 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A synthetic scene run by the harness.
+ * <p>
+ * Scenes are described in a properties file. The <code>scenes</code> key lists the
+ * scene names, separated by commas, and each scene has keys prefixed by its name:
+ * </p>
+ * <ul>
+ * <li><code>cubes</code>, <code>models</code>: the number of each Actor class.</li>
+ * <li><code>frames</code>: the number of frames measured; default 600.</li>
+ * <li><code>warmup</code>: the number of frames run first, unmeasured; default 300.</li>
+ * <li><code>rounds</code>: the number of times the frames are measured; the median
+ * round is reported; default 3.</li>
+ * <li><code>spin</code>: the fraction of Actors which spin; default 0.5.</li>
+ * <li><code>extent</code>: the half-width of the cube in which Actors are placed;
+ * default 100.</li>
+ * <li><code>media</code>: the number of distinct model and texture indices;
+ * default 16.</li>
+ * <li><code>parallel</code>: whether behavior is evaluated in parallel; default
+ * false.</li>
+ * <li><code>seed</code>: the seed of the placement; default 1.</li>
+ * </ul>
+ */
+final class SceneDescription
+{
+    // The name of the scene.
+    final String m_name;
+    // The number of cubes.
+    final int m_cubes;
+    // The number of models.
+    final int m_models;
+    // The number of frames measured.
+    final int m_frames;
+    // The number of frames run before measuring.
+    final int m_warmup;
+    // The number of measured rounds.
+    final int m_rounds;
+    // The fraction of Actors which spin.
+    final float m_spin;
+    // The half-width of the placement cube.
+    final float m_extent;
+    // The number of distinct media indices.
+    final int m_media;
+    // Whether behavior is evaluated in parallel.
+    final boolean m_parallel;
+    // The seed of the placement.
+    final long m_seed;
+
+    // Read a scene from its keys.
+    private SceneDescription(String name, Properties properties)
+    {
+        m_name = name;
+        m_cubes = Integer.parseInt(get(properties, name, "cubes", "0"));
+        m_models = Integer.parseInt(get(properties, name, "models", "0"));
+        m_frames = Integer.parseInt(get(properties, name, "frames", "600"));
+        m_warmup = Integer.parseInt(get(properties, name, "warmup", "300"));
+        m_rounds = Integer.parseInt(get(properties, name, "rounds", "3"));
+        m_spin = Float.parseFloat(get(properties, name, "spin", "0.5"));
+        m_extent = Float.parseFloat(get(properties, name, "extent", "100"));
+        m_media = Math.max(1, Integer.parseInt(get(properties, name, "media", "16")));
+        m_parallel = Boolean.parseBoolean(get(properties, name, "parallel", "false"));
+        m_seed = Long.parseLong(get(properties, name, "seed", "1"));
+        if ((m_cubes < 0) || (m_models < 0) || (m_cubes + m_models == 0) || (m_frames <= 0) || (m_rounds <= 0))
+            throw new IllegalArgumentException("SceneDescription: Invalid scene " + name + ".");
+    }
+
+    /**
+     * Read the scenes listed in a properties file.
+     *
+     * @param properties The scene descriptions.
+     *
+     * @return The scenes, in the order listed.
+     */
+    static List<SceneDescription> read(Properties properties)
+    {
+        List<SceneDescription> scenes = new ArrayList<SceneDescription>();
+        for (String name : properties.getProperty("scenes", "").split(","))
+            if (name.trim().length() > 0)
+                scenes.add(new SceneDescription(name.trim(), properties));
+        return scenes;
+    }
+
+    /**
+     * Get the total number of Actors.
+     *
+     * @return The Actor count.
+     */
+    int getActorCount()
+    {
+        return m_cubes + m_models;
+    }
+
+    // Get a key of a scene.
+    private static String get(Properties properties, String name, String key, String defaultValue)
+    {
+        return properties.getProperty(name + "." + key, defaultValue).trim();
+    }
+}
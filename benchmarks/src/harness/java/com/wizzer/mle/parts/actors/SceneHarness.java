@@ -0,0 +1,364 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.MleTitle;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Runs synthetic scenes of Actors on a plain JVM and gates their performance
+ * against a stored baseline.
+ * <p>
+ * The title, scheduler and Actor phase are the in-process stand-ins of the stubs
+ * source set; each frame advances a manual clock by one simulation step and
+ * executes the Actor phase, running every task the Actors registered. For each
+ * scene the harness records the frame time percentiles, the bytes allocated per
+ * frame by all threads, and the peak heap usage, after a warm-up. The frames are
+ * measured in several rounds and the median of each metric is kept, so a single
+ * stall on a busy machine does not fail the gate.
+ * </p><p>
+ * Usage: <code>SceneHarness scenes.properties baseline.properties [--record]</code>.
+ * Without <code>--record</code>, the process exits with status 1 if any metric of
+ * any scene exceeds its baseline by more than the tolerance in the baseline file;
+ * with it, the measured metrics are written as the new baseline.
+ * </p>
+ */
+public final class SceneHarness
+{
+    // The metrics gated against the baseline.
+    private static final String[] METRICS = { "p50Micros", "p99Micros", "allocBytesPerFrame", "heapPeakMiB" };
+    // The tolerance key of each metric.
+    private static final String[] TOLERANCES = { "latency", "latency", "allocation", "heap" };
+    // The default tolerances, as fractions of the baseline, and absolute slack.
+    private static final String DEFAULT_TOLERANCE = "0.25";
+    private static final String DEFAULT_SLACK = "0";
+
+    // The measured metrics of a scene.
+    private static final class Result
+    {
+        final double[] m_values = new double[METRICS.length];
+        double m_maxMicros;
+        double m_allocMiBPerSecond;
+    }
+
+    // The clock driving the behavior.
+    private final MleManualClock m_clock = new MleManualClock();
+
+    // Hide default constructor.
+    private SceneHarness() {}
+
+    /**
+     * Run the scenes and compare them with the baseline.
+     *
+     * @param args The scene file, the baseline file, and optionally
+     * <code>--record</code>.
+     *
+     * @throws Exception This exception is thrown if a file can not be read or
+     * written, or a scene fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: SceneHarness scenes.properties baseline.properties [--record]");
+            System.exit(2);
+        }
+        boolean record = (args.length > 2) && args[2].equals("--record");
+        List<SceneDescription> scenes = SceneDescription.read(load(new File(args[0])));
+        File baselineFile = new File(args[1]);
+        Properties baseline = baselineFile.exists() ? load(baselineFile) : new Properties();
+
+        SceneHarness harness = new SceneHarness();
+        int regressions = 0;
+        for (SceneDescription scene : scenes)
+        {
+            Result result = harness.run(scene);
+            report(scene, result);
+            if (record)
+            {
+                for (int m = 0; m < METRICS.length; m++)
+                    baseline.setProperty(scene.m_name + "." + METRICS[m], format(result.m_values[m]));
+            } else
+                regressions += compare(scene, result, baseline);
+        }
+
+        if (record)
+        {
+            store(baseline, baselineFile);
+            System.out.println("Recorded baseline " + baselineFile + ".");
+        } else if (regressions > 0)
+        {
+            System.out.println(regressions + " metric(s) regressed past the baseline.");
+            System.exit(1);
+        }
+    }
+
+    // Build a scene, run it and dispose of it.
+    private Result run(SceneDescription scene) throws MleRuntimeException
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        MleBehaviorConfig.setParallel(scene.m_parallel);
+        long step = (long) (MleBehaviorConfig.getStep() * 1.0e9);
+        MleActor[] actors = build(scene);
+        try
+        {
+            for (int frame = 0; frame < scene.m_warmup; frame++)
+                frame(step);
+
+            Result[] rounds = new Result[scene.m_rounds];
+            for (int r = 0; r < rounds.length; r++)
+                rounds[r] = measure(scene, step);
+            return median(rounds);
+        } finally
+        {
+            for (int i = actors.length - 1; i >= 0; i--)
+                actors[i].dispose();
+            MleBehaviorConfig.setClock(null);
+            MleBehaviorConfig.setParallel(false);
+        }
+    }
+
+    // Measure one round of frames.
+    private Result measure(SceneDescription scene, long step)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        resetHeapPeak();
+        long allocated = getAllocatedBytes(threads);
+        long[] times = new long[scene.m_frames];
+        long start = System.nanoTime();
+        for (int frame = 0; frame < scene.m_frames; frame++)
+            times[frame] = frame(step);
+        long elapsed = System.nanoTime() - start;
+        allocated = getAllocatedBytes(threads) - allocated;
+
+        Arrays.sort(times);
+        Result result = new Result();
+        result.m_values[0] = percentile(times, 0.50) / 1.0e3;
+        result.m_values[1] = percentile(times, 0.99) / 1.0e3;
+        result.m_values[2] = (allocated >= 0) ? (double) allocated / scene.m_frames : 0.0;
+        result.m_values[3] = getHeapPeak() / (1024.0 * 1024.0);
+        result.m_maxMicros = times[times.length - 1] / 1.0e3;
+        result.m_allocMiBPerSecond = (allocated >= 0) ?
+            allocated / (1024.0 * 1024.0) / (elapsed / 1.0e9) : 0.0;
+        return result;
+    }
+
+    // Take the median of each metric over the rounds.
+    private static Result median(Result[] rounds)
+    {
+        Result result = new Result();
+        double[] values = new double[rounds.length];
+        for (int m = 0; m < METRICS.length; m++)
+        {
+            for (int r = 0; r < rounds.length; r++)
+                values[r] = rounds[r].m_values[m];
+            Arrays.sort(values);
+            result.m_values[m] = values[values.length / 2];
+        }
+        for (int r = 0; r < rounds.length; r++)
+            values[r] = rounds[r].m_maxMicros;
+        Arrays.sort(values);
+        result.m_maxMicros = values[values.length / 2];
+        for (int r = 0; r < rounds.length; r++)
+            values[r] = rounds[r].m_allocMiBPerSecond;
+        Arrays.sort(values);
+        result.m_allocMiBPerSecond = values[values.length / 2];
+        return result;
+    }
+
+    // Run one frame, returning its duration in nanoseconds.
+    private long frame(long step)
+    {
+        m_clock.advance(step);
+        long start = System.nanoTime();
+        MleTitle.g_theActorPhase.execute();
+        return System.nanoTime() - start;
+    }
+
+    // Create and initialize the Actors of a scene.
+    private static MleActor[] build(SceneDescription scene) throws MleRuntimeException
+    {
+        Random random = new Random(scene.m_seed);
+        BenchProperty orientation = BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f);
+        BenchProperty scale = BenchProperty.floats(1.0f, 1.0f, 1.0f);
+        BenchProperty color = BenchProperty.floats(1.0f, 1.0f, 1.0f, 1.0f);
+        BenchProperty[] media = new BenchProperty[scene.m_media];
+        for (int i = 0; i < media.length; i++)
+            media[i] = BenchProperty.mediaRef(i + 1);
+
+        MleActor[] actors = new MleActor[scene.getActorCount()];
+        for (int i = 0; i < actors.length; i++)
+        {
+            float extent = scene.m_extent;
+            BenchProperty position = BenchProperty.floats(
+                (random.nextFloat() * 2.0f - 1.0f) * extent,
+                (random.nextFloat() * 2.0f - 1.0f) * extent,
+                (random.nextFloat() * 2.0f - 1.0f) * extent);
+            boolean spin = random.nextFloat() < scene.m_spin;
+            if (i < scene.m_cubes)
+            {
+                MleCubeActor cube = new MleCubeActor();
+                cube.setProperty(MleCubeActor.PROPERTY_POSITION, position);
+                cube.setProperty(MleCubeActor.PROPERTY_ORIENTATION, orientation);
+                cube.setProperty(MleCubeActor.PROPERTY_SCALE, scale);
+                cube.setProperty(MleCubeActor.PROPERTY_COLOR, color);
+                cube.setSpinSpeed(spin ? 1.0f : 0.0f);
+                cube.init();
+                actors[i] = cube;
+            } else
+            {
+                MleModelActor model = new MleModelActor();
+                model.setProperty(MleModelActor.PROPERTY_POSITION, position);
+                model.setProperty(MleModelActor.PROPERTY_ORIENTATION, orientation);
+                model.setProperty(MleModelActor.PROPERTY_SCALE, scale);
+                model.setProperty(MleModelActor.PROPERTY_MODEL, media[i % media.length]);
+                model.setProperty(MleModelActor.PROPERTY_TEXTURE, media[(i / media.length) % media.length]);
+                model.setSpinSpeed(spin ? 1.0f : 0.0f);
+                model.init();
+                actors[i] = model;
+            }
+        }
+        return actors;
+    }
+
+    // Compare the result of a scene with the baseline, returning the number of
+    // metrics which regressed.
+    private static int compare(SceneDescription scene, Result result, Properties baseline)
+    {
+        int regressions = 0;
+        for (int m = 0; m < METRICS.length; m++)
+        {
+            String value = baseline.getProperty(scene.m_name + "." + METRICS[m]);
+            if (value == null)
+            {
+                System.out.println("  " + METRICS[m] + ": no baseline");
+                continue;
+            }
+            double base = Double.parseDouble(value);
+            double tolerance = Double.parseDouble(
+                baseline.getProperty("tolerance." + TOLERANCES[m], DEFAULT_TOLERANCE));
+            double slack = Double.parseDouble(
+                baseline.getProperty("slack." + TOLERANCES[m], DEFAULT_SLACK));
+            double limit = base * (1.0 + tolerance) + slack;
+            if (result.m_values[m] > limit)
+            {
+                System.out.println("  REGRESSION " + METRICS[m] + ": " + format(result.m_values[m]) +
+                                   " > " + format(limit) + " (baseline " + value + ")");
+                regressions++;
+            }
+        }
+        return regressions;
+    }
+
+    // Print the result of a scene.
+    private static void report(SceneDescription scene, Result result)
+    {
+        System.out.println(String.format(Locale.ROOT,
+            "%s: %d actors, %d frames: p50 %.1f us, p99 %.1f us, max %.1f us, " +
+            "%.0f B/frame (%.2f MiB/s), heap peak %.1f MiB",
+            scene.m_name, scene.getActorCount(), scene.m_frames, result.m_values[0],
+            result.m_values[1], result.m_maxMicros, result.m_values[2],
+            result.m_allocMiBPerSecond, result.m_values[3]));
+    }
+
+    // Get a percentile of sorted frame times, by nearest rank.
+    private static long percentile(long[] sorted, double fraction)
+    {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    // Get the bytes allocated so far by all live threads, or -1 if not supported.
+    private static long getAllocatedBytes(ThreadMXBean threads)
+    {
+        if (! (threads instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (! allocation.isThreadAllocatedMemoryEnabled())
+            return -1;
+        long total = 0;
+        for (long bytes : allocation.getThreadAllocatedBytes(threads.getAllThreadIds()))
+            if (bytes > 0)
+                total += bytes;
+        return total;
+    }
+
+    // Reset the peak usage of the heap pools.
+    private static void resetHeapPeak()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                pool.resetPeakUsage();
+    }
+
+    // Get the peak usage of the heap pools since they were reset, in bytes.
+    private static long getHeapPeak()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                peak += pool.getPeakUsage().getUsed();
+        return peak;
+    }
+
+    // Format a metric for the baseline.
+    private static String format(double value)
+    {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // Write the baseline, sorted by key so that re-recording gives a readable diff.
+    private static void store(Properties baseline, File file) throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+        try
+        {
+            out.write("# Scene harness baseline, written by SceneHarness --record.\n");
+            out.write("# Re-record it on the machine which gates the build.\n");
+            for (String key : new TreeSet<String>(baseline.stringPropertyNames()))
+                out.write(key + "=" + baseline.getProperty(key) + "\n");
+        } finally
+        {
+            out.close();
+        }
+    }
+
+    // Load a properties file.
+    private static Properties load(File file) throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            properties.load(in);
+        } finally
+        {
+            in.close();
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,96 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.concurrent.TimeUnit;
+
+// Import JMH classes.
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Measures one Actor phase tick of the model behavior group.
+ * <p>
+ * Every tick advances a manual clock by exactly one simulation step, so each
+ * invocation runs one step for every spinning model and flushes its orientation.
+ * The <code>parallel</code> parameter selects parallel evaluation, with the threshold
+ * lowered so every group size is computed on the pool.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BehaveBenchmark
+{
+    @Param({ "1000", "10000", "100000" })
+    public int actors;
+
+    @Param({ "false", "true" })
+    public boolean parallel;
+
+    // The clock driving the behavior.
+    private final MleManualClock m_clock = new MleManualClock();
+    // The step, in nanoseconds.
+    private long m_stepNanos;
+    // The Actors under test.
+    private MleModelActor[] m_models;
+
+    @Setup(Level.Trial)
+    public void setup() throws MleRuntimeException
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        MleBehaviorConfig.setParallel(parallel);
+        MleBehaviorConfig.setParallelThreshold(1);
+        m_stepNanos = (long) (MleBehaviorConfig.getStep() * 1.0e9);
+
+        BenchProperty orientation = BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f);
+        m_models = new MleModelActor[actors];
+        for (int i = 0; i < actors; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(i, 0.0f, 0.0f));
+            model.setProperty(MleModelActor.PROPERTY_ORIENTATION, orientation);
+            model.setProperty(MleModelActor.PROPERTY_SCALE, BenchProperty.floats(1.0f, 1.0f, 1.0f));
+            model.init();
+            m_models[i] = model;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws MleRuntimeException
+    {
+        for (int i = m_models.length - 1; i >= 0; i--)
+            m_models[i].dispose();
+        MleBehaviorConfig.setClock(null);
+        MleBehaviorConfig.setParallel(false);
+        MleBehaviorConfig.setParallelThreshold(MleBehaviorConfig.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    @Benchmark
+    public int tick()
+    {
+        m_clock.advance(m_stepNanos);
+        MleModelActor.g_behaveGroup.run();
+        return MleModelActor.g_behaveGroup.size();
+    }
+}
@@ -0,0 +1,96 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+
+/**
+ * A property value for the benchmarks, as it would come from the DWP or DPP.
+ * <p>
+ * The same stream is rewound and returned by every <code>getStream()</code>, so
+ * reading the property measures the Actor rather than the benchmark.
+ * </p>
+ */
+final class BenchProperty implements IMleProp
+{
+    // The encoded payload.
+    private final byte[] m_data;
+    // The property type.
+    private final int m_type;
+    // The reusable stream over the payload.
+    private final ByteArrayInputStream m_stream;
+
+    /**
+     * Create a property holding the specified payload.
+     *
+     * @param data The encoded payload.
+     * @param type The property type; one of the <code>IMleProp</code>
+     * <code>PROP_TYPE_</code> constants.
+     */
+    BenchProperty(byte[] data, int type)
+    {
+        m_data = data;
+        m_type = type;
+        m_stream = new ByteArrayInputStream(data);
+    }
+
+    /**
+     * Create a property holding big-endian floating-point values.
+     *
+     * @param values The values to encode.
+     *
+     * @return The property is returned.
+     */
+    static BenchProperty floats(float... values)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (float value : values)
+            buffer.putFloat(value);
+        return new BenchProperty(buffer.array(), PROP_TYPE_FLOAT);
+    }
+
+    /**
+     * Create a property holding a DPP Table-of-Contents index.
+     *
+     * @param index The index to encode as decimal text.
+     *
+     * @return The property is returned.
+     */
+    static BenchProperty mediaRef(int index)
+    {
+        return new BenchProperty(Integer.toString(index).getBytes(), PROP_TYPE_MEDIAREF);
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleProp#getLength()
+     */
+    public int getLength()
+    {
+        return m_data.length;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleProp#getStream()
+     */
+    public InputStream getStream()
+    {
+        m_stream.reset();
+        return m_stream;
+    }
+
+    /* (non-Javadoc)
+     * @see com.wizzer.mle.runtime.core.IMleProp#getType()
+     */
+    public int getType()
+    {
+        return m_type;
+    }
+}
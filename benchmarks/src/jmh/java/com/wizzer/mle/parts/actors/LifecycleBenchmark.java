@@ -0,0 +1,91 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.concurrent.TimeUnit;
+
+// Import JMH classes.
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Measures creating, initializing and disposing Actors, as a title does when it
+ * loads and unloads a set, with and without the Actor pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LifecycleBenchmark
+{
+    // The number of Actors churned per invocation.
+    private static final int BATCH = 256;
+
+    // Whether Actors are obtained from and recycled to the pool.
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    // The encoded property values.
+    private BenchProperty m_position;
+    private BenchProperty m_orientation;
+    private BenchProperty m_scale;
+    private BenchProperty m_model;
+    private BenchProperty m_texture;
+    // The Actors churned by each invocation.
+    private final MleModelActor[] m_models = new MleModelActor[BATCH];
+
+    @Setup
+    public void setup()
+    {
+        m_position = BenchProperty.floats(1.0f, 2.0f, 3.0f);
+        m_orientation = BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f);
+        m_scale = BenchProperty.floats(1.0f, 1.0f, 1.0f);
+        m_model = BenchProperty.mediaRef(1);
+        m_texture = BenchProperty.mediaRef(2);
+        MleModelActor.getPool().setLimit(pooled ? BATCH : 0);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public MleModelActor[] churn() throws MleRuntimeException
+    {
+        MleModelActor[] models = m_models;
+        MleActorPool<MleModelActor> pool = MleModelActor.getPool();
+        for (int i = 0; i < BATCH; i++)
+        {
+            MleModelActor model = pooled ? pool.obtain() : new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, m_position);
+            model.setProperty(MleModelActor.PROPERTY_ORIENTATION, m_orientation);
+            model.setProperty(MleModelActor.PROPERTY_SCALE, m_scale);
+            model.setProperty(MleModelActor.PROPERTY_MODEL, m_model);
+            model.setProperty(MleModelActor.PROPERTY_TEXTURE, m_texture);
+            model.init();
+            models[i] = model;
+        }
+        for (int i = 0; i < BATCH; i++)
+        {
+            models[i].dispose();
+            if (pooled)
+                pool.recycle(models[i]);
+        }
+        return models;
+    }
+}
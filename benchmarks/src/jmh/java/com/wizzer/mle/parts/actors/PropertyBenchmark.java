@@ -0,0 +1,124 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.concurrent.TimeUnit;
+
+// Import JMH classes.
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Measures property decoding in <code>setProperty()</code> and property dispatch in
+ * <code>getProperty()</code>, by name and by identifier.
+ * <p>
+ * The Actor is never initialized, so setting a transform property decodes it
+ * without joining a behavior group or pushing to a Role. The <code>metrics</code>
+ * parameter measures the cost of the Actor metrics when on and when off.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyBenchmark
+{
+    @Param({ "false", "true" })
+    public boolean metrics;
+
+    // The Actor under test.
+    private MleCubeActor m_cube;
+
+    // The encoded property values.
+    private BenchProperty m_position;
+    private BenchProperty m_orientation;
+    private BenchProperty m_scale;
+    private BenchProperty m_color;
+
+    @Setup
+    public void setup() throws MleRuntimeException
+    {
+        MleActorMetrics.setEnabled(metrics);
+        m_cube = new MleCubeActor();
+        m_position = BenchProperty.floats(1.0f, 2.0f, 3.0f);
+        m_orientation = BenchProperty.floats(0.0f, 0.38268343f, 0.0f, 0.9238795f);
+        m_scale = BenchProperty.floats(2.0f, 2.0f, 2.0f);
+        m_color = BenchProperty.floats(1.0f, 0.5f, 0.25f, 1.0f);
+
+        // Create the properties, so getProperty() has something to return.
+        m_cube.setProperty(MleCubeActor.PROPERTY_POSITION, m_position);
+        m_cube.setProperty(MleCubeActor.PROPERTY_ORIENTATION, m_orientation);
+        m_cube.setProperty(MleCubeActor.PROPERTY_SCALE, m_scale);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        MleActorMetrics.setEnabled(false);
+    }
+
+    @Benchmark
+    public MleCubeActor setPositionByName() throws MleRuntimeException
+    {
+        m_cube.setProperty("position", m_position);
+        return m_cube;
+    }
+
+    @Benchmark
+    public MleCubeActor setPosition() throws MleRuntimeException
+    {
+        m_cube.setProperty(MleCubeActor.PROPERTY_POSITION, m_position);
+        return m_cube;
+    }
+
+    @Benchmark
+    public MleCubeActor setOrientation() throws MleRuntimeException
+    {
+        m_cube.setProperty(MleCubeActor.PROPERTY_ORIENTATION, m_orientation);
+        return m_cube;
+    }
+
+    @Benchmark
+    public MleCubeActor setScale() throws MleRuntimeException
+    {
+        m_cube.setProperty(MleCubeActor.PROPERTY_SCALE, m_scale);
+        return m_cube;
+    }
+
+    @Benchmark
+    public MleCubeActor setColor() throws MleRuntimeException
+    {
+        m_cube.setProperty(MleCubeActor.PROPERTY_COLOR, m_color);
+        return m_cube;
+    }
+
+    @Benchmark
+    public Object getPropertyByName() throws MleRuntimeException
+    {
+        return m_cube.getProperty("orientation");
+    }
+
+    @Benchmark
+    public Object getProperty() throws MleRuntimeException
+    {
+        return m_cube.getProperty(MleCubeActor.PROPERTY_ORIENTATION);
+    }
+}
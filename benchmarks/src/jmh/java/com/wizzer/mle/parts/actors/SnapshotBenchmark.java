@@ -0,0 +1,181 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+// Import JMH classes.
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Measures restoring a scene from a snapshot against setting every property
+ * again, and writing full and delta snapshots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark
+{
+    // The number of Actors in the scene.
+    @Param({"50000"})
+    public int actors;
+
+    // The encoded property values.
+    private BenchProperty m_position;
+    private BenchProperty m_orientation;
+    private BenchProperty m_scale;
+    private BenchProperty m_model;
+    private BenchProperty m_texture;
+    // The scene.
+    private MleActor[] m_actors;
+    // The snapshot writer and reader.
+    private final MleActorSnapshot m_snapshot = new MleActorSnapshot();
+    // The full snapshot of the scene.
+    private final Stream m_stream = new Stream();
+    // The snapshots written by the benchmarks.
+    private final Stream m_out = new Stream();
+
+    // An in-memory channel holding a snapshot.
+    private static final class Stream implements ReadableByteChannel, WritableByteChannel
+    {
+        private ByteBuffer m_data = ByteBuffer.allocate(1024 * 1024);
+
+        // Discard the contents, for writing.
+        Stream reset()
+        {
+            m_data.clear();
+            return this;
+        }
+
+        // Rewind to the start of the contents, for reading.
+        Stream rewind()
+        {
+            m_data.position(0);
+            return this;
+        }
+
+        // Mark the end of the contents written.
+        Stream finish()
+        {
+            m_data.flip();
+            return this;
+        }
+
+        public int write(ByteBuffer src)
+        {
+            if (m_data.remaining() < src.remaining())
+            {
+                ByteBuffer data = ByteBuffer.allocate((m_data.capacity() + src.remaining()) * 2);
+                m_data.flip();
+                data.put(m_data);
+                m_data = data;
+            }
+            int n = src.remaining();
+            m_data.put(src);
+            return n;
+        }
+
+        public int read(ByteBuffer dst)
+        {
+            if (! m_data.hasRemaining())
+                return -1;
+            int n = Math.min(dst.remaining(), m_data.remaining());
+            int limit = m_data.limit();
+            m_data.limit(m_data.position() + n);
+            dst.put(m_data);
+            m_data.limit(limit);
+            return n;
+        }
+
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        public void close()
+        {
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException, MleRuntimeException
+    {
+        m_position = BenchProperty.floats(1.0f, 2.0f, 3.0f);
+        m_orientation = BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f);
+        m_scale = BenchProperty.floats(1.0f, 1.0f, 1.0f);
+        m_model = BenchProperty.mediaRef(1);
+        m_texture = BenchProperty.mediaRef(2);
+        m_actors = new MleActor[actors];
+        for (int i = 0; i < actors; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            m_actors[i] = model;
+            setProperties(model);
+        }
+        m_snapshot.write(m_stream.reset(), m_actors, actors);
+        m_stream.finish();
+    }
+
+    // Set every property of an Actor, as when loading it from the DPP.
+    private void setProperties(MleModelActor model) throws MleRuntimeException
+    {
+        model.setProperty(MleModelActor.PROPERTY_POSITION, m_position);
+        model.setProperty(MleModelActor.PROPERTY_ORIENTATION, m_orientation);
+        model.setProperty(MleModelActor.PROPERTY_SCALE, m_scale);
+        model.setProperty(MleModelActor.PROPERTY_MODEL, m_model);
+        model.setProperty(MleModelActor.PROPERTY_TEXTURE, m_texture);
+    }
+
+    @Benchmark
+    public MleActor[] setProperties() throws MleRuntimeException
+    {
+        for (int i = 0; i < actors; i++)
+            setProperties((MleModelActor) m_actors[i]);
+        return m_actors;
+    }
+
+    @Benchmark
+    public int restore() throws IOException, MleRuntimeException
+    {
+        return m_snapshot.read(m_stream.rewind(), m_actors, actors);
+    }
+
+    @Benchmark
+    public MleActorSnapshot write() throws IOException
+    {
+        m_snapshot.write(m_out.reset(), m_actors, actors);
+        return m_snapshot;
+    }
+
+    @Benchmark
+    public MleActorSnapshot writeDelta() throws IOException
+    {
+        // Nothing has changed, so the delta is only the header and end marker.
+        m_snapshot.writeDelta(m_out.reset(), m_actors, actors);
+        return m_snapshot;
+    }
+}
@@ -0,0 +1,80 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android bitmap; it holds only its dimensions.
+ */
+public final class Bitmap
+{
+    public enum Config
+    {
+        ALPHA_8, RGB_565, ARGB_8888
+    }
+
+    private final int m_width;
+    private final int m_height;
+    private boolean m_recycled = false;
+
+    Bitmap(int width, int height)
+    {
+        m_width = width;
+        m_height = height;
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config)
+    {
+        return new Bitmap(width, height);
+    }
+
+    public static Bitmap createBitmap(Bitmap source, int x, int y, int width, int height)
+    {
+        if ((x < 0) || (y < 0) || (x + width > source.m_width) || (y + height > source.m_height))
+            throw new IllegalArgumentException("x + width must be <= bitmap.width()");
+        return new Bitmap(width, height);
+    }
+
+    public static Bitmap createScaledBitmap(Bitmap src, int dstWidth, int dstHeight, boolean filter)
+    {
+        if ((dstWidth == src.m_width) && (dstHeight == src.m_height))
+            return src;
+        return new Bitmap(dstWidth, dstHeight);
+    }
+
+    public int getWidth()
+    {
+        return m_width;
+    }
+
+    public int getHeight()
+    {
+        return m_height;
+    }
+
+    public int getByteCount()
+    {
+        return m_width * m_height * 4;
+    }
+
+    public void copyPixelsToBuffer(java.nio.Buffer dst)
+    {
+        // The stand-in has no pixels; it fills the buffer as a transparent image.
+        java.nio.ByteBuffer bytes = (java.nio.ByteBuffer) dst;
+        if (bytes.remaining() < getByteCount())
+            throw new RuntimeException("Buffer not large enough for pixels");
+        for (int i = 0; i < getByteCount(); i++)
+            bytes.put((byte) 0);
+    }
+
+    public void recycle()
+    {
+        m_recycled = true;
+    }
+
+    public boolean isRecycled()
+    {
+        return m_recycled;
+    }
+}
@@ -0,0 +1,89 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.graphics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * JVM stand-in for the Android bitmap decoder; it reads the dimensions from a
+ * PNG header and produces bitmaps of the subsampled size.
+ */
+public final class BitmapFactory
+{
+    public static class Options
+    {
+        public boolean inJustDecodeBounds = false;
+        public int inSampleSize = 1;
+        public int outWidth = -1;
+        public int outHeight = -1;
+    }
+
+    // Hide default constructor.
+    private BitmapFactory() {}
+
+    public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options opts)
+    {
+        if ((length < 24) || (data[offset + 1] != 'P') || (data[offset + 2] != 'N') || (data[offset + 3] != 'G'))
+        {
+            if (opts != null)
+                opts.outWidth = opts.outHeight = -1;
+            return null;
+        }
+        int width = readInt(data, offset + 16);
+        int height = readInt(data, offset + 20);
+        int sample = 1;
+        if ((opts != null) && (opts.inSampleSize > 1))
+            sample = Integer.highestOneBit(opts.inSampleSize);
+        width = Math.max(1, width / sample);
+        height = Math.max(1, height / sample);
+        if (opts != null)
+        {
+            opts.outWidth = width;
+            opts.outHeight = height;
+            if (opts.inJustDecodeBounds)
+                return null;
+        }
+        return new Bitmap(width, height);
+    }
+
+    public static Bitmap decodeFile(String pathName, Options opts)
+    {
+        try
+        {
+            byte[] data = Files.readAllBytes(new File(pathName).toPath());
+            return decodeByteArray(data, 0, data.length, opts);
+        } catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    public static Bitmap decodeStream(InputStream is, Rect outPadding, Options opts)
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = is.read(chunk, 0, chunk.length)) > 0)
+                out.write(chunk, 0, n);
+            byte[] data = out.toByteArray();
+            return decodeByteArray(data, 0, data.length, opts);
+        } catch (IOException ex)
+        {
+            return null;
+        }
+    }
+
+    private static int readInt(byte[] data, int offset)
+    {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+               ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+}
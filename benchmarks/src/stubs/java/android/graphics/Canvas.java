@@ -0,0 +1,29 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android canvas; drawing only counts the bitmaps drawn.
+ */
+public class Canvas
+{
+    public static long g_drawCount = 0;
+
+    private final Bitmap m_bitmap;
+
+    public Canvas(Bitmap bitmap)
+    {
+        if (bitmap.isRecycled())
+            throw new IllegalStateException("Canvas: bitmap is recycled");
+        m_bitmap = bitmap;
+    }
+
+    public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint)
+    {
+        if (bitmap.isRecycled())
+            throw new RuntimeException("Canvas: trying to use a recycled bitmap");
+        g_drawCount++;
+    }
+}
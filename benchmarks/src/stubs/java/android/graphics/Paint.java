@@ -0,0 +1,17 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android paint.
+ */
+public class Paint
+{
+    public static final int FILTER_BITMAP_FLAG = 0x2;
+
+    public Paint() {}
+
+    public Paint(int flags) {}
+}
@@ -0,0 +1,31 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android rectangle.
+ */
+public final class Rect
+{
+    public int left;
+    public int top;
+    public int right;
+    public int bottom;
+
+    public Rect() {}
+
+    public Rect(int left, int top, int right, int bottom)
+    {
+        set(left, top, right, bottom);
+    }
+
+    public void set(int left, int top, int right, int bottom)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+}
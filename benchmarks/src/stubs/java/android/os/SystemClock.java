@@ -0,0 +1,29 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package android.os;
+
+/**
+ * JVM stand-in for the Android system clock.
+ */
+public final class SystemClock
+{
+    // Hide default constructor.
+    private SystemClock() {}
+
+    public static long uptimeMillis()
+    {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public static long elapsedRealtime()
+    {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public static long elapsedRealtimeNanos()
+    {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,42 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.math;
+
+import java.nio.ByteOrder;
+
+/**
+ * JVM stand-in for the Magic Lantern math utilities.
+ */
+public class MlMath
+{
+    public static float convertByteArrayToFloat(byte[] data, int offset, ByteOrder order)
+    {
+        int bits;
+        if (order == ByteOrder.BIG_ENDIAN)
+            bits = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) |
+                   ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+        else
+            bits = ((data[offset + 3] & 0xff) << 24) | ((data[offset + 2] & 0xff) << 16) |
+                   ((data[offset + 1] & 0xff) << 8) | (data[offset] & 0xff);
+        return Float.intBitsToFloat(bits);
+    }
+
+    public static void convertByteArrayToVector3(int offset, byte[] data, MlVector3 value)
+    {
+        value.setValue(
+            convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN),
+            convertByteArrayToFloat(data, offset + 4, ByteOrder.BIG_ENDIAN),
+            convertByteArrayToFloat(data, offset + 8, ByteOrder.BIG_ENDIAN));
+    }
+
+    public static void convertByteArrayToRotation(int offset, byte[] data, MlRotation value)
+    {
+        value.setValue(
+            convertByteArrayToFloat(data, offset, ByteOrder.BIG_ENDIAN),
+            convertByteArrayToFloat(data, offset + 4, ByteOrder.BIG_ENDIAN),
+            convertByteArrayToFloat(data, offset + 8, ByteOrder.BIG_ENDIAN),
+            convertByteArrayToFloat(data, offset + 12, ByteOrder.BIG_ENDIAN));
+    }
+}
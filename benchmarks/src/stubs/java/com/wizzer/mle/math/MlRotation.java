@@ -0,0 +1,49 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.math;
+
+/**
+ * JVM stand-in for the Magic Lantern rotation, stored as a quaternion (x, y, z, w).
+ */
+public class MlRotation
+{
+    private final float[] m_quat = new float[] { 0.0f, 0.0f, 0.0f, 1.0f };
+
+    public MlRotation() {}
+
+    public MlRotation(MlVector3 axis, float radians)
+    {
+        float[] a = axis.getValue();
+        float len = (float) Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]);
+        float s = (len > 0.0f) ? (float) Math.sin(radians * 0.5f) / len : 0.0f;
+        setValue(a[0] * s, a[1] * s, a[2] * s, (float) Math.cos(radians * 0.5f));
+    }
+
+    public float[] getValue()
+    {
+        return m_quat;
+    }
+
+    public MlRotation setValue(float x, float y, float z, float w)
+    {
+        m_quat[0] = x;
+        m_quat[1] = y;
+        m_quat[2] = z;
+        m_quat[3] = w;
+        return this;
+    }
+
+    // Concatenate q onto this rotation.
+    public MlRotation mul(MlRotation q)
+    {
+        float[] p = m_quat;
+        float[] d = q.m_quat;
+        float x = d[3] * p[0] + d[0] * p[3] + d[1] * p[2] - d[2] * p[1];
+        float y = d[3] * p[1] + d[1] * p[3] + d[2] * p[0] - d[0] * p[2];
+        float z = d[3] * p[2] + d[2] * p[3] + d[0] * p[1] - d[1] * p[0];
+        float w = d[3] * p[3] - d[0] * p[0] - d[1] * p[1] - d[2] * p[2];
+        return setValue(x, y, z, w);
+    }
+}
@@ -0,0 +1,14 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.math;
+
+/**
+ * JVM stand-in for the Magic Lantern scalar constants.
+ */
+public class MlScalar
+{
+    public static final float ML_SCALAR_ZERO = 0.0f;
+    public static final float ML_SCALAR_ONE  = 1.0f;
+}
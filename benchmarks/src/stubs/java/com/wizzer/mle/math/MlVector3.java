@@ -0,0 +1,33 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.math;
+
+/**
+ * JVM stand-in for the Magic Lantern 3D vector.
+ */
+public class MlVector3
+{
+    private final float[] m_vec = new float[3];
+
+    public MlVector3() {}
+
+    public MlVector3(float x, float y, float z)
+    {
+        setValue(x, y, z);
+    }
+
+    public float[] getValue()
+    {
+        return m_vec;
+    }
+
+    public MlVector3 setValue(float x, float y, float z)
+    {
+        m_vec[0] = x;
+        m_vec[1] = y;
+        m_vec[2] = z;
+        return this;
+    }
+}
@@ -0,0 +1,15 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.j2d.actors;
+
+/**
+ * JVM stand-in for the 2D image Actor interface.
+ */
+public interface IImageActor
+{
+    public int getWidth();
+
+    public int getHeight();
+}
@@ -0,0 +1,14 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.mrefs;
+
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * JVM stand-in for the image media reference.
+ */
+public class MleImageMediaRef extends MleMediaRef
+{
+}
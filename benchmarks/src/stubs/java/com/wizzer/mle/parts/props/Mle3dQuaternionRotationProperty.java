@@ -0,0 +1,34 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.props;
+
+import com.wizzer.mle.math.MlRotation;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * JVM stand-in for the quaternion rotation property; pushing only counts the pushes.
+ */
+public class Mle3dQuaternionRotationProperty
+{
+    public static long g_pushCount = 0;
+
+    private MlRotation m_value = null;
+
+    public MlRotation getProperty()
+    {
+        return m_value;
+    }
+
+    public void setProperty(MlRotation value)
+    {
+        m_value = value;
+    }
+
+    public void push(MleActor actor) throws MleRuntimeException
+    {
+        g_pushCount++;
+    }
+}
@@ -0,0 +1,34 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.props;
+
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * JVM stand-in for the texture map property; pushing only counts the pushes.
+ */
+public class Mle3dTextureMapProperty
+{
+    public static long g_pushCount = 0;
+
+    private MleMediaRef m_value = null;
+
+    public MleMediaRef getProperty()
+    {
+        return m_value;
+    }
+
+    public void setProperty(MleMediaRef value)
+    {
+        m_value = value;
+    }
+
+    public void push(MleActor actor) throws MleRuntimeException
+    {
+        g_pushCount++;
+    }
+}
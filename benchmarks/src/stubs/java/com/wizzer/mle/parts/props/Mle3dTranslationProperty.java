@@ -0,0 +1,34 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.props;
+
+import com.wizzer.mle.math.MlVector3;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * JVM stand-in for the translation property; pushing only counts the pushes.
+ */
+public class Mle3dTranslationProperty
+{
+    public static long g_pushCount = 0;
+
+    private MlVector3 m_value = null;
+
+    public MlVector3 getProperty()
+    {
+        return m_value;
+    }
+
+    public void setProperty(MlVector3 value)
+    {
+        m_value = value;
+    }
+
+    public void push(MleActor actor) throws MleRuntimeException
+    {
+        g_pushCount++;
+    }
+}
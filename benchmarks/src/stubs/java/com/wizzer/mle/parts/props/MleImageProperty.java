@@ -0,0 +1,45 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.props;
+
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.parts.j2d.actors.IImageActor;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * JVM stand-in for the image property; pushing only counts the pushes.
+ */
+public class MleImageProperty
+{
+    public static long g_pushCount = 0;
+
+    private MleMediaRef m_value = null;
+
+    public MleMediaRef getProperty()
+    {
+        return m_value;
+    }
+
+    public void setProperty(MleMediaRef value)
+    {
+        m_value = value;
+    }
+
+    public void push(MleActor actor) throws MleRuntimeException
+    {
+        g_pushCount++;
+    }
+
+    public int getWidth(IImageActor actor)
+    {
+        return 0;
+    }
+
+    public int getHeight(IImageActor actor)
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,25 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime;
+
+import com.wizzer.mle.runtime.scheduler.MlePhase;
+import com.wizzer.mle.runtime.scheduler.MleScheduler;
+
+/**
+ * JVM stand-in for the Magic Lantern title, holding the scheduler and the Actor phase.
+ */
+public class MleTitle
+{
+    private static final MleTitle g_theTitle = new MleTitle();
+
+    public static MlePhase g_theActorPhase = new MlePhase("Actor Phase");
+
+    public MleScheduler m_theScheduler = new MleScheduler();
+
+    public static MleTitle getInstance()
+    {
+        return g_theTitle;
+    }
+}
@@ -0,0 +1,20 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.core;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * JVM stand-in for a Magic Lantern object with properties.
+ */
+public interface IMleObject
+{
+    public Object getProperty(String name) throws MleRuntimeException;
+
+    public void setProperty(String name, IMleProp property) throws MleRuntimeException;
+
+    public void setPropertyArray(String name, int length, int nElements, ByteArrayInputStream value)
+        throws MleRuntimeException;
+}
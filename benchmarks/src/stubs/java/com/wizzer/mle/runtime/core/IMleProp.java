@@ -0,0 +1,23 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.core;
+
+import java.io.InputStream;
+
+/**
+ * JVM stand-in for a Magic Lantern property value.
+ */
+public interface IMleProp
+{
+    public static final int PROP_TYPE_INT      = 0;
+    public static final int PROP_TYPE_FLOAT    = 1;
+    public static final int PROP_TYPE_MEDIAREF = 2;
+
+    public int getLength();
+
+    public InputStream getStream();
+
+    public int getType();
+}
@@ -0,0 +1,22 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.core;
+
+/**
+ * JVM stand-in for the Magic Lantern Actor base class.
+ */
+public abstract class MleActor implements IMleObject
+{
+    public MleActor() { super(); }
+
+    public abstract void init() throws MleRuntimeException;
+
+    public abstract void dispose() throws MleRuntimeException;
+
+    public void notifyPropertyChange(String name, Object oldValue, Object newValue)
+    {
+        // No listeners off a device.
+    }
+}
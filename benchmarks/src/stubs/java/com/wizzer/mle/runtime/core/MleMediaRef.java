@@ -0,0 +1,33 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.core;
+
+/**
+ * JVM stand-in for a Magic Lantern media reference.
+ */
+public class MleMediaRef
+{
+    private Object m_media = null;
+    private int m_size = 0;
+
+    public MleMediaRef() { super(); }
+
+    public boolean registerMedia(int flags, int size, Object media)
+    {
+        m_media = media;
+        m_size = size;
+        return true;
+    }
+
+    public Object getMedia()
+    {
+        return m_media;
+    }
+
+    public int getSize()
+    {
+        return m_size;
+    }
+}
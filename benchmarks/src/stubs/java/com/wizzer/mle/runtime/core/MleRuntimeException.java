@@ -0,0 +1,17 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.core;
+
+/**
+ * JVM stand-in for the Magic Lantern runtime exception.
+ */
+public class MleRuntimeException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public MleRuntimeException() { super(); }
+
+    public MleRuntimeException(String msg) { super(msg); }
+}
@@ -0,0 +1,15 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.dpp;
+
+/**
+ * JVM stand-in for the Magic Lantern DPP exception.
+ */
+public class MleDppException extends Exception
+{
+    private static final long serialVersionUID = 1L;
+
+    public MleDppException(String msg) { super(msg); }
+}
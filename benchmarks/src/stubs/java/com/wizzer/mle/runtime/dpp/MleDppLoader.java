@@ -0,0 +1,27 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.dpp;
+
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * JVM stand-in for the Magic Lantern DPP loader; every index loads an empty media reference.
+ */
+public class MleDppLoader
+{
+    private static final MleDppLoader g_theLoader = new MleDppLoader();
+
+    public static MleDppLoader getInstance()
+    {
+        return g_theLoader;
+    }
+
+    public MleMediaRef mleLoadMediaRef(int index) throws MleDppException
+    {
+        if (index < 0)
+            throw new MleDppException("MleDppLoader: Invalid index " + index + ".");
+        return new MleMediaRef();
+    }
+}
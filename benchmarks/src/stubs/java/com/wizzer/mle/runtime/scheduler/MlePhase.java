@@ -0,0 +1,48 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.scheduler;
+
+import java.util.ArrayList;
+
+/**
+ * JVM stand-in for a Magic Lantern scheduler phase.
+ */
+public class MlePhase
+{
+    private final String m_name;
+    private final ArrayList<MleTask> m_tasks = new ArrayList<MleTask>();
+
+    public MlePhase(String name)
+    {
+        m_name = name;
+    }
+
+    public String getName()
+    {
+        return m_name;
+    }
+
+    public void addTask(MleTask task)
+    {
+        m_tasks.add(task);
+    }
+
+    public boolean deleteTask(MleTask task)
+    {
+        return m_tasks.remove(task);
+    }
+
+    public int getTaskCount()
+    {
+        return m_tasks.size();
+    }
+
+    // Execute every task in the phase, in registration order.
+    public void execute()
+    {
+        for (int i = 0; i < m_tasks.size(); i++)
+            m_tasks.get(i).run();
+    }
+}
@@ -0,0 +1,16 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.scheduler;
+
+/**
+ * JVM stand-in for the Magic Lantern scheduler.
+ */
+public class MleScheduler
+{
+    public void addTask(MlePhase phase, MleTask task)
+    {
+        phase.addTask(task);
+    }
+}
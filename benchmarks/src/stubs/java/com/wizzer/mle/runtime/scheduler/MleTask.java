@@ -0,0 +1,30 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.runtime.scheduler;
+
+/**
+ * JVM stand-in for a Magic Lantern scheduler task.
+ */
+public class MleTask
+{
+    private final Runnable m_function;
+    private final String m_name;
+
+    public MleTask(Runnable function, String name)
+    {
+        m_function = function;
+        m_name = name;
+    }
+
+    public String getName()
+    {
+        return m_name;
+    }
+
+    public void run()
+    {
+        m_function.run();
+    }
+}
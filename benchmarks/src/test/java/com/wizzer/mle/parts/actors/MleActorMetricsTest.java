@@ -0,0 +1,119 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counting and timing operations, and reading them back through snapshots.
+ */
+public class MleActorMetricsTest
+{
+    // The metrics under test, registered once.
+    private static final MleActorMetrics g_metrics = MleActorMetrics.register("MleActorMetricsTest");
+
+    @After
+    public void tearDown()
+    {
+        MleActorMetrics.setEnabled(false);
+        g_metrics.reset();
+    }
+
+    @Test
+    public void operationsAreCountedWithTimingDisabled()
+    {
+        MleActorMetrics.setEnabled(false);
+        for (int i = 0; i < 3; i++)
+            g_metrics.stop(MleActorMetrics.OP_UPDATE, MleActorMetrics.start());
+        g_metrics.pushFailed();
+
+        MleActorMetrics.Snapshot snapshot = g_metrics.snapshot();
+        assertEquals(3, snapshot.getCount(MleActorMetrics.OP_UPDATE));
+        assertEquals(0, snapshot.getTimedCount(MleActorMetrics.OP_UPDATE));
+        assertEquals(0, snapshot.getTotalNanos(MleActorMetrics.OP_UPDATE));
+        assertEquals(0.0, snapshot.getMeanNanos(MleActorMetrics.OP_UPDATE), 0.0);
+        assertEquals(0, snapshot.getPercentileNanos(MleActorMetrics.OP_UPDATE, 99.0));
+        assertArrayEquals(new long[MleActorMetrics.BUCKETS], snapshot.getHistogram(MleActorMetrics.OP_UPDATE));
+        assertEquals(1, snapshot.getPushFailures());
+        assertEquals(0, snapshot.getCount(MleActorMetrics.OP_INIT));
+    }
+
+    @Test
+    public void latenciesAreBucketedByPowersOfTwo()
+    {
+        MleActorMetrics.setEnabled(true);
+        g_metrics.record(MleActorMetrics.OP_INIT, 1000);
+        g_metrics.record(MleActorMetrics.OP_INIT, 3000);
+
+        MleActorMetrics.Snapshot snapshot = g_metrics.snapshot();
+        assertEquals(2, snapshot.getCount(MleActorMetrics.OP_INIT));
+        assertEquals(2, snapshot.getTimedCount(MleActorMetrics.OP_INIT));
+        assertEquals(4000, snapshot.getTotalNanos(MleActorMetrics.OP_INIT));
+        assertEquals(2000.0, snapshot.getMeanNanos(MleActorMetrics.OP_INIT), 0.0);
+        long[] histogram = snapshot.getHistogram(MleActorMetrics.OP_INIT);
+        // 1000 is in [512, 1024) and 3000 in [2048, 4096).
+        assertEquals(1, histogram[10]);
+        assertEquals(1, histogram[12]);
+        assertEquals(1024, snapshot.getPercentileNanos(MleActorMetrics.OP_INIT, 50.0));
+        assertEquals(4096, snapshot.getPercentileNanos(MleActorMetrics.OP_INIT, 99.0));
+
+        // An operation timed through start() and stop() is counted and timed.
+        g_metrics.stop(MleActorMetrics.OP_INIT, MleActorMetrics.start());
+        snapshot = g_metrics.snapshot();
+        assertEquals(3, snapshot.getCount(MleActorMetrics.OP_INIT));
+        assertEquals(3, snapshot.getTimedCount(MleActorMetrics.OP_INIT));
+
+        // Latencies beyond the histogram fall in the last bucket.
+        g_metrics.reset();
+        g_metrics.record(MleActorMetrics.OP_BEHAVE, Long.MAX_VALUE);
+        snapshot = g_metrics.snapshot();
+        assertEquals(1, snapshot.getHistogram(MleActorMetrics.OP_BEHAVE)[MleActorMetrics.BUCKETS - 1]);
+        assertEquals(Long.MAX_VALUE, snapshot.getPercentileNanos(MleActorMetrics.OP_BEHAVE, 50.0));
+    }
+
+    @Test
+    public void resetClearsEverything()
+    {
+        g_metrics.record(MleActorMetrics.OP_LOAD_MEDIA, 100);
+        g_metrics.stop(MleActorMetrics.OP_SET_PROPERTY, 0L);
+        g_metrics.pushFailed();
+        g_metrics.loadFailed();
+        g_metrics.reset();
+
+        MleActorMetrics.Snapshot snapshot = g_metrics.snapshot();
+        for (int op = 0; op < MleActorMetrics.OP_COUNT; op++)
+        {
+            assertEquals(0, snapshot.getCount(op));
+            assertEquals(0, snapshot.getTotalNanos(op));
+        }
+        assertEquals(0, snapshot.getPushFailures());
+        assertEquals(0, snapshot.getLoadFailures());
+    }
+
+    @Test
+    public void snapshotAllIncludesEveryClass() throws Exception
+    {
+        // Loading the Actor class registers its metrics.
+        new MleCubeActor().setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 2.0f, 3.0f));
+
+        boolean test = false, cube = false;
+        for (MleActorMetrics.Snapshot snapshot : MleActorMetrics.snapshotAll())
+        {
+            if (snapshot.getName().equals("MleActorMetricsTest"))
+                test = true;
+            else if (snapshot.getName().equals("MleCubeActor"))
+            {
+                cube = true;
+                assertTrue(snapshot.getCount(MleActorMetrics.OP_SET_PROPERTY) > 0);
+            }
+        }
+        assertTrue(test && cube);
+    }
+}
@@ -0,0 +1,53 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Recycling Actors through their pools.
+ */
+public class MleActorPoolTest
+{
+    @After
+    public void tearDown()
+    {
+        MleCubeActor.getPool().setLimit(0);
+    }
+
+    @Test
+    public void recycleTwiceIsRejected() throws Exception
+    {
+        MleActorPool<MleCubeActor> pool = MleCubeActor.getPool();
+        pool.setLimit(4);
+        MleCubeActor cube = pool.obtain();
+        assertTrue(pool.recycle(cube));
+        try
+        {
+            pool.recycle(cube);
+            fail("A pooled Actor was recycled twice.");
+        } catch (MleRuntimeException ex)
+        {
+            // Expected.
+        }
+        assertEquals(1, pool.getSize());
+
+        MleCubeActor first = pool.obtain();
+        MleCubeActor second = pool.obtain();
+        assertNotSame(first, second);
+
+        // Once obtained again, the Actor may be recycled again.
+        assertTrue(pool.recycle(first));
+    }
+}
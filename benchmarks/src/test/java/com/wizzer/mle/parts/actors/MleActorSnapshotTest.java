@@ -0,0 +1,260 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Round trips of full and delta snapshots, and snapshots which do not match their
+ * Actors.
+ */
+public class MleActorSnapshotTest
+{
+    // The number of Actors in the scene.
+    private static final int ACTORS = 10;
+
+    // Create a scene of models, each at x equal to its position in the array.
+    private static MleActor[] createScene() throws MleRuntimeException
+    {
+        MleActor[] actors = new MleActor[ACTORS];
+        for (int i = 0; i < ACTORS; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(i, 0.0f, 0.0f));
+            model.setProperty(MleModelActor.PROPERTY_ORIENTATION, BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f));
+            model.setProperty(MleModelActor.PROPERTY_SCALE, BenchProperty.floats(1.0f, 1.0f, 1.0f));
+            actors[i] = model;
+        }
+        return actors;
+    }
+
+    // Create a scene of models to restore into, each at x equal to -1.
+    private static MleActor[] createCopy(int count) throws MleRuntimeException
+    {
+        MleActor[] actors = new MleActor[count];
+        for (int i = 0; i < count; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(-1.0f, 0.0f, 0.0f));
+            actors[i] = model;
+        }
+        return actors;
+    }
+
+    // Get the x position of a model.
+    private static float getX(MleActor actor)
+    {
+        return ((MleModelActor) actor).position.getProperty().getValue()[0];
+    }
+
+    // Open a channel over the bytes written.
+    private static ReadableByteChannel open(ByteArrayOutputStream bytes)
+    {
+        return Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void fullThenDeltaFromOneChannel() throws Exception
+    {
+        MleActor[] scene = createScene();
+        MleActorSnapshot writer = new MleActorSnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bytes);
+        writer.write(out, scene, ACTORS);
+        scene[3].setProperty("position", BenchProperty.floats(100.0f, 0.0f, 0.0f));
+        writer.writeDelta(out, scene, ACTORS);
+
+        // The reader reads ahead past the full snapshot into the delta.
+        MleActor[] copy = new MleActor[ACTORS];
+        for (int i = 0; i < ACTORS; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(-1.0f, 0.0f, 0.0f));
+            copy[i] = model;
+        }
+        MleActorSnapshot reader = new MleActorSnapshot();
+        ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(ACTORS, reader.read(in, copy, ACTORS));
+        assertEquals(3.0f, getX(copy[3]), 0.0f);
+        assertEquals(1, reader.read(in, copy, ACTORS));
+        assertEquals(100.0f, getX(copy[3]), 0.0f);
+        for (int i = 0; i < ACTORS; i++)
+            if (i != 3)
+                assertEquals(i, getX(copy[i]), 0.0f);
+    }
+
+    @Test
+    public void unchangedDeltaRecordsNothing() throws Exception
+    {
+        MleActor[] scene = createScene();
+        MleActorSnapshot writer = new MleActorSnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bytes);
+        writer.write(out, scene, ACTORS);
+        int full = bytes.size();
+        writer.writeDelta(out, scene, ACTORS);
+        // The header and the end marker only.
+        assertEquals(12 + 4, bytes.size() - full);
+
+        MleActorSnapshot reader = new MleActorSnapshot();
+        ReadableByteChannel in = open(bytes);
+        MleActor[] copy = createCopy(ACTORS);
+        assertEquals(ACTORS, reader.read(in, copy, ACTORS));
+        assertEquals(0, reader.read(in, copy, ACTORS));
+    }
+
+    @Test
+    public void deltaRecordsActorWhoseKindChanged() throws Exception
+    {
+        MleActor[] scene = createScene();
+        MleActorSnapshot writer = new MleActorSnapshot();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bytes);
+        writer.write(out, scene, ACTORS);
+
+        // The model in slot 5 is replaced by a cube with the same scale; the whole
+        // cube is recorded, not only the fields which differ from the model.
+        MleCubeActor cube = new MleCubeActor();
+        cube.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(5.0f, 0.0f, 0.0f));
+        cube.setProperty(MleCubeActor.PROPERTY_SCALE, BenchProperty.floats(1.0f, 1.0f, 1.0f));
+        cube.setProperty(MleCubeActor.PROPERTY_COLOR, BenchProperty.floats(1.0f, 0.0f, 0.0f, 1.0f));
+        scene[5] = cube;
+        writer.writeDelta(out, scene, ACTORS);
+
+        MleActorSnapshot reader = new MleActorSnapshot();
+        ReadableByteChannel in = open(bytes);
+        MleActor[] copy = createCopy(ACTORS);
+        assertEquals(ACTORS, reader.read(in, copy, ACTORS));
+        MleCubeActor restored = new MleCubeActor();
+        restored.setProperty(MleCubeActor.PROPERTY_SCALE, BenchProperty.floats(3.0f, 3.0f, 3.0f));
+        copy[5] = restored;
+        assertEquals(1, reader.read(in, copy, ACTORS));
+        assertEquals(5.0f, restored.position.getProperty().getValue()[0], 0.0f);
+        assertEquals(1.0f, restored.scale.getProperty().getValue()[0], 0.0f);
+    }
+
+    @Test
+    public void recordOfAnotherKindIsRejected() throws Exception
+    {
+        MleActor[] scene = createScene();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MleActorSnapshot().write(Channels.newChannel(bytes), scene, ACTORS);
+
+        MleActor[] copy = createCopy(ACTORS);
+        copy[2] = new MleCubeActor();
+        try
+        {
+            new MleActorSnapshot().read(open(bytes), copy, ACTORS);
+            fail("A model record was restored into a cube.");
+        } catch (IOException ex)
+        {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void countChangeNeedsFullSnapshot() throws Exception
+    {
+        MleActor[] scene = createScene();
+        MleActorSnapshot writer = new MleActorSnapshot();
+        ByteArrayOutputStream smaller = new ByteArrayOutputStream();
+        writer.write(Channels.newChannel(smaller), scene, ACTORS - 1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bytes);
+        try
+        {
+            writer.writeDelta(out, scene, ACTORS);
+            fail("A delta was written against a base of another count.");
+        } catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+
+        // A full snapshot of the new count is the base of the next delta.
+        writer.write(out, scene, ACTORS);
+        scene[ACTORS - 1].setProperty("position", BenchProperty.floats(50.0f, 0.0f, 0.0f));
+        writer.writeDelta(out, scene, ACTORS);
+
+        MleActorSnapshot reader = new MleActorSnapshot();
+        MleActor[] copy = createCopy(ACTORS);
+        try
+        {
+            reader.read(open(smaller), copy, ACTORS);
+            fail("A snapshot of another count was restored.");
+        } catch (IOException ex)
+        {
+            // Expected.
+        }
+        ReadableByteChannel in = open(bytes);
+        assertEquals(ACTORS, reader.read(in, copy, ACTORS));
+        assertEquals(ACTORS - 1.0f, getX(copy[ACTORS - 1]), 0.0f);
+        assertEquals(1, reader.read(in, copy, ACTORS));
+        assertEquals(50.0f, getX(copy[ACTORS - 1]), 0.0f);
+    }
+
+    @Test
+    public void smallBufferStreamsLargeScene() throws Exception
+    {
+        int count = 500;
+        MleActor[] scene = new MleActor[count];
+        for (int i = 0; i < count; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(i, 0.0f, 0.0f));
+            scene[i] = model;
+        }
+        // The smallest buffer holds the header and one record.
+        MleActorSnapshot writer = new MleActorSnapshot(1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out = Channels.newChannel(bytes);
+        writer.write(out, scene, count);
+        for (int i = 0; i < count; i += 7)
+            scene[i].setProperty("position", BenchProperty.floats(count + i, 0.0f, 0.0f));
+        writer.writeDelta(out, scene, count);
+
+        MleActorSnapshot reader = new MleActorSnapshot(1);
+        ReadableByteChannel in = open(bytes);
+        MleActor[] copy = createCopy(count);
+        assertEquals(count, reader.read(in, copy, count));
+        assertEquals((count + 6) / 7, reader.read(in, copy, count));
+        for (int i = 0; i < count; i++)
+            assertEquals(((i % 7) == 0) ? count + i : i, getX(copy[i]), 0.0f);
+    }
+
+    @Test
+    public void truncatedSnapshotIsRejected() throws Exception
+    {
+        MleActor[] scene = createScene();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new MleActorSnapshot().write(Channels.newChannel(bytes), scene, ACTORS);
+        byte[] all = bytes.toByteArray();
+        ReadableByteChannel in = Channels.newChannel(
+            new ByteArrayInputStream(Arrays.copyOf(all, all.length - 10)));
+        try
+        {
+            new MleActorSnapshot().read(in, createCopy(ACTORS), ACTORS);
+            fail("A truncated snapshot was restored.");
+        } catch (IOException ex)
+        {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sampling keyframe tracks and mapping play time into clips.
+ */
+public class MleAnimationTrackTest
+{
+    // A track moving along x from 0 to 10 and back to 4.
+    private static final MleAnimationTrack MOVE = new MleAnimationTrack(MleAnimationTrack.TYPE_VECTOR3,
+        new float[] { 0.0f, 1.0f, 3.0f }, new float[] { 0, 0, 0,  10, 0, 0,  4, 0, 0 });
+
+    // Sample a track at a time.
+    private static float[] sample(MleAnimationTrack track, float time)
+    {
+        float[] out = new float[(track.getType() == MleAnimationTrack.TYPE_ROTATION) ? 4 : 3];
+        track.sample(time, out, 0);
+        return out;
+    }
+
+    @Test
+    public void vectorTrackInterpolatesAndHoldsItsEnds()
+    {
+        assertArrayEquals(new float[] { 0, 0, 0 }, sample(MOVE, -1.0f), 0.0f);
+        assertArrayEquals(new float[] { 5, 0, 0 }, sample(MOVE, 0.5f), 1.0e-6f);
+        assertArrayEquals(new float[] { 10, 0, 0 }, sample(MOVE, 1.0f), 0.0f);
+        assertArrayEquals(new float[] { 7, 0, 0 }, sample(MOVE, 2.0f), 1.0e-6f);
+        assertArrayEquals(new float[] { 4, 0, 0 }, sample(MOVE, 30.0f), 0.0f);
+        assertEquals(3, MOVE.getKeyCount());
+        assertEquals(3.0f, MOVE.getDuration(), 0.0f);
+    }
+
+    @Test
+    public void rotationTrackTakesTheShorterArc()
+    {
+        // A quarter turn around y, with the end key on the far hemisphere.
+        float s = (float) Math.sqrt(0.5);
+        MleAnimationTrack turn = new MleAnimationTrack(MleAnimationTrack.TYPE_ROTATION,
+            new float[] { 0.0f, 1.0f }, new float[] { 0, 0, 0, 1,  0, -s, 0, -s });
+        float[] half = sample(turn, 0.5f);
+        double angle = Math.PI / 8;
+        assertArrayEquals(new float[] { 0, (float) Math.sin(angle), 0, (float) Math.cos(angle) }, half, 1.0e-5f);
+    }
+
+    @Test
+    public void inconsistentKeysAreRejected()
+    {
+        float[][] times = { {}, { 0.0f, 1.0f }, { 1.0f, 0.0f }, { 0.0f, Float.NaN } };
+        float[][] values = { {}, { 0, 0, 0 }, { 0, 0, 0, 1, 1, 1 }, { 0, 0, 0, 1, 1, 1 } };
+        for (int i = 0; i < times.length; i++)
+        {
+            try
+            {
+                new MleAnimationTrack(MleAnimationTrack.TYPE_VECTOR3, times[i], values[i]);
+                fail("Track " + i + " was created.");
+            } catch (IllegalArgumentException ex)
+            {
+                // Expected.
+            }
+        }
+        try
+        {
+            new MleAnimationClip(null, MOVE, null, false);
+            fail("A vector track animated the orientation.");
+        } catch (IllegalArgumentException ex)
+        {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void identicalTracksAreInterned()
+    {
+        MleAnimationTrack copy = new MleAnimationTrack(MleAnimationTrack.TYPE_VECTOR3,
+            new float[] { 0.0f, 1.0f, 3.0f }, new float[] { 0, 0, 0,  10, 0, 0,  4, 0, 0 });
+        assertNotSame(MOVE, copy);
+        assertEquals(MOVE, copy);
+        assertSame(MOVE.intern(), copy.intern());
+    }
+
+    @Test
+    public void keyframeArrayIsRead() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        float[] keys = { 0.0f, 0, 0, 0,  1.0f, 10, 0, 0,  3.0f, 4, 0, 0 };
+        for (float key : keys)
+            out.writeFloat(key);
+        out.flush();
+        byte[] data = bytes.toByteArray();
+        MleAnimationTrack track = MleAnimationTrack.read(MleAnimationTrack.TYPE_VECTOR3, data.length, 3,
+                                                         new ByteArrayInputStream(data));
+        assertEquals(MOVE, track);
+
+        // The length must match the keys.
+        try
+        {
+            MleAnimationTrack.read(MleAnimationTrack.TYPE_ROTATION, data.length, 3, new ByteArrayInputStream(data));
+            fail("Vector keys were read as rotations.");
+        } catch (IOException ex)
+        {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void clipTimeWrapsOrClamps()
+    {
+        MleAnimationClip once = new MleAnimationClip(MOVE, null, null, false);
+        assertEquals(3.0f, once.getDuration(), 0.0f);
+        assertEquals(1.5f, once.clipTime(1.5), 0.0f);
+        assertEquals(3.0f, once.clipTime(100.0), 0.0f);
+
+        MleAnimationClip loop = once.withLooping(true);
+        assertEquals(1.0f, loop.clipTime(7.0), 1.0e-6f);
+        assertEquals(2.0f, loop.clipTime(-1.0), 1.0e-6f);
+        // A looping clip without keys stays at zero.
+        assertEquals(0.0f, MleAnimationClip.EMPTY.clipTime(5.0), 0.0f);
+
+        MleAnimationClip scaled = loop.withTrack(MleAnimationClip.CHANNEL_SCALE, MOVE)
+                                      .withTrack(MleAnimationClip.CHANNEL_POSITION, null);
+        assertSame(MOVE, scaled.getTrack(MleAnimationClip.CHANNEL_SCALE));
+        assertNull(scaled.getTrack(MleAnimationClip.CHANNEL_POSITION));
+        assertTrue(scaled.isLooping());
+    }
+}
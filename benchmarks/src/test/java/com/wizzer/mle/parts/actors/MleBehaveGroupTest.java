@@ -0,0 +1,362 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.math.MlRotation;
+import com.wizzer.mle.runtime.MleTitle;
+import com.wizzer.mle.runtime.core.MleActor;
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+import com.wizzer.mle.parts.props.Mle3dQuaternionRotationProperty;
+import com.wizzer.mle.parts.props.Mle3dTranslationProperty;
+
+/**
+ * The behavior group's evaluation of culled, animated, throttled, prioritized
+ * and parallel members.
+ */
+public class MleBehaveGroupTest
+{
+    // The number of models in the parallel scene, several chunks of the group.
+    private static final int PARALLEL_ACTORS = 5000;
+    // The number of frames the parallel scene is run for.
+    private static final int PARALLEL_FRAMES = 120;
+
+    // The clock driving the group.
+    private MleManualClock m_clock = new MleManualClock();
+
+    // An orientation property recording the quaternions pushed, bit for bit.
+    private static final class RecordingRotation extends Mle3dQuaternionRotationProperty
+    {
+        // The pushes: the Actor's position in the scene and the quaternion's bits.
+        private final ArrayList<int[]> m_pushes;
+        // The position of the Actor in the scene.
+        private final int m_index;
+
+        RecordingRotation(ArrayList<int[]> pushes, int index)
+        {
+            m_pushes = pushes;
+            m_index = index;
+        }
+
+        public void push(MleActor actor) throws MleRuntimeException
+        {
+            float[] q = getProperty().getValue();
+            m_pushes.add(new int[] { m_index, Float.floatToRawIntBits(q[0]), Float.floatToRawIntBits(q[1]),
+                                     Float.floatToRawIntBits(q[2]), Float.floatToRawIntBits(q[3]) });
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        MleBehaviorConfig.setFrustum(null);
+        MleBehaviorConfig.setClock(null);
+        MleBehaviorConfig.setParallel(false);
+        MleBehaviorConfig.setParallelThreshold(MleBehaviorConfig.DEFAULT_PARALLEL_THRESHOLD);
+        MleBehaviorConfig.setParallelPool(null);
+        MleBehaviorConfig.setFrameBudget(0);
+        MleBehaviorConfig.setStep(MleBehaviorConfig.DEFAULT_STEP);
+        MleBehaviorConfig.setMaxSteps(MleBehaviorConfig.DEFAULT_MAX_STEPS);
+    }
+
+    // Spin a model for frames of the specified length, returning its orientation.
+    private float[] spin(int frames, long nanos) throws Exception
+    {
+        m_clock = new MleManualClock();
+        MleBehaviorConfig.setClock(m_clock);
+        MleModelActor model = new MleModelActor();
+        model.setProperty(MleModelActor.PROPERTY_ORIENTATION, BenchProperty.floats(0.0f, 0.0f, 0.0f, 1.0f));
+        model.setSpinSpeed(2.0f);
+        model.init();
+        try
+        {
+            // The first run starts the clock.
+            MleTitle.g_theActorPhase.execute();
+            for (int frame = 0; frame < frames; frame++)
+            {
+                m_clock.advance(nanos);
+                MleTitle.g_theActorPhase.execute();
+            }
+            return model.orientation.getProperty().getValue().clone();
+        } finally
+        {
+            model.dispose();
+        }
+    }
+
+    // Create and initialize a spinning model, recording its pushed orientations.
+    private static MleModelActor spinning(ArrayList<int[]> pushes, int index, int divider, int priority)
+        throws Exception
+    {
+        MleModelActor model = new MleModelActor();
+        model.orientation = new RecordingRotation(pushes, index);
+        model.orientation.setProperty(new MlRotation());
+        model.setSpinSpeed(1.0f);
+        model.setTickDivider(divider);
+        model.setPriority(priority);
+        model.init();
+        return model;
+    }
+
+    // Count the pushes of each Actor of a scene.
+    private static int[] countPushes(ArrayList<int[]> pushes, int actors)
+    {
+        int[] counts = new int[actors];
+        for (int[] push : pushes)
+            counts[push[0]]++;
+        return counts;
+    }
+
+    // Run frames of one step each.
+    private void run(int frames)
+    {
+        long step = (long) (MleBehaviorConfig.getStep() * 1.0e9);
+        for (int frame = 0; frame < frames; frame++)
+        {
+            m_clock.advance(step);
+            MleTitle.g_theActorPhase.execute();
+        }
+    }
+
+    @Test
+    public void culledMemberIsAnimatedIntoView() throws Exception
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        // A box of 10 units around the origin.
+        MleFrustum frustum = new MleFrustum();
+        frustum.setPlanes(new float[] {
+            1, 0, 0, 10,  -1, 0, 0, 10,  0, 1, 0, 10,  0, -1, 0, 10,  0, 0, 1, 10,  0, 0, -1, 10 });
+        MleBehaviorConfig.setFrustum(frustum);
+
+        // The model starts well outside the box and moves to its center.
+        MleModelActor model = new MleModelActor();
+        model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(100.0f, 0.0f, 0.0f));
+        model.setAnimationClip(new MleAnimationClip(
+            new MleAnimationTrack(MleAnimationTrack.TYPE_VECTOR3,
+                new float[] { 0.0f, 1.0f }, new float[] { 100.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f }),
+            null, null, false));
+        model.init();
+        try
+        {
+            run(3 * (int) (1.0f / MleBehaviorConfig.getStep()));
+            assertEquals(0.0f, model.position.getProperty().getValue()[0], 0.0f);
+            assertEquals(1, MleModelActor.getSpatialIndex().queryRegion(-1.0f, -1.0f, -1.0f, 1.0f, 1.0f, 1.0f, new int[1]));
+        } finally
+        {
+            model.dispose();
+        }
+    }
+
+    @Test
+    public void transformChangesAreCoalescedPerFrame() throws Exception
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        MleModelActor model = new MleModelActor();
+        model.init();
+        try
+        {
+            run(1);
+            long pushes = Mle3dTranslationProperty.g_pushCount;
+            for (int i = 0; i < 3; i++)
+                model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(i, 0.0f, 0.0f));
+            // The changes are pushed by the group, not by setProperty().
+            assertEquals(pushes, Mle3dTranslationProperty.g_pushCount);
+
+            run(1);
+            assertEquals(pushes + 1, Mle3dTranslationProperty.g_pushCount);
+            assertEquals(2.0f, model.position.getProperty().getValue()[0], 0.0f);
+            // Nothing changed since; nothing is pushed.
+            run(1);
+            assertEquals(pushes + 1, Mle3dTranslationProperty.g_pushCount);
+        } finally
+        {
+            model.dispose();
+        }
+    }
+
+    @Test
+    public void spinIsIndependentOfFrameRate() throws Exception
+    {
+        // A step of 1/64 s is exact in nanoseconds.
+        MleBehaviorConfig.setStep(1.0f / 64.0f);
+        float[] fast = spin(64, 15625000L);
+        float[] slow = spin(16, 62500000L);
+        assertArrayEquals(fast, slow, 1.0e-5f);
+
+        // Drawn one step behind: 63 steps of 2 radians per second around y.
+        double half = 2.0 * 63 / 64 * 0.5;
+        assertArrayEquals(new float[] { 0.0f, (float) Math.sin(half), 0.0f, (float) Math.cos(half) },
+                          fast, 1.0e-4f);
+    }
+
+    @Test
+    public void longFrameIsClampedToMaxSteps() throws Exception
+    {
+        MleBehaviorConfig.setStep(1.0f / 64.0f);
+        MleBehaviorConfig.setMaxSteps(5);
+        // A one second hitch runs five steps, as five frames of one step do.
+        float[] hitch = spin(1, 1000000000L);
+        float[] steps = spin(5, 15625000L);
+        assertArrayEquals(steps, hitch, 1.0e-6f);
+    }
+
+    @Test
+    public void tickDividerStaggersPushes() throws Exception
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        ArrayList<int[]> pushes = new ArrayList<int[]>();
+        MleModelActor[] actors = new MleModelActor[4];
+        for (int i = 0; i < 3; i++)
+            actors[i] = spinning(pushes, i, 3, MleBehaviorConfig.PRIORITY_NORMAL);
+        actors[3] = spinning(pushes, 3, 1, MleBehaviorConfig.PRIORITY_NORMAL);
+        pushes.clear();
+        try
+        {
+            for (int frame = 0; frame < 9; frame++)
+            {
+                int before = pushes.size();
+                run(1);
+                // The unthrottled model and one of the three throttled ones.
+                assertEquals("Frame " + frame, 2, pushes.size() - before);
+            }
+            assertArrayEquals(new int[] { 3, 3, 3, 9 }, countPushes(pushes, actors.length));
+        } finally
+        {
+            for (int i = actors.length - 1; i >= 0; i--)
+                actors[i].dispose();
+        }
+    }
+
+    @Test
+    public void membersAreFlushedByPriority() throws Exception
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        // A budget which is never spent; the order still follows the priorities.
+        MleBehaviorConfig.setFrameBudget(60000000000L);
+        ArrayList<int[]> pushes = new ArrayList<int[]>();
+        MleModelActor[] actors = new MleModelActor[] {
+            spinning(pushes, 0, 1, MleBehaviorConfig.PRIORITY_LOW),
+            spinning(pushes, 1, 1, MleBehaviorConfig.PRIORITY_NORMAL),
+            spinning(pushes, 2, 1, MleBehaviorConfig.PRIORITY_HIGH) };
+        pushes.clear();
+        try
+        {
+            run(1);
+            assertEquals(3, pushes.size());
+            assertEquals(2, pushes.get(0)[0]);
+            assertEquals(1, pushes.get(1)[0]);
+            assertEquals(0, pushes.get(2)[0]);
+        } finally
+        {
+            for (int i = actors.length - 1; i >= 0; i--)
+                actors[i].dispose();
+        }
+    }
+
+    @Test
+    public void spentBudgetDefersLowerPriorities() throws Exception
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        // A budget which is spent before the group flushes.
+        MleBehaviorConfig.setFrameBudget(1);
+        ArrayList<int[]> pushes = new ArrayList<int[]>();
+        MleModelActor[] actors = new MleModelActor[] {
+            spinning(pushes, 0, 1, MleBehaviorConfig.PRIORITY_LOW),
+            spinning(pushes, 1, 1, MleBehaviorConfig.PRIORITY_NORMAL),
+            spinning(pushes, 2, 1, MleBehaviorConfig.PRIORITY_HIGH) };
+        pushes.clear();
+        try
+        {
+            // Only the high priority model is pushed while the others are deferred.
+            run(MleBehaviorConfig.MAX_DEFERRED_FRAMES);
+            assertArrayEquals(new int[] { 0, 0, MleBehaviorConfig.MAX_DEFERRED_FRAMES },
+                              countPushes(pushes, actors.length));
+
+            // Deferred for too long, they are pushed as high priority; then deferred again.
+            run(1);
+            assertArrayEquals(new int[] { 1, 1, MleBehaviorConfig.MAX_DEFERRED_FRAMES + 1 },
+                              countPushes(pushes, actors.length));
+            run(MleBehaviorConfig.MAX_DEFERRED_FRAMES);
+            assertArrayEquals(new int[] { 1, 1, 2 * MleBehaviorConfig.MAX_DEFERRED_FRAMES + 1 },
+                              countPushes(pushes, actors.length));
+        } finally
+        {
+            for (int i = actors.length - 1; i >= 0; i--)
+                actors[i].dispose();
+        }
+    }
+
+    @Test
+    public void parallelPushesMatchSerial() throws Exception
+    {
+        int[][] serial = runScene(false);
+        int[][] parallel = runScene(true);
+        assertTrue(serial.length > PARALLEL_ACTORS);
+        assertEquals(serial.length, parallel.length);
+        for (int i = 0; i < serial.length; i++)
+            assertArrayEquals("Push " + i, serial[i], parallel[i]);
+    }
+
+    // Run a scene of spinning, animated and throttled models, returning the
+    // quaternions pushed in order.
+    private int[][] runScene(boolean parallel) throws Exception
+    {
+        m_clock = new MleManualClock();
+        MleBehaviorConfig.setClock(m_clock);
+        MleBehaviorConfig.setParallel(parallel);
+        MleBehaviorConfig.setParallelThreshold(1);
+        MleBehaviorConfig.setParallelPool(parallel ? new ForkJoinPool(4) : null);
+
+        MleAnimationClip clip = new MleAnimationClip(null,
+            new MleAnimationTrack(MleAnimationTrack.TYPE_ROTATION, new float[] { 0.0f, 0.7f, 1.3f },
+                new float[] { 0, 0, 0, 1,  0, 0.7071068f, 0, 0.7071068f,  0, 1, 0, 0 }),
+            null, true);
+        ArrayList<int[]> pushes = new ArrayList<int[]>();
+        MleModelActor[] actors = new MleModelActor[PARALLEL_ACTORS];
+        for (int i = 0; i < actors.length; i++)
+        {
+            MleModelActor model = new MleModelActor();
+            model.orientation = new RecordingRotation(pushes, i);
+            model.orientation.setProperty(new MlRotation());
+            model.setProperty(MleModelActor.PROPERTY_ORIENTATION,
+                BenchProperty.floats(0.0f, (float) Math.sin(i * 0.01), 0.0f, (float) Math.cos(i * 0.01)));
+            model.setSpinSpeed(0.5f + (i % 17) * 0.25f);
+            if ((i % 5) == 0) model.setAnimationClip(clip);
+            if ((i % 7) == 0) model.setTickDivider(3);
+            model.init();
+            actors[i] = model;
+        }
+        pushes.clear();
+        try
+        {
+            // Uneven frame times, so that the orientations are interpolated.
+            for (int frame = 0; frame < PARALLEL_FRAMES; frame++)
+            {
+                m_clock.advance(((frame % 3) == 0) ? 7000000L : 23000000L);
+                MleTitle.g_theActorPhase.execute();
+            }
+        } finally
+        {
+            for (int i = actors.length - 1; i >= 0; i--)
+                actors[i].dispose();
+            ForkJoinPool pool = MleBehaviorConfig.getParallelPool();
+            MleBehaviorConfig.setParallelPool(null);
+            pool.shutdown();
+        }
+        return pushes.toArray(new int[pushes.size()][]);
+    }
+}
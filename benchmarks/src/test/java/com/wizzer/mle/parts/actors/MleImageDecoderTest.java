@@ -0,0 +1,117 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.nio.ByteBuffer;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Probing image headers and decoding images at a target size.
+ */
+public class MleImageDecoderTest
+{
+    // Create a media reference to an image of a size.
+    private static MleMediaRef image(int width, int height)
+    {
+        byte[] data = MleTextureCacheTest.png(width, height);
+        MleMediaRef mref = new MleMediaRef();
+        mref.registerMedia(0, data.length, data);
+        return mref;
+    }
+
+    @Test
+    public void headerIsProbed()
+    {
+        int[] size = new int[2];
+        assertTrue(MleImageDecoder.probe(image(640, 480), size));
+        assertArrayEquals(new int[] { 640, 480 }, size);
+
+        // The same image in a buffer.
+        byte[] data = MleTextureCacheTest.png(32, 16);
+        MleMediaRef mref = new MleMediaRef();
+        mref.registerMedia(0, data.length, ByteBuffer.allocateDirect(data.length).put(data).flip());
+        assertTrue(MleImageDecoder.probe(mref, size));
+        assertArrayEquals(new int[] { 32, 16 }, size);
+
+        // Media which is not an image leaves the size alone.
+        mref.registerMedia(0, 64, new byte[64]);
+        assertFalse(MleImageDecoder.probe(mref, size));
+        assertFalse(MleImageDecoder.probe(null, size));
+        assertArrayEquals(new int[] { 32, 16 }, size);
+        assertNull(MleImageDecoder.decode(mref, 0, 0));
+    }
+
+    @Test
+    public void sampleSizeIsAPowerOfTwo()
+    {
+        assertEquals(1, MleImageDecoder.getSampleSize(640, 480, 640, 480));
+        assertEquals(1, MleImageDecoder.getSampleSize(640, 480, 1000, 1000));
+        assertEquals(2, MleImageDecoder.getSampleSize(640, 480, 320, 240));
+        assertEquals(2, MleImageDecoder.getSampleSize(640, 480, 200, 200));
+        assertEquals(8, MleImageDecoder.getSampleSize(640, 480, 64, 48));
+        // The shorter side limits the subsampling.
+        assertEquals(1, MleImageDecoder.getSampleSize(640, 480, 100, 300));
+    }
+
+    @Test
+    public void imageIsDecodedToFitTheTarget()
+    {
+        // At full size.
+        Bitmap bitmap = MleImageDecoder.decode(image(640, 480), 0, 0);
+        assertEquals(640, bitmap.getWidth());
+        assertEquals(480, bitmap.getHeight());
+
+        // Subsampled to 320x240, then scaled to fit 200x200 keeping the aspect ratio.
+        bitmap = MleImageDecoder.decode(image(640, 480), 200, 200);
+        assertEquals(200, bitmap.getWidth());
+        assertEquals(150, bitmap.getHeight());
+
+        // An image smaller than the target is not scaled up.
+        bitmap = MleImageDecoder.decode(image(50, 40), 200, 200);
+        assertEquals(50, bitmap.getWidth());
+        assertEquals(40, bitmap.getHeight());
+    }
+
+    @Test
+    public void actorKeepsItsSizeAtAnyTarget()
+    {
+        MleImageActor actor = new MleImageActor();
+        actor.setImageMedia(image(640, 480));
+        actor.setTargetSize(64, 64);
+        assertEquals(640, actor.getWidth());
+        assertEquals(480, actor.getHeight());
+
+        Bitmap bitmap = actor.getBitmap();
+        assertEquals(64, bitmap.getWidth());
+        assertEquals(48, bitmap.getHeight());
+        assertSame(bitmap, actor.getBitmap());
+
+        // A new target recycles the decoded image.
+        actor.setTargetSize(64, 64);
+        assertSame(bitmap, actor.getBitmap());
+        actor.setTargetSize(0, -1);
+        assertEquals(0, actor.getTargetHeight());
+        Bitmap full = actor.getBitmap();
+        assertNotSame(bitmap, full);
+        assertTrue(bitmap.isRecycled());
+        assertEquals(640, full.getWidth());
+    }
+}
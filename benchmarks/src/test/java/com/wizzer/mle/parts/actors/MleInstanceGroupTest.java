@@ -0,0 +1,166 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.MleTitle;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+import com.wizzer.mle.parts.props.Mle3dTranslationProperty;
+
+/**
+ * Models sharing their media drawn from the packed slots of an instance group.
+ */
+public class MleInstanceGroupTest
+{
+    // The clock driving the behavior group.
+    private final MleManualClock m_clock = new MleManualClock();
+    // The models created by the test, disposed afterwards.
+    private final ArrayList<MleModelActor> m_models = new ArrayList<MleModelActor>();
+
+    @Before
+    public void setUp()
+    {
+        MleBehaviorConfig.setClock(m_clock);
+        MleInstanceGroup.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        for (MleModelActor model : m_models)
+            model.dispose();
+        MleInstanceGroup.setEnabled(false);
+        MleBehaviorConfig.setClock(null);
+    }
+
+    // Create and initialize a still model at a position, so that only the changes
+    // made by the test write its slot.
+    private MleModelActor model(MleMediaRef mesh, MleMediaRef texture, float x) throws Exception
+    {
+        MleModelActor model = new MleModelActor();
+        model.setSpinSpeed(0.0f);
+        model.setModelMedia(mesh);
+        if (texture != null)
+            model.setTextureMedia(texture);
+        model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(x, 0.0f, 0.0f));
+        model.init();
+        m_models.add(model);
+        return model;
+    }
+
+    // Run frames of the Actor phase.
+    private void run(int frames)
+    {
+        long step = (long) (MleBehaviorConfig.getStep() * 1.0e9);
+        for (int frame = 0; frame < frames; frame++)
+        {
+            m_clock.advance(step);
+            MleTitle.g_theActorPhase.execute();
+        }
+    }
+
+    @Test
+    public void modelsSharingMediaShareAGroup() throws Exception
+    {
+        int groups = MleInstanceGroup.getGroupCount();
+        MleMediaRef mesh = new MleMediaRef(), bark = new MleMediaRef(), rock = new MleMediaRef();
+        MleInstanceGroup trees = model(mesh, bark, 1.0f).getInstanceGroup();
+        assertSame(trees, model(mesh, bark, 2.0f).getInstanceGroup());
+        // Another model, or the same model without the texture, is another group.
+        MleInstanceGroup rocks = model(rock, bark, 3.0f).getInstanceGroup();
+        MleInstanceGroup bare = model(mesh, null, 4.0f).getInstanceGroup();
+        assertNotSame(trees, rocks);
+        assertNotSame(trees, bare);
+        assertEquals(groups + 3, MleInstanceGroup.getGroupCount());
+        assertSame(mesh, trees.model.getProperty());
+        assertSame(bark, trees.texture.getProperty());
+
+        assertEquals(2, trees.getInstanceCount());
+        assertSame(m_models.get(1), trees.getMember(1));
+        assertArrayEquals(new float[] { 1, 0, 0, 2, 0, 0 }, Arrays.copyOf(trees.getPositions(), 6), 0.0f);
+        assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 0, 1 }, Arrays.copyOf(trees.getOrientations(), 8), 0.0f);
+        assertArrayEquals(new float[] { 1, 1, 1, 1, 1, 1 }, Arrays.copyOf(trees.getScales(), 6), 0.0f);
+
+        // Models initialized with instancing disabled draw themselves.
+        MleInstanceGroup.setEnabled(false);
+        assertNull(model(mesh, bark, 5.0f).getInstanceGroup());
+        assertEquals(2, trees.getInstanceCount());
+    }
+
+    @Test
+    public void onlyChangedSlotsAreWritten() throws Exception
+    {
+        MleMediaRef mesh = new MleMediaRef();
+        for (int i = 0; i < 5; i++)
+            model(mesh, null, i);
+        MleInstanceGroup group = m_models.get(0).getInstanceGroup();
+        run(1);
+        group.clearDirty();
+
+        long pushes = Mle3dTranslationProperty.g_pushCount;
+        m_models.get(3).setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(30.0f, 0.0f, 0.0f));
+        m_models.get(1).setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(10.0f, 0.0f, 0.0f));
+        m_models.get(1).setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(11.0f, 0.0f, 0.0f));
+        run(1);
+        // Each changed member is written once, and none pushes its own transform.
+        assertEquals(2, group.getUpdateCount());
+        assertEquals(1, group.getDirtyStart());
+        assertEquals(4, group.getDirtyEnd());
+        assertEquals(11.0f, group.getPositions()[3], 0.0f);
+        assertEquals(30.0f, group.getPositions()[9], 0.0f);
+        assertEquals(pushes, Mle3dTranslationProperty.g_pushCount);
+
+        group.clearDirty();
+        run(1);
+        assertEquals(0, group.getUpdateCount());
+        assertEquals(group.getDirtyStart(), group.getDirtyEnd());
+    }
+
+    @Test
+    public void leavingMovesTheLastMember() throws Exception
+    {
+        int groups = MleInstanceGroup.getGroupCount();
+        MleMediaRef mesh = new MleMediaRef();
+        for (int i = 0; i < 3; i++)
+            model(mesh, null, i);
+        MleInstanceGroup group = m_models.get(0).getInstanceGroup();
+        group.clearDirty();
+
+        // The last member fills the slot of a disposed one.
+        m_models.remove(0).dispose();
+        assertEquals(2, group.getInstanceCount());
+        assertSame(m_models.get(1), group.getMember(0));
+        assertEquals(2.0f, group.getPositions()[0], 0.0f);
+        assertEquals(0, group.getDirtyStart());
+        assertEquals(1, group.getDirtyEnd());
+
+        // A member given another model draws itself.
+        MleModelActor changed = m_models.get(0);
+        changed.setModelMedia(new MleMediaRef());
+        assertNull(changed.getInstanceGroup());
+        assertEquals(1, group.getInstanceCount());
+        assertSame(m_models.get(1), group.getMember(0));
+
+        // The group is dropped with its last member.
+        m_models.remove(1).dispose();
+        assertEquals(0, group.getInstanceCount());
+        assertEquals(groups, MleInstanceGroup.getGroupCount());
+    }
+}
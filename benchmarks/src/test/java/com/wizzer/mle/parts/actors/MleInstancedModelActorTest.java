@@ -0,0 +1,103 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Per-instance transforms set as property arrays.
+ */
+public class MleInstancedModelActorTest
+{
+    // Encode values as big-endian floats.
+    private static byte[] encode(float... values) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (float value : values)
+            out.writeFloat(value);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // Set a property array from values.
+    private static void setArray(MleInstancedModelActor actor, String name, int nElements, float... values)
+        throws Exception
+    {
+        byte[] data = encode(values);
+        actor.setPropertyArray(name, data.length, nElements, new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void arraysSetTheInstances() throws Exception
+    {
+        MleInstancedModelActor actor = new MleInstancedModelActor();
+        setArray(actor, "positions", 2, 1.0f, 2.0f, 3.0f, -4.0f, 5.5f, 6.0f);
+        assertEquals(2, actor.getInstanceCount());
+        assertArrayEquals(new float[] { 1.0f, 2.0f, 3.0f, -4.0f, 5.5f, 6.0f },
+                          Arrays.copyOf(actor.getPositions(), 6), 0.0f);
+        // Instances without an explicit orientation or scale use the identity.
+        assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 0, 1 },
+                          Arrays.copyOf(actor.getOrientations(), 8), 0.0f);
+        assertArrayEquals(new float[] { 1, 1, 1, 1, 1, 1 },
+                          Arrays.copyOf(actor.getScales(), 6), 0.0f);
+
+        setArray(actor, "orientations", 2, 0.0f, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+        assertEquals(1.0f, actor.getOrientations()[1], 0.0f);
+        assertEquals(1.0f, actor.getOrientations()[6], 0.0f);
+    }
+
+    @Test
+    public void growingResetsNewInstances() throws Exception
+    {
+        MleInstancedModelActor actor = new MleInstancedModelActor();
+        setArray(actor, "scales", 2, 2.0f, 2.0f, 2.0f, 3.0f, 3.0f, 3.0f);
+        actor.setInstanceCount(1);
+        // Many instances, beyond the initial capacity.
+        actor.setInstanceCount(1000);
+        assertEquals(1000, actor.getInstanceCount());
+        assertEquals(2.0f, actor.getScales()[0], 0.0f);
+        assertEquals(1.0f, actor.getScales()[3], 0.0f);
+        assertEquals(1.0f, actor.getScales()[999 * 3 + 2], 0.0f);
+        assertEquals(1.0f, actor.getOrientations()[999 * 4 + 3], 0.0f);
+    }
+
+    @Test
+    public void malformedArraysAreRejected() throws Exception
+    {
+        MleInstancedModelActor actor = new MleInstancedModelActor();
+        byte[] data = encode(1.0f, 2.0f, 3.0f);
+        String[] names = { "colors", "positions", "orientations", "positions" };
+        int[] lengths = { data.length, data.length + 4, data.length, data.length * 2 };
+        int[] elements = { 1, 1, 1, 2 };
+        for (int i = 0; i < names.length; i++)
+        {
+            try
+            {
+                // An unknown name, a length not matching the elements, and a
+                // stream shorter than its length.
+                actor.setPropertyArray(names[i], lengths[i], elements[i], new ByteArrayInputStream(data));
+                fail("Array " + i + " was set.");
+            } catch (MleRuntimeException ex)
+            {
+                // Expected.
+            }
+        }
+    }
+}
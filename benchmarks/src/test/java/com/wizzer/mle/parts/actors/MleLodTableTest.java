@@ -0,0 +1,93 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.MleTitle;
+
+/**
+ * Selecting and loading the levels of detail of models.
+ */
+public class MleLodTableTest
+{
+    // The model under test, if any.
+    private MleModelActor m_model = null;
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (m_model != null)
+            m_model.dispose();
+        MleBehaviorConfig.setViewpoint(null);
+    }
+
+    @Test
+    public void selectionHasHysteresis()
+    {
+        MleLodTable lods = new MleLodTable(new int[] { 1, 2, 3 }, new float[] { 0.0f, 10.0f, 20.0f }, 0.1f);
+        // Without a current level the switch distances apply as they are.
+        assertEquals(0, lods.select(-1, 9.9f * 9.9f));
+        assertEquals(1, lods.select(-1, 10.0f * 10.0f));
+        assertEquals(2, lods.select(-1, 25.0f * 25.0f));
+        // A coarser level is entered 10% beyond its switch distance...
+        assertEquals(0, lods.select(0, 10.5f * 10.5f));
+        assertEquals(1, lods.select(0, 11.5f * 11.5f));
+        // ...and left 10% within it.
+        assertEquals(1, lods.select(1, 9.5f * 9.5f));
+        assertEquals(0, lods.select(1, 8.5f * 8.5f));
+        // Several levels may be crossed at once.
+        assertEquals(2, lods.select(0, 30.0f * 30.0f));
+        assertEquals(0, lods.select(2, 1.0f));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distancesMustAscend()
+    {
+        new MleLodTable(new int[] { 1, 2 }, new float[] { 10.0f, 5.0f });
+    }
+
+    @Test
+    public void modelFollowsTheViewpoint() throws Exception
+    {
+        MleMediaRefCache cache = MleMediaRefCache.getInstance();
+        m_model = new MleModelActor();
+        m_model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(0.0f, 0.0f, 0.0f));
+        m_model.setModelLods(new MleLodTable(new int[] { 5101, 5102 }, new float[] { 0.0f, 50.0f }));
+        MleBehaviorConfig.setViewpoint(new float[] { 0.0f, 0.0f, 10.0f });
+        m_model.init();
+        assertEquals(0, m_model.getLodLevel());
+        assertEquals(5101, cache.getIndex(m_model.model.getProperty()));
+
+        MleBehaviorConfig.setViewpoint(new float[] { 0.0f, 0.0f, 100.0f });
+        MleTitle.g_theActorPhase.execute();
+        assertEquals(1, m_model.getLodLevel());
+        assertEquals(5102, cache.getIndex(m_model.model.getProperty()));
+    }
+
+    @Test
+    public void failedLoadIsCountedAsLoadFailure() throws Exception
+    {
+        MleActorMetrics.Snapshot before = MleModelActor.g_metrics.snapshot();
+        m_model = new MleModelActor();
+        m_model.setProperty(MleModelActor.PROPERTY_POSITION, BenchProperty.floats(0.0f, 0.0f, 0.0f));
+        // The stand-in DPP can not load negative indices.
+        m_model.setModelLods(new MleLodTable(new int[] { 5201, -1 }, new float[] { 0.0f, 50.0f }));
+        MleBehaviorConfig.setViewpoint(new float[] { 0.0f, 0.0f, 10.0f });
+        m_model.init();
+
+        MleBehaviorConfig.setViewpoint(new float[] { 0.0f, 0.0f, 100.0f });
+        MleTitle.g_theActorPhase.execute();
+        MleActorMetrics.Snapshot after = MleModelActor.g_metrics.snapshot();
+        assertEquals(before.getLoadFailures() + 1, after.getLoadFailures());
+        assertEquals(before.getPushFailures(), after.getPushFailures());
+        // The model of the previous level is kept.
+        assertEquals(5201, MleMediaRefCache.getInstance().getIndex(m_model.model.getProperty()));
+    }
+}
@@ -0,0 +1,120 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+import com.wizzer.mle.runtime.dpp.MleDppException;
+
+/**
+ * Background loading of DPP media, and its failures.
+ */
+public class MleMediaLoaderTest
+{
+    // The loader and cache under test.
+    private final MleMediaLoader m_loader = MleMediaLoader.getInstance();
+    private final MleMediaRefCache m_cache = MleMediaRefCache.getInstance();
+
+    // A request recording how it ended.
+    private static class RecordingRequest extends MleMediaLoader.Request
+    {
+        MleMediaRef m_completed = null;
+        MleDppException m_failed = null;
+
+        RecordingRequest(int index)
+        {
+            super(index);
+        }
+
+        protected void complete(MleMediaRef mref)
+        {
+            m_completed = mref;
+        }
+
+        protected void fail(MleDppException error)
+        {
+            m_failed = error;
+        }
+    }
+
+    @Before
+    public void setUp()
+    {
+        m_cache.trim();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_loader.shutdown();
+        m_cache.trim();
+    }
+
+    @Test(timeout = 10000)
+    public void loadedMediaCompletes() throws Exception
+    {
+        RecordingRequest request = new RecordingRequest(4001);
+        m_loader.submit(request);
+        m_loader.awaitAll();
+        assertNotNull(request.m_completed);
+        assertNull(request.m_failed);
+        assertEquals(0, m_loader.getPendingCount());
+        m_cache.release(request.m_completed);
+    }
+
+    @Test(timeout = 10000)
+    public void failedLoadFails() throws Exception
+    {
+        RecordingRequest request = new RecordingRequest(-1);
+        m_loader.submit(request);
+        m_loader.awaitAll();
+        assertNull(request.m_completed);
+        assertNotNull(request.m_failed);
+    }
+
+    @Test(timeout = 10000)
+    public void throwingPrepareFailsAndReleases() throws Exception
+    {
+        int entries = m_cache.getEntryCount();
+        RecordingRequest request = new RecordingRequest(4002)
+        {
+            protected MleMediaRef prepare(MleMediaRef mref)
+            {
+                throw new IllegalStateException("Unable to prepare.");
+            }
+        };
+        m_loader.submit(request);
+        m_loader.awaitAll();
+        assertNull(request.m_completed);
+        assertNotNull(request.m_failed);
+        assertEquals(0, m_loader.getPendingCount());
+
+        // The loaded media reference was released, so it can be trimmed.
+        m_cache.trim();
+        assertEquals(entries, m_cache.getEntryCount());
+    }
+
+    @Test(timeout = 10000)
+    public void cancelledRequestReleases() throws Exception
+    {
+        int entries = m_cache.getEntryCount();
+        RecordingRequest request = new RecordingRequest(4003);
+        m_loader.submit(request);
+        request.cancel();
+        m_loader.awaitAll();
+        assertNull(request.m_completed);
+        assertNull(request.m_failed);
+        m_cache.trim();
+        assertEquals(entries, m_cache.getEntryCount());
+    }
+}
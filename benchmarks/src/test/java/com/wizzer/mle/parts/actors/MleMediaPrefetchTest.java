@@ -0,0 +1,122 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Loading the media of a group into the cache ahead of its properties.
+ */
+public class MleMediaPrefetchTest
+{
+    // The first DPP index used by the tests, clear of the other tests' indices.
+    private static final int FIRST_INDEX = 9000;
+
+    // The metrics recording the prefetch loads.
+    private static final MleActorMetrics g_metrics = MleActorMetrics.register("MleMediaPrefetchTest");
+
+    // The process-wide media cache.
+    private final MleMediaRefCache m_cache = MleMediaRefCache.getInstance();
+
+    @Before
+    public void setUp()
+    {
+        m_cache.trim();
+        m_cache.resetStatistics();
+        g_metrics.reset();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_cache.trim();
+    }
+
+    @Test
+    public void distinctIndicesAreLoadedOnce() throws Exception
+    {
+        int entries = m_cache.getEntryCount();
+        MleMediaPrefetch prefetch = new MleMediaPrefetch(g_metrics);
+        prefetch.add(FIRST_INDEX + 2);
+        prefetch.add(FIRST_INDEX);
+        prefetch.add(BenchProperty.mediaRef(FIRST_INDEX + 2));
+        // Properties other than media references are ignored.
+        prefetch.add(BenchProperty.floats(1.0f));
+        prefetch.add(new MleLodTable(new int[] { FIRST_INDEX + 1, FIRST_INDEX }, new float[] { 0.0f, 10.0f }));
+        assertEquals(5, prefetch.size());
+        assertFalse(prefetch.isDone());
+
+        assertTrue(prefetch.await());
+        assertTrue(prefetch.isDone());
+        assertEquals(3, prefetch.size());
+        assertEquals(0, prefetch.getFailedCount());
+        assertEquals(3, m_cache.getMisses());
+        assertEquals(entries + 3, m_cache.getEntryCount());
+        assertEquals(3, g_metrics.snapshot().getCount(MleActorMetrics.OP_LOAD_MEDIA));
+
+        // The Actors are served from the cache.
+        MleMediaRef mref = m_cache.acquire(FIRST_INDEX + 1);
+        assertEquals(1, m_cache.getHits());
+
+        // Once released, only the media still in use is kept.
+        prefetch.release();
+        m_cache.trim();
+        assertEquals(entries + 1, m_cache.getEntryCount());
+        m_cache.release(mref);
+    }
+
+    @Test
+    public void failedIndicesAreSkipped() throws Exception
+    {
+        MleMediaPrefetch prefetch = new MleMediaPrefetch();
+        prefetch.add(FIRST_INDEX);
+        prefetch.add(-1);
+        assertFalse(prefetch.await());
+        assertTrue(prefetch.isDone());
+        assertEquals(1, prefetch.getFailedCount());
+        prefetch.release();
+        // Releasing again has no effect.
+        prefetch.release();
+    }
+
+    @Test
+    public void emptyPrefetchIsDoneAtOnce() throws Exception
+    {
+        MleMediaPrefetch prefetch = new MleMediaPrefetch();
+        assertTrue(prefetch.await());
+        assertTrue(prefetch.isDone());
+        prefetch.release();
+    }
+
+    @Test
+    public void indicesAreNotAddedOnceStarted() throws Exception
+    {
+        MleMediaPrefetch prefetch = new MleMediaPrefetch();
+        prefetch.add(FIRST_INDEX);
+        prefetch.start();
+        try
+        {
+            prefetch.add(FIRST_INDEX + 1);
+            fail("An index was added after the start.");
+        } catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+        // Starting again has no effect.
+        prefetch.start();
+        assertTrue(prefetch.await());
+        prefetch.release();
+    }
+}
@@ -0,0 +1,280 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.IMleProp;
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Reference counting, least recently used eviction, the byte budget and the
+ * buffer-backed media of the media cache.
+ */
+public class MleMediaRefCacheTest
+{
+    // The size of the payloads.
+    private static final int PAYLOAD = 1000;
+    // The first DPP index used by the tests, clear of the other tests' indices.
+    private static final int FIRST_INDEX = 7000;
+
+    // The cache under test; process-wide, so the tests only count their own entries.
+    private final MleMediaRefCache m_cache = MleMediaRefCache.getInstance();
+    // The budget before the test.
+    private long m_budget;
+
+    @Before
+    public void setUp()
+    {
+        m_budget = m_cache.getBudget();
+        m_cache.trim();
+        m_cache.resetStatistics();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_cache.setDirectThreshold(MleMediaRefCache.DEFAULT_DIRECT_THRESHOLD);
+        m_cache.setDppEntrySize(MleMediaRefCache.DEFAULT_DPP_ENTRY_SIZE);
+        m_cache.setBudget(m_budget);
+        m_cache.trim();
+    }
+
+    // Create a payload filled with a value.
+    private static byte[] payload(int value)
+    {
+        byte[] data = new byte[PAYLOAD];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    // Create a property holding a payload inline, rather than a DPP index.
+    private static IMleProp inline(byte[] data)
+    {
+        return new BenchProperty(data, IMleProp.PROP_TYPE_INT);
+    }
+
+    @Test
+    public void identicalPayloadsShareOneReference()
+    {
+        int entries = m_cache.getEntryCount();
+        byte[] data = payload(1);
+        MleMediaRef first = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, data, PAYLOAD);
+        // The payload was copied, so the caller's buffer may be reused.
+        data[0] = 2;
+        MleMediaRef second = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(1), PAYLOAD);
+        assertSame(first, second);
+        assertEquals(1, m_cache.getHits());
+        assertEquals(1, m_cache.getMisses());
+        // The same bytes as another kind of media are another entry.
+        MleMediaRef texture = m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, payload(1), PAYLOAD);
+        assertNotSame(first, texture);
+        assertEquals(entries + 2, m_cache.getEntryCount());
+
+        // A referenced entry survives a trim; an unreferenced one does not.
+        m_cache.release(first);
+        m_cache.release(texture);
+        m_cache.trim();
+        assertEquals(entries + 1, m_cache.getEntryCount());
+        m_cache.release(second);
+        // Releasing more often than acquired is ignored.
+        m_cache.release(second);
+        m_cache.trim();
+        assertEquals(entries, m_cache.getEntryCount());
+        MleMediaRef third = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(1), PAYLOAD);
+        assertNotSame(first, third);
+        m_cache.release(third);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedOverBudget()
+    {
+        m_cache.setBudget(m_cache.getSize() + 3 * PAYLOAD);
+        MleMediaRef a = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(1), PAYLOAD);
+        MleMediaRef b = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(2), PAYLOAD);
+        MleMediaRef c = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(3), PAYLOAD);
+        m_cache.release(a);
+        m_cache.release(b);
+        m_cache.release(c);
+        assertEquals(0, m_cache.getEvictions());
+
+        // Using a makes b the least recently used, evicted for d.
+        m_cache.release(m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(1), PAYLOAD));
+        MleMediaRef d = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(4), PAYLOAD);
+        assertEquals(1, m_cache.getEvictions());
+        m_cache.release(d);
+        MleMediaRef[] mrefs = new MleMediaRef[] {
+            m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(1), PAYLOAD),
+            m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(3), PAYLOAD),
+            m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, payload(2), PAYLOAD) };
+        assertSame(a, mrefs[0]);
+        assertSame(c, mrefs[1]);
+        assertNotSame(b, mrefs[2]);
+        for (MleMediaRef mref : mrefs)
+            m_cache.release(mref);
+    }
+
+    @Test
+    public void referencedEntriesAreKeptOverBudget()
+    {
+        long size = m_cache.getSize();
+        m_cache.setBudget(0);
+        MleMediaRef mref = m_cache.acquire(MleMediaRefCache.MEDIA_IMAGE, payload(5), PAYLOAD);
+        assertEquals(size + PAYLOAD, m_cache.getSize());
+        assertSame(mref, m_cache.acquire(MleMediaRefCache.MEDIA_IMAGE, payload(5), PAYLOAD));
+
+        // Unreferenced, it is evicted at once.
+        m_cache.release(mref);
+        assertEquals(size + PAYLOAD, m_cache.getSize());
+        m_cache.release(mref);
+        assertEquals(size, m_cache.getSize());
+        assertEquals(1, m_cache.getEvictions());
+    }
+
+    @Test
+    public void bufferEntryIsDroppedOnLastRelease()
+    {
+        int entries = m_cache.getEntryCount();
+        ByteBuffer data = ByteBuffer.allocateDirect(PAYLOAD);
+        MleMediaRef mref = m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, data);
+        assertSame(mref, m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, data.duplicate()));
+        assertEquals(PAYLOAD, mref.getSize());
+
+        m_cache.release(mref);
+        assertEquals(entries + 1, m_cache.getEntryCount());
+        m_cache.release(mref);
+        assertEquals(entries, m_cache.getEntryCount());
+        assertNull(mref.getMedia());
+    }
+
+    @Test
+    public void dppEntriesSurviveIndexChurn() throws Exception
+    {
+        int count = 1000;
+        m_cache.setDppEntrySize(1);
+        m_cache.setBudget(m_cache.getSize() + count);
+        MleMediaRef[] mrefs = new MleMediaRef[count];
+        for (int i = 0; i < count; i++)
+        {
+            mrefs[i] = m_cache.acquire(FIRST_INDEX + i);
+            assertEquals(FIRST_INDEX + i, m_cache.getIndex(mrefs[i]));
+        }
+        for (int i = 0; i < count; i++)
+            m_cache.release(mrefs[i]);
+
+        // Evict the first half, removing them from the middle of the index table.
+        m_cache.setBudget(m_cache.getSize() - count / 2);
+        assertEquals(count / 2, m_cache.getEvictions());
+        m_cache.resetStatistics();
+        m_cache.setBudget(m_cache.getSize() + count);
+        for (int i = count - 1; i >= 0; i--)
+        {
+            MleMediaRef mref = m_cache.acquire(FIRST_INDEX + i);
+            if (i >= count / 2)
+                assertSame(mrefs[i], mref);
+            else
+                assertNotSame(mrefs[i], mref);
+            assertEquals(FIRST_INDEX + i, m_cache.getIndex(mref));
+            m_cache.release(mref);
+        }
+        assertEquals(count / 2, m_cache.getHits());
+        assertEquals(count / 2, m_cache.getMisses());
+        // Media which did not come from the cache has no index.
+        assertEquals(-1, m_cache.getIndex(new MleMediaRef()));
+    }
+
+    @Test
+    public void fileRegionIsMappedOnce() throws Exception
+    {
+        File file = File.createTempFile("media", ".dpp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(payload(7));
+            out.write(payload(8));
+        } finally
+        {
+            out.close();
+        }
+
+        MleMediaRef mref = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, file, PAYLOAD, PAYLOAD);
+        ByteBuffer data = (ByteBuffer) mref.getMedia();
+        assertTrue(data.isDirect());
+        assertTrue(data.isReadOnly());
+        assertEquals(PAYLOAD, data.remaining());
+        assertEquals(8, data.get(0));
+        assertSame(mref, m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, file, PAYLOAD, PAYLOAD));
+        assertEquals(1, m_cache.getHits());
+
+        // Another region of the file is another entry.
+        MleMediaRef first = m_cache.acquire(MleMediaRefCache.MEDIA_MODEL, file, 0, PAYLOAD);
+        assertNotSame(mref, first);
+        m_cache.release(first);
+        m_cache.release(mref);
+        m_cache.release(mref);
+        assertNull(mref.getMedia());
+    }
+
+    @Test
+    public void invalidFileRegionIsRejected() throws Exception
+    {
+        File file = new File("missing.dpp");
+        long[][] regions = { { -1, PAYLOAD }, { 0, -1 }, { 0, Integer.MAX_VALUE + 1L }, { 0, PAYLOAD } };
+        for (long[] region : regions)
+        {
+            try
+            {
+                m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, file, region[0], region[1]);
+                fail("The region " + region[0] + "+" + region[1] + " was mapped.");
+            } catch (IOException ex)
+            {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void largePayloadIsReadOffTheHeap() throws Exception
+    {
+        m_cache.setDirectThreshold(PAYLOAD);
+        MleMediaRef small = m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE,
+            inline(Arrays.copyOf(payload(9), PAYLOAD - 1)));
+        MleMediaRef large = m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, inline(payload(9)));
+        assertTrue(small.getMedia() instanceof byte[]);
+        assertEquals(PAYLOAD - 1, small.getSize());
+        assertTrue(((ByteBuffer) large.getMedia()).isDirect());
+        assertEquals(PAYLOAD, large.getSize());
+
+        // The same payload read again shares the entry.
+        assertSame(large, m_cache.acquire(MleMediaRefCache.MEDIA_TEXTURE, inline(payload(9))));
+        m_cache.release(small);
+        m_cache.release(large);
+        m_cache.release(large);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownKindIsRejected()
+    {
+        m_cache.acquire(99, payload(6), PAYLOAD);
+    }
+}
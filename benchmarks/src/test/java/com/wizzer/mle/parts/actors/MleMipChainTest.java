@@ -0,0 +1,183 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Writing, reading and validating mip chains.
+ */
+public class MleMipChainTest
+{
+    // The offsets of header fields.
+    private static final int VERSION_OFFSET = 4;
+    private static final int FORMAT_OFFSET = 20;
+    private static final int COUNT_OFFSET = 32;
+    // The offset of the length of the first level.
+    private static final int LEVEL_LENGTH_OFFSET = 40 + 12;
+
+    // Write the mip chain of an image whose pixels are all one value.
+    private static ByteBuffer write(int width, int height, int value) throws IOException
+    {
+        ByteBuffer pixels = ByteBuffer.allocate(width * height * 4);
+        for (int i = 0; i < pixels.capacity(); i++)
+            pixels.put(i, (byte) value);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long written = MleMipChain.write(Channels.newChannel(bytes), 0x0123456789abcdefL, 77, pixels, width, height);
+        assertEquals(bytes.size(), written);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    @Test
+    public void chainRoundTrips() throws Exception
+    {
+        MleMipChain chain = MleMipChain.read(write(5, 3, 200));
+        assertNotNull(chain);
+        assertEquals(0x0123456789abcdefL, chain.getSourceHash());
+        assertEquals(77, chain.getSourceLength());
+        assertEquals(MleMipChain.FORMAT_RGBA8888, chain.getFormat());
+
+        // 5x3, 2x1, 1x1.
+        assertEquals(3, chain.getLevelCount());
+        int[] widths = { 5, 2, 1 }, heights = { 3, 1, 1 };
+        for (int level = 0; level < 3; level++)
+        {
+            assertEquals(widths[level], chain.getWidth(level));
+            assertEquals(heights[level], chain.getHeight(level));
+            ByteBuffer pixels = chain.getLevel(level);
+            assertEquals(widths[level] * heights[level] * 4, pixels.remaining());
+            while (pixels.hasRemaining())
+                assertEquals(200, pixels.get() & 0xff);
+        }
+    }
+
+    @Test
+    public void levelsAverageBoxes() throws Exception
+    {
+        // A 2x2 image of four grays; the next level is their rounded average.
+        ByteBuffer pixels = ByteBuffer.allocate(16);
+        int[] grays = { 0, 10, 20, 31 };
+        for (int i = 0; i < 16; i++)
+            pixels.put(i, (byte) grays[i / 4]);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MleMipChain.write(Channels.newChannel(bytes), 0L, 0, pixels, 2, 2);
+        MleMipChain chain = MleMipChain.read(ByteBuffer.wrap(bytes.toByteArray()));
+        assertEquals(2, chain.getLevelCount());
+        ByteBuffer level = chain.getLevel(1);
+        for (int c = 0; c < 4; c++)
+            assertEquals(15, level.get(c) & 0xff);
+    }
+
+    @Test
+    public void levelIsSelectedByDrawnSize() throws Exception
+    {
+        MleMipChain chain = MleMipChain.read(write(64, 64, 0));
+        assertEquals(7, chain.getLevelCount());
+        assertEquals(0, chain.selectLevel(100, 100));
+        assertEquals(0, chain.selectLevel(64, 64));
+        assertEquals(1, chain.selectLevel(32, 32));
+        assertEquals(1, chain.selectLevel(20, 20));
+        // The next level is too short.
+        assertEquals(0, chain.selectLevel(20, 40));
+        assertEquals(6, chain.selectLevel(1, 1));
+        assertEquals(6, chain.selectLevel(0, 0));
+        try
+        {
+            chain.getLevel(7);
+            fail("A level past the last was returned.");
+        } catch (IndexOutOfBoundsException ex)
+        {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void levelCountIsCapped()
+    {
+        assertEquals(1, MleMipChain.getLevelCount(1, 1));
+        assertEquals(2, MleMipChain.getLevelCount(2, 1));
+        assertEquals(MleMipChain.MAX_LEVELS, MleMipChain.getLevelCount(32768, 1));
+        assertEquals(MleMipChain.MAX_LEVELS, MleMipChain.getLevelCount(1 << 20, 1 << 20));
+    }
+
+    @Test
+    public void malformedChainsAreRejected() throws Exception
+    {
+        ByteBuffer data = write(4, 4, 0);
+        assertNotNull(MleMipChain.read(data));
+
+        int[][] corruptions = {
+            { 0, 0x4d4c5459 },                       // The magic number.
+            { VERSION_OFFSET, MleMipChain.VERSION + 1 },
+            { FORMAT_OFFSET, 2 },
+            { COUNT_OFFSET, 0 },
+            { COUNT_OFFSET, MleMipChain.MAX_LEVELS + 1 },
+            { COUNT_OFFSET, 1000000 },               // Past the end of the level table.
+            { LEVEL_LENGTH_OFFSET, 4 * 4 * 4 + 1 },  // Not the size of the level.
+        };
+        for (int[] corruption : corruptions)
+        {
+            ByteBuffer copy = ByteBuffer.allocate(data.capacity());
+            copy.put(data.duplicate()).flip();
+            copy.putInt(corruption[0], corruption[1]);
+            assertNull("Corruption at " + corruption[0], MleMipChain.read(copy));
+        }
+
+        // Truncated in the header, and in the last level.
+        ByteBuffer header = data.duplicate();
+        header.limit(39);
+        assertNull(MleMipChain.read(header.slice()));
+        ByteBuffer levels = data.duplicate();
+        levels.limit(data.capacity() - 16);
+        assertNull(MleMipChain.read(levels.slice()));
+    }
+
+    @Test
+    public void mediaOtherThanChainsIsNotRead() throws Exception
+    {
+        assertNull(MleMipChain.read((MleMediaRef) null));
+        MleMediaRef mref = new MleMediaRef();
+        mref.registerMedia(0, 3, new byte[3]);
+        assertNull(MleMipChain.read(mref));
+        ByteBuffer data = write(2, 2, 0);
+        mref.registerMedia(0, data.capacity(), data);
+        assertNotNull(MleMipChain.read(mref));
+    }
+
+    @Test
+    public void invalidImagesAreNotWritten() throws Exception
+    {
+        // Empty, too few pixels for 4x4, and too large for int offsets.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int[][] sizes = { { 0, 4 }, { 4, -1 }, { 4, 4 }, { 65536, 65536 } };
+        for (int[] size : sizes)
+        {
+            try
+            {
+                MleMipChain.write(Channels.newChannel(bytes), 0L, 0, ByteBuffer.allocate(15 * 4),
+                                  size[0], size[1]);
+                fail("An image of " + size[0] + "x" + size[1] + " was written.");
+            } catch (IOException ex)
+            {
+                // Expected.
+            }
+        }
+        assertEquals(0, bytes.size());
+    }
+}
@@ -0,0 +1,189 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleActor;
+
+/**
+ * Coalesced delivery of property changes.
+ */
+public class MlePropertyNotifierTest
+{
+    // The notifier under test.
+    private final MlePropertyNotifier m_notifier = MlePropertyNotifier.getInstance();
+
+    // The Actors subscribed to by a test.
+    private final ArrayList<MleActor> m_actors = new ArrayList<MleActor>();
+
+    // A listener recording the masks delivered to it.
+    private static class RecordingListener implements IMlePropertyListener
+    {
+        final ArrayList<Integer> m_masks = new ArrayList<Integer>();
+        MleActor m_actor = null;
+
+        public void propertiesChanged(MleActor actor, int changed)
+        {
+            m_actor = actor;
+            m_masks.add(changed);
+        }
+    }
+
+    // A cube counting its immediate notifications.
+    private static final class CountingCube extends MleCubeActor
+    {
+        int m_notified = 0;
+
+        public void notifyPropertyChange(String name, Object oldValue, Object newValue)
+        {
+            m_notified++;
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (MleActor actor : m_actors)
+            m_notifier.removeListeners(actor);
+        m_notifier.run();
+        m_notifier.setImmediate(false);
+    }
+
+    // Create a cube and subscribe a listener to it.
+    private CountingCube subscribe(IMlePropertyListener listener) throws Exception
+    {
+        CountingCube cube = new CountingCube();
+        m_notifier.addListener(cube, listener);
+        m_actors.add(cube);
+        return cube;
+    }
+
+    @Test
+    public void changesAreCoalescedPerFrame() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        CountingCube cube = subscribe(listener);
+        cube.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 0.0f, 0.0f));
+        cube.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(2.0f, 0.0f, 0.0f));
+        cube.setProperty(MleCubeActor.PROPERTY_SCALE, BenchProperty.floats(2.0f, 2.0f, 2.0f));
+        m_notifier.run();
+
+        assertEquals(1, listener.m_masks.size());
+        assertEquals((1 << MleCubeActor.PROPERTY_POSITION) | (1 << MleCubeActor.PROPERTY_SCALE),
+                     listener.m_masks.get(0).intValue());
+        assertSame(cube, listener.m_actor);
+        // By default the changes are not also notified one by one.
+        assertEquals(0, cube.m_notified);
+
+        // Nothing changed since, so nothing is delivered.
+        m_notifier.run();
+        assertEquals(1, listener.m_masks.size());
+    }
+
+    @Test
+    public void immediateNotificationIsOptIn() throws Exception
+    {
+        m_notifier.setImmediate(true);
+        CountingCube cube = subscribe(new RecordingListener());
+        cube.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 0.0f, 0.0f));
+        cube.setProperty(MleCubeActor.PROPERTY_SCALE, BenchProperty.floats(2.0f, 2.0f, 2.0f));
+        assertEquals(2, cube.m_notified);
+    }
+
+    @Test
+    public void listenerRemovedDuringDeliveryIsSkipped() throws Exception
+    {
+        final RecordingListener second = new RecordingListener();
+        final MleActor[] target = new MleActor[1];
+        RecordingListener first = new RecordingListener()
+        {
+            public void propertiesChanged(MleActor actor, int changed)
+            {
+                super.propertiesChanged(actor, changed);
+                m_notifier.removeListener(target[0], second);
+            }
+        };
+        CountingCube a = subscribe(first);
+        CountingCube b = subscribe(second);
+        target[0] = b;
+        a.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 0.0f, 0.0f));
+        b.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 0.0f, 0.0f));
+        m_notifier.run();
+
+        assertEquals(1, first.m_masks.size());
+        assertEquals(0, second.m_masks.size());
+    }
+
+    @Test
+    public void throwingListenerKeepsOtherChanges() throws Exception
+    {
+        RecordingListener thrower = new RecordingListener()
+        {
+            public void propertiesChanged(MleActor actor, int changed)
+            {
+                super.propertiesChanged(actor, changed);
+                throw new IllegalStateException("Listener failed.");
+            }
+        };
+        RecordingListener other = new RecordingListener();
+        CountingCube a = subscribe(thrower);
+        CountingCube b = subscribe(other);
+        a.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(1.0f, 0.0f, 0.0f));
+        b.setProperty(MleCubeActor.PROPERTY_SCALE, BenchProperty.floats(2.0f, 2.0f, 2.0f));
+        try
+        {
+            m_notifier.run();
+            fail("The exception of the listener was not propagated.");
+        } catch (IllegalStateException ex)
+        {
+            // Expected.
+        }
+        assertEquals(1, thrower.m_masks.size());
+        assertEquals(0, other.m_masks.size());
+
+        // The next delivery reaches the other Actor only, with its change.
+        m_notifier.run();
+        assertEquals(1, thrower.m_masks.size());
+        assertEquals(1, other.m_masks.size());
+        assertEquals(1 << MleCubeActor.PROPERTY_SCALE, other.m_masks.get(0).intValue());
+        m_notifier.run();
+        assertEquals(1, other.m_masks.size());
+    }
+
+    @Test
+    public void changesWithoutListenersAllocateNothing() throws Exception
+    {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        CountingCube cube = new CountingCube();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < 20000; i++)
+            m_notifier.changed(cube, MleCubeActor.PROPERTY_POSITION, "position");
+
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++)
+        {
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 10000; i++)
+                m_notifier.changed(cube, MleCubeActor.PROPERTY_POSITION, "position");
+            least = Math.min(least, threads.getThreadAllocatedBytes(thread) - allocated);
+        }
+        assertEquals(0L, least);
+        assertEquals(0, cube.m_notified);
+    }
+}
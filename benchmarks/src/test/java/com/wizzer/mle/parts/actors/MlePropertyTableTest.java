@@ -0,0 +1,86 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleRuntimeException;
+
+/**
+ * Property lookup by name and by identifier.
+ */
+public class MlePropertyTableTest
+{
+    @Test
+    public void namesAndIdentifiersMap()
+    {
+        MlePropertyTable table = new MlePropertyTable(
+            new String[] { "position", "model" },
+            new int[] { MlePropertyTable.TYPE_VECTOR3, MlePropertyTable.TYPE_MEDIAREF });
+        assertEquals(2, table.size());
+        assertEquals(0, table.getId("position"));
+        assertEquals(1, table.getId("model"));
+        assertEquals("model", table.getName(1));
+        assertEquals(MlePropertyTable.TYPE_MEDIAREF, table.getType(1));
+
+        // Unknown names and identifiers.
+        assertEquals(-1, table.getId("texture"));
+        assertEquals(-1, table.getId(null));
+        assertNull(table.getName(2));
+        assertNull(table.getName(-1));
+        assertEquals(-1, table.getType(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void namesAndTypesMustMatch()
+    {
+        new MlePropertyTable(new String[] { "position" }, new int[0]);
+    }
+
+    @Test
+    public void actorsResolveTheirPropertyNames() throws Exception
+    {
+        assertEquals(MleCubeActor.PROPERTY_POSITION, MleCubeActor.getPropertyId("position"));
+        assertEquals(MleCubeActor.PROPERTY_COLOR, MleCubeActor.getPropertyId("color"));
+        assertEquals(MleModelActor.PROPERTY_MODEL, MleModelActor.getPropertyId("model"));
+        assertEquals(MleModelActor.PROPERTY_TEXTURE, MleModelActor.getPropertyId("texture"));
+        assertEquals(-1, MleModelActor.getPropertyId("colour"));
+
+        // Setting by name and by identifier reaches the same property.
+        MleCubeActor cube = new MleCubeActor();
+        cube.setProperty("position", BenchProperty.floats(1.0f, 2.0f, 3.0f));
+        assertSame(cube.getProperty("position"), cube.getProperty(MleCubeActor.PROPERTY_POSITION));
+        cube.setProperty(MleCubeActor.PROPERTY_POSITION, BenchProperty.floats(4.0f, 5.0f, 6.0f));
+        assertEquals(4.0f, cube.position.getProperty().getValue()[0], 0.0f);
+    }
+
+    @Test
+    public void unknownPropertiesAreRejected() throws Exception
+    {
+        MleCubeActor cube = new MleCubeActor();
+        try
+        {
+            cube.setProperty("colour", BenchProperty.floats(1.0f, 1.0f, 1.0f, 1.0f));
+            fail("An unknown name was set.");
+        } catch (MleRuntimeException ex)
+        {
+            // Expected.
+        }
+        try
+        {
+            cube.getProperty(-1);
+            fail("An unknown identifier was returned.");
+        } catch (MleRuntimeException ex)
+        {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,122 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Region and ray queries of the spatial index, including ranges too large to count
+ * in an int.
+ */
+public class MleSpatialGridTest
+{
+    // A radius spanning 2048 cells of the default size on each axis; the count of
+    // cells, 2^33, does not fit in an int.
+    private static final float WRAPPING_RADIUS = 1024.0f * MleSpatialGrid.DEFAULT_CELL_SIZE - 0.5f;
+
+    @Test
+    public void regionAndRayFindNearbyEntries()
+    {
+        MleSpatialGrid grid = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+        int a = grid.add("a", 0.0f, 0.0f, 0.0f, 1.0f);
+        int b = grid.add("b", 20.0f, 0.0f, 0.0f, 1.0f);
+        grid.add("c", 0.0f, 50.0f, 0.0f, 1.0f);
+        assertEquals(3, grid.size());
+
+        int[] out = new int[4];
+        assertEquals(1, grid.queryRegion(-2.0f, -2.0f, -2.0f, 2.0f, 2.0f, 2.0f, out));
+        assertEquals(a, out[0]);
+        assertEquals(2, grid.queryRegion(-2.0f, -2.0f, -2.0f, 22.0f, 2.0f, 2.0f, out));
+
+        // The ray along x from the far side hits b first.
+        assertEquals(b, grid.queryRay(40.0f, 0.0f, 0.0f, -1.0f, 0.0f, 0.0f, 100.0f));
+        assertEquals(19.0f, grid.getHitDistance(), 1.0e-4f);
+        assertEquals(-1, grid.queryRay(40.0f, 10.0f, 0.0f, -1.0f, 0.0f, 0.0f, 100.0f));
+    }
+
+    @Test
+    public void movedAndRemovedEntriesAreRelisted()
+    {
+        MleSpatialGrid grid = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+        int id = grid.add("a", 0.0f, 0.0f, 0.0f, 1.0f);
+        grid.update(id, 100.0f, 0.0f, 0.0f, 1.0f);
+        int[] out = new int[1];
+        assertEquals(0, grid.queryRegion(-2.0f, -2.0f, -2.0f, 2.0f, 2.0f, 2.0f, out));
+        assertEquals(1, grid.queryRegion(98.0f, -2.0f, -2.0f, 102.0f, 2.0f, 2.0f, out));
+
+        grid.remove(id);
+        assertEquals(0, grid.size());
+        assertNull(grid.getObject(id));
+        assertEquals(0, grid.queryRegion(98.0f, -2.0f, -2.0f, 102.0f, 2.0f, 2.0f, out));
+        // The identifier is reused.
+        assertEquals(id, grid.add("b", 0.0f, 0.0f, 0.0f, 1.0f));
+    }
+
+    @Test(timeout = 10000)
+    public void entrySpanningManyCellsIsKeptLarge()
+    {
+        MleSpatialGrid grid = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+        int id = grid.add("huge", 0.0f, 0.0f, 0.0f, WRAPPING_RADIUS);
+        int[] out = new int[1];
+        assertEquals(1, grid.queryRegion(5000.0f, 0.0f, 0.0f, 5001.0f, 1.0f, 1.0f, out));
+        assertEquals(id, out[0]);
+
+        // Shrinking it lists it in its cells again, growing it back does not hang.
+        grid.update(id, 0.0f, 0.0f, 0.0f, 1.0f);
+        assertEquals(0, grid.queryRegion(5000.0f, 0.0f, 0.0f, 5001.0f, 1.0f, 1.0f, out));
+        grid.update(id, 0.0f, 0.0f, 0.0f, WRAPPING_RADIUS);
+        grid.remove(id);
+        assertEquals(0, grid.size());
+    }
+
+    @Test(timeout = 10000)
+    public void regionWithWrappingCellCountScansTheBuckets()
+    {
+        MleSpatialGrid grid = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+        grid.add("a", 0.0f, 0.0f, 0.0f, 1.0f);
+        grid.add("b", 3000.0f, -3000.0f, 3000.0f, 1.0f);
+        int[] out = new int[2];
+        assertEquals(2, grid.queryRegion(-WRAPPING_RADIUS, -WRAPPING_RADIUS, -WRAPPING_RADIUS,
+                                         WRAPPING_RADIUS, WRAPPING_RADIUS, WRAPPING_RADIUS, out));
+        // A region spanning most of the float range.
+        assertEquals(2, grid.queryRegion(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE,
+                                         Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, out));
+    }
+
+    @Test
+    public void nonFiniteValuesAreRejected()
+    {
+        MleSpatialGrid grid = new MleSpatialGrid(MleSpatialGrid.DEFAULT_CELL_SIZE);
+        try
+        {
+            grid.add("a", Float.NaN, 0.0f, 0.0f, 1.0f);
+            fail("A NaN center was accepted.");
+        } catch (IllegalArgumentException ex)
+        {
+            // Expected.
+        }
+        try
+        {
+            grid.add("a", 0.0f, 0.0f, 0.0f, -1.0f);
+            fail("A negative radius was accepted.");
+        } catch (IllegalArgumentException ex)
+        {
+            // Expected.
+        }
+        try
+        {
+            grid.queryRegion(Float.NEGATIVE_INFINITY, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, new int[1]);
+            fail("An infinite region was accepted.");
+        } catch (IllegalArgumentException ex)
+        {
+            // Expected.
+        }
+        assertEquals(0, grid.size());
+    }
+}
@@ -0,0 +1,168 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.util.ArrayList;
+
+// Import JUnit classes.
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Import Android classes.
+import android.graphics.Bitmap;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Packing images into texture atlases and resolving Actors to their regions.
+ */
+public class MleTextureAtlasBuilderTest
+{
+    // Create a media reference to an image of a size.
+    private static MleMediaRef image(int width, int height)
+    {
+        byte[] data = MleTextureCacheTest.png(width, height);
+        MleMediaRef mref = new MleMediaRef();
+        mref.registerMedia(0, data.length, data);
+        return mref;
+    }
+
+    // Determine whether two regions, grown by the padding, overlap.
+    private static boolean overlap(MleTextureAtlas.Region a, MleTextureAtlas.Region b, int padding)
+    {
+        return (a.getX() < b.getX() + b.getPackedWidth() + padding) &&
+               (b.getX() < a.getX() + a.getPackedWidth() + padding) &&
+               (a.getY() < b.getY() + b.getPackedHeight() + padding) &&
+               (b.getY() < a.getY() + a.getPackedHeight() + padding);
+    }
+
+    @Test
+    public void imagesArePackedWithoutOverlap()
+    {
+        MleTextureAtlasBuilder builder = new MleTextureAtlasBuilder();
+        int[][] sizes = { { 100, 20 }, { 16, 16 }, { 40, 90 }, { 7, 3 }, { 64, 64 }, { 30, 30 }, { 1, 1 } };
+        ArrayList<MleMediaRef> mrefs = new ArrayList<MleMediaRef>();
+        for (int[] size : sizes)
+        {
+            MleMediaRef mref = image(size[0], size[1]);
+            mrefs.add(mref);
+            assertTrue(builder.add(mref));
+        }
+        // An image added again is packed once; media which is not an image is not.
+        assertTrue(builder.add(mrefs.get(0)));
+        MleMediaRef text = new MleMediaRef();
+        text.registerMedia(0, 64, new byte[64]);
+        assertFalse(builder.add(text));
+        assertFalse(builder.add((MleMediaRef) null));
+        assertEquals(sizes.length, builder.size());
+
+        MleTextureAtlas[] atlases = builder.pack();
+        assertEquals(1, atlases.length);
+        MleTextureAtlas atlas = atlases[0];
+        assertEquals(sizes.length, atlas.getRegionCount());
+        assertEquals(1, Integer.bitCount(atlas.getWidth()));
+        assertEquals(1, Integer.bitCount(atlas.getHeight()));
+        assertNull(atlas.getBitmap());
+        assertNull(atlas.getRegion(text));
+        for (int i = 0; i < sizes.length; i++)
+        {
+            MleTextureAtlas.Region region = atlas.getRegion(mrefs.get(i));
+            assertSame(atlas, region.getAtlas());
+            assertEquals(sizes[i][0], region.getPackedWidth());
+            assertEquals(sizes[i][1], region.getPackedHeight());
+            assertTrue(region.getX() + region.getPackedWidth() <= atlas.getWidth());
+            assertTrue(region.getY() + region.getPackedHeight() <= atlas.getHeight());
+            for (int j = 0; j < i; j++)
+                assertFalse(overlap(region, atlas.getRegion(mrefs.get(j)), builder.getPadding()));
+        }
+        assertTrue(atlas.getOccupancy() > 0.0f);
+        assertTrue(atlas.getOccupancy() <= 1.0f);
+    }
+
+    @Test
+    public void fullPagesOverflowIntoNewAtlases()
+    {
+        MleTextureAtlasBuilder builder = new MleTextureAtlasBuilder();
+        builder.setMaxSize(64);
+        builder.setPadding(0);
+        for (int i = 0; i < 5; i++)
+            builder.add(image(32, 32));
+        MleTextureAtlas[] atlases = builder.pack();
+        assertEquals(2, atlases.length);
+        assertEquals(4, atlases[0].getRegionCount());
+        assertEquals(64, atlases[0].getWidth());
+        assertEquals(1.0f, atlases[0].getOccupancy(), 0.0f);
+        // The last page is shrunk to its one image.
+        assertEquals(32, atlases[1].getWidth());
+        assertEquals(32, atlases[1].getHeight());
+    }
+
+    @Test
+    public void largeImageIsScaledToFit()
+    {
+        MleTextureAtlasBuilder builder = new MleTextureAtlasBuilder();
+        builder.setMaxSize(100);
+        assertEquals(64, builder.getMaxSize());
+        MleMediaRef mref = image(252, 126);
+        builder.add(mref);
+        MleTextureAtlas.Region region = builder.pack()[0].getRegion(mref);
+        // Scaled to fit 63 pixels with the padding, keeping the aspect ratio.
+        assertEquals(63, region.getPackedWidth());
+        assertEquals(32, region.getPackedHeight());
+        assertEquals(252, region.getWidth());
+        assertEquals(126, region.getHeight());
+    }
+
+    @Test
+    public void actorsResolveToTheirRegions()
+    {
+        MleTextureAtlasBuilder builder = new MleTextureAtlasBuilder();
+        MleImageActor[] actors = new MleImageActor[3];
+        MleMediaRef shared = image(20, 10);
+        for (int i = 0; i < actors.length; i++)
+        {
+            actors[i] = new MleImageActor();
+            actors[i].setImageMedia((i < 2) ? shared : image(8, 8));
+            assertTrue(builder.add(actors[i]));
+        }
+        // An Actor without an image is not packed.
+        assertFalse(builder.add(new MleImageActor()));
+        assertEquals(2, builder.size());
+
+        MleTextureAtlas[] atlases = builder.build();
+        assertEquals(1, atlases.length);
+        assertEquals(0, builder.getFailedCount());
+        assertEquals(0, builder.size());
+        assertNotNull(atlases[0].getBitmap());
+
+        MleTextureAtlas.Region region = actors[0].getAtlasRegion();
+        assertSame(region, actors[1].getAtlasRegion());
+        assertEquals(20, actors[0].getWidth());
+        assertEquals(10, actors[0].getHeight());
+        Bitmap bitmap = actors[0].getBitmap();
+        assertEquals(20, bitmap.getWidth());
+        assertEquals(10, bitmap.getHeight());
+
+        float[] uv = region.getTexCoords(new float[4]);
+        float width = atlases[0].getWidth(), height = atlases[0].getHeight();
+        assertArrayEquals(new float[] { region.getX() / width, region.getY() / height,
+                                        (region.getX() + 20) / width, (region.getY() + 10) / height },
+                          uv, 0.0f);
+
+        // Setting the image again drops the region.
+        actors[2].setImageMedia(image(8, 8));
+        assertNull(actors[2].getAtlasRegion());
+        atlases[0].dispose();
+        assertNull(atlases[0].getBitmap());
+    }
+}
@@ -0,0 +1,162 @@
+// COPYRIGHT_BEGIN
+// COPYRIGHT_END
+
+// Declare package.
+package com.wizzer.mle.parts.actors;
+
+// Import standard Java classes.
+import java.io.File;
+import java.io.FileOutputStream;
+
+// Import JUnit classes.
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+// Import Magic Lantern classes.
+import com.wizzer.mle.runtime.core.MleMediaRef;
+
+/**
+ * Preparing textures through the on-disk mip chain cache.
+ */
+public class MleTextureCacheTest
+{
+    @Rule
+    public TemporaryFolder m_folder = new TemporaryFolder();
+
+    // The cache under test.
+    private final MleTextureCache m_cache = MleTextureCache.getInstance();
+
+    // Encode the header of a PNG image as read by the stand-in decoder.
+    static byte[] png(int width, int height)
+    {
+        byte[] data = new byte[40];
+        data[1] = 'P';
+        data[2] = 'N';
+        data[3] = 'G';
+        for (int i = 0; i < 4; i++)
+        {
+            data[16 + i] = (byte) (width >>> (24 - i * 8));
+            data[20 + i] = (byte) (height >>> (24 - i * 8));
+        }
+        return data;
+    }
+
+    @Before
+    public void setUp()
+    {
+        m_cache.setDirectory(m_folder.getRoot());
+        m_cache.resetStatistics();
+    }
+
+    @After
+    public void tearDown()
+    {
+        m_cache.setDirectory(null);
+    }
+
+    // Prepare a texture from a payload, returning the prepared media reference.
+    private MleMediaRef prepare(byte[] data)
+    {
+        MleMediaRef source = MleMediaRefCache.getInstance().acquire(
+            MleMediaRefCache.MEDIA_TEXTURE, data, data.length);
+        return m_cache.prepare(source);
+    }
+
+    @Test
+    public void mipChainIsGeneratedThenMapped() throws Exception
+    {
+        byte[] data = png(8, 4);
+        MleMediaRef first = prepare(data);
+        MleMipChain chain = MleMipChain.read(first);
+        assertNotNull(chain);
+        assertEquals(4, chain.getLevelCount());
+        assertEquals(8, chain.getWidth(0));
+        assertEquals(1, m_cache.getMisses());
+        String[] files = m_folder.getRoot().list();
+        assertEquals(1, files.length);
+        assertEquals(MleTextureCache.getFileName(chain.getSourceHash(), data.length), files[0]);
+
+        // The same texture for another Actor shares the prepared media.
+        assertSame(first, prepare(data));
+        assertEquals(1, m_cache.getHits());
+
+        // Once dropped from memory, the texture is prepared from the file.
+        MleMediaRefCache.getInstance().release(first);
+        MleMediaRefCache.getInstance().release(first);
+        MleMediaRefCache.getInstance().trim();
+        MleMediaRef second = prepare(data);
+        assertNotSame(first, second);
+        assertNotNull(MleMipChain.read(second));
+        assertEquals(2, m_cache.getHits());
+        assertEquals(1, m_cache.getMisses());
+        MleMediaRefCache.getInstance().release(second);
+    }
+
+    @Test
+    public void corruptFileIsGeneratedAgain() throws Exception
+    {
+        byte[] data = png(4, 4);
+        MleMediaRef first = prepare(data);
+        File file = new File(m_folder.getRoot(), m_folder.getRoot().list()[0]);
+        MleMediaRefCache.getInstance().release(first);
+        MleMediaRefCache.getInstance().trim();
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(new byte[64]);
+        } finally
+        {
+            out.close();
+        }
+
+        MleMediaRef second = prepare(data);
+        assertNotNull(MleMipChain.read(second));
+        assertEquals(2, m_cache.getMisses());
+        assertEquals(0, m_cache.getFailures());
+        MleMediaRefCache.getInstance().release(second);
+    }
+
+    @Test
+    public void undecodableTextureIsUsedAsIs()
+    {
+        byte[] data = new byte[64];
+        MleMediaRef source = MleMediaRefCache.getInstance().acquire(
+            MleMediaRefCache.MEDIA_TEXTURE, data, data.length);
+        assertSame(source, m_cache.prepare(source));
+        assertEquals(1, m_cache.getFailures());
+        assertEquals(0, m_folder.getRoot().list().length);
+        MleMediaRefCache.getInstance().release(source);
+    }
+
+    @Test
+    public void oversizedTextureIsUsedAsIs()
+    {
+        MleMediaRef source = new MleMediaRef();
+        byte[] data = png(70000, 70000);
+        source.registerMedia(0, data.length, data);
+        assertSame(source, m_cache.prepare(source));
+        assertEquals(1, m_cache.getFailures());
+        assertEquals(0, m_folder.getRoot().list().length);
+    }
+
+    @Test
+    public void unreadableTextureIsUsedAsIs()
+    {
+        MleMediaRef source = new MleMediaRef()
+        {
+            public Object getMedia()
+            {
+                throw new IllegalStateException("Unable to read media.");
+            }
+        };
+        assertSame(source, m_cache.prepare(source));
+        assertEquals(1, m_cache.getFailures());
+    }
+}